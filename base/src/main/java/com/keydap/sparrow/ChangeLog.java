@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) 2018 Keydap Software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * See LICENSE file for details.
+ */
+package com.keydap.sparrow;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The log of changes made to the attributes of a {@link Tracked} resource or complex type.
+ * 
+ * An attribute whose value was set using its setter is recorded as replaced. The elements
+ * added to or removed from a multi-valued attribute are recorded individually unless the
+ * attribute was replaced. Adding and then removing the same element cancels both the changes.
+ * 
+ * Modifications made to the sub-attributes of a complex value are recorded in the
+ * change log of that value.
+ *
+ * @author Kiran Ayyagari (kayyagari@keydap.com)
+ */
+public class ChangeLog {
+    /** names of the attributes whose values were replaced */
+    private Set<String> replaced = new LinkedHashSet<String>();
+
+    /** the elements added to the multi-valued attributes */
+    private Map<String, List<Object>> added = new HashMap<String, List<Object>>();
+
+    /** the elements removed from the multi-valued attributes */
+    private Map<String, List<Object>> removed = new HashMap<String, List<Object>>();
+
+    /**
+     * Starts tracking the given value of an attribute without recording any change.
+     * Lists are wrapped in a {@link TrackedList} and the complex values start tracking
+     * their own changes.
+     * 
+     * @param attribute name of the attribute
+     * @param value the value of the attribute
+     * @return the value to be held by the attribute
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T track(String attribute, T value) {
+        if(value instanceof List) {
+            TrackedList<Object> tl;
+            if(value instanceof TrackedList) {
+                tl = (TrackedList<Object>) value;
+                tl.bind(this, attribute);
+            }
+            else {
+                tl = new TrackedList<Object>((List<Object>) value, this, attribute);
+            }
+
+            for(Object o : tl) {
+                if(o instanceof Tracked) {
+                    ((Tracked) o).startTracking();
+                }
+            }
+
+            return (T) tl;
+        }
+
+        if(value instanceof Tracked) {
+            ((Tracked) value).startTracking();
+        }
+
+        return value;
+    }
+
+    /**
+     * Records that the given attribute's value was replaced
+     * 
+     * @param attribute name of the attribute
+     * @param value the new value of the attribute
+     * @return the value to be held by the attribute
+     */
+    public <T> T replaced(String attribute, T value) {
+        replaced.add(attribute);
+        added.remove(attribute);
+        removed.remove(attribute);
+        return track(attribute, value);
+    }
+
+    /*default protection*/ void elementAdded(String attribute, Object element) {
+        if(replaced.contains(attribute)) {
+            return;
+        }
+
+        if(!removeElement(removed, attribute, element)) {
+            getOrCreate(added, attribute).add(element);
+        }
+    }
+
+    /*default protection*/ void elementRemoved(String attribute, Object element) {
+        if(replaced.contains(attribute)) {
+            return;
+        }
+
+        if(!removeElement(added, attribute, element)) {
+            getOrCreate(removed, attribute).add(element);
+        }
+    }
+
+    public boolean isReplaced(String attribute) {
+        return replaced.contains(attribute);
+    }
+
+    /**
+     * @param attribute name of a multi-valued attribute
+     * @return the elements added to the attribute
+     */
+    public List<Object> getAdded(String attribute) {
+        return unmodifiable(added.get(attribute));
+    }
+
+    /**
+     * @param attribute name of a multi-valued attribute
+     * @return the elements removed from the attribute
+     */
+    public List<Object> getRemoved(String attribute) {
+        return unmodifiable(removed.get(attribute));
+    }
+
+    /**
+     * Checks if the given element was added to the given attribute
+     * 
+     * @param attribute name of a multi-valued attribute
+     * @param element the element
+     * @return true if the element was added after tracking was started
+     */
+    public boolean isAdded(String attribute, Object element) {
+        List<Object> lst = added.get(attribute);
+        if(lst != null) {
+            for(Object o : lst) {
+                if(o == element) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @return true if no changes were recorded in this log, the logs of complex values are not checked
+     */
+    public boolean isEmpty() {
+        return replaced.isEmpty() && added.isEmpty() && removed.isEmpty();
+    }
+
+    public void clear() {
+        replaced.clear();
+        added.clear();
+        removed.clear();
+    }
+
+    private static List<Object> getOrCreate(Map<String, List<Object>> map, String attribute) {
+        List<Object> lst = map.get(attribute);
+        if(lst == null) {
+            lst = new ArrayList<Object>();
+            map.put(attribute, lst);
+        }
+
+        return lst;
+    }
+
+    /**
+     * Removes the given element, compared by identity, from the changes of the given attribute
+     */
+    private static boolean removeElement(Map<String, List<Object>> map, String attribute, Object element) {
+        List<Object> lst = map.get(attribute);
+        if(lst == null) {
+            return false;
+        }
+
+        for(int i = 0; i < lst.size(); i++) {
+            if(lst.get(i) == element) {
+                lst.remove(i);
+                if(lst.isEmpty()) {
+                    map.remove(attribute);
+                }
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static List<Object> unmodifiable(List<Object> lst) {
+        if(lst == null) {
+            return Collections.emptyList();
+        }
+
+        return Collections.unmodifiableList(lst);
+    }
+
+    @Override
+    public String toString() {
+        return "ChangeLog [replaced=" + replaced + ", added=" + added + ", removed=" + removed + "]";
+    }
+}
@@ -19,4 +19,12 @@ import java.lang.annotation.Target;
 @Target(ElementType.TYPE)
 public @interface ComplexType {
     boolean multival() default false;
+
+    /**
+     * The names of the sub-attributes that identify an element of a multi-valued
+     * attribute, e.g {"value"} or {"value", "type"}. When present, the elements of the
+     * original and modified lists are paired by these sub-attributes while generating
+     * a patch instead of by their position.
+     */
+    String[] key() default {};
 }
@@ -0,0 +1,28 @@
+/*
+ * Copyright (c) 2018 Keydap Software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * See LICENSE file for details.
+ */
+package com.keydap.sparrow;
+
+/**
+ * A resource or a complex type that records the changes made to its attributes.
+ * The classes generated by json2java with the trackChanges option implement this
+ * interface.
+ *
+ * @author Kiran Ayyagari (kayyagari@keydap.com)
+ */
+public interface Tracked {
+    /**
+     * @return the log of changes made after tracking was started, null if tracking was not started
+     */
+    ChangeLog getChangeLog();
+
+    /**
+     * Starts recording the changes with an empty change log, the values of multi-valued
+     * and complex attributes are tracked as well. Calling this again discards the changes
+     * recorded so far.
+     */
+    void startTracking();
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2018 Keydap Software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * See LICENSE file for details.
+ */
+package com.keydap.sparrow;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.List;
+
+/**
+ * A list that records the elements added to and removed from it in a {@link ChangeLog}.
+ * All the modifications, including those made through iterators and sublists, are
+ * funneled through add(int, E), set(int, E) and remove(int).
+ *
+ * @author Kiran Ayyagari (kayyagari@keydap.com)
+ */
+public class TrackedList<E> extends AbstractList<E> implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private List<E> delegate;
+
+    /** the change log, null after java deserialization */
+    private transient ChangeLog log;
+
+    private transient String attribute;
+
+    /**
+     * @param delegate the list holding the elements
+     * @param log the change log
+     * @param attribute name of the multi-valued attribute
+     */
+    public TrackedList(List<E> delegate, ChangeLog log, String attribute) {
+        this.delegate = delegate;
+        bind(log, attribute);
+    }
+
+    /*default protection*/ void bind(ChangeLog log, String attribute) {
+        this.log = log;
+        this.attribute = attribute;
+    }
+
+    @Override
+    public E get(int index) {
+        return delegate.get(index);
+    }
+
+    @Override
+    public int size() {
+        return delegate.size();
+    }
+
+    @Override
+    public void add(int index, E element) {
+        delegate.add(index, element);
+        modCount++;
+        if(log != null) {
+            log.elementAdded(attribute, element);
+        }
+    }
+
+    @Override
+    public E set(int index, E element) {
+        E old = delegate.set(index, element);
+        if(old != element && log != null) {
+            log.elementRemoved(attribute, old);
+            log.elementAdded(attribute, element);
+        }
+
+        return old;
+    }
+
+    @Override
+    public E remove(int index) {
+        E old = delegate.remove(index);
+        modCount++;
+        if(log != null) {
+            log.elementRemoved(attribute, old);
+        }
+        return old;
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2018 Keydap Software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * See LICENSE file for details.
+ */
+package com.keydap.sparrow.bench;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.keydap.sparrow.Extension;
+import com.keydap.sparrow.GsonCodec;
+import com.keydap.sparrow.JacksonCodec;
+import com.keydap.sparrow.JsonCodec;
+import com.keydap.sparrow.Resource;
+import com.keydap.sparrow.SearchResponse;
+
+/**
+ * Compares the JSON codecs. The ListResponse is generated unless a file containing one is
+ * given, e.g <code>java -jar benchmarks.jar CodecBenchmark -p listResponse=/tmp/users.json</code>
+ * to measure the codecs on real payloads, the resources of the file are then decoded as JSON
+ * trees and the encoding benchmark uses the first of them.
+ *
+ * @author Kiran Ayyagari (kayyagari@keydap.com)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+    @Param({"gson", "jackson"})
+    public String codecName;
+
+    /** path of a file containing a ListResponse, empty to generate one */
+    @Param({""})
+    public String listResponse;
+
+    @Param({"100"})
+    public int resourceCount;
+
+    private JsonCodec codec;
+
+    private String json;
+
+    /** the class of the resources, null when they are read from a file */
+    private Class<?> resClass;
+
+    private Object resource;
+
+    @Setup
+    public void setup() throws IOException {
+        codec = "jackson".equals(codecName) ? new JacksonCodec() : new GsonCodec();
+        codec.register(BenchUser.class);
+
+        if(listResponse.isEmpty()) {
+            resClass = BenchUser.class;
+            List<BenchUser> users = new ArrayList<BenchUser>();
+            for(int i = 0; i < resourceCount; i++) {
+                users.add(BenchUser.create(i));
+            }
+
+            StringWriter sw = new StringWriter();
+            sw.write("{\"schemas\":[\"urn:ietf:params:scim:api:messages:2.0:ListResponse\"],\"totalResults\":");
+            sw.write(String.valueOf(resourceCount));
+            sw.write(",\"Resources\":");
+            codec.write(users, sw);
+            sw.write("}");
+            json = sw.toString();
+            resource = users.get(0);
+        }
+        else {
+            json = new String(Files.readAllBytes(Paths.get(listResponse)), StandardCharsets.UTF_8);
+            SearchResponse<Object> sr = decodeList();
+            resource = sr.getResources().get(0);
+        }
+    }
+
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public SearchResponse<Object> decodeList() throws IOException {
+        SearchResponse<Object> sr = new SearchResponse<Object>();
+        codec.readListResponse(new StringReader(json), (Class<Object>) resClass, (r) -> r, sr);
+        return sr;
+    }
+
+    @Benchmark
+    public String encodeResource() throws IOException {
+        StringWriter sw = new StringWriter();
+        codec.write(resource, sw);
+        return sw.toString();
+    }
+
+    @Resource(schemaId = "urn:ietf:params:scim:schemas:core:2.0:User", endpoint = "/Users", desc = "User Account")
+    public static class BenchUser {
+        private String id;
+        private String userName;
+        private String displayName;
+        private boolean active;
+        private Meta meta;
+        private List<Email> emails;
+
+        @Extension("urn:ietf:params:scim:schemas:extension:enterprise:2.0:User")
+        private Enterprise enterpriseUser;
+
+        static BenchUser create(int i) {
+            BenchUser u = new BenchUser();
+            u.id = "2819c223-7f76-453a-919d-" + (100000000000L + i);
+            u.userName = "user" + i;
+            u.displayName = "User \"" + i + "\"";
+            u.active = (i % 2 == 0);
+            u.meta = new Meta();
+            u.meta.resourceType = "User";
+            u.meta.created = new Date(1514862245000L + i);
+            u.meta.version = "W/\"" + i + "\"";
+            u.emails = new ArrayList<Email>();
+            for(int j = 0; j < 2; j++) {
+                Email e = new Email();
+                e.value = "user" + i + "." + j + "@example.com";
+                e.type = (j == 0 ? "work" : "home");
+                e.primary = (j == 0);
+                u.emails.add(e);
+            }
+            u.enterpriseUser = new Enterprise();
+            u.enterpriseUser.employeeNumber = String.valueOf(i);
+            u.enterpriseUser.costCenter = "cc" + (i % 10);
+            return u;
+        }
+    }
+
+    public static class Meta {
+        private String resourceType;
+        private Date created;
+        private String version;
+    }
+
+    public static class Email {
+        private String value;
+        private String type;
+        private boolean primary;
+    }
+
+    public static class Enterprise {
+        private String employeeNumber;
+        private String costCenter;
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2018 Keydap Software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * See LICENSE file for details.
+ */
+package com.keydap.sparrow.bench;
+
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.util.Date;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.keydap.sparrow.Rfc3339;
+
+/**
+ * Compares {@link Rfc3339} with the SimpleDateFormat based serializer it replaced. The
+ * legacy formatter is shared by all the threads the same way it was registered on the
+ * client's Gson instance, hence it is guarded by a lock to keep the comparison fair.
+ *
+ * @author Kiran Ayyagari (kayyagari@keydap.com)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class DateCodecBenchmark {
+    private static final String TIMESTAMP = "2018-01-02T03:04:05Z";
+
+    private static final String FRACTION_TIMESTAMP = "2018-01-02T08:34:05.123456+05:30";
+
+    private final DateFormat legacy;
+
+    private final Date date = new Date(1514862245000L);
+
+    private final Instant instant = Instant.ofEpochSecond(1514862245L, 123456000);
+
+    public DateCodecBenchmark() {
+        legacy = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
+        legacy.setTimeZone(TimeZone.getTimeZone("UTC"));
+    }
+
+    @Benchmark
+    public Date parseLegacy() throws ParseException {
+        synchronized(legacy) {
+            return legacy.parse(TIMESTAMP);
+        }
+    }
+
+    @Benchmark
+    public Date parseDate() {
+        return Rfc3339.parseDate(TIMESTAMP);
+    }
+
+    @Benchmark
+    public long parseMillis() {
+        return Rfc3339.parseMillis(TIMESTAMP);
+    }
+
+    @Benchmark
+    public Instant parseInstantWithFraction() {
+        return Rfc3339.parseInstant(FRACTION_TIMESTAMP);
+    }
+
+    @Benchmark
+    public String formatLegacy() {
+        synchronized(legacy) {
+            return legacy.format(date);
+        }
+    }
+
+    @Benchmark
+    public String formatDate() {
+        return Rfc3339.format(date);
+    }
+
+    @Benchmark
+    public String formatInstant() {
+        return Rfc3339.format(instant);
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright (c) 2018 Keydap Software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * See LICENSE file for details.
+ */
+package com.keydap.sparrow;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * A compiled SCIM attribute path of the form
+ * <pre>
+ *   [urn:]attr[\[valueFilter\]][.subAttr]
+ * </pre>
+ * e.g <code>emails[type EQ "work"].primary</code>, used as the path of PATCH operations.
+ *
+ * A path is immutable, its string form is computed only once when it is first needed
+ * and it can be written directly to an Appendable.
+ *
+ * @author Kiran Ayyagari (kayyagari@keydap.com)
+ */
+public class AttributePath {
+    /** the URN of the schema, null when the attribute belongs to the core schema of the resource */
+    private final String urn;
+
+    private final String attr;
+
+    /** the filter selecting the values of a multi-valued attribute, optional */
+    private final ValueFilter filter;
+
+    private final String subAttr;
+
+    /** the string form of this path */
+    private String text;
+
+    public AttributePath(String attr) {
+        this(null, attr, null, null);
+    }
+
+    public AttributePath(String attr, ValueFilter filter) {
+        this(null, attr, filter, null);
+    }
+
+    /**
+     * Creates a path
+     *
+     * @param urn the URN of the schema, optional
+     * @param attr name of the attribute
+     * @param filter the filter selecting the values of a multi-valued attribute, optional
+     * @param subAttr name of the sub-attribute, optional
+     */
+    public AttributePath(String urn, String attr, ValueFilter filter, String subAttr) {
+        if(attr == null || attr.isEmpty()) {
+            throw new IllegalArgumentException("Attribute name is required");
+        }
+
+        this.urn = urn;
+        this.attr = attr;
+        this.filter = filter;
+        this.subAttr = subAttr;
+    }
+
+    /**
+     * Creates the path of the given sub-attribute of the values selected by this path
+     *
+     * @param subAttr name of the sub-attribute
+     * @return a new path
+     */
+    public AttributePath withSubAttr(String subAttr) {
+        return new AttributePath(urn, attr, filter, subAttr);
+    }
+
+    public String getUrn() {
+        return urn;
+    }
+
+    public String getAttr() {
+        return attr;
+    }
+
+    public ValueFilter getFilter() {
+        return filter;
+    }
+
+    public String getSubAttr() {
+        return subAttr;
+    }
+
+    /**
+     * Writes the string form of this path to the given output
+     *
+     * @param out the output
+     * @throws IOException if the output fails
+     */
+    public void writeTo(Appendable out) throws IOException {
+        if(text != null) {
+            out.append(text);
+            return;
+        }
+
+        if(urn != null) {
+            out.append(urn).append(':');
+        }
+
+        out.append(attr);
+        if(filter != null) {
+            out.append('[');
+            filter.writeTo(out);
+            out.append(']');
+        }
+
+        if(subAttr != null) {
+            out.append('.').append(subAttr);
+        }
+    }
+
+    @Override
+    public String toString() {
+        if(text == null) {
+            StringBuilder sb = new StringBuilder();
+            try {
+                writeTo(sb);
+            }
+            catch(IOException e) {
+                // StringBuilder doesn't throw
+                throw new IllegalStateException(e);
+            }
+            text = sb.toString();
+        }
+
+        return text;
+    }
+
+    public static AttributePath parse(String path) {
+        return parse(path, Collections.<String>emptyList());
+    }
+
+    /**
+     * Parses the given path. The URN of an extension schema is separated from the attribute
+     * name using the given schema URNs, or at the last colon when none of them matches.
+     * A path that is same as one of the given URNs refers to the extension as a whole.
+     *
+     * @param path the path
+     * @param schemaUrns the URNs of the extension schemas of the resource
+     * @return the compiled path
+     * @throws IllegalArgumentException if the path is invalid
+     */
+    public static AttributePath parse(String path, Collection<String> schemaUrns) {
+        String head = path.trim();
+        ValueFilter filter = null;
+        String subAttr = null;
+
+        int bracket = head.indexOf('[');
+        if(bracket >= 0) {
+            int close = findClosingBracket(head, bracket);
+            if(close < 0) {
+                throw new IllegalArgumentException("Invalid path " + path + ", missing ]");
+            }
+
+            filter = ValueFilter.parse(head.substring(bracket + 1, close));
+            String tail = head.substring(close + 1);
+            if(!tail.isEmpty()) {
+                if(tail.charAt(0) != '.' || tail.length() == 1) {
+                    throw new IllegalArgumentException("Invalid path " + path);
+                }
+                subAttr = tail.substring(1);
+            }
+            head = head.substring(0, bracket);
+        }
+
+        String urn = null;
+        if(head.regionMatches(true, 0, "urn:", 0, 4)) {
+            urn = findUrn(head, schemaUrns);
+            if(urn != null && urn.length() == head.length()) {
+                // the extension itself
+                return new AttributePath(null, head, filter, subAttr);
+            }
+
+            if(urn == null) {
+                int colon = head.lastIndexOf(':');
+                urn = head.substring(0, colon);
+            }
+            head = head.substring(urn.length() + 1);
+        }
+
+        if(filter == null) {
+            int dot = head.indexOf('.');
+            if(dot > 0) {
+                subAttr = head.substring(dot + 1);
+                head = head.substring(0, dot);
+            }
+        }
+
+        if(head.isEmpty()) {
+            throw new IllegalArgumentException("Invalid path " + path);
+        }
+
+        return new AttributePath(urn, head, filter, subAttr);
+    }
+
+    private static String findUrn(String head, Collection<String> schemaUrns) {
+        for(String urn : schemaUrns) {
+            if(head.regionMatches(true, 0, urn, 0, urn.length())
+                    && (head.length() == urn.length() || head.charAt(urn.length()) == ':')) {
+                return head.substring(0, urn.length());
+            }
+        }
+
+        return null;
+    }
+
+    private static int findClosingBracket(String text, int open) {
+        boolean quoted = false;
+        for(int i = open + 1; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if(quoted) {
+                if(c == '\\') {
+                    i++;
+                }
+                else if(c == '"') {
+                    quoted = false;
+                }
+            }
+            else if(c == '"') {
+                quoted = true;
+            }
+            else if(c == ']') {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+}
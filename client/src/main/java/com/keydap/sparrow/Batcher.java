@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2018 Keydap Software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * See LICENSE file for details.
+ */
+package com.keydap.sparrow;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Collects the submitted entries and hands them over for processing as a batch
+ * either when the batch is full or when the oldest entry in the batch has waited
+ * for the configured delay, whichever happens first.
+ *
+ * @author Kiran Ayyagari (kayyagari@keydap.com)
+ */
+/*default protection*/ abstract class Batcher<E> implements Closeable {
+    /** maximum number of entries in a batch */
+    private int maxBatchSize;
+
+    /** maximum time an entry waits before the batch gets processed */
+    private long maxDelayMillis;
+
+    /** the executor used for scheduling and processing the batches */
+    private ScheduledExecutorService executor;
+
+    private List<E> pending = new ArrayList<E>();
+
+    /** the total weight of the pending entries, see weightOf() */
+    private long pendingWeight;
+
+    private ScheduledFuture<?> scheduledFlush;
+
+    private boolean closed;
+
+    private static final AtomicInteger threadCounter = new AtomicInteger();
+
+    private static final Logger LOG = LoggerFactory.getLogger(Batcher.class);
+
+    /**
+     * @param maxBatchSize maximum number of entries in a batch
+     * @param maxDelayMillis maximum time in milliseconds an entry waits before the batch gets processed
+     * @param concurrency maximum number of batches processed concurrently
+     */
+    Batcher(int maxBatchSize, long maxDelayMillis, int concurrency) {
+        if(maxBatchSize <= 0 || maxDelayMillis < 0 || concurrency <= 0) {
+            throw new IllegalArgumentException("Invalid batch size, delay or concurrency");
+        }
+
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayMillis = maxDelayMillis;
+
+        ScheduledThreadPoolExecutor stpe = new ScheduledThreadPoolExecutor(concurrency, (r) -> {
+            Thread t = new Thread(r, "sparrow-batcher-" + threadCounter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        stpe.setRemoveOnCancelPolicy(true);
+        executor = stpe;
+    }
+
+    /**
+     * Adds the given entry to the current batch
+     *
+     * @param e the entry
+     * @throws IllegalStateException if the batcher was closed
+     */
+    protected void submit(E e) {
+        List<E> batch = null;
+        synchronized (this) {
+            if(closed) {
+                throw new IllegalStateException("Batcher is closed");
+            }
+
+            pending.add(e);
+            pendingWeight += weightOf(e);
+            if(isFull(pending.size(), pendingWeight, maxBatchSize)) {
+                batch = drain();
+            }
+            else if(scheduledFlush == null) {
+                scheduledFlush = executor.schedule(this::flush, maxDelayMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        if(batch != null) {
+            dispatch(batch);
+        }
+    }
+
+    /**
+     * Sends the current batch for processing without waiting for it to be full
+     */
+    public void flush() {
+        List<E> batch;
+        synchronized (this) {
+            batch = drain();
+        }
+
+        if(!batch.isEmpty()) {
+            dispatch(batch);
+        }
+    }
+
+    /**
+     * Processes the pending entries and waits for all the batches to be processed.
+     * No new entries are accepted after closing.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if(closed) {
+                return;
+            }
+            closed = true;
+        }
+
+        flush();
+        executor.shutdown();
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Checks if the pending entries form a full batch, called on every submit
+     * hence must not iterate over the pending entries
+     *
+     * @param size the number of pending entries
+     * @param weight the total weight of the pending entries
+     * @param maxBatchSize maximum number of entries in a batch
+     * @return true if the batch is full
+     */
+    protected boolean isFull(int size, long weight, int maxBatchSize) {
+        return size >= maxBatchSize;
+    }
+
+    /**
+     * Computes the weight of the given entry, e.g its contribution to the size of the request
+     *
+     * @param e the entry
+     * @return the weight, 0 by default
+     */
+    protected int weightOf(E e) {
+        return 0;
+    }
+
+    /**
+     * Processes the given batch, implementations must complete every entry
+     * of the batch even when the processing fails
+     *
+     * @param batch the entries
+     */
+    protected abstract void process(List<E> batch);
+
+    /**
+     * Called when {@link #process(List)} throws an exception
+     *
+     * @param batch the entries
+     * @param e the exception
+     */
+    protected abstract void failed(List<E> batch, Exception e);
+
+    private List<E> drain() {
+        if(scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+
+        List<E> batch = pending;
+        pending = new ArrayList<E>();
+        pendingWeight = 0;
+        return batch;
+    }
+
+    private void dispatch(List<E> batch) {
+        Runnable task = () -> {
+            try {
+                process(batch);
+            }
+            catch(Exception e) {
+                LOG.warn("Failed to process a batch of {} entries", batch.size(), e);
+                failed(batch, e);
+            }
+        };
+
+        try {
+            executor.execute(task);
+        }
+        catch(RejectedExecutionException e) {
+            // the batcher got closed while this batch was being drained
+            task.run();
+        }
+    }
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright (c) 2018 Keydap Software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * See LICENSE file for details.
+ */
+package com.keydap.sparrow;
+
+/**
+ * The policy of retaining the raw HTTP body in a {@link Response} next to the decoded
+ * resources, the body is returned by {@link Response#getHttpBody()}.
+ * 
+ * The policy is set for a client using {@link ClientConfig#setBodyRetention(BodyRetention)}
+ * and can be overridden for a request, e.g using {@link SearchRequest#setBodyRetention(BodyRetention)}
+ * or {@link SparrowClient#addResource(Object, BodyRetention)}. The default is {@link #ALWAYS}.
+ * 
+ * @author Kiran Ayyagari (kayyagari@keydap.com)
+ */
+public enum BodyRetention {
+    /** the body is never retained */
+    NONE,
+    
+    /** the body is retained only when the request fails */
+    ON_ERROR,
+    
+    /** the body is always retained, the bodies of successful searches are then buffered before decoding */
+    ALWAYS;
+    
+    /*default protection*/ boolean retains(boolean failed) {
+        return this == ALWAYS || (failed && this == ON_ERROR);
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2018 Keydap Software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * See LICENSE file for details.
+ */
+package com.keydap.sparrow;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Collects the individual write operations submitted from any number of threads and
+ * sends them together in a SCIM bulk request, either when maxOperations are collected
+ * or after the given delay. Each caller's future is completed with the response of
+ * its own operation.
+ * 
+ * Operations sent in one bulk request are not ordered with respect to each other by
+ * the SCIM specification, so dependent operations on the same resource must not be
+ * submitted without waiting for the previous operation's future.
+ *
+ * @author Kiran Ayyagari (kayyagari@keydap.com)
+ */
+@SuppressWarnings({"unchecked", "rawtypes"})
+public class BulkBatcher extends Batcher<BulkBatcher.Entry> {
+    private SparrowClient client;
+
+    /**
+     * Creates a batcher that sends one bulk request at a time
+     * 
+     * @param client the client used for sending the bulk requests
+     * @param maxOperations maximum number of operations in a bulk request
+     * @param maxDelayMillis maximum time in milliseconds an operation waits before it is sent
+     */
+    public BulkBatcher(SparrowClient client, int maxOperations, long maxDelayMillis) {
+        this(client, maxOperations, maxDelayMillis, 1);
+    }
+
+    /**
+     * Creates a batcher
+     * 
+     * @param client the client used for sending the bulk requests
+     * @param maxOperations maximum number of operations in a bulk request
+     * @param maxDelayMillis maximum time in milliseconds an operation waits before it is sent
+     * @param concurrency maximum number of bulk requests sent concurrently
+     */
+    public BulkBatcher(SparrowClient client, int maxOperations, long maxDelayMillis, int concurrency) {
+        super(maxOperations, maxDelayMillis, concurrency);
+        this.client = client;
+    }
+
+    /*default protection*/ static class Entry {
+        BulkOperation op;
+        CompletableFuture future = new CompletableFuture();
+
+        Entry(BulkOperation op) {
+            this.op = op;
+        }
+    }
+
+    /**
+     * Adds the given resource
+     * 
+     * @param rs the resource
+     * @return the future response
+     */
+    public <T> CompletableFuture<Response<T>> addResource(T rs) {
+        return enqueue(new BulkOperation("POST", null, null, null, rs.getClass(), rs));
+    }
+
+    /**
+     * Replaces the given resource
+     * 
+     * @param id identifier of the resource to be replaced
+     * @param rs the new resource with which old one will be replaced
+     * @return the future response
+     */
+    public <T> CompletableFuture<Response<T>> replaceResource(String id, T rs) {
+        return replaceResource(id, rs, null);
+    }
+
+    /**
+     * Replaces the given resource
+     * 
+     * @param id identifier of the resource to be replaced
+     * @param rs the new resource with which old one will be replaced
+     * @param version the version of the resource to be replaced, optional
+     * @return the future response
+     */
+    public <T> CompletableFuture<Response<T>> replaceResource(String id, T rs, String version) {
+        return enqueue(new BulkOperation("PUT", null, version, id, rs.getClass(), rs));
+    }
+
+    /**
+     * Modifies the selected resource
+     * 
+     * @param pr the modify(a.k.a patch) request
+     * @return the future response
+     */
+    public <T> CompletableFuture<Response<T>> patchResource(PatchRequest pr) {
+        return enqueue(new BulkOperation("PATCH", null, pr.getIfMatch(), pr.getId(), pr.getResClass(), pr));
+    }
+
+    /**
+     * Deletes the selected resource
+     * 
+     * @param id identifier of the resource to be deleted
+     * @param resourceType the type of the resource that is to be deleted
+     * @return the future response
+     */
+    public CompletableFuture<Response<Boolean>> deleteResource(String id, Class resourceType) {
+        return enqueue(new BulkOperation("DELETE", null, null, id, resourceType, null));
+    }
+
+    private CompletableFuture enqueue(BulkOperation op) {
+        Entry e = new Entry(op);
+        submit(e);
+        return e.future;
+    }
+
+    @Override
+    protected void process(List<Entry> batch) {
+        BulkRequest br = new BulkRequest();
+        for(Entry e : batch) {
+            br.addOperation(e.op);
+        }
+
+        BulkResponse resp = client.sendBulkRequest(br);
+        for(int i = 0; i < batch.size(); i++) {
+            batch.get(i).future.complete(resp.getResponse(i));
+        }
+    }
+
+    @Override
+    protected void failed(List<Entry> batch, Exception ex) {
+        for(Entry e : batch) {
+            e.future.completeExceptionally(ex);
+        }
+    }
+}
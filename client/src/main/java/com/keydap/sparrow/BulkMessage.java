@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2018 Keydap Software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * See LICENSE file for details.
+ */
+package com.keydap.sparrow;
+
+import java.util.List;
+
+import com.google.gson.JsonElement;
+import com.google.gson.annotations.SerializedName;
+
+/**
+ * The wire forms of the operations of a bulk request and of the bulk response, these
+ * are encoded and decoded using the client's {@link JsonCodec}.
+ *
+ * @author Kiran Ayyagari (kayyagari@keydap.com)
+ */
+/*default protection*/ class BulkMessage {
+    /** the body of a bulk response */
+    static class Reply {
+        @SerializedName("Operations")
+        List<Result> operations;
+    }
+
+    /** an operation of a bulk request */
+    static class Operation {
+        String method;
+        String bulkId;
+        String version;
+        String path;
+
+        /** the resource or a JSON tree when the bulkIds present in the resource were resolved */
+        Object data;
+    }
+
+    /**
+     * The response of an operation, the status and the response are kept as JSON trees since
+     * their form depends on the server and on the operation
+     */
+    static class Result {
+        String method;
+        String bulkId;
+        String version;
+        String location;
+        JsonElement status;
+        JsonElement response;
+    }
+
+    private BulkMessage() {
+    }
+}
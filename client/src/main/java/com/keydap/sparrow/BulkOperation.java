@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2018 Keydap Software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * See LICENSE file for details.
+ */
+package com.keydap.sparrow;
+
+/**
+ * An operation of a SCIM v2 bulk request
+ *
+ * @author Kiran Ayyagari (kayyagari@keydap.com)
+ */
+public class BulkOperation {
+    /** the HTTP method, one of POST, PUT, PATCH or DELETE */
+    private String method;
+
+    /** the transient identifier of the resource to be created, used only with POST */
+    private String bulkId;
+
+    /** the version of the resource, sent as If-Match */
+    private String version;
+
+    /** the identifier of the resource, null for POST */
+    private String id;
+
+    /** the class of the resource */
+    private Class<?> resClass;
+
+    /** the resource for POST and PUT, a PatchRequest for PATCH and null for DELETE */
+    private Object data;
+
+    /*default protection*/ BulkOperation(String method, String bulkId, String version, String id, Class<?> resClass, Object data) {
+        this.method = method;
+        this.bulkId = bulkId;
+        this.version = version;
+        this.id = id;
+        this.resClass = resClass;
+        this.data = data;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public String getBulkId() {
+        return bulkId;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public Class<?> getResClass() {
+        return resClass;
+    }
+
+    public Object getData() {
+        return data;
+    }
+
+    @Override
+    public String toString() {
+        return "BulkOperation [method=" + method + ", bulkId=" + bulkId
+                + ", version=" + version + ", id=" + id + ", resClass="
+                + resClass + "]";
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2018 Keydap Software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * See LICENSE file for details.
+ */
+package com.keydap.sparrow;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * SCIM v2 bulk request.
+ * 
+ * A resource added with a bulkId can be referenced by the later operations
+ * using the value "bulkId:&lt;bulkId&gt;" either as the identifier of the resource
+ * or inside the data of the operation, e.g as the value of a group member.
+ *
+ * @author Kiran Ayyagari (kayyagari@keydap.com)
+ */
+public class BulkRequest {
+    public static final String SCHEMA = "urn:ietf:params:scim:api:messages:2.0:BulkRequest";
+
+    /** the prefix of the values referring to the bulkId of another operation */
+    public static final String BULKID_PREFIX = "bulkId:";
+
+    /** the number of errors after which the server should stop processing, 0 means never stop */
+    private int failOnErrors;
+
+    private List<BulkOperation> operations = new ArrayList<BulkOperation>();
+
+    public BulkRequest() {
+    }
+
+    /**
+     * @param failOnErrors the number of errors after which the server should stop processing
+     */
+    public BulkRequest(int failOnErrors) {
+        this.failOnErrors = failOnErrors;
+    }
+
+    /**
+     * Adds the given resource
+     * 
+     * @param rs the resource
+     * @param bulkId the transient identifier of the resource, can be null if the resource is not referenced
+     */
+    public void add(Object rs, String bulkId) {
+        operations.add(new BulkOperation("POST", bulkId, null, null, rs.getClass(), rs));
+    }
+
+    /**
+     * Replaces the resource with the given identifier
+     * 
+     * @param id identifier of the resource to be replaced
+     * @param rs the new resource
+     */
+    public void replace(String id, Object rs) {
+        replace(id, rs, null);
+    }
+
+    /**
+     * Replaces the resource with the given identifier
+     * 
+     * @param id identifier of the resource to be replaced
+     * @param rs the new resource
+     * @param version the version of the resource to be replaced, optional
+     */
+    public void replace(String id, Object rs, String version) {
+        operations.add(new BulkOperation("PUT", null, version, id, rs.getClass(), rs));
+    }
+
+    /**
+     * Patches a resource using the given PatchRequest, the value of
+     * If-Match set on the PatchRequest is used as the version
+     * 
+     * @param pr the patch request
+     */
+    public void patch(PatchRequest pr) {
+        operations.add(new BulkOperation("PATCH", null, pr.getIfMatch(), pr.getId(), pr.getResClass(), pr));
+    }
+
+    /**
+     * Deletes the resource with the given identifier
+     * 
+     * @param id identifier of the resource
+     * @param resClass the type of the resource
+     */
+    public void delete(String id, Class<?> resClass) {
+        delete(id, resClass, null);
+    }
+
+    /**
+     * Deletes the resource with the given identifier
+     * 
+     * @param id identifier of the resource
+     * @param resClass the type of the resource
+     * @param version the version of the resource to be deleted, optional
+     */
+    public void delete(String id, Class<?> resClass, String version) {
+        operations.add(new BulkOperation("DELETE", null, version, id, resClass, null));
+    }
+
+    /*default protection*/ void addOperation(BulkOperation op) {
+        operations.add(op);
+    }
+
+    public int getFailOnErrors() {
+        return failOnErrors;
+    }
+
+    public void setFailOnErrors(int failOnErrors) {
+        this.failOnErrors = failOnErrors;
+    }
+
+    public List<BulkOperation> getOperations() {
+        return operations;
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2018 Keydap Software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * See LICENSE file for details.
+ */
+package com.keydap.sparrow;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Holder for the responses of all the operations of a bulk request.
+ * The responses are in the same order as the operations of the request.
+ *
+ * @author Kiran Ayyagari (kayyagari@keydap.com)
+ */
+public class BulkResponse {
+    private List<BulkOperation> operations;
+
+    private List<Response<?>> responses;
+
+    /** the number of HTTP requests used for sending all the operations */
+    private int requestCount;
+
+    /*default protection*/ BulkResponse(List<BulkOperation> operations) {
+        this.operations = operations;
+        this.responses = new ArrayList<Response<?>>(operations.size());
+    }
+
+    /**
+     * @return the responses of all the operations in the order of the operations
+     */
+    public List<Response<?>> getResponses() {
+        return responses;
+    }
+
+    /**
+     * Returns the response of the operation present at the given position in the bulk request
+     * 
+     * @param index the position of the operation
+     * @return the response of the operation
+     */
+    public <T> Response<T> getResponse(int index) {
+        return (Response<T>) responses.get(index);
+    }
+
+    /**
+     * Returns the response of the operation with the given bulkId
+     * 
+     * @param bulkId the bulkId of the operation
+     * @return the response of the operation or null if there is no operation with the given bulkId
+     */
+    public <T> Response<T> getResponse(String bulkId) {
+        for(int i = 0; i < operations.size(); i++) {
+            if(bulkId.equals(operations.get(i).getBulkId())) {
+                return (Response<T>) responses.get(i);
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @return true if all the operations were successful
+     */
+    public boolean isSuccess() {
+        for(Response<?> r : responses) {
+            if(r.getHttpCode() < 200 || r.getHttpCode() > 299) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @return the number of HTTP requests used for sending all the operations
+     */
+    public int getRequestCount() {
+        return requestCount;
+    }
+
+    /*default protection*/ void setRequestCount(int requestCount) {
+        this.requestCount = requestCount;
+    }
+
+    @Override
+    public String toString() {
+        return "BulkResponse [requestCount=" + requestCount + ", responses=" + responses + "]";
+    }
+}
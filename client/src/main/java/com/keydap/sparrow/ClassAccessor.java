@@ -0,0 +1,363 @@
+/*
+ * Copyright (c) 2018 Keydap Software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * See LICENSE file for details.
+ */
+package com.keydap.sparrow;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.annotations.SerializedName;
+
+/**
+ * The metadata of a resource or a complex type, computed once per class and held in a ClassValue,
+ * so that it can be shared among threads without any locking.
+ * 
+ * Provides fast access to the fields of a resource or a complex type. The getter of each field
+ * is bound once per class using LambdaMetafactory, falling back to a MethodHandle and then to
+ * reflection when the getter is not accessible, so that reading a field value costs a plain
+ * method call.
+ *
+ * Also converts the values into JSON elements directly without going through Gson's
+ * reflective serialization for the primitive, list and SCIM complex type values.
+ *
+ * @author Kiran Ayyagari (kayyagari@keydap.com)
+ */
+/*default protection*/ class ClassAccessor {
+    /*default protection*/ enum Kind {
+        /** primitives, their wrappers, String, Date and enums, compared using equals() */
+        SIMPLE,
+        /** multi-valued attributes */
+        LIST,
+        /** SCIM resources and complex types */
+        COMPLEX
+    }
+
+    /** the kind of the class */
+    private Kind kind;
+
+    /** flag indicating if the class is a complex type */
+    private boolean complexType;
+
+    /** flag indicating if the class is a multi-valued complex type */
+    private boolean multival;
+
+    /** the fields that can be modified, i.e all except static and readonly fields */
+    private Property[] writable;
+
+    /** the fields configured as the key of a multi-valued complex type, empty if not configured */
+    private Property[] keys = NO_PROPERTIES;
+
+    /** the "value" field of a multi-valued complex type, the default key, empty if not present */
+    private Property[] valueKey = NO_PROPERTIES;
+
+    /** all the fields that get serialized */
+    private Property[] serializable;
+
+    /** flag indicating if the class is a SCIM resource or a complex type */
+    private boolean scimType;
+
+    private static final Property[] NO_PROPERTIES = new Property[0];
+
+    private static final ClassValue<ClassAccessor> accessors = new ClassValue<ClassAccessor>() {
+        @Override
+        protected ClassAccessor computeValue(Class<?> type) {
+            return new ClassAccessor(type);
+        }
+    };
+
+    private static final Gson serializer = new Gson();
+
+    private static final Logger LOG = LoggerFactory.getLogger(ClassAccessor.class);
+
+    /*default protection*/ static class Property {
+        final String name;
+        /** the name used in JSON, the value of {@link SerializedName} if present or else the field's name */
+        final String jsonName;
+        final Class<?> type;
+        final String extension;
+        final Kind kind;
+        private final Function<Object, Object> getter;
+
+        Property(Field f, Function<Object, Object> getter) {
+            this.name = f.getName();
+            SerializedName sn = f.getAnnotation(SerializedName.class);
+            this.jsonName = (sn != null ? sn.value() : name);
+            this.type = f.getType();
+            Extension ext = f.getAnnotation(Extension.class);
+            this.extension = (ext != null ? ext.value() : null);
+            this.kind = kindOf(type);
+            this.getter = getter;
+        }
+
+        Object get(Object target) {
+            return getter.apply(target);
+        }
+    }
+
+    private ClassAccessor(Class<?> cls) {
+        kind = kindOf(cls);
+        ComplexType ct = cls.getAnnotation(ComplexType.class);
+        complexType = (ct != null);
+        multival = (ct != null && ct.multival());
+        scimType = complexType || cls.isAnnotationPresent(Resource.class);
+
+        // the fields of JDK's classes are neither diffed nor accessible
+        if(kind != Kind.COMPLEX || isJdkClass(cls)) {
+            writable = NO_PROPERTIES;
+            serializable = NO_PROPERTIES;
+            return;
+        }
+
+        List<Property> wr = new ArrayList<>();
+        List<Property> sr = new ArrayList<>();
+        for(Field f : cls.getDeclaredFields()) {
+            int mod = f.getModifiers();
+            if(Modifier.isStatic(mod) || Modifier.isTransient(mod) || f.isSynthetic()) {
+                continue;
+            }
+
+            Property p = new Property(f, createGetter(cls, f));
+            sr.add(p);
+            if(!f.isAnnotationPresent(ReadOnly.class)) {
+                wr.add(p);
+            }
+        }
+
+        writable = wr.toArray(new Property[wr.size()]);
+        serializable = sr.toArray(new Property[sr.size()]);
+
+        for(Property p : writable) {
+            if(multival && "value".equals(p.name)) {
+                valueKey = new Property[] {p};
+                break;
+            }
+        }
+
+        if(ct != null && ct.key().length > 0) {
+            keys = new Property[ct.key().length];
+            for(int i = 0; i < keys.length; i++) {
+                keys[i] = find(ct.key()[i]);
+            }
+        }
+    }
+
+    private Property find(String name) {
+        for(Property p : writable) {
+            if(p.name.equals(name)) {
+                return p;
+            }
+        }
+
+        throw new IllegalArgumentException("No writable field with the name " + name + " is present to be used as a key");
+    }
+
+    /*default protection*/ static ClassAccessor of(Class<?> cls) {
+        return accessors.get(cls);
+    }
+
+    /*default protection*/ Property[] getWritable() {
+        return writable;
+    }
+
+    /*default protection*/ Property[] getSerializable() {
+        return serializable;
+    }
+
+    /**
+     * Returns the fields that identify an element of a multi-valued attribute
+     * 
+     * @param useValue flag to use the "value" field when no key is configured
+     * @return the key fields, empty if none is present
+     */
+    /*default protection*/ Property[] getKeys(boolean useValue) {
+        if(keys.length == 0 && useValue) {
+            return valueKey;
+        }
+
+        return keys;
+    }
+
+    /*default protection*/ Kind getKind() {
+        return kind;
+    }
+
+    /*default protection*/ boolean isComplexType() {
+        return complexType;
+    }
+
+    /*default protection*/ boolean isMultival() {
+        return multival;
+    }
+
+    private static Kind kindOf(Class<?> c) {
+        if(c.isPrimitive() || c == String.class || c == Boolean.class || c == Character.class
+                || Number.class.isAssignableFrom(c) || Date.class.isAssignableFrom(c) || c.isEnum()) {
+            return Kind.SIMPLE;
+        }
+
+        if(c.isAssignableFrom(List.class) || List.class.isAssignableFrom(c)) {
+            return Kind.LIST;
+        }
+
+        return Kind.COMPLEX;
+    }
+
+    private static boolean isJdkClass(Class<?> c) {
+        String name = c.getName();
+        return name.startsWith("java.") || name.startsWith("javax.");
+    }
+
+    /**
+     * Converts the given value into a JSON element, the result is same as that of Gson's toJsonTree()
+     * with the default settings, i.e the null values, static and transient fields are omitted and
+     * the names given using {@link SerializedName} are honored
+     *
+     * @param value the value
+     * @return JSON representation of the value
+     */
+    /*default protection*/ static JsonElement toJson(Object value) {
+        if(value == null) {
+            return JsonNull.INSTANCE;
+        }
+
+        if(value instanceof String) {
+            return new JsonPrimitive((String) value);
+        }
+
+        if(value instanceof Number) {
+            return new JsonPrimitive((Number) value);
+        }
+
+        if(value instanceof Boolean) {
+            return new JsonPrimitive((Boolean) value);
+        }
+
+        if(value instanceof List) {
+            List<?> lst = (List<?>) value;
+            JsonArray arr = new JsonArray();
+            for(Object o : lst) {
+                arr.add(toJson(o));
+            }
+
+            return arr;
+        }
+
+        ClassAccessor ca = of(value.getClass());
+        if(!ca.scimType) {
+            // dates, enums etc.
+            return serializer.toJsonTree(value);
+        }
+
+        JsonObject obj = new JsonObject();
+        for(Property p : ca.serializable) {
+            Object v = p.get(value);
+            if(v != null) {
+                obj.add(p.jsonName, toJson(v));
+            }
+        }
+
+        return obj;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Function<Object, Object> createGetter(Class<?> cls, Field f) {
+        Method m = findGetter(cls, f);
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        if(m != null) {
+            try {
+                MethodHandle mh = lookup.unreflect(m);
+                CallSite site = LambdaMetafactory.metafactory(lookup, "apply",
+                        MethodType.methodType(Function.class),
+                        MethodType.methodType(Object.class, Object.class),
+                        mh, mh.type().wrap());
+                return (Function<Object, Object>) site.getTarget().invokeExact();
+            }
+            catch(Throwable e) {
+                LOG.debug("Failed to bind the getter of the field {} of {}", f.getName(), cls.getName(), e);
+            }
+        }
+
+        try {
+            f.setAccessible(true);
+            MethodHandle mh = lookup.unreflectGetter(f).asType(MethodType.methodType(Object.class, Object.class));
+            return (target) -> {
+                try {
+                    return mh.invokeExact(target);
+                }
+                catch(Throwable e) {
+                    throw new RuntimeException(e);
+                }
+            };
+        }
+        catch(IllegalAccessException | RuntimeException e) {
+            LOG.debug("Failed to create a handle for the field {} of {}", f.getName(), cls.getName(), e);
+        }
+
+        return (target) -> {
+            try {
+                return f.get(target);
+            }
+            catch(IllegalAccessException e) {
+                throw new RuntimeException(e);
+            }
+        };
+    }
+
+    private static Method findGetter(Class<?> cls, Field f) {
+        if(!Modifier.isPublic(cls.getModifiers()) || !isVisible(cls)) {
+            return null;
+        }
+
+        String name = f.getName();
+        String suffix = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+        String[] candidates = {"get" + suffix, "is" + suffix};
+        for(String c : candidates) {
+            try {
+                Method m = cls.getMethod(c);
+                if(m.getReturnType() == f.getType() && !Modifier.isStatic(m.getModifiers())) {
+                    return m;
+                }
+            }
+            catch(NoSuchMethodException e) {
+                // try the next one
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Checks if the given class is visible to the class loader of this class,
+     * the lambdas get defined in this class's loader and fail to link otherwise
+     */
+    private static boolean isVisible(Class<?> cls) {
+        try {
+            return Class.forName(cls.getName(), false, ClassAccessor.class.getClassLoader()) == cls;
+        }
+        catch(ClassNotFoundException e) {
+            return false;
+        }
+    }
+}
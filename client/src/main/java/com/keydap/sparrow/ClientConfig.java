@@ -0,0 +1,292 @@
+/*
+ * Copyright (c) 2018 Keydap Software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * See LICENSE file for details.
+ */
+package com.keydap.sparrow;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Configuration of the client, covers the pooling and timeouts of the HTTP connections,
+ * the ETag cache of resources, coalescing of identical reads, the encoding of request bodies,
+ * the decoding and retention of response bodies, the JSON codec and the executor of the
+ * background tasks.
+ * All the time values are in milliseconds. For the connect, socket and connection request
+ * timeouts a negative value means the default of the underlying HTTP client is used, the
+ * meaning of 0 or a negative value of the other settings is given in their descriptions.
+ *
+ * @author Kiran Ayyagari (kayyagari@keydap.com)
+ */
+public class ClientConfig {
+    /** maximum number of connections in the pool */
+    private int maxConnTotal = 20;
+
+    /** maximum number of connections per route, most often there is only one route to the SCIM server */
+    private int maxConnPerRoute = 20;
+
+    /** timeout for establishing a connection */
+    private int connectTimeout = -1;
+
+    /** timeout for waiting for data on an established connection */
+    private int socketTimeout = -1;
+
+    /** timeout for leasing a connection from the pool */
+    private int connectionRequestTimeout = -1;
+
+    /** the time after which idle connections get evicted from the pool, 0 or a negative value disables the eviction */
+    private long maxIdleTime = 0;
+
+    /** the period of inactivity after which the persistent connections are re-validated before leasing */
+    private int validateAfterInactivity = 2000;
+
+    /** maximum number of resources held in the ETag cache, 0 disables the cache */
+    private int resourceCacheSize = 0;
+
+    /** the time after which a cached resource is discarded, 0 or a negative value means never */
+    private long resourceCacheTtl = 300000;
+
+    /** flag to share one in-flight request among concurrent identical reads */
+    private boolean coalesceReads = false;
+
+    /** flag to send the request bodies using chunked transfer encoding */
+    private boolean chunkedRequests = false;
+
+    /** flag to hold the bodies of successful responses undecoded until the resources are accessed */
+    private boolean lazyDecoding = false;
+
+    /** flag to drop the bodies of successful add, replace and patch responses without decoding */
+    private boolean discardWriteBodies = false;
+
+    /** the policy of retaining the raw bodies of responses, see setBodyRetention() */
+    private BodyRetention bodyRetention;
+
+    /** the codec of JSON messages, a GsonCodec is used when null */
+    private JsonCodec codec;
+
+    /** the executor of the background tasks, the client creates one when null */
+    private Executor executor;
+
+    public int getMaxConnTotal() {
+        return maxConnTotal;
+    }
+
+    public void setMaxConnTotal(int maxConnTotal) {
+        this.maxConnTotal = maxConnTotal;
+    }
+
+    public int getMaxConnPerRoute() {
+        return maxConnPerRoute;
+    }
+
+    public void setMaxConnPerRoute(int maxConnPerRoute) {
+        this.maxConnPerRoute = maxConnPerRoute;
+    }
+
+    public int getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public void setConnectTimeout(int connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    public int getSocketTimeout() {
+        return socketTimeout;
+    }
+
+    public void setSocketTimeout(int socketTimeout) {
+        this.socketTimeout = socketTimeout;
+    }
+
+    public int getConnectionRequestTimeout() {
+        return connectionRequestTimeout;
+    }
+
+    public void setConnectionRequestTimeout(int connectionRequestTimeout) {
+        this.connectionRequestTimeout = connectionRequestTimeout;
+    }
+
+    public long getMaxIdleTime() {
+        return maxIdleTime;
+    }
+
+    public void setMaxIdleTime(long maxIdleTime) {
+        this.maxIdleTime = maxIdleTime;
+    }
+
+    public int getValidateAfterInactivity() {
+        return validateAfterInactivity;
+    }
+
+    /**
+     * Sets the period of inactivity after which the persistent connections are re-validated
+     * before leasing. The connections of {@link SparrowAsyncClient} are not validated, their
+     * closure is noticed by the I/O reactor, instead the expired and idle connections are
+     * evicted from its pool at this interval.
+     *
+     * @param validateAfterInactivity the period of inactivity, 0 or a negative value disables the validation
+     */
+    public void setValidateAfterInactivity(int validateAfterInactivity) {
+        this.validateAfterInactivity = validateAfterInactivity;
+    }
+
+    public int getResourceCacheSize() {
+        return resourceCacheSize;
+    }
+
+    /**
+     * Sets the maximum number of resources held in the cache of the resources fetched by
+     * getResource(). The cached resources are revalidated with the server using If-None-Match
+     * and the cached instance is returned if the server responds with 304 (NOT_MODIFIED).
+     * 
+     * The cached instances are shared, they must not be modified by the callers.
+     * 
+     * @param resourceCacheSize the maximum number of cached entries, 0 disables the cache
+     */
+    public void setResourceCacheSize(int resourceCacheSize) {
+        this.resourceCacheSize = resourceCacheSize;
+    }
+
+    public long getResourceCacheTtl() {
+        return resourceCacheTtl;
+    }
+
+    public void setResourceCacheTtl(long resourceCacheTtl) {
+        this.resourceCacheTtl = resourceCacheTtl;
+    }
+
+    public boolean isCoalesceReads() {
+        return coalesceReads;
+    }
+
+    /**
+     * Enables coalescing of concurrent identical reads. When enabled, the calls to getResource()
+     * and searchResource() made with the same URI, request body and authorization header while
+     * an identical request is in progress wait for and share its response instead of sending
+     * another request.
+     * 
+     * The shared response instances must not be modified by the callers.
+     * 
+     * @param coalesceReads true to enable coalescing
+     */
+    public void setCoalesceReads(boolean coalesceReads) {
+        this.coalesceReads = coalesceReads;
+    }
+
+    public boolean isChunkedRequests() {
+        return chunkedRequests;
+    }
+
+    /**
+     * Sets the flag to send the bodies of add, replace and patch requests using chunked
+     * transfer encoding. The bodies are always serialized directly onto the connection,
+     * when chunking is disabled the body is serialized once more upfront for computing
+     * the value of Content-Length header.
+     * 
+     * @param chunkedRequests true to enable chunked transfer encoding
+     */
+    public void setChunkedRequests(boolean chunkedRequests) {
+        this.chunkedRequests = chunkedRequests;
+    }
+
+    public boolean isLazyDecoding() {
+        return lazyDecoding;
+    }
+
+    /**
+     * Sets the flag to hold the bodies of successful responses as bytes and decode them
+     * only on the first call to {@link Response#getResource()} or to any of the getters of
+     * the results of a {@link SearchResponse}. Useful when the callers mostly check only
+     * the status code or the headers of the responses.
+     * 
+     * @param lazyDecoding true to decode lazily
+     */
+    public void setLazyDecoding(boolean lazyDecoding) {
+        this.lazyDecoding = lazyDecoding;
+    }
+
+    public boolean isDiscardWriteBodies() {
+        return discardWriteBodies;
+    }
+
+    /**
+     * Sets the flag to drop the bodies of the successful responses of add, replace and patch
+     * requests, the resource and the raw body of such responses will be null. The bodies
+     * of failed responses are always decoded.
+     * 
+     * @param discardWriteBodies true to discard the bodies
+     */
+    public void setDiscardWriteBodies(boolean discardWriteBodies) {
+        this.discardWriteBodies = discardWriteBodies;
+    }
+
+    public BodyRetention getBodyRetention() {
+        return bodyRetention;
+    }
+
+    /**
+     * Sets the policy of retaining the raw bodies of the responses, the policy can be
+     * overridden for a request. When not set the bodies of all the responses are retained.
+     * 
+     * Retaining the bodies costs memory: the body of a successful search is buffered in full
+     * and kept alongside the decoded resources, so a large page is held twice for as long as
+     * the response is referenced. Set {@link BodyRetention#ON_ERROR} or {@link BodyRetention#NONE}
+     * to decode the successful searches while streaming, one resource at a time, without
+     * buffering their bodies. Lazy decoding always buffers the body, see {@link #setLazyDecoding(boolean)}.
+     * 
+     * @param bodyRetention the policy, null for the default
+     */
+    public void setBodyRetention(BodyRetention bodyRetention) {
+        this.bodyRetention = bodyRetention;
+    }
+
+    public JsonCodec getCodec() {
+        return codec;
+    }
+
+    /**
+     * Sets the codec used for encoding and decoding the JSON messages, e.g to use a
+     * faster streaming backend than the default {@link GsonCodec}.
+     * 
+     * @param codec the codec
+     */
+    public void setCodec(JsonCodec codec) {
+        this.codec = codec;
+    }
+
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Sets the executor of the background tasks, i.e decoding the responses received by
+     * {@link SparrowAsyncClient} and fetching the pages of {@link ParallelSearchIterator}.
+     * When not set the client creates a pool of daemon threads which is shut down on close().
+     * The given executor is never shut down by the client.
+     * 
+     * @param executor the executor
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    @Override
+    public String toString() {
+        return "ClientConfig [maxConnTotal=" + maxConnTotal
+                + ", maxConnPerRoute=" + maxConnPerRoute + ", connectTimeout="
+                + connectTimeout + ", socketTimeout=" + socketTimeout
+                + ", connectionRequestTimeout=" + connectionRequestTimeout
+                + ", maxIdleTime=" + maxIdleTime + ", validateAfterInactivity="
+                + validateAfterInactivity + ", resourceCacheSize="
+                + resourceCacheSize + ", resourceCacheTtl=" + resourceCacheTtl
+                + ", coalesceReads=" + coalesceReads
+                + ", chunkedRequests=" + chunkedRequests
+                + ", lazyDecoding=" + lazyDecoding
+                + ", discardWriteBodies=" + discardWriteBodies
+                + ", bodyRetention=" + bodyRetention
+                + ", codec=" + (codec != null ? codec.getClass().getSimpleName() : null)
+                + ", executor=" + executor + "]";
+    }
+}
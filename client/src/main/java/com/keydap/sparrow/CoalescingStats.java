@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2018 Keydap Software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * See LICENSE file for details.
+ */
+package com.keydap.sparrow;
+
+/**
+ * A snapshot of the statistics of coalesced read requests.
+ *
+ * @author Kiran Ayyagari (kayyagari@keydap.com)
+ */
+public class CoalescingStats {
+    private long leaders;
+    private long collapsed;
+    private int inflight;
+
+    /*default protection*/ CoalescingStats(long leaders, long collapsed, int inflight) {
+        this.leaders = leaders;
+        this.collapsed = collapsed;
+        this.inflight = inflight;
+    }
+
+    /**
+     * @return the number of requests that were sent to the server
+     */
+    public long getLeaders() {
+        return leaders;
+    }
+
+    /**
+     * @return the number of requests that were served with the response of an identical in-flight request
+     */
+    public long getCollapsed() {
+        return collapsed;
+    }
+
+    /**
+     * @return the number of requests currently in progress
+     */
+    public int getInflight() {
+        return inflight;
+    }
+
+    /**
+     * @return the ratio of collapsed requests to all the coalescable requests
+     */
+    public double getHitRatio() {
+        long total = leaders + collapsed;
+        if(total == 0) {
+            return 0;
+        }
+
+        return (double) collapsed / total;
+    }
+
+    @Override
+    public String toString() {
+        return "CoalescingStats [leaders=" + leaders + ", collapsed=" + collapsed
+                + ", inflight=" + inflight + ", hitRatio=" + getHitRatio() + "]";
+    }
+}
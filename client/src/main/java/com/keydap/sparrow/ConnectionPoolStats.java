@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2018 Keydap Software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * See LICENSE file for details.
+ */
+package com.keydap.sparrow;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.pool.PoolStats;
+
+/**
+ * A snapshot of the connection pool's statistics.
+ *
+ * @author Kiran Ayyagari (kayyagari@keydap.com)
+ */
+public class ConnectionPoolStats {
+    private int leased;
+    private int pending;
+    private int available;
+    private int max;
+    private long leaseCount;
+    private long leaseTimeouts;
+    private long totalLeaseWaitNanos;
+    private long maxLeaseWaitNanos;
+
+    /*default protection*/ ConnectionPoolStats(PoolStats ps, long leaseCount, long leaseTimeouts, long totalLeaseWaitNanos, long maxLeaseWaitNanos) {
+        this.leased = ps.getLeased();
+        this.pending = ps.getPending();
+        this.available = ps.getAvailable();
+        this.max = ps.getMax();
+        this.leaseCount = leaseCount;
+        this.leaseTimeouts = leaseTimeouts;
+        this.totalLeaseWaitNanos = totalLeaseWaitNanos;
+        this.maxLeaseWaitNanos = maxLeaseWaitNanos;
+    }
+
+    /**
+     * @return the number of connections currently in use
+     */
+    public int getLeased() {
+        return leased;
+    }
+
+    /**
+     * @return the number of requests currently waiting for a connection
+     */
+    public int getPending() {
+        return pending;
+    }
+
+    /**
+     * @return the number of idle connections
+     */
+    public int getAvailable() {
+        return available;
+    }
+
+    /**
+     * @return the maximum number of connections allowed
+     */
+    public int getMax() {
+        return max;
+    }
+
+    /**
+     * @return the number of connections leased so far
+     */
+    public long getLeaseCount() {
+        return leaseCount;
+    }
+
+    /**
+     * @return the number of requests that timed out while waiting for a connection
+     */
+    public long getLeaseTimeouts() {
+        return leaseTimeouts;
+    }
+
+    /**
+     * @return the average time, in milliseconds, spent waiting for a connection
+     */
+    public double getAvgLeaseWaitMillis() {
+        long attempts = leaseCount + leaseTimeouts;
+        if(attempts == 0) {
+            return 0;
+        }
+
+        return (double) totalLeaseWaitNanos / attempts / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * @return the longest time, in milliseconds, spent waiting for a connection
+     */
+    public long getMaxLeaseWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(maxLeaseWaitNanos);
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectionPoolStats [leased=" + leased + ", pending=" + pending
+                + ", available=" + available + ", max=" + max
+                + ", leaseCount=" + leaseCount + ", leaseTimeouts="
+                + leaseTimeouts + ", avgLeaseWaitMillis="
+                + getAvgLeaseWaitMillis() + ", maxLeaseWaitMillis="
+                + getMaxLeaseWaitMillis() + "]";
+    }
+}
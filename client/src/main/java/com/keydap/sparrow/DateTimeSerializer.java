@@ -7,10 +7,7 @@
 package com.keydap.sparrow;
 
 import java.lang.reflect.Type;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
 import java.util.Date;
-import java.util.TimeZone;
 
 import com.google.gson.JsonDeserializationContext;
 import com.google.gson.JsonDeserializer;
@@ -21,24 +18,18 @@ import com.google.gson.JsonSerializationContext;
 import com.google.gson.JsonSerializer;
 
 /**
- * RFC3339 date serializer
+ * RFC3339 date serializer, delegates to {@link Rfc3339} and hence is thread-safe
  * 
  * @author Kiran Ayyagari (kayyagari@keydap.com)
  */
 public class DateTimeSerializer implements JsonSerializer<Date>, JsonDeserializer<Date> {
 
-    private DateFormat df = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");//RFC3339
-    
-    public DateTimeSerializer() {
-        df.setTimeZone(TimeZone.getTimeZone("UTC"));
-    }
-    
     @Override
     public Date deserialize(JsonElement json, Type typeOfT,
             JsonDeserializationContext context) throws JsonParseException {
         String d = json.getAsString();
         try {
-            return df.parse(d);
+            return Rfc3339.parseDate(d);
         }
         catch(Exception e) {
             throw new JsonParseException(e);
@@ -48,7 +39,7 @@ public class DateTimeSerializer implements JsonSerializer<Date>, JsonDeserialize
     @Override
     public JsonElement serialize(Date src, Type typeOfSrc,
             JsonSerializationContext context) {
-        String value = df.format(src);
+        String value = Rfc3339.format(src);
         return new JsonPrimitive(value);
     }
 
@@ -37,6 +37,10 @@ public class Error {
         this.detail = detail;
     }
 
+    /*default protection*/ void setStatus(String status) {
+        this.status = status;
+    }
+
     @Override
     public String toString() {
         return "Error [scimType=" + scimType + ", detail=" + detail
@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2018 Keydap Software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * See LICENSE file for details.
+ */
+package com.keydap.sparrow;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Function;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+/**
+ * The default codec based on Gson. The resources are bound using {@link ResourceAdapterFactory}
+ * and the dates are handled by {@link Rfc3339}.
+ *
+ * @author Kiran Ayyagari (kayyagari@keydap.com)
+ */
+public class GsonCodec implements JsonCodec {
+    private final Gson gson;
+
+    private final JsonParser parser = new JsonParser();
+
+    public GsonCodec() {
+        GsonBuilder gb = new GsonBuilder();
+
+        gb.registerTypeAdapter(Date.class, Rfc3339.DATE_ADAPTER);
+        gb.registerTypeAdapter(Instant.class, Rfc3339.INSTANT_ADAPTER);
+        gb.registerTypeAdapterFactory(new ResourceAdapterFactory());
+
+        gson = gb.create();
+    }
+
+    @Override
+    public void register(Class<?> resClass) {
+        // binds the core and extension attributes, see ResourceAdapterFactory
+        gson.getAdapter(resClass);
+    }
+
+    @Override
+    public void write(Object value, Writer out) throws IOException {
+        gson.toJson(value, value.getClass(), out);
+    }
+
+    @Override
+    public <T> T read(Reader in, Class<T> type) throws IOException {
+        return gson.fromJson(in, type);
+    }
+
+    @Override
+    public <T> void readListResponse(Reader in, Class<T> resClass, Function<JsonObject, T> resolver, SearchResponse<T> result) throws IOException {
+        JsonReader reader = new JsonReader(in);
+        TypeAdapter<T> adapter = (resClass != null ? gson.getAdapter(resClass) : null);
+
+        reader.beginObject();
+        while(reader.hasNext()) {
+            String name = reader.nextName();
+            switch (name) {
+            case "totalResults":
+                result.setTotalResults(readInt(reader));
+                break;
+
+            case "startIndex":
+                result.setStartIndex(readInt(reader));
+                break;
+
+            case "itemsPerPage":
+                result.setItemsPerPage(readInt(reader));
+                break;
+
+            case "Resources": // yes, the 'R' in resources must be upper case
+                if(reader.peek() == JsonToken.NULL) {
+                    reader.nextNull();
+                    break;
+                }
+
+                List<T> resources = new ArrayList<T>();
+                reader.beginArray();
+                while(reader.hasNext()) {
+                    T rsObj;
+                    if (adapter != null) {
+                        rsObj = adapter.read(reader);
+                    }
+                    else {
+                        // the class is known only after reading the schemas
+                        rsObj = resolver.apply((JsonObject) parser.parse(reader));
+                    }
+
+                    if(rsObj != null) {
+                        resources.add(rsObj);
+                    }
+                }
+                reader.endArray();
+
+                if(!resources.isEmpty()) {
+                    result.setResources(resources);
+                }
+                break;
+
+            default:
+                reader.skipValue();
+                break;
+            }
+        }
+        reader.endObject();
+    }
+
+    private int readInt(JsonReader reader) throws IOException {
+        if(reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return 0;
+        }
+
+        return reader.nextInt();
+    }
+
+    @Override
+    public JsonElement toTree(Object value) {
+        return gson.toJsonTree(value);
+    }
+
+    @Override
+    public <T> T fromTree(JsonElement json, Class<T> type) {
+        return gson.fromJson(json, type);
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2018 Keydap Software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * See LICENSE file for details.
+ */
+package com.keydap.sparrow;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.function.Function;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+/**
+ * Encoder and decoder of the JSON messages exchanged with the SCIM server, i.e the resources,
+ * ListResponse, PatchOp, Error and Bulk messages.
+ *
+ * A codec must bind the classes annotated with {@link Resource} the same way as {@link GsonCodec},
+ * i.e the "schemas" attribute is written using the annotations and the fields annotated with
+ * {@link Extension} are keyed by their schema URNs. The JSON trees exposed by the client are
+ * always those of Gson, hence they are converted using {@link #toTree(Object)} and
+ * {@link #fromTree(JsonElement, Class)}. The resources returned in the responses of bulk
+ * operations are also read as trees and converted, their class depends on the operation.
+ *
+ * An instance is used by all the threads of a client and may be shared by several clients,
+ * hence the implementations must be thread-safe.
+ *
+ * @author Kiran Ayyagari (kayyagari@keydap.com)
+ * @see ClientConfig#setCodec(JsonCodec)
+ */
+public interface JsonCodec {
+
+    /**
+     * Prepares the binding of the given resource class, called when the class is registered
+     * with the client
+     *
+     * @param resClass the resource class
+     */
+    void register(Class<?> resClass);
+
+    /**
+     * Writes the given value without closing the output, null values of the fields are not written
+     *
+     * @param value a resource, PatchRequest, SearchRequest, JsonElement or any other request body
+     * @param out the output
+     * @throws IOException
+     */
+    void write(Object value, Writer out) throws IOException;
+
+    /**
+     * Reads a single value from the given input
+     *
+     * @param in the input
+     * @param type the class of the value, e.g a resource class, Error, JsonObject or JsonElement
+     * @return the value or null if the input is empty
+     * @throws IOException
+     */
+    <T> T read(Reader in, Class<T> type) throws IOException;
+
+    /**
+     * Reads a ListResponse into the given search response
+     *
+     * @param in the input
+     * @param resClass the class of the resources, null if the class is known only after reading
+     *                 the schemas of each resource
+     * @param resolver converts the resources when the class is not given, the resources for which
+     *                 it returns null are dropped
+     * @param result the search response to be filled
+     * @throws IOException
+     */
+    <T> void readListResponse(Reader in, Class<T> resClass, Function<JsonObject, T> resolver, SearchResponse<T> result) throws IOException;
+
+    /**
+     * Converts the given value to a JSON tree
+     *
+     * @param value the value
+     * @return the JSON tree
+     */
+    JsonElement toTree(Object value);
+
+    /**
+     * Converts the given JSON tree to a value of the given class
+     *
+     * @param json the JSON tree
+     * @param type the class of the value
+     * @return the value
+     */
+    <T> T fromTree(JsonElement json, Class<T> type);
+}
@@ -0,0 +1,385 @@
+/*
+ * Copyright (c) 2018 Keydap Software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * See LICENSE file for details.
+ */
+package com.keydap.sparrow;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+/**
+ * Generates a PatchRequest by comparing two JSON representations of a resource, e.g the
+ * ones produced by {@link SparrowClient#serialize(Object)} or parsed from the body of a
+ * response. Unlike {@link PatchGenerator} this doesn't need a Java class of the resource.
+ *
+ * A 64-bit structural hash is computed once for every object and array of both the trees,
+ * subtrees with equal hashes are treated as unchanged without comparing them deeply. The
+ * hash of an object doesn't depend on the order of its members.
+ *
+ * Elements of multi-valued attributes are paired by their hashes, elements that are not
+ * present in the original are added and those that are not present in the modified are
+ * removed using a filter on their "value" sub-attribute, or on all of their simple
+ * sub-attributes if "value" is absent. Multi-valued attributes with simple values
+ * are replaced as a whole.
+ *
+ * An instance holds no state of a diff, hence it can be shared by several threads.
+ *
+ * @author Kiran Ayyagari (kayyagari@keydap.com)
+ */
+public class JsonDiff {
+    /** the attributes that are never compared */
+    private final Set<String> ignored;
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private static final long NULL_HASH = 0x9e3779b97f4a7c15L;
+
+    /**
+     * Creates an instance that ignores the read-only attributes id, schemas and meta
+     */
+    public JsonDiff() {
+        this("id", "schemas", "meta");
+    }
+
+    /**
+     * Creates an instance
+     *
+     * @param ignoredAttributes the names of the top level attributes that must be ignored
+     */
+    public JsonDiff(String... ignoredAttributes) {
+        ignored = new HashSet<String>(Arrays.asList(ignoredAttributes));
+    }
+
+    public PatchRequest create(String id, Class<?> resClass, JsonObject modified, JsonObject original) {
+        return create(id, resClass, modified, original, null);
+    }
+
+    /**
+     * Creates a PatchRequest containing the operations needed to turn the original into the modified
+     *
+     * @param id identifier of the resource
+     * @param resClass the class of the resource, can be null if the request is sent using sendRawRequest()
+     * @param modified the modified resource
+     * @param original the resource before modification
+     * @param etag the value of If-Match header, optional
+     * @return the patch request
+     */
+    public PatchRequest create(String id, Class<?> resClass, JsonObject modified, JsonObject original, String etag) {
+        PatchRequest pr = new PatchRequest(id, resClass, etag);
+        // hashes of the objects and arrays of the trees being compared
+        Map<JsonElement, Long> hashes = new IdentityHashMap<JsonElement, Long>();
+        diffAttributes(pr, "", modified, original, true, hashes);
+
+        return pr;
+    }
+
+    private void diffAttributes(PatchRequest pr, String prefix, JsonObject modified, JsonObject original, boolean topLevel, Map<JsonElement, Long> hashes) {
+        for(Map.Entry<String, JsonElement> e : original.entrySet()) {
+            String name = e.getKey();
+            if(topLevel && ignored.contains(name)) {
+                continue;
+            }
+
+            JsonElement m = modified.get(name);
+            if(isNull(m) && !isNull(e.getValue())) {
+                pr.remove(prefix + name);
+            }
+        }
+
+        for(Map.Entry<String, JsonElement> e : modified.entrySet()) {
+            String name = e.getKey();
+            if(topLevel && ignored.contains(name)) {
+                continue;
+            }
+
+            JsonElement m = e.getValue();
+            JsonElement o = original.get(name);
+            if(isNull(m)) {
+                continue;
+            }
+
+            String path = prefix + name;
+            if(isNull(o)) {
+                pr.add(path, m);
+            }
+            else if(hash(m, hashes) == hash(o, hashes)) {
+                continue;
+            }
+            else if(m.isJsonObject() && o.isJsonObject()) {
+                if(topLevel && name.startsWith("urn:")) {
+                    // an extension, e.g urn:ietf:params:scim:schemas:extension:enterprise:2.0:User:employeeNumber
+                    diffAttributes(pr, path + ":", m.getAsJsonObject(), o.getAsJsonObject(), false, hashes);
+                }
+                else {
+                    diffComplex(pr, path, m.getAsJsonObject(), o.getAsJsonObject(), hashes);
+                }
+            }
+            else if(m.isJsonArray() && o.isJsonArray()) {
+                diffMultiValued(pr, path, m.getAsJsonArray(), o.getAsJsonArray(), hashes);
+            }
+            else {
+                pr.replace(path, m);
+            }
+        }
+    }
+
+    /**
+     * Replaces the changed sub-attributes and removes the deleted ones
+     */
+    private void diffComplex(PatchRequest pr, String path, JsonObject modified, JsonObject original, Map<JsonElement, Long> hashes) {
+        for(Map.Entry<String, JsonElement> e : original.entrySet()) {
+            if(isNull(modified.get(e.getKey())) && !isNull(e.getValue())) {
+                pr.remove(path + "." + e.getKey());
+            }
+        }
+
+        JsonObject changed = changedMembers(modified, original, hashes);
+        if(changed.size() > 0) {
+            pr.replace(path, changed);
+        }
+    }
+
+    private void diffMultiValued(PatchRequest pr, String path, JsonArray modified, JsonArray original, Map<JsonElement, Long> hashes) {
+        if(modified.size() == 0) {
+            pr.remove(path);
+            return;
+        }
+
+        if(!allObjects(modified) || !allObjects(original)) {
+            pr.replace(path, modified);
+            return;
+        }
+
+        // pair the unchanged elements by their hashes
+        Map<Long, Integer> remaining = new HashMap<Long, Integer>();
+        for(JsonElement o : original) {
+            remaining.merge(hash(o, hashes), 1, Integer::sum);
+        }
+
+        List<JsonObject> added = new ArrayList<JsonObject>();
+        for(JsonElement m : modified) {
+            Long h = hash(m, hashes);
+            Integer count = remaining.get(h);
+            if(count != null) {
+                if(count == 1) {
+                    remaining.remove(h);
+                }
+                else {
+                    remaining.put(h, count - 1);
+                }
+            }
+            else {
+                added.add(m.getAsJsonObject());
+            }
+        }
+
+        List<JsonObject> removed = new ArrayList<JsonObject>();
+        for(JsonElement o : original) {
+            Long h = hash(o, hashes);
+            Integer count = remaining.get(h);
+            if(count != null) {
+                removed.add(o.getAsJsonObject());
+                if(count == 1) {
+                    remaining.remove(h);
+                }
+                else {
+                    remaining.put(h, count - 1);
+                }
+            }
+        }
+
+        // build the filters first, fall back to replacing all the values if any element can't be identified
+        List<String> removeFilters = new ArrayList<String>(removed.size());
+        for(JsonObject o : removed) {
+            String filter = buildFilter(path, o);
+            if(filter == null) {
+                pr.replace(path, modified);
+                return;
+            }
+            removeFilters.add(filter);
+        }
+
+        // elements whose value is same but other sub-attributes differ are modified in place
+        Map<JsonElement, JsonObject> removedByValue = new HashMap<JsonElement, JsonObject>();
+        for(JsonObject o : removed) {
+            JsonElement value = o.get("value");
+            if(value != null && value.isJsonPrimitive()) {
+                // duplicate values cannot be modified in place
+                if(removedByValue.put(value, o) != null) {
+                    removedByValue.clear();
+                    break;
+                }
+            }
+        }
+
+        JsonArray toAdd = new JsonArray();
+        for(JsonObject m : added) {
+            JsonElement value = m.get("value");
+            JsonObject o = (value != null ? removedByValue.remove(value) : null);
+            if(o != null) {
+                int pos = removed.indexOf(o);
+                removed.remove(pos);
+                String filter = removeFilters.remove(pos);
+                for(Map.Entry<String, JsonElement> e : o.entrySet()) {
+                    if(isNull(m.get(e.getKey())) && !isNull(e.getValue())) {
+                        pr.remove(filter + "." + e.getKey());
+                    }
+                }
+                JsonObject changed = changedMembers(m, o, hashes);
+                if(changed.size() > 0) {
+                    pr.replace(filter, changed);
+                }
+            }
+            else {
+                toAdd.add(m);
+            }
+        }
+
+        for(String filter : removeFilters) {
+            pr.remove(filter);
+        }
+
+        if(toAdd.size() > 0) {
+            pr.add(path, toAdd);
+        }
+    }
+
+    private JsonObject changedMembers(JsonObject modified, JsonObject original, Map<JsonElement, Long> hashes) {
+        JsonObject changed = new JsonObject();
+        for(Map.Entry<String, JsonElement> e : modified.entrySet()) {
+            JsonElement m = e.getValue();
+            if(isNull(m)) {
+                continue;
+            }
+
+            JsonElement o = original.get(e.getKey());
+            if(isNull(o) || hash(m, hashes) != hash(o, hashes)) {
+                changed.add(e.getKey(), m);
+            }
+        }
+
+        return changed;
+    }
+
+    /**
+     * Builds a path like emails[value EQ "x@example.com"] using the value of the given
+     * element, or all of its simple sub-attributes if it has no value
+     *
+     * @return the path or null if the element has no simple sub-attributes
+     */
+    private String buildFilter(String path, JsonObject obj) {
+        ValueFilter filter;
+        JsonElement value = obj.get("value");
+        if(value != null && value.isJsonPrimitive()) {
+            filter = ValueFilter.eq("value", value);
+        }
+        else {
+            List<ValueFilter> comparisons = new ArrayList<ValueFilter>();
+            for(Map.Entry<String, JsonElement> e : obj.entrySet()) {
+                if(e.getValue().isJsonPrimitive()) {
+                    comparisons.add(ValueFilter.eq(e.getKey(), e.getValue()));
+                }
+            }
+
+            if(comparisons.isEmpty()) {
+                return null;
+            }
+            filter = ValueFilter.and(comparisons.toArray(new ValueFilter[comparisons.size()]));
+        }
+
+        return new AttributePath(path, filter).toString();
+    }
+
+    private boolean allObjects(JsonArray arr) {
+        for(JsonElement e : arr) {
+            if(!e.isJsonObject()) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static boolean isNull(JsonElement e) {
+        return e == null || e.isJsonNull();
+    }
+
+    /**
+     * Computes the structural hash of the given element, the hashes of objects and
+     * arrays are computed only once per diff
+     */
+    private static long hash(JsonElement e, Map<JsonElement, Long> hashes) {
+        if(isNull(e)) {
+            return NULL_HASH;
+        }
+
+        if(e.isJsonPrimitive()) {
+            JsonPrimitive jp = e.getAsJsonPrimitive();
+            long type = jp.isString() ? 1 : (jp.isBoolean() ? 2 : 3);
+            return mix(type, hash(jp.getAsString()));
+        }
+
+        Long cached = hashes.get(e);
+        if(cached != null) {
+            return cached;
+        }
+
+        long h;
+        if(e.isJsonArray()) {
+            h = 4;
+            for(JsonElement child : e.getAsJsonArray()) {
+                h = mix(h, hash(child, hashes));
+            }
+        }
+        else {
+            // the members are combined by addition, so that their order doesn't matter
+            h = 5;
+            for(Map.Entry<String, JsonElement> m : e.getAsJsonObject().entrySet()) {
+                if(!isNull(m.getValue())) {
+                    h += mix(hash(m.getKey()), hash(m.getValue(), hashes));
+                }
+            }
+            h = mix(h, 5);
+        }
+
+        hashes.put(e, h);
+        return h;
+    }
+
+    /** FNV-1a hash of the given string */
+    private static long hash(String s) {
+        long h = FNV_OFFSET;
+        for(int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= FNV_PRIME;
+        }
+
+        return h;
+    }
+
+    /** combines the given hashes and scrambles the bits using the finalizer of MurmurHash3 */
+    private static long mix(long h1, long h2) {
+        long h = h1 * 31 + h2;
+        h ^= (h >>> 33);
+        h *= 0xff51afd7ed558ccdL;
+        h ^= (h >>> 33);
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= (h >>> 33);
+        return h;
+    }
+}
@@ -0,0 +1,246 @@
+/*
+ * Copyright (c) 2018 Keydap Software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * See LICENSE file for details.
+ */
+package com.keydap.sparrow;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Generates PatchRequests for a large number of (modified, original) pairs in parallel,
+ * e.g while reconciling the resources of an external source with the ones on the server.
+ *
+ * The pairs are read from the source in chunks and each chunk is diffed in parallel on
+ * the configured ForkJoinPool while the patches of the previous chunk are being consumed.
+ * The patches are emitted in the order of the pairs and the pairs without any changes are dropped.
+ *
+ * @author Kiran Ayyagari (kayyagari@keydap.com)
+ */
+public class ParallelPatchGenerator {
+    /** the generator used for diffing each pair, it holds no state of a diff and is shared by all the threads */
+    private PatchGenerator generator;
+
+    /** the pool on which the chunks are diffed */
+    private ForkJoinPool pool;
+
+    /** the number of pairs read from the source and diffed together */
+    private int chunkSize;
+
+    private LongAdder pairs = new LongAdder();
+
+    private LongAdder emptyPatches = new LongAdder();
+
+    /** the number of chunks being diffed currently */
+    private int active;
+
+    /** the time at which the pool became busy with at least one chunk */
+    private long busySince;
+
+    /** the total time during which at least one chunk was being diffed */
+    private long busyNanos;
+
+    /**
+     * A modified resource and its original
+     */
+    public static class Pair {
+        private String id;
+        private Object modified;
+        private Object original;
+        private String etag;
+
+        public Pair(String id, Object modified, Object original) {
+            this(id, modified, original, null);
+        }
+
+        /**
+         * @param id identifier of the resource
+         * @param modified the modified resource
+         * @param original the resource before modification
+         * @param etag the value of If-Match header, optional
+         */
+        public Pair(String id, Object modified, Object original, String etag) {
+            this.id = id;
+            this.modified = modified;
+            this.original = original;
+            this.etag = etag;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public Object getModified() {
+            return modified;
+        }
+
+        public Object getOriginal() {
+            return original;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+    }
+
+    /**
+     * Creates an instance that uses the common ForkJoinPool
+     *
+     * @param generator the generator used for diffing each pair
+     */
+    public ParallelPatchGenerator(PatchGenerator generator) {
+        this(generator, ForkJoinPool.commonPool(), 1024);
+    }
+
+    /**
+     * Creates an instance
+     *
+     * @param generator the generator used for diffing each pair
+     * @param pool the pool on which the pairs are diffed
+     * @param chunkSize the number of pairs read from the source and diffed together, this bounds
+     *                  the number of patches held in memory to twice the chunk size
+     */
+    public ParallelPatchGenerator(PatchGenerator generator, ForkJoinPool pool, int chunkSize) {
+        if(generator == null || pool == null) {
+            throw new IllegalArgumentException("PatchGenerator and ForkJoinPool are required");
+        }
+
+        if(chunkSize <= 0) {
+            throw new IllegalArgumentException("Invalid chunk size " + chunkSize);
+        }
+
+        this.generator = generator;
+        this.pool = pool;
+        this.chunkSize = chunkSize;
+    }
+
+    public Stream<PatchRequest> generate(Collection<Pair> pairs) {
+        return generate(pairs.stream());
+    }
+
+    /**
+     * Generates the patches of the given pairs. The source is consumed lazily, as the
+     * returned stream is consumed, and gets closed when the returned stream is closed.
+     *
+     * A failure to diff a pair is rethrown by the returned stream.
+     *
+     * @param pairs the modified resources and their originals
+     * @return a stream of non-empty PatchRequests in the order of the pairs
+     */
+    public Stream<PatchRequest> generate(Stream<Pair> pairs) {
+        Iterator<List<PatchRequest>> chunks = new ChunkIterator(pairs.iterator());
+        Spliterator<List<PatchRequest>> sp = Spliterators.spliteratorUnknownSize(chunks, Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.stream(sp, false).flatMap(List::stream).onClose(pairs::close);
+    }
+
+    /**
+     * @return the statistics of all the pairs diffed by this instance
+     */
+    public PatchGenerationStats getStats() {
+        long elapsed;
+        synchronized (this) {
+            elapsed = busyNanos;
+            if(active > 0) {
+                elapsed += System.nanoTime() - busySince;
+            }
+        }
+
+        return new PatchGenerationStats(pairs.sum(), emptyPatches.sum(), elapsed);
+    }
+
+    private List<PatchRequest> diff(List<Pair> chunk) {
+        begin();
+        try {
+            return chunk.parallelStream().map(this::diff).filter(Objects::nonNull).collect(Collectors.toList());
+        }
+        finally {
+            end();
+        }
+    }
+
+    private PatchRequest diff(Pair p) {
+        PatchRequest pr = generator.create(p.id, p.modified, p.original, p.etag);
+        pairs.increment();
+        if(pr.getOperations().isEmpty()) {
+            emptyPatches.increment();
+            return null;
+        }
+
+        return pr;
+    }
+
+    private synchronized void begin() {
+        if(active++ == 0) {
+            busySince = System.nanoTime();
+        }
+    }
+
+    private synchronized void end() {
+        if(--active == 0) {
+            busyNanos += System.nanoTime() - busySince;
+        }
+    }
+
+    /**
+     * Reads the chunks from the source and diffs the next chunk while the current one is being consumed
+     */
+    private class ChunkIterator implements Iterator<List<PatchRequest>> {
+        private Iterator<Pair> source;
+
+        private ForkJoinTask<List<PatchRequest>> ahead;
+
+        private boolean started;
+
+        ChunkIterator(Iterator<Pair> source) {
+            this.source = source;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if(!started) {
+                ahead = submitNext();
+                started = true;
+            }
+
+            return ahead != null;
+        }
+
+        @Override
+        public List<PatchRequest> next() {
+            if(!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            ForkJoinTask<List<PatchRequest>> current = ahead;
+            ahead = submitNext();
+            return current.join();
+        }
+
+        private ForkJoinTask<List<PatchRequest>> submitNext() {
+            if(!source.hasNext()) {
+                return null;
+            }
+
+            List<Pair> chunk = new ArrayList<Pair>(chunkSize);
+            while(chunk.size() < chunkSize && source.hasNext()) {
+                chunk.add(source.next());
+            }
+
+            return pool.submit(() -> diff(chunk));
+        }
+    }
+}
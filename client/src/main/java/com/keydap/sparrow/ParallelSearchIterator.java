@@ -0,0 +1,304 @@
+/*
+ * Copyright (c) 2018 Keydap Software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * See LICENSE file for details.
+ */
+package com.keydap.sparrow;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.function.Function;
+
+/**
+ * An iterator over the results of a search request which fetches the first page
+ * and then, once the totalResults is known, fetches the remaining pages concurrently.
+ * 
+ * At most <i>parallelism</i> pages are fetched at a time and at most <i>window</i> pages,
+ * including the page being consumed, are either being fetched or held in memory. The
+ * resources are returned either in the order of pages or in the order in which the pages arrive.
+ * 
+ * The pages are fetched using the given executor, which is shared and never shut down by
+ * the iterator. The iterator should be closed if it is not consumed completely to cancel
+ * fetching the remaining pages.
+ *
+ * @author Kiran Ayyagari (kayyagari@keydap.com)
+ */
+public class ParallelSearchIterator<T> implements Iterator<T>, Closeable {
+    /** the search request used as a template for fetching pages */
+    private SearchRequest template;
+
+    /** the number of resources to be fetched in each page */
+    private int pageSize;
+
+    /** maximum number of pages being fetched or held, including the page being consumed */
+    private int window;
+
+    /** flag to indicate whether the pages should be consumed in order */
+    private boolean ordered;
+
+    /** the function that fetches a page */
+    private Function<SearchRequest, SearchResponse<T>> fetcher;
+
+    /** maximum number of pages fetched concurrently */
+    private int parallelism;
+
+    /** the executor of the fetches */
+    private Executor executor;
+
+    /** the pages submitted but not yet consumed, in the order of submission */
+    private Queue<Future<SearchResponse<T>>> pending = new ArrayDeque<>();
+
+    /** the fetches waiting for a free slot, guarded by itself */
+    private Queue<Runnable> queued = new ArrayDeque<>();
+
+    /** number of fetches handed to the executor, guarded by queued */
+    private int running;
+
+    /** the pages in the order of completion, used when not ordered */
+    private CompletionService<SearchResponse<T>> completed;
+
+    /** number of pages submitted but not yet consumed */
+    private int inFlight;
+
+    /** the startIndex of the next page to be submitted, -1 before the first page is read */
+    private int nextIndex = -1;
+
+    private int totalResults = -1;
+
+    private Iterator<T> current = Collections.emptyIterator();
+
+    private boolean closed;
+
+    /*default protection*/ ParallelSearchIterator(SearchRequest sr, int pageSize, int parallelism, int window, boolean ordered, Executor executor, Function<SearchRequest, SearchResponse<T>> fetcher) {
+        if(pageSize <= 0 || parallelism <= 0 || window <= 0) {
+            throw new IllegalArgumentException("Page size, parallelism and window must be greater than zero");
+        }
+
+        this.template = new SearchRequest(sr);
+        this.pageSize = pageSize;
+        this.window = window;
+        this.ordered = ordered;
+        this.fetcher = fetcher;
+        this.parallelism = parallelism;
+        this.executor = executor;
+
+        completed = new ExecutorCompletionService<>(this::schedule);
+    }
+
+    @Override
+    public boolean hasNext() {
+        while(!current.hasNext()) {
+            if(closed) {
+                return false;
+            }
+
+            if(nextIndex < 0) {
+                readFirstPage();
+                continue;
+            }
+
+            // the consumed page is released, make room for one more page
+            current = Collections.emptyIterator();
+            fillWindow(window);
+            if(inFlight > 0) {
+                readNextPage();
+            }
+            else {
+                close();
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public T next() {
+        if(!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        return current.next();
+    }
+
+    /**
+     * @return the totalResults reported by the server, -1 if no page was fetched yet
+     */
+    public int getTotalResults() {
+        return totalResults;
+    }
+
+    /**
+     * Stops fetching the pages, the pages that are being fetched will be discarded
+     */
+    @Override
+    public void close() {
+        if(!closed) {
+            closed = true;
+            synchronized(queued) {
+                queued.clear();
+            }
+
+            for(Future<SearchResponse<T>> f : pending) {
+                f.cancel(true);
+            }
+            pending.clear();
+            current = Collections.emptyIterator();
+        }
+    }
+
+    private void readFirstPage() {
+        int startIndex = Math.max(1, template.getStartIndex());
+        SearchResponse<T> resp = fetchPage(startIndex);
+        try {
+            SearchIterator.checkPage(resp, startIndex);
+        }
+        catch(RuntimeException e) {
+            close();
+            throw e;
+        }
+
+        totalResults = resp.getTotalResults();
+        int received = SearchIterator.pageItemCount(resp);
+
+        // the server may return less than the requested number of resources, use the same size
+        // for the remaining pages to avoid missing any resources
+        if(received > 0 && received < pageSize) {
+            pageSize = received;
+        }
+
+        nextIndex = startIndex + received;
+        if(received == 0) {
+            nextIndex = Integer.MAX_VALUE;
+        }
+
+        setCurrent(resp);
+        fillWindow(window - 1);
+    }
+
+    private void readNextPage() {
+        try {
+            Future<SearchResponse<T>> f;
+            if(ordered) {
+                f = pending.poll();
+            }
+            else {
+                f = completed.take();
+                pending.remove(f);
+            }
+
+            SearchResponse<T> resp = f.get();
+            inFlight--;
+            SearchIterator.checkPage(resp, resp.getStartIndex());
+            setCurrent(resp);
+            fillWindow(window - 1);
+        }
+        catch(InterruptedException e) {
+            close();
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+        catch(ExecutionException e) {
+            close();
+            throw new IllegalStateException(e.getCause());
+        }
+        catch(RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Submits the next pages until the given number of pages are in flight
+     */
+    private void fillWindow(int limit) {
+        while(inFlight < limit && nextIndex <= totalResults) {
+            final int startIndex = nextIndex;
+            if(ordered) {
+                FutureTask<SearchResponse<T>> f = new FutureTask<>(() -> fetchPage(startIndex));
+                schedule(f);
+                pending.add(f);
+            }
+            else {
+                pending.add(completed.submit(() -> fetchPage(startIndex)));
+            }
+
+            inFlight++;
+            nextIndex += pageSize;
+        }
+    }
+
+    /**
+     * Hands the given fetch to the executor if less than <i>parallelism</i> fetches are
+     * running, otherwise queues it until a running fetch completes
+     */
+    private void schedule(Runnable fetch) {
+        synchronized(queued) {
+            if(running >= parallelism) {
+                queued.add(fetch);
+                return;
+            }
+            running++;
+        }
+
+        try {
+            executor.execute(() -> run(fetch));
+        }
+        catch(RuntimeException e) {
+            synchronized(queued) {
+                running--;
+            }
+            throw e;
+        }
+    }
+
+    private void run(Runnable fetch) {
+        while(fetch != null) {
+            try {
+                fetch.run();
+            }
+            finally {
+                synchronized(queued) {
+                    fetch = queued.poll();
+                    if(fetch == null) {
+                        running--;
+                    }
+                }
+            }
+        }
+    }
+
+    private SearchResponse<T> fetchPage(int startIndex) {
+        SearchRequest req = new SearchRequest(template);
+        req.setStartIndex(startIndex);
+        req.setCount(pageSize);
+
+        SearchResponse<T> resp = fetcher.apply(req);
+        if(resp.getStartIndex() <= 0) {
+            resp.setStartIndex(startIndex);
+        }
+
+        return resp;
+    }
+
+    private void setCurrent(SearchResponse<T> resp) {
+        List<T> resources = resp.getResources();
+        if(resources == null) {
+            current = Collections.emptyIterator();
+        }
+        else {
+            current = resources.iterator();
+        }
+    }
+}
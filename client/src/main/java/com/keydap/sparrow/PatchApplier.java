@@ -0,0 +1,331 @@
+/*
+ * Copyright (c) 2018 Keydap Software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * See LICENSE file for details.
+ */
+package com.keydap.sparrow;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.keydap.sparrow.ClassAccessor.Property;
+import com.keydap.sparrow.PatchRequest.PatchOperation;
+
+/**
+ * Applies the operations of a PatchRequest to the JSON representation of a resource on
+ * the client side, following the semantics of SCIM v2 PATCH (RFC 7644 section 3.5.2).
+ * This allows keeping a local copy of a resource in sync after a successful PATCH
+ * without fetching it again.
+ *
+ * Supports the paths of the form
+ * <pre>
+ *   attr, attr.subAttr, urn:schema:attr, attr[filter] and attr[filter].subAttr
+ * </pre>
+ * where the filter is a {@link ValueFilter}. The attribute names and string values are
+ * compared ignoring case.
+ *
+ * The value of an add or a replace operation targeting a complex value is merged with
+ * the existing sub-attributes, this is same as the patches created by {@link PatchGenerator}
+ * and {@link JsonDiff}, which contain only the changed sub-attributes.
+ *
+ * @author Kiran Ayyagari (kayyagari@keydap.com)
+ */
+public class PatchApplier {
+
+    /**
+     * Applies all the operations of the given PatchRequest to the given resource
+     *
+     * @param pr the patch request
+     * @param resource JSON representation of the resource, e.g the one produced by {@link SparrowClient#serialize(Object)}
+     * @return the same resource after modification
+     * @throws IllegalArgumentException if an operation is invalid or its target is not present
+     */
+    public JsonObject apply(PatchRequest pr, JsonObject resource) {
+        List<String> extensions = extensionsOf(pr.getResClass());
+        for(PatchOperation po : pr.getOperations()) {
+            apply(po.getOp(), po.getPath(), po.getValue(), resource, extensions);
+        }
+
+        return resource;
+    }
+
+    private void apply(String op, String pathStr, JsonElement value, JsonObject resource, List<String> extensions) {
+        op = (op == null ? "" : op.toLowerCase());
+        if(!op.equals("add") && !op.equals("replace") && !op.equals("remove")) {
+            throw new IllegalArgumentException("Invalid patch operation " + op);
+        }
+
+        boolean remove = op.equals("remove");
+        if(!remove && value == null) {
+            throw new IllegalArgumentException("No value is present in the " + op + " operation of the path " + pathStr);
+        }
+
+        if(pathStr == null || pathStr.trim().isEmpty()) {
+            if(remove) {
+                throw new IllegalArgumentException("Path is required for remove operation");
+            }
+
+            if(!value.isJsonObject()) {
+                throw new IllegalArgumentException("Value of the " + op + " operation without a path must be an object");
+            }
+
+            for(Map.Entry<String, JsonElement> e : value.getAsJsonObject().entrySet()) {
+                String name = e.getKey();
+                JsonElement v = e.getValue();
+                if(isExtension(name, resource, extensions) && v.isJsonObject()) {
+                    JsonObject ext = getOrCreate(resource, name);
+                    for(Map.Entry<String, JsonElement> se : v.getAsJsonObject().entrySet()) {
+                        setAttribute(op, ext, se.getKey(), se.getValue());
+                    }
+                }
+                else {
+                    setAttribute(op, resource, name, v);
+                }
+            }
+
+            return;
+        }
+
+        AttributePath path = AttributePath.parse(pathStr, schemaUrnsOf(resource, extensions));
+        JsonObject container = resource;
+        if(path.getUrn() != null) {
+            String key = keyOf(resource, path.getUrn());
+            if(key == null && remove) {
+                return;
+            }
+            container = getOrCreate(resource, path.getUrn());
+        }
+
+        if(path.getFilter() == null) {
+            applyToAttribute(op, container, path, value);
+        }
+        else {
+            applyToFilteredValues(op, container, path, value);
+        }
+    }
+
+    private void applyToAttribute(String op, JsonObject container, AttributePath path, JsonElement value) {
+        if(path.getSubAttr() == null) {
+            if(op.equals("remove")) {
+                removeMember(container, path.getAttr());
+            }
+            else {
+                setAttribute(op, container, path.getAttr(), value);
+            }
+
+            return;
+        }
+
+        JsonElement target = getMember(container, path.getAttr());
+        if(target != null && target.isJsonArray()) {
+            // a sub-attribute of all the values of a multi-valued attribute
+            for(JsonElement e : target.getAsJsonArray()) {
+                if(e.isJsonObject()) {
+                    applyToSubAttribute(op, e.getAsJsonObject(), path.getSubAttr(), value);
+                }
+            }
+            return;
+        }
+
+        if(target == null || !target.isJsonObject()) {
+            if(op.equals("remove")) {
+                return;
+            }
+            target = new JsonObject();
+            putMember(container, path.getAttr(), target);
+        }
+
+        applyToSubAttribute(op, target.getAsJsonObject(), path.getSubAttr(), value);
+    }
+
+    private void applyToFilteredValues(String op, JsonObject container, AttributePath path, JsonElement value) {
+        boolean remove = op.equals("remove");
+        JsonElement target = getMember(container, path.getAttr());
+        List<JsonObject> matched = new ArrayList<JsonObject>();
+        if(target != null && target.isJsonArray()) {
+            for(JsonElement e : target.getAsJsonArray()) {
+                if(e.isJsonObject() && path.getFilter().matches(e.getAsJsonObject())) {
+                    matched.add(e.getAsJsonObject());
+                }
+            }
+        }
+
+        if(matched.isEmpty()) {
+            if(remove) {
+                return;
+            }
+            throw new IllegalArgumentException("No values of the attribute " + path.getAttr() + " match the filter of the path " + path);
+        }
+
+        if(path.getSubAttr() != null) {
+            for(JsonObject obj : matched) {
+                applyToSubAttribute(op, obj, path.getSubAttr(), value);
+            }
+            return;
+        }
+
+        if(remove) {
+            JsonArray arr = target.getAsJsonArray();
+            Iterator<JsonElement> itr = arr.iterator();
+            while(itr.hasNext()) {
+                JsonElement e = itr.next();
+                for(JsonObject m : matched) {
+                    if(e == m) {
+                        itr.remove();
+                        break;
+                    }
+                }
+            }
+
+            if(arr.size() == 0) {
+                removeMember(container, path.getAttr());
+            }
+            return;
+        }
+
+        if(!value.isJsonObject()) {
+            throw new IllegalArgumentException("Value of the " + op + " operation of the path " + path + " must be an object");
+        }
+
+        for(JsonObject obj : matched) {
+            for(Map.Entry<String, JsonElement> e : value.getAsJsonObject().entrySet()) {
+                setAttribute(op, obj, e.getKey(), e.getValue());
+            }
+        }
+    }
+
+    private void applyToSubAttribute(String op, JsonObject obj, String subAttr, JsonElement value) {
+        if(op.equals("remove")) {
+            removeMember(obj, subAttr);
+        }
+        else {
+            setAttribute(op, obj, subAttr, value);
+        }
+    }
+
+    /**
+     * Adds or replaces the value of an attribute. The values added to a multi-valued attribute
+     * are appended, a multi-valued attribute is replaced as a whole and the sub-attributes
+     * of a complex value are merged with the existing ones.
+     */
+    private void setAttribute(String op, JsonObject obj, String name, JsonElement value) {
+        if(value == null || value.isJsonNull()) {
+            removeMember(obj, name);
+            return;
+        }
+
+        JsonElement existing = getMember(obj, name);
+        if(existing == null || existing.isJsonNull()) {
+            putMember(obj, name, value.deepCopy());
+        }
+        else if(existing.isJsonArray() && op.equals("add")) {
+            JsonArray arr = existing.getAsJsonArray();
+            if(value.isJsonArray()) {
+                for(JsonElement e : value.getAsJsonArray()) {
+                    arr.add(e.deepCopy());
+                }
+            }
+            else {
+                arr.add(value.deepCopy());
+            }
+        }
+        else if(existing.isJsonObject() && value.isJsonObject()) {
+            JsonObject target = existing.getAsJsonObject();
+            for(Map.Entry<String, JsonElement> e : value.getAsJsonObject().entrySet()) {
+                if(e.getValue().isJsonNull()) {
+                    removeMember(target, e.getKey());
+                }
+                else {
+                    putMember(target, e.getKey(), e.getValue().deepCopy());
+                }
+            }
+        }
+        else {
+            putMember(obj, name, value.deepCopy());
+        }
+    }
+
+    private static List<String> extensionsOf(Class<?> resClass) {
+        List<String> lst = new ArrayList<String>();
+        if(resClass != null) {
+            for(Property p : ClassAccessor.of(resClass).getWritable()) {
+                if(p.extension != null) {
+                    lst.add(p.extension);
+                }
+            }
+        }
+
+        return lst;
+    }
+
+    private static boolean isExtension(String name, JsonObject resource, List<String> extensions) {
+        for(String ext : extensions) {
+            if(ext.equalsIgnoreCase(name)) {
+                return true;
+            }
+        }
+
+        return name.regionMatches(true, 0, "urn:", 0, 4) && keyOf(resource, name) != null;
+    }
+
+    private static List<String> schemaUrnsOf(JsonObject resource, List<String> extensions) {
+        List<String> urns = new ArrayList<String>(extensions);
+        for(String key : resource.keySet()) {
+            if(key.regionMatches(true, 0, "urn:", 0, 4)) {
+                urns.add(key);
+            }
+        }
+
+        return urns;
+    }
+
+    private static JsonObject getOrCreate(JsonObject obj, String name) {
+        JsonElement je = getMember(obj, name);
+        if(je == null || !je.isJsonObject()) {
+            je = new JsonObject();
+            putMember(obj, name, je);
+        }
+
+        return je.getAsJsonObject();
+    }
+
+    /**
+     * Finds the key of the member with the given name ignoring the case
+     */
+    private static String keyOf(JsonObject obj, String name) {
+        if(obj.has(name)) {
+            return name;
+        }
+
+        for(String key : obj.keySet()) {
+            if(key.equalsIgnoreCase(name)) {
+                return key;
+            }
+        }
+
+        return null;
+    }
+
+    private static JsonElement getMember(JsonObject obj, String name) {
+        String key = keyOf(obj, name);
+        return (key == null ? null : obj.get(key));
+    }
+
+    private static void putMember(JsonObject obj, String name, JsonElement value) {
+        String key = keyOf(obj, name);
+        obj.add(key == null ? name : key, value);
+    }
+
+    private static void removeMember(JsonObject obj, String name) {
+        String key = keyOf(obj, name);
+        if(key != null) {
+            obj.remove(key);
+        }
+    }
+}
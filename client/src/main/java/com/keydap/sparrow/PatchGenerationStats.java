@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2018 Keydap Software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * See LICENSE file for details.
+ */
+package com.keydap.sparrow;
+
+/**
+ * A snapshot of the statistics of the patches generated by {@link ParallelPatchGenerator}.
+ *
+ * @author Kiran Ayyagari (kayyagari@keydap.com)
+ */
+public class PatchGenerationStats {
+    private long pairs;
+    private long emptyPatches;
+    private long elapsedNanos;
+
+    /*default protection*/ PatchGenerationStats(long pairs, long emptyPatches, long elapsedNanos) {
+        this.pairs = pairs;
+        this.emptyPatches = emptyPatches;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * @return the number of pairs diffed
+     */
+    public long getPairs() {
+        return pairs;
+    }
+
+    /**
+     * @return the number of pairs that had no changes
+     */
+    public long getEmptyPatches() {
+        return emptyPatches;
+    }
+
+    /**
+     * @return the time in nanoseconds during which the pairs were being diffed
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * @return the number of pairs diffed per second
+     */
+    public double getPairsPerSecond() {
+        if(elapsedNanos == 0) {
+            return 0;
+        }
+
+        return pairs * 1_000_000_000.0 / elapsedNanos;
+    }
+
+    /**
+     * @return the ratio of the pairs without changes to all the diffed pairs
+     */
+    public double getEmptyRatio() {
+        if(pairs == 0) {
+            return 0;
+        }
+
+        return (double) emptyPatches / pairs;
+    }
+
+    @Override
+    public String toString() {
+        return "PatchGenerationStats [pairs=" + pairs + ", emptyPatches=" + emptyPatches
+                + ", elapsedNanos=" + elapsedNanos + ", pairsPerSecond=" + getPairsPerSecond()
+                + ", emptyRatio=" + getEmptyRatio() + "]";
+    }
+}
@@ -6,57 +6,45 @@
  */
 package com.keydap.sparrow;
 
-import java.lang.reflect.Field;
-import java.lang.reflect.Modifier;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
-import com.google.gson.Gson;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.keydap.sparrow.ClassAccessor.Kind;
+import com.keydap.sparrow.ClassAccessor.Property;
 import com.keydap.sparrow.PatchRequest.PatchOperation;
 
 /**
+ * Generates a PatchRequest by comparing the modified and original instances of a resource.
+ * The fields are read through the per-class accessors of {@link ClassAccessor} and the
+ * changed values are converted to JSON directly, reflection is used only for the fields
+ * whose getters cannot be bound.
  *
  * @author Kiran Ayyagari (kayyagari@keydap.com)
  */
 @SuppressWarnings({"unchecked", "rawtypes"})
 public class PatchGenerator {
-    private static final String OPERATOR_AND = " AND ";
-
-    private static final String OPERATOR_EQ = " EQ ";
-
-    private static final Gson serializer = new Gson();
+    /** flag to pair the elements of multi-valued complex attributes by their "value" */
+    private boolean keyedDiff;
     
-    private static final Map<Class, List<Field>> fieldMap = new HashMap<>();
+    public PatchGenerator() {
+        this(false);
+    }
     
-    private List<Field> getFields(Class cls) {
-        List<Field> fields = fieldMap.get(cls);
-        if(fields == null) {
-            fields = new ArrayList<>();
-            Field[] tmp = cls.getDeclaredFields();
-            for(Field f : tmp) {
-                // skip static fields
-                if(Modifier.isStatic(f.getModifiers())) {
-                    continue;
-                }
-
-                // skip readonly fields
-                if(f.isAnnotationPresent(ReadOnly.class)) {
-                    continue;
-                }
-                
-                f.setAccessible(true);
-                fields.add(f);
-            }
-            
-            fieldMap.put(cls, fields);
-        }
-        
-        return fields;
+    /**
+     * Creates a PatchGenerator
+     * 
+     * @param keyedDiff flag to pair the elements of multi-valued complex attributes by their "value"
+     *                  sub-attribute when no key is configured using {@link ComplexType#key()}.
+     *                  When false, such elements are compared by position
+     */
+    public PatchGenerator(boolean keyedDiff) {
+        this.keyedDiff = keyedDiff;
     }
     
     public PatchRequest create(String id, Object modified, Object original) {
@@ -78,6 +66,173 @@ public class PatchGenerator {
         }
     }
 
+    /**
+     * Creates a PatchRequest from the changes recorded by the given resource, unlike
+     * {@link #create(String, Object, Object, String)} this doesn't need the original
+     * resource and doesn't compare the attributes that were not modified.
+     * 
+     * The elements of multi-valued attributes modified in place are identified using
+     * the key of their complex type, or their "value" sub-attribute, provided that the
+     * key itself was not modified, otherwise all the values of that attribute are replaced.
+     * 
+     * @param id identifier of the resource
+     * @param resource the resource
+     * @param etag the value of If-Match header, optional
+     * @return the patch request
+     * @throws IllegalStateException if tracking of changes was not started on the resource
+     */
+    public PatchRequest createFromChanges(String id, Tracked resource, String etag) {
+        if(resource.getChangeLog() == null) {
+            throw new IllegalStateException("Changes of the resource are not being tracked");
+        }
+        
+        try {
+            PatchRequest pr = new PatchRequest(id, resource.getClass(), etag);
+            collectChanges(pr, "", resource);
+            return pr;
+        }
+        catch(Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+    
+    private void collectChanges(PatchRequest pr, String prefix, Tracked obj) throws Exception {
+        ChangeLog log = obj.getChangeLog();
+        if(log == null) {
+            return;
+        }
+        
+        for(Property p : ClassAccessor.of(obj.getClass()).getWritable()) {
+            String path = (p.extension != null) ? p.extension : prefix + p.name;
+            Object v = p.get(obj);
+            if(log.isReplaced(p.name)) {
+                if(v == null) {
+                    updatePr("remove", pr, path, null);
+                }
+                else {
+                    updatePr("replace", pr, path, v);
+                }
+            }
+            else if(v == null) {
+                continue;
+            }
+            else if(p.kind == Kind.LIST) {
+                collectListChanges(pr, path, log, p.name, (List) v);
+            }
+            else if(v instanceof Tracked) {
+                if(p.extension != null) {
+                    collectChanges(pr, path + ":", (Tracked) v);
+                }
+                else {
+                    collectComplexChanges(pr, path, (Tracked) v);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Replaces the modified sub-attributes of a complex value together and removes the ones set to null
+     */
+    private void collectComplexChanges(PatchRequest pr, String path, Tracked value) throws Exception {
+        ChangeLog log = value.getChangeLog();
+        if(log == null || log.isEmpty()) {
+            return;
+        }
+        
+        JsonObject obj = new JsonObject();
+        for(Property p : ClassAccessor.of(value.getClass()).getWritable()) {
+            if(!log.isReplaced(p.name)) {
+                continue;
+            }
+            
+            Object v = p.get(value);
+            if(v == null) {
+                updatePr("remove", pr, path + "." + p.name, null);
+            }
+            else {
+                obj.add(p.name, ClassAccessor.toJson(v));
+            }
+        }
+        
+        if(obj.size() > 0) {
+            updatePr("replace", pr, path, obj);
+        }
+    }
+    
+    private void collectListChanges(PatchRequest pr, String path, ChangeLog log, String name, List values) throws Exception {
+        List<Object> removed = log.getRemoved(name);
+        List<Object> added = log.getAdded(name);
+        
+        // elements modified in place
+        List<Object> modified = null;
+        for(Object e : values) {
+            if(e instanceof Tracked) {
+                ChangeLog elmLog = ((Tracked) e).getChangeLog();
+                if(elmLog != null && !elmLog.isEmpty() && !log.isAdded(name, e)) {
+                    if(modified == null) {
+                        modified = new ArrayList<Object>();
+                    }
+                    modified.add(e);
+                }
+            }
+        }
+        
+        if(modified != null) {
+            Property[] keys = ClassAccessor.of(modified.get(0).getClass()).getKeys(true);
+            for(Object e : modified) {
+                if(!isIdentifiable(e, keys)) {
+                    updatePr("replace", pr, path, values);
+                    return;
+                }
+            }
+        }
+        
+        for(Object e : removed) {
+            if(e != null) {
+                Property[] keys = ClassAccessor.of(e.getClass()).getKeys(keyedDiff);
+                if(keys.length == 0) {
+                    updatePr("remove", pr, buildPathWithFilter(path, e), null);
+                }
+                else {
+                    updatePr("remove", pr, buildPathWithFilter(path, e, keys), null);
+                }
+            }
+        }
+        
+        if(modified != null) {
+            Property[] keys = ClassAccessor.of(modified.get(0).getClass()).getKeys(true);
+            for(Object e : modified) {
+                collectComplexChanges(pr, buildPathWithFilter(path, e, keys), (Tracked) e);
+            }
+        }
+        
+        if(!added.isEmpty()) {
+            JsonArray arr = new JsonArray();
+            for(Object e : added) {
+                arr.add(ClassAccessor.toJson(e));
+            }
+            updatePr("add", pr, path, arr);
+        }
+    }
+    
+    /**
+     * Checks if the given element modified in place can still be identified using its key
+     */
+    private boolean isIdentifiable(Object e, Property[] keys) {
+        if(keys.length == 0) {
+            return false;
+        }
+        
+        ChangeLog log = ((Tracked) e).getChangeLog();
+        for(Property k : keys) {
+            if(log.isReplaced(k.name) || k.get(e) == null) {
+                return false;
+            }
+        }
+        
+        return true;
+    }
+    
     private void updatePr(String op, PatchRequest pr, String pathStr, Object value) {
 
         JsonElement jeVal = null;
@@ -88,7 +243,7 @@ public class PatchGenerator {
         switch (op) {
         case "add":
             if(jeVal == null) {
-                jeVal = serializer.toJsonTree(value);
+                jeVal = ClassAccessor.toJson(value);
             }
             pr.add(pathStr, jeVal);
             break;
@@ -99,7 +254,7 @@ public class PatchGenerator {
             
         case "replace":
             if(jeVal == null) {
-                jeVal = serializer.toJsonTree(value);
+                jeVal = ClassAccessor.toJson(value);
             }
             pr.replace(pathStr, jeVal);
             break;
@@ -111,16 +266,16 @@ public class PatchGenerator {
     
     private void _generate(PatchRequest pr, Object modified, Object original) throws Exception {
         Class cls = modified.getClass();
-        for(Field f : getFields(cls)) {
-            Object m = f.get(modified);
-            Object o = f.get(original);
+        for(Property p : ClassAccessor.of(cls).getWritable()) {
+            Object m = p.get(modified);
+            Object o = p.get(original);
             
-            String path = f.getName();
-            Class fType = f.getType();
+            String path = p.name;
+            Class fType = p.type;
             
-            Extension ext = f.getAnnotation(Extension.class);
+            String ext = p.extension;
             if(ext != null) {
-                path = ext.value();
+                path = ext;
             }
             
             //System.out.println("path -> " + path);
@@ -133,7 +288,7 @@ public class PatchGenerator {
             else if((m == null) && (o != null)) {
                 updatePr("remove", pr, path, null);
             }
-            else if(fType.isAssignableFrom(List.class)) {
+            else if(p.kind == Kind.LIST) {
                     diffCollections(pr, path, (List)m, (List)o);
             }
             else if(ext != null) {
@@ -152,8 +307,8 @@ public class PatchGenerator {
     
     private void diffNonNullObjects(PatchRequest pr, String path, Object modified, Object original) throws Exception {
         Class cls = modified.getClass();
-        boolean pt = isPrimitive(cls);
-        if(pt) {
+        ClassAccessor ca = ClassAccessor.of(cls);
+        if(ca.getKind() == Kind.SIMPLE) {
             if(modified.equals(original)) {
                 return;
             }
@@ -164,25 +319,28 @@ public class PatchGenerator {
         
         // construct path like ims[type=\"home\"]
         path = buildPathWithFilter(path, original);
-        
+        diffFields(pr, path, ca, modified, original);
+    }
+    
+    private void diffFields(PatchRequest pr, String path, ClassAccessor ca, Object modified, Object original) throws Exception {
         JsonObject obj = new JsonObject();
-        for(Field f : getFields(cls)) {
-            Object m = f.get(modified);
-            Object o = f.get(original);
+        for(Property p : ca.getWritable()) {
+            Object m = p.get(modified);
+            Object o = p.get(original);
             
-            String name = f.getName();
+            String name = p.name;
             
             if(m == o) {
                 continue;
             }
             else if((m != null) && (o == null)) {
-                obj.add(name, serializer.toJsonTree(m));
+                obj.add(name, ClassAccessor.toJson(m));
             }
             else if((m == null) && (o != null)) {
                 // do nothing
             }
             else if(!m.equals(o)) {
-                obj.add(name, serializer.toJsonTree(m));
+                obj.add(name, ClassAccessor.toJson(m));
             }
         }
         
@@ -191,55 +349,35 @@ public class PatchGenerator {
         }
     }
     
-    private boolean isPrimitive(Class c) {
-        if(c.isPrimitive()) {
-            return true;
-        }
-        
-        Class[] primitiveTypes = {String.class, Integer.class, Double.class, Boolean.class, Number.class, Float.class, Byte.class};
-        for(Class p : primitiveTypes) {
-            if(c == p) {
-                return true;
-            }
-        }
-        
-        return false;
-    }
-    
     /*default protected*/ String buildPathWithFilter(String fieldName, Object original) throws Exception {
         // for non-multivalued complextype(e.g Name) return the fieldName 
-        ComplexType ct = original.getClass().getAnnotation(ComplexType.class);
-        if(ct != null && !ct.multival()) {
+        ClassAccessor ca = ClassAccessor.of(original.getClass());
+        if(ca.isComplexType() && !ca.isMultival()) {
             return fieldName;
         }
         
-        StringBuilder pathBuilder = new StringBuilder(fieldName).append("[");
-        for(Field f : getFields(original.getClass())) {
-            String name = f.getName();
-            Class fType = f.getType();
-
-            Object o = f.get(original);
-            if(o == null) {
-                continue;
-            }
-            
-            pathBuilder.append(name).append(OPERATOR_EQ);
-            if(fType == String.class) {
-                String val = o.toString().replaceAll("\"", "\\\\\"");
-                pathBuilder.append("\"").append(val).append("\"");
-            }
-            else {
-                pathBuilder.append(o);
+        return buildPathWithFilter(fieldName, original, ca.getWritable());
+    }
+    
+    private String buildPathWithFilter(String fieldName, Object original, Property[] filterFields) throws Exception {
+        ValueFilter[] comparisons = new ValueFilter[filterFields.length];
+        int count = 0;
+        for(Property p : filterFields) {
+            Object o = p.get(original);
+            if(o != null) {
+                comparisons[count++] = ValueFilter.eq(p.name, o);
             }
-            
-            pathBuilder.append(OPERATOR_AND);
         }
         
-        int pos = pathBuilder.lastIndexOf(OPERATOR_AND);
-        pathBuilder.delete(pos, pathBuilder.length());
-        pathBuilder.append("]");
+        if(count == 0) {
+            throw new IllegalArgumentException("A value of the attribute " + fieldName + " has no sub-attributes to be used in a filter");
+        }
+        
+        if(count < comparisons.length) {
+            comparisons = Arrays.copyOf(comparisons, count);
+        }
 
-        return pathBuilder.toString();
+        return new AttributePath(fieldName, ValueFilter.and(comparisons)).toString();
     }
     
     private void diffCollections(PatchRequest pr, String path, List m, List o) throws Exception {
@@ -252,6 +390,10 @@ public class PatchGenerator {
             updatePr("remove", pr, path, null);
             return;
         }
+        
+        if(diffKeyedCollections(pr, path, m, o)) {
+            return;
+        }
 
         JsonArray arr = new JsonArray();
         for(int i=0; i< mSize; i++) {
@@ -268,7 +410,7 @@ public class PatchGenerator {
             }
             else {
                 if(mObj != null) {
-                    arr.add(serializer.toJsonTree(mObj));
+                    arr.add(ClassAccessor.toJson(mObj));
                 }
             }
         }
@@ -299,4 +441,100 @@ public class PatchGenerator {
             }
         }*/
     }
+    
+    /**
+     * Pairs the elements of the given lists using the key of their complex type, only the
+     * elements that are added, removed or modified result in patch operations.
+     * 
+     * @return false if the elements have no key or if any element has a null, partial or duplicate key,
+     *         in which case no operations are generated
+     */
+    private boolean diffKeyedCollections(PatchRequest pr, String path, List m, List o) throws Exception {
+        Class elmType = null;
+        for(Object obj : m) {
+            if(obj != null) {
+                elmType = obj.getClass();
+                break;
+            }
+        }
+        
+        if(elmType == null) {
+            return false;
+        }
+        
+        ClassAccessor ca = ClassAccessor.of(elmType);
+        Property[] keys = ca.getKeys(keyedDiff);
+        if(keys.length == 0) {
+            return false;
+        }
+        
+        Map<Object, Object> originals = indexByKey(o, elmType, keys);
+        if(originals == null) {
+            return false;
+        }
+        
+        Map<Object, Object> modifications = indexByKey(m, elmType, keys);
+        if(modifications == null) {
+            return false;
+        }
+        
+        for(Map.Entry<Object, Object> e : originals.entrySet()) {
+            if(!modifications.containsKey(e.getKey())) {
+                updatePr("remove", pr, buildPathWithFilter(path, e.getValue(), keys), null);
+            }
+        }
+        
+        JsonArray arr = new JsonArray();
+        for(Map.Entry<Object, Object> e : modifications.entrySet()) {
+            Object mObj = e.getValue();
+            Object oObj = originals.get(e.getKey());
+            if(oObj == null) {
+                arr.add(ClassAccessor.toJson(mObj));
+            }
+            else {
+                diffFields(pr, buildPathWithFilter(path, oObj, keys), ca, mObj, oObj);
+            }
+        }
+        
+        if(arr.size() > 0) {
+            updatePr("add", pr, path, arr);
+        }
+        
+        return true;
+    }
+    
+    /**
+     * Maps the elements of the given list by their key
+     * 
+     * @return the map of elements or null if any of the elements cannot be identified
+     */
+    private Map<Object, Object> indexByKey(List lst, Class elmType, Property[] keys) {
+        Map<Object, Object> map = new LinkedHashMap<>();
+        for(Object obj : lst) {
+            if(obj == null || obj.getClass() != elmType) {
+                return null;
+            }
+            
+            Object key;
+            if(keys.length == 1) {
+                key = keys[0].get(obj);
+            }
+            else {
+                Object[] values = new Object[keys.length];
+                for(int i = 0; i < keys.length; i++) {
+                    values[i] = keys[i].get(obj);
+                    if(values[i] == null) {
+                        return null;
+                    }
+                }
+                key = Arrays.asList(values);
+            }
+            
+            if(key == null || map.put(key, obj) != null) {
+                return null;
+            }
+        }
+        
+        return map;
+    }
 }
@@ -8,11 +8,16 @@ package com.keydap.sparrow;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import com.google.gson.annotations.SerializedName;
+import com.keydap.sparrow.ClassAccessor.Kind;
+import com.keydap.sparrow.ClassAccessor.Property;
 
 /**
  * SCIM v2 Patch request
@@ -38,13 +43,21 @@ public class PatchRequest {
     /** the value of the If-None-Match header */
     private transient String ifMatch;
 
-    private transient JsonParser parser = new JsonParser();
+    /** the policy of retaining the raw body of the response */
+    private transient BodyRetention bodyRetention;
+
+    /** parser of the JSON values given as strings, it is stateless hence shared */
+    private static final JsonParser parser = new JsonParser();
     
-    class PatchOperation {
+    static class PatchOperation {
         private String op;
         private String path;
         private JsonElement value;
 
+        /** used by the codecs while reading */
+        private PatchOperation() {
+        }
+
         public PatchOperation(String op, String path) {
             this(op, path, null);
         }
@@ -72,6 +85,10 @@ public class PatchRequest {
         }
     }
 
+    /** used by the codecs while reading */
+    private PatchRequest() {
+    }
+
     public PatchRequest(String id, Class<?> resClass) {
         this(id, resClass, null);
     }
@@ -102,6 +119,19 @@ public class PatchRequest {
         this.ifMatch = ifMatch;
     }
 
+    public BodyRetention getBodyRetention() {
+        return bodyRetention;
+    }
+
+    /**
+     * Overrides the client's policy of retaining the raw body of the response
+     * 
+     * @param bodyRetention the policy, null to use the client's policy
+     */
+    public void setBodyRetention(BodyRetention bodyRetention) {
+        this.bodyRetention = bodyRetention;
+    }
+
     public void setAttributes(String attributes) {
         if(attributes != null) {
             attributes = attributes.trim();
@@ -161,6 +191,177 @@ public class PatchRequest {
         operations.add(po);
     }
 
+    /**
+     * Merges and cancels the operations targeting the same path without changing the
+     * result of applying the patch.
+     * <ul>
+     *   <li>a remove drops all the preceding operations on the same path and its sub-attributes</li>
+     *   <li>adds and replaces of complex values on the same path are merged into one operation,
+     *   only when the path selects values using a filter or names a single-valued complex
+     *   attribute of the resource class</li>
+     *   <li>adds of multiple values on the same path are merged into one operation</li>
+     *   <li>a replace of a simple value or of all the values of a multi-valued attribute
+     *   supersedes the preceding add or replace on the same path</li>
+     *   <li>all other operations, including those without a path, are kept as they are</li>
+     * </ul>
+     * Operations are merged only when no operation on a related path, i.e a parent or a
+     * sub-attribute, lies between them.
+     */
+    public void compact() {
+        List<PatchOperation> result = new ArrayList<PatchOperation>(operations.size());
+        for(PatchOperation po : operations) {
+            String path = pathOf(po);
+            if("remove".equals(po.op)) {
+                for(int i = result.size() - 1; i >= 0; i--) {
+                    String prevPath = pathOf(result.get(i));
+                    if(prevPath.equals(path) || isSubPath(prevPath, path)) {
+                        result.remove(i);
+                    }
+                }
+                result.add(po);
+                continue;
+            }
+
+            int prev = -1;
+            for(int i = result.size() - 1; i >= 0; i--) {
+                String prevPath = pathOf(result.get(i));
+                if(prevPath.equals(path)) {
+                    prev = i;
+                    break;
+                }
+
+                if(isRelated(prevPath, path)) {
+                    break;
+                }
+            }
+
+            PatchOperation merged = null;
+            if(prev >= 0 && !"remove".equals(result.get(prev).op)) {
+                merged = merge(result.get(prev), po);
+            }
+
+            if(merged != null) {
+                result.set(prev, merged);
+            }
+            else {
+                result.add(po);
+            }
+        }
+
+        operations = result;
+    }
+
+    private PatchOperation merge(PatchOperation prev, PatchOperation cur) {
+        JsonElement pv = prev.value;
+        JsonElement cv = cur.value;
+        if(pv == null || cv == null || cur.path == null) {
+            return null;
+        }
+
+        if(pv.isJsonObject() && cv.isJsonObject()) {
+            // the values of a multi-valued attribute are not merged
+            if(!isSingleComplex(cur.path)) {
+                return null;
+            }
+
+            JsonObject obj = new JsonObject();
+            for(Map.Entry<String, JsonElement> e : pv.getAsJsonObject().entrySet()) {
+                obj.add(e.getKey(), e.getValue());
+            }
+            for(Map.Entry<String, JsonElement> e : cv.getAsJsonObject().entrySet()) {
+                obj.add(e.getKey(), e.getValue());
+            }
+
+            String op = ("replace".equals(prev.op) || "replace".equals(cur.op)) ? "replace" : "add";
+            return new PatchOperation(op, cur.path, obj);
+        }
+
+        if(pv.isJsonArray() && cv.isJsonArray() && "add".equals(cur.op)) {
+            JsonArray arr = new JsonArray();
+            arr.addAll(pv.getAsJsonArray());
+            arr.addAll(cv.getAsJsonArray());
+            return new PatchOperation(prev.op, cur.path, arr);
+        }
+
+        // a replace of a complex value only replaces the given sub-attributes
+        if("replace".equals(cur.op) && !cv.isJsonObject()) {
+            return cur;
+        }
+
+        return null;
+    }
+
+    /**
+     * Checks if the given path selects the values using a filter or names a single-valued
+     * complex attribute of the resource class, whose sub-attributes can be merged
+     */
+    private boolean isSingleComplex(String path) {
+        if(path.endsWith("]")) {
+            return true;
+        }
+
+        if(resClass == null || path.indexOf('[') >= 0) {
+            return false;
+        }
+
+        ClassAccessor ca = ClassAccessor.of(resClass);
+        int colon = path.lastIndexOf(':');
+        if(colon > 0) {
+            // the attribute of an extension
+            String urn = path.substring(0, colon);
+            ClassAccessor ext = null;
+            for(Property p : ca.getSerializable()) {
+                if(urn.equalsIgnoreCase(p.extension)) {
+                    ext = ClassAccessor.of(p.type);
+                    break;
+                }
+            }
+
+            if(ext == null) {
+                return false;
+            }
+            ca = ext;
+            path = path.substring(colon + 1);
+        }
+
+        if(path.indexOf('.') >= 0) {
+            // a sub-attribute
+            return false;
+        }
+
+        for(Property p : ca.getSerializable()) {
+            if(p.name.equalsIgnoreCase(path)) {
+                return p.kind == Kind.COMPLEX;
+            }
+        }
+
+        return false;
+    }
+
+    private static String pathOf(PatchOperation po) {
+        return po.path == null ? "" : po.path;
+    }
+
+    private static boolean isRelated(String p1, String p2) {
+        return p1.isEmpty() || p2.isEmpty() || isSubPath(p1, p2) || isSubPath(p2, p1);
+    }
+
+    /**
+     * Checks if the given path is a sub-attribute or a filtered value of the given parent path
+     */
+    private static boolean isSubPath(String path, String parent) {
+        if(parent.isEmpty()) {
+            return true;
+        }
+
+        if(path.length() <= parent.length() || !path.startsWith(parent)) {
+            return false;
+        }
+
+        char c = path.charAt(parent.length());
+        return (c == '.' || c == '[' || c == ':');
+    }
+
     @Override
     public String toString() {
         return new Gson().toJson(this);
@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2018 Keydap Software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * See LICENSE file for details.
+ */
+package com.keydap.sparrow;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.config.Registry;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+
+/**
+ * A pooling connection manager that records the time spent by the
+ * requests while waiting to lease a connection.
+ *
+ * @author Kiran Ayyagari (kayyagari@keydap.com)
+ */
+/*default protection*/ class PooledConnectionManager extends PoolingHttpClientConnectionManager {
+    private AtomicLong leaseCount = new AtomicLong();
+    private AtomicLong leaseTimeouts = new AtomicLong();
+    private AtomicLong totalWaitNanos = new AtomicLong();
+    private AtomicLong maxWaitNanos = new AtomicLong();
+
+    PooledConnectionManager(Registry<ConnectionSocketFactory> registry, ClientConfig config) {
+        super(registry);
+        setMaxTotal(config.getMaxConnTotal());
+        setDefaultMaxPerRoute(config.getMaxConnPerRoute());
+        setValidateAfterInactivity(config.getValidateAfterInactivity());
+    }
+
+    @Override
+    public ConnectionRequest requestConnection(HttpRoute route, Object state) {
+        final ConnectionRequest connReq = super.requestConnection(route, state);
+        return new ConnectionRequest() {
+            @Override
+            public HttpClientConnection get(long timeout, TimeUnit tunit)
+                    throws InterruptedException, ExecutionException, ConnectionPoolTimeoutException {
+                long start = System.nanoTime();
+                try {
+                    HttpClientConnection conn = connReq.get(timeout, tunit);
+                    leaseCount.incrementAndGet();
+                    return conn;
+                }
+                catch(ConnectionPoolTimeoutException e) {
+                    leaseTimeouts.incrementAndGet();
+                    throw e;
+                }
+                finally {
+                    long waited = System.nanoTime() - start;
+                    totalWaitNanos.addAndGet(waited);
+                    maxWaitNanos.accumulateAndGet(waited, Math::max);
+                }
+            }
+
+            @Override
+            public boolean cancel() {
+                return connReq.cancel();
+            }
+        };
+    }
+
+    ConnectionPoolStats getPoolStats() {
+        PoolStats ps = getTotalStats();
+        return new ConnectionPoolStats(ps, leaseCount.get(), leaseTimeouts.get(), totalWaitNanos.get(), maxWaitNanos.get());
+    }
+}
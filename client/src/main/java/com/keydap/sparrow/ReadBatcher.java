@@ -0,0 +1,270 @@
+/*
+ * Copyright (c) 2018 Keydap Software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * See LICENSE file for details.
+ */
+package com.keydap.sparrow;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import org.apache.http.Header;
+import org.apache.http.HttpStatus;
+
+/**
+ * Collects the lookups of resources by their identifiers submitted from any number of threads
+ * and fetches them together using one search request with a filter of the form
+ * <pre>id EQ "a" OR id EQ "b" OR ...</pre>
+ * either when the batch is full or after the given delay. Each caller's future is completed
+ * with a response containing its own resource, or with a response having the status code 404
+ * if the resource doesn't exist.
+ * 
+ * A batch is full when it contains maxBatchSize identifiers or when the length of its filter
+ * reaches maxFilterLength, a batch whose filter is longer than maxFilterLength is fetched using
+ * multiple search requests. Identifiers that are not returned because the server limited the
+ * number of results are fetched individually.
+ *
+ * @author Kiran Ayyagari (kayyagari@keydap.com)
+ */
+public class ReadBatcher<T> extends Batcher<ReadBatcher.Entry<T>> {
+    private SparrowClient client;
+
+    private Class<T> resClas;
+
+    private String endpoint;
+
+    /** the comma separated list of attributes to be fetched, null for the default set */
+    private String attributes;
+
+    private int maxFilterLength;
+
+    private Field idField;
+
+    /** the length of the operator joining the clauses of the filter */
+    private static final int OR_LENGTH = " OR ".length();
+
+    /**
+     * Creates a batcher that fetches all the default attributes of the resources
+     * 
+     * @param client the client used for sending the search requests
+     * @param resClas the type of the resources to be fetched
+     * @param maxBatchSize maximum number of identifiers in a search request
+     * @param maxFilterLength maximum length of the filter in a search request
+     * @param maxDelayMillis maximum time in milliseconds a lookup waits before it is sent
+     */
+    public ReadBatcher(SparrowClient client, Class<T> resClas, int maxBatchSize, int maxFilterLength, long maxDelayMillis) {
+        this(client, resClas, maxBatchSize, maxFilterLength, maxDelayMillis, 1);
+    }
+
+    /**
+     * Creates a batcher
+     * 
+     * @param client the client used for sending the search requests
+     * @param resClas the type of the resources to be fetched
+     * @param maxBatchSize maximum number of identifiers in a search request
+     * @param maxFilterLength maximum length of the filter in a search request
+     * @param maxDelayMillis maximum time in milliseconds a lookup waits before it is sent
+     * @param concurrency maximum number of search requests sent concurrently
+     * @param attributes the names of the attributes to be fetched, optional
+     */
+    public ReadBatcher(SparrowClient client, Class<T> resClas, int maxBatchSize, int maxFilterLength, long maxDelayMillis, int concurrency, String... attributes) {
+        super(maxBatchSize, maxDelayMillis, concurrency);
+        if(maxFilterLength <= 0) {
+            throw new IllegalArgumentException("Invalid maximum filter length " + maxFilterLength);
+        }
+
+        this.client = client;
+        this.resClas = resClas;
+        this.maxFilterLength = maxFilterLength;
+        this.endpoint = client.getEndpoint(resClas);
+
+        if(attributes != null && attributes.length > 0) {
+            StringBuilder sb = new StringBuilder("id");
+            for(String at : attributes) {
+                if(!"id".equalsIgnoreCase(at)) {
+                    sb.append(',').append(at);
+                }
+            }
+            this.attributes = sb.toString();
+        }
+
+        try {
+            idField = resClas.getDeclaredField("id");
+            idField.setAccessible(true);
+        }
+        catch(NoSuchFieldException e) {
+            throw new IllegalArgumentException("The resource class " + resClas.getName() + " has no id field");
+        }
+    }
+
+    /*default protection*/ static class Entry<T> {
+        String id;
+        ValueFilter clause;
+        int clauseLength;
+        CompletableFuture<Response<T>> future = new CompletableFuture<Response<T>>();
+
+        Entry(String id) {
+            this.id = id;
+            this.clause = ValueFilter.eq("id", id);
+            this.clauseLength = clause.toString().length();
+        }
+    }
+
+    /**
+     * Fetches the resource specified by the given identifier
+     * 
+     * @param id identifier of the resource
+     * @return the future response
+     */
+    public CompletableFuture<Response<T>> getResource(String id) {
+        if(id == null) {
+            throw new IllegalArgumentException("Resource identifier cannot be null");
+        }
+
+        Entry<T> e = new Entry<T>(id);
+        submit(e);
+        return e.future;
+    }
+
+    @Override
+    protected boolean isFull(int size, long weight, int maxBatchSize) {
+        if(size >= maxBatchSize) {
+            return true;
+        }
+
+        // the weight counts an operator for every clause, the first one has none
+        return (weight - OR_LENGTH) >= maxFilterLength;
+    }
+
+    @Override
+    protected int weightOf(Entry<T> e) {
+        return OR_LENGTH + e.clauseLength;
+    }
+
+    @Override
+    protected void process(List<Entry<T>> batch) {
+        // group the duplicate lookups
+        Map<String, List<Entry<T>>> lookups = new LinkedHashMap<String, List<Entry<T>>>();
+        for(Entry<T> e : batch) {
+            List<Entry<T>> lst = lookups.get(e.id);
+            if(lst == null) {
+                lst = new ArrayList<Entry<T>>(1);
+                lookups.put(e.id, lst);
+            }
+            lst.add(e);
+        }
+
+        List<ValueFilter> clauses = new ArrayList<ValueFilter>();
+        List<String> ids = new ArrayList<String>();
+        int filterLength = 0;
+        for(List<Entry<T>> lst : lookups.values()) {
+            Entry<T> e = lst.get(0);
+            int len = filterLength + (filterLength == 0 ? 0 : OR_LENGTH) + e.clauseLength;
+            if(len > maxFilterLength && !ids.isEmpty()) {
+                fetch(clauses, ids, lookups);
+                clauses.clear();
+                ids.clear();
+                len = e.clauseLength;
+            }
+
+            filterLength = len;
+            clauses.add(e.clause);
+            ids.add(e.id);
+        }
+
+        if(!ids.isEmpty()) {
+            fetch(clauses, ids, lookups);
+        }
+    }
+
+    @Override
+    protected void failed(List<Entry<T>> batch, Exception ex) {
+        for(Entry<T> e : batch) {
+            e.future.completeExceptionally(ex);
+        }
+    }
+
+    private void fetch(List<ValueFilter> clauses, List<String> ids, Map<String, List<Entry<T>>> lookups) {
+        SearchRequest sr = new SearchRequest();
+        sr.setFilter(ValueFilter.or(clauses.toArray(new ValueFilter[clauses.size()])).toString());
+        sr.setCount(ids.size());
+        sr.setAttributes(attributes);
+
+        SearchResponse<T> resp = client._searchResource(sr, endpoint, resClas);
+        if(resp.getHttpCode() != HttpStatus.SC_OK) {
+            for(String id : ids) {
+                complete(lookups.get(id), copyFailure(resp));
+            }
+            return;
+        }
+
+        Map<String, T> found = new HashMap<String, T>();
+        if(resp.getResources() != null) {
+            for(T t : resp.getResources()) {
+                found.put(getId(t), t);
+            }
+        }
+
+        // the server might have returned only a subset of the matching resources
+        boolean truncated = resp.getTotalResults() > found.size();
+        for(String id : ids) {
+            Response<T> r;
+            T t = found.get(id);
+            if(t != null) {
+                r = new Response<T>();
+                r.setHttpCode(HttpStatus.SC_OK);
+                r.setResource(t);
+                r.setHeaders(resp.getHeaders());
+            }
+            else if(truncated) {
+                if(attributes == null) {
+                    r = client.getResource(id, resClas);
+                }
+                else {
+                    r = client.getResource(id, null, resClas, true, attributes.split(","));
+                }
+            }
+            else {
+                r = new Response<T>();
+                r.setHttpCode(HttpStatus.SC_NOT_FOUND);
+                Error err = new Error();
+                err.setStatus(String.valueOf(HttpStatus.SC_NOT_FOUND));
+                err.setDetail("Resource with ID " + id + " not found");
+                r.setError(err);
+                r.setHeaders(new Header[0]);
+            }
+
+            complete(lookups.get(id), r);
+        }
+    }
+
+    private void complete(List<Entry<T>> entries, Response<T> r) {
+        for(Entry<T> e : entries) {
+            e.future.complete(r);
+        }
+    }
+
+    private Response<T> copyFailure(SearchResponse<T> resp) {
+        Response<T> r = new Response<T>();
+        r.setHttpCode(resp.getHttpCode());
+        r.setError(resp.getError());
+        r.setHttpBody(resp.getHttpBody());
+        r.setHeaders(resp.getHeaders());
+        return r;
+    }
+
+    private String getId(T t) {
+        try {
+            return (String) idField.get(t);
+        }
+        catch(IllegalAccessException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
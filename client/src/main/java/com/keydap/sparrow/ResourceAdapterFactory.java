@@ -0,0 +1,241 @@
+/*
+ * Copyright (c) 2018 Keydap Software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * See LICENSE file for details.
+ */
+package com.keydap.sparrow;
+
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.annotations.SerializedName;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Creates the TypeAdapters of the classes annotated with {@link Resource}. The adapters read
+ * and write the attributes of the extension schemas, i.e the fields annotated with
+ * {@link Extension}, keyed by their schema URNs and write the "schemas" attribute listing
+ * the resource's schema and the URNs of the extensions present, all in a single pass without
+ * creating a JSON tree.
+ *
+ * The fields are bound following Gson's rules, i.e static and transient fields are excluded
+ * and the names given using {@link SerializedName} are honored. Classes without a no-arg
+ * constructor are left to Gson's reflective adapter.
+ *
+ * @author Kiran Ayyagari (kayyagari@keydap.com)
+ */
+/*default protection*/ class ResourceAdapterFactory implements TypeAdapterFactory {
+
+    @Override
+    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+        Class<? super T> cls = type.getRawType();
+        Resource r = cls.getAnnotation(Resource.class);
+        if(r == null || cls.isInterface() || Modifier.isAbstract(cls.getModifiers())) {
+            return null;
+        }
+
+        Constructor<? super T> ctor;
+        try {
+            ctor = cls.getDeclaredConstructor();
+            ctor.setAccessible(true);
+        }
+        catch(NoSuchMethodException e) {
+            return null;
+        }
+
+        List<BoundField> core = new ArrayList<BoundField>();
+        List<BoundField> extensions = new ArrayList<BoundField>();
+        Map<String, BoundField> byName = new HashMap<String, BoundField>();
+        for(Class<?> c = cls; c != Object.class; c = c.getSuperclass()) {
+            for(Field f : c.getDeclaredFields()) {
+                int mod = f.getModifiers();
+                if(Modifier.isStatic(mod) || Modifier.isTransient(mod) || f.isSynthetic()) {
+                    continue;
+                }
+
+                f.setAccessible(true);
+                BoundField bf = new BoundField(f, gson.getAdapter(TypeToken.get(f.getGenericType())));
+                // the fields are also bound by their names, same as Gson
+                byName.put(bf.name, bf);
+                for(String alt : bf.alternates) {
+                    byName.put(alt, bf);
+                }
+
+                if(bf.extension != null) {
+                    extensions.add(bf);
+                    byName.put(bf.extension, bf);
+                }
+                else if(!"schemas".equals(bf.name)) {
+                    // schemas is written using the annotations
+                    core.add(bf);
+                }
+            }
+        }
+
+        return new ResourceAdapter<T>(r.schemaId(), ctor, core.toArray(new BoundField[core.size()]),
+                extensions.toArray(new BoundField[extensions.size()]), byName);
+    }
+
+    private static class BoundField {
+        final Field field;
+        final String name;
+        final String[] alternates;
+        final String extension;
+        final TypeAdapter<Object> adapter;
+
+        @SuppressWarnings("unchecked")
+        BoundField(Field field, TypeAdapter<?> adapter) {
+            this.field = field;
+            SerializedName sn = field.getAnnotation(SerializedName.class);
+            this.name = (sn != null ? sn.value() : field.getName());
+            this.alternates = (sn != null ? sn.alternate() : new String[0]);
+            Extension ext = field.getAnnotation(Extension.class);
+            this.extension = (ext != null ? ext.value() : null);
+            this.adapter = (TypeAdapter<Object>) adapter;
+        }
+
+        Object get(Object target) {
+            try {
+                return field.get(target);
+            }
+            catch(IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        void read(JsonReader in, Object target) throws IOException {
+            Object value = adapter.read(in);
+            if(value == null && field.getType().isPrimitive()) {
+                return;
+            }
+
+            try {
+                field.set(target, value);
+            }
+            catch(IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    private static class ResourceAdapter<T> extends TypeAdapter<T> {
+        private final String schemaId;
+        private final Constructor<? super T> ctor;
+        private final BoundField[] core;
+        private final BoundField[] extensions;
+        private final Map<String, BoundField> byName;
+
+        ResourceAdapter(String schemaId, Constructor<? super T> ctor, BoundField[] core, BoundField[] extensions, Map<String, BoundField> byName) {
+            this.schemaId = schemaId;
+            this.ctor = ctor;
+            this.core = core;
+            this.extensions = extensions;
+            this.byName = byName;
+        }
+
+        @Override
+        public void write(JsonWriter out, T value) throws IOException {
+            if(value == null) {
+                out.nullValue();
+                return;
+            }
+
+            out.beginObject();
+            for(BoundField bf : core) {
+                Object v = bf.get(value);
+                // null values are dropped by the writer unless it is configured to serialize nulls
+                out.name(bf.name);
+                if(v == null) {
+                    out.nullValue();
+                }
+                else {
+                    bf.adapter.write(out, v);
+                }
+            }
+
+            out.name("schemas").beginArray().value(schemaId);
+            for(BoundField bf : extensions) {
+                if(bf.get(value) != null) {
+                    out.value(bf.extension);
+                }
+            }
+            out.endArray();
+
+            for(BoundField bf : extensions) {
+                Object ext = bf.get(value);
+                if(ext != null) {
+                    out.name(bf.extension);
+                    bf.adapter.write(out, ext);
+                }
+            }
+            out.endObject();
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T read(JsonReader in) throws IOException {
+            if(in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+
+            T obj;
+            try {
+                obj = (T) ctor.newInstance();
+            }
+            catch(Exception e) {
+                throw new JsonParseException("Failed to create an instance of " + ctor.getDeclaringClass().getName(), e);
+            }
+
+            in.beginObject();
+            while(in.hasNext()) {
+                String name = in.nextName();
+                BoundField bf = byName.get(name);
+                if(bf == null) {
+                    bf = findExtension(name);
+                }
+
+                if(bf == null) {
+                    in.skipValue();
+                }
+                else {
+                    bf.read(in, obj);
+                }
+            }
+            in.endObject();
+
+            return obj;
+        }
+
+        /**
+         * Finds the extension whose schema URN matches the given name ignoring the case
+         */
+        private BoundField findExtension(String name) {
+            if(!name.regionMatches(true, 0, "urn:", 0, 4)) {
+                return null;
+            }
+
+            for(BoundField bf : extensions) {
+                if(bf.extension.equalsIgnoreCase(name)) {
+                    return bf;
+                }
+            }
+
+            return null;
+        }
+    }
+}
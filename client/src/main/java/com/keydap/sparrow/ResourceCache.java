@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2018 Keydap Software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * See LICENSE file for details.
+ */
+package com.keydap.sparrow;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded cache of resources along with their ETags. The entries are keyed by the
+ * resource's path (endpoint and id) and the attribute projection used while fetching.
+ * Least recently used resources are evicted when the cache is full, followed by the least
+ * recently used projections of the resource being cached if it alone exceeds the bound.
+ * Entries older than the TTL are discarded on access.
+ *
+ * @author Kiran Ayyagari (kayyagari@keydap.com)
+ */
+/*default protection*/ class ResourceCache {
+    /** maximum number of cached entries */
+    private int maxEntries;
+
+    /** time in milliseconds after which an entry expires */
+    private long ttlMillis;
+
+    /** resource path -> (projection -> entry), both in the order of access */
+    private LinkedHashMap<String, Map<String, Entry>> entries = new LinkedHashMap<String, Map<String, Entry>>(16, 0.75f, true);
+
+    /** the total number of entries across all the resources */
+    private int size;
+
+    /*default protection*/ static class Entry {
+        final Object resource;
+        final String etag;
+        long storedAt;
+
+        Entry(Object resource, String etag, long storedAt) {
+            this.resource = resource;
+            this.etag = etag;
+            this.storedAt = storedAt;
+        }
+    }
+
+    ResourceCache(int maxEntries, long ttlMillis) {
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlMillis;
+    }
+
+    synchronized Entry get(String resPath, String projection) {
+        Map<String, Entry> projections = entries.get(resPath);
+        if(projections == null) {
+            return null;
+        }
+
+        Entry e = projections.get(projection);
+        if(e != null && isExpired(e)) {
+            projections.remove(projection);
+            size--;
+            if(projections.isEmpty()) {
+                entries.remove(resPath);
+            }
+            e = null;
+        }
+
+        return e;
+    }
+
+    synchronized void put(String resPath, String projection, Object resource, String etag) {
+        Map<String, Entry> projections = entries.get(resPath);
+        if(projections == null) {
+            projections = new LinkedHashMap<String, Entry>(4, 0.75f, true);
+            entries.put(resPath, projections);
+        }
+
+        Entry old = projections.put(projection, new Entry(resource, etag, System.currentTimeMillis()));
+        if(old == null) {
+            size++;
+        }
+
+        // evict the least recently used resources
+        Iterator<Map<String, Entry>> itr = entries.values().iterator();
+        while(size > maxEntries && itr.hasNext()) {
+            Map<String, Entry> eldest = itr.next();
+            if(eldest == projections) {
+                continue;
+            }
+
+            size -= eldest.size();
+            itr.remove();
+        }
+
+        // the resource alone has more projections than the cache can hold
+        Iterator<Entry> pitr = projections.values().iterator();
+        while(size > maxEntries && pitr.hasNext()) {
+            pitr.next();
+            pitr.remove();
+            size--;
+        }
+
+        if(projections.isEmpty()) {
+            entries.remove(resPath);
+        }
+    }
+
+    /**
+     * Marks the given entry as validated by the server
+     */
+    synchronized void revalidated(Entry e) {
+        e.storedAt = System.currentTimeMillis();
+    }
+
+    /**
+     * Removes all the cached projections of the given resource
+     */
+    synchronized void invalidate(String resPath) {
+        Map<String, Entry> projections = entries.remove(resPath);
+        if(projections != null) {
+            size -= projections.size();
+        }
+    }
+
+    synchronized void clear() {
+        entries.clear();
+        size = 0;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    private boolean isExpired(Entry e) {
+        return (ttlMillis > 0) && (System.currentTimeMillis() - e.storedAt > ttlMillis);
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2018 Keydap Software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * See LICENSE file for details.
+ */
+package com.keydap.sparrow;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import org.apache.http.Consts;
+import org.apache.http.entity.AbstractHttpEntity;
+
+/**
+ * A request entity that serializes a resource, or any other request body, directly onto the
+ * output stream of the connection without building its JSON tree or string form.
+ *
+ * The entity is either sent using chunked transfer encoding or with a Content-Length computed
+ * upfront by serializing the body once without holding the serialized data. The body must not
+ * be modified until the request is sent.
+ *
+ * The content is buffered only when it is read using {@link #getContent()}, e.g by the
+ * asynchronous client.
+ *
+ * @author Kiran Ayyagari (kayyagari@keydap.com)
+ */
+/*default protection*/ class ResourceEntity extends AbstractHttpEntity {
+    private JsonCodec codec;
+
+    private Object body;
+
+    /** the number of bytes of the serialized body, -1 if chunked */
+    private long length = -1;
+
+    /**
+     * @param codec the codec that serializes the body
+     * @param body the resource or any other request body
+     * @param chunked flag to send the body using chunked encoding, the length is computed when false
+     */
+    ResourceEntity(JsonCodec codec, Object body, boolean chunked) {
+        this.codec = codec;
+        this.body = body;
+        setContentType(SparrowClient.MIME_TYPE.toString());
+        setChunked(chunked);
+        if(!chunked) {
+            CountingOutputStream counter = new CountingOutputStream();
+            try {
+                writeTo(counter);
+            }
+            catch(IOException e) {
+                // CountingOutputStream doesn't throw
+                throw new IllegalStateException(e);
+            }
+            length = counter.count;
+        }
+    }
+
+    /**
+     * @return the resource or any other request body
+     */
+    /*default protection*/ Object getBody() {
+        return body;
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    @Override
+    public long getContentLength() {
+        return length;
+    }
+
+    @Override
+    public InputStream getContent() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(length > 0 ? (int) length : 1024);
+        writeTo(out);
+        return new ByteArrayInputStream(out.toByteArray());
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        // the stream is owned by the connection, hence only flushed but not closed
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, Consts.UTF_8));
+        codec.write(body, writer);
+        writer.flush();
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return false;
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
@@ -6,12 +6,25 @@
  */
 package com.keydap.sparrow;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
 import java.util.Arrays;
 
 import org.apache.http.Header;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
- * Holder for the response received after executing a request
+ * Holder for the response received after executing a request.
+ * 
+ * When the client is configured to decode lazily the body of a successful response
+ * is held undecoded and is decoded on the first call to {@link #getResource()}, any
+ * failure to decode it is then reported by {@link #getError()}.
+ * 
+ * Whether the raw HTTP body is retained depends on the {@link BodyRetention} policy
+ * of the client or the request.
  * 
  * @author Kiran Ayyagari (kayyagari@keydap.com)
  */
@@ -22,12 +35,95 @@ public class Response<T> {
     private String httpBody;
     private Header[] headers;
     
+    /** the undecoded body, present when the body is decoded lazily or retained as bytes */
+    private byte[] rawBody;
+    
+    /** flag to indicate that the undecoded body is retained after decoding */
+    private boolean rawBodyRetained;
+    
+    /** the charset of the undecoded body */
+    private Charset charset;
+    
+    /** the reader of the undecoded body, null once the body is decoded */
+    private volatile BodyReader bodyReader;
+    
+    private static final Logger LOG = LoggerFactory.getLogger(Response.class);
+    
+    /**
+     * Decodes the body of a response into the response
+     */
+    /*default protection*/ interface BodyReader {
+        void read(Reader in) throws Exception;
+    }
+    
     public T getResource() {
+        decode();
         return resource;
     }
 
     /*default protection*/ void setResource(T resource) {
         this.resource = resource;
+        // the given resource takes precedence over the undecoded body
+        this.bodyReader = null;
+    }
+
+    /**
+     * Holds the given body undecoded until it is decoded using the given reader
+     * 
+     * @param rawBody the body
+     * @param charset the charset of the body
+     * @param bodyReader the reader of the body
+     * @param retain flag to retain the body after decoding
+     */
+    /*default protection*/ void setLazyBody(byte[] rawBody, Charset charset, BodyReader bodyReader, boolean retain) {
+        this.rawBody = rawBody;
+        this.charset = charset;
+        this.rawBodyRetained = retain;
+        this.bodyReader = bodyReader;
+    }
+
+    /**
+     * Retains the given decoded body, it is converted to a string only when asked for
+     * 
+     * @param rawBody the body
+     * @param charset the charset of the body
+     */
+    /*default protection*/ void setRawBody(byte[] rawBody, Charset charset) {
+        this.rawBody = rawBody;
+        this.charset = charset;
+        this.rawBodyRetained = true;
+    }
+
+    /**
+     * Decodes the undecoded body if present, the response may be shared
+     * by several threads hence only one of them decodes the body
+     */
+    /*default protection*/ void decode() {
+        if(bodyReader == null) {
+            return;
+        }
+        
+        synchronized(this) {
+            BodyReader reader = bodyReader;
+            if(reader == null) {
+                return;
+            }
+            
+            try {
+                reader.read(new InputStreamReader(new ByteArrayInputStream(rawBody), charset));
+            }
+            catch(Exception e) {
+                LOG.warn("Failed to decode the body of the response", e);
+                Error err = new Error();
+                err.setDetail(e.getMessage());
+                error = err;
+            }
+            
+            bodyReader = null;
+            if(!rawBodyRetained) {
+                rawBody = null;
+            }
+        }
     }
 
     public int getHttpCode() {
@@ -47,6 +143,10 @@ public class Response<T> {
     }
 
     public String getHttpBody() {
+        if(httpBody == null && rawBody != null && rawBodyRetained) {
+            return new String(rawBody, charset);
+        }
+        
         return httpBody;
     }
 
@@ -71,8 +171,12 @@ public class Response<T> {
     }
 
     public String getHeader(String name) {
+        if(headers == null) {
+            return null;
+        }
+        
         for(Header h : headers) {
-            if(h.getName().equals(name)) {
+            if(h.getName().equalsIgnoreCase(name)) {
                 return h.getValue();
             }
         }
@@ -0,0 +1,389 @@
+/*
+ * Copyright (c) 2018 Keydap Software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * See LICENSE file for details.
+ */
+package com.keydap.sparrow;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Date;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * A thread-safe codec of RFC3339 timestamps, e.g <code>2018-01-02T03:04:05Z</code>,
+ * <code>2018-01-02T03:04:05.123Z</code> or <code>2018-01-02T08:34:05.123456+05:30</code>.
+ *
+ * The timestamps are parsed and formatted by hand without any locks, formatters or
+ * intermediate objects. Fractional seconds of up to 9 digits and offsets are accepted
+ * while parsing, the formatted timestamps are always in UTC and contain the fraction
+ * only when it is not zero.
+ *
+ * The values are handled either as epoch milliseconds, Date or Instant.
+ *
+ * Note that this changes the wire format of the dates sent by the client, the former
+ * SimpleDateFormat based DateTimeSerializer dropped the milliseconds, i.e a Date with
+ * a non-zero millisecond part is now sent as <code>2018-01-02T03:04:05.123Z</code> instead of
+ * <code>2018-01-02T03:04:05Z</code>. Timestamps containing a fraction are also accepted
+ * while parsing, they were rejected before.
+ *
+ * @author Kiran Ayyagari (kayyagari@keydap.com)
+ */
+public final class Rfc3339 {
+    private static final int SECONDS_PER_DAY = 86400;
+
+    /** streaming Gson adapter of Date */
+    public static final TypeAdapter<Date> DATE_ADAPTER = new TypeAdapter<Date>() {
+        @Override
+        public void write(JsonWriter out, Date value) throws IOException {
+            if(value == null) {
+                out.nullValue();
+            }
+            else {
+                out.value(format(value.getTime()));
+            }
+        }
+
+        @Override
+        public Date read(JsonReader in) throws IOException {
+            if(in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+
+            String s = in.nextString();
+            try {
+                return new Date(parseMillis(s));
+            }
+            catch(IllegalArgumentException e) {
+                throw new JsonParseException(e);
+            }
+        }
+    };
+
+    /** streaming Gson adapter of Instant */
+    public static final TypeAdapter<Instant> INSTANT_ADAPTER = new TypeAdapter<Instant>() {
+        @Override
+        public void write(JsonWriter out, Instant value) throws IOException {
+            if(value == null) {
+                out.nullValue();
+            }
+            else {
+                out.value(format(value));
+            }
+        }
+
+        @Override
+        public Instant read(JsonReader in) throws IOException {
+            if(in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+
+            String s = in.nextString();
+            try {
+                return parseInstant(s);
+            }
+            catch(IllegalArgumentException e) {
+                throw new JsonParseException(e);
+            }
+        }
+    };
+
+    private Rfc3339() {
+    }
+
+    /**
+     * Parses the given timestamp
+     *
+     * @param s the timestamp
+     * @return the milliseconds since epoch, the digits of the fraction beyond milliseconds are ignored
+     * @throws IllegalArgumentException if the timestamp is invalid
+     */
+    public static long parseMillis(CharSequence s) {
+        return parseEpochSecond(s) * 1000 + parseNanos(s) / 1000000;
+    }
+
+    /**
+     * Parses the given timestamp
+     *
+     * @param s the timestamp
+     * @return the instant
+     * @throws IllegalArgumentException if the timestamp is invalid
+     */
+    public static Instant parseInstant(CharSequence s) {
+        return Instant.ofEpochSecond(parseEpochSecond(s), parseNanos(s));
+    }
+
+    /**
+     * Parses the given timestamp
+     *
+     * @param s the timestamp
+     * @return the date, the digits of the fraction beyond milliseconds are ignored
+     * @throws IllegalArgumentException if the timestamp is invalid
+     */
+    public static Date parseDate(CharSequence s) {
+        return new Date(parseMillis(s));
+    }
+
+    /**
+     * Formats the given milliseconds since epoch
+     *
+     * @param millis the milliseconds since epoch
+     * @return the timestamp in UTC
+     * @throws IllegalArgumentException if the year doesn't fit in four digits
+     */
+    public static String format(long millis) {
+        long secs = Math.floorDiv(millis, 1000L);
+        int ms = (int) Math.floorMod(millis, 1000L);
+        if(ms == 0) {
+            return format(secs, 0, 0);
+        }
+
+        return format(secs, ms, 3);
+    }
+
+    /**
+     * Formats the given date, the milliseconds are included when they are not zero
+     *
+     * @param date the date
+     * @return the timestamp in UTC
+     * @throws IllegalArgumentException if the year doesn't fit in four digits
+     */
+    public static String format(Date date) {
+        return format(date.getTime());
+    }
+
+    /**
+     * Formats the given instant, the fraction is written with 3, 6 or 9 digits, the fewest
+     * that hold the nanoseconds without loss, and is omitted when it is zero
+     *
+     * @param instant the instant
+     * @return the timestamp in UTC
+     * @throws IllegalArgumentException if the year doesn't fit in four digits
+     */
+    public static String format(Instant instant) {
+        int nanos = instant.getNano();
+        if(nanos == 0) {
+            return format(instant.getEpochSecond(), 0, 0);
+        }
+
+        if(nanos % 1000000 == 0) {
+            return format(instant.getEpochSecond(), nanos / 1000000, 3);
+        }
+
+        if(nanos % 1000 == 0) {
+            return format(instant.getEpochSecond(), nanos / 1000, 6);
+        }
+
+        return format(instant.getEpochSecond(), nanos, 9);
+    }
+
+    private static String format(long epochSecond, int fraction, int fractionDigits) {
+        long days = Math.floorDiv(epochSecond, SECONDS_PER_DAY);
+        int secOfDay = (int) Math.floorMod(epochSecond, SECONDS_PER_DAY);
+
+        // civil date from the days since epoch, see http://howardhinnant.github.io/date_algorithms.html
+        long z = days + 719468;
+        long era = (z >= 0 ? z : z - 146096) / 146097;
+        int doe = (int) (z - era * 146097);
+        int yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        long year = yoe + era * 400;
+        int doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        int mp = (5 * doy + 2) / 153;
+        int day = doy - (153 * mp + 2) / 5 + 1;
+        int month = (mp < 10 ? mp + 3 : mp - 9);
+        if(month <= 2) {
+            year++;
+        }
+
+        if(year < 0 || year > 9999) {
+            throw new IllegalArgumentException("The year " + year + " cannot be formatted in RFC3339");
+        }
+
+        char[] buf = new char[fractionDigits == 0 ? 20 : 21 + fractionDigits];
+        write(buf, 0, (int) year, 4);
+        buf[4] = '-';
+        write(buf, 5, month, 2);
+        buf[7] = '-';
+        write(buf, 8, day, 2);
+        buf[10] = 'T';
+        write(buf, 11, secOfDay / 3600, 2);
+        buf[13] = ':';
+        write(buf, 14, (secOfDay / 60) % 60, 2);
+        buf[16] = ':';
+        write(buf, 17, secOfDay % 60, 2);
+        int pos = 19;
+        if(fractionDigits > 0) {
+            buf[pos++] = '.';
+            write(buf, pos, fraction, fractionDigits);
+            pos += fractionDigits;
+        }
+        buf[pos] = 'Z';
+
+        return new String(buf);
+    }
+
+    private static void write(char[] buf, int pos, int value, int digits) {
+        for(int i = pos + digits - 1; i >= pos; i--) {
+            buf[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+
+    /**
+     * Parses the date, time and offset of the given timestamp ignoring the fraction of the second
+     */
+    private static long parseEpochSecond(CharSequence s) {
+        int len = s.length();
+        if(len < 20) {
+            throw invalid(s);
+        }
+
+        int year = digits(s, 0, 4);
+        int month = digits(s, 5, 2);
+        int day = digits(s, 8, 2);
+        int hour = digits(s, 11, 2);
+        int minute = digits(s, 14, 2);
+        int second = digits(s, 17, 2);
+        char t = s.charAt(10);
+        if(s.charAt(4) != '-' || s.charAt(7) != '-' || (t != 'T' && t != 't' && t != ' ')
+                || s.charAt(13) != ':' || s.charAt(16) != ':') {
+            throw invalid(s);
+        }
+
+        if(month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)
+                || hour > 23 || minute > 59 || second > 60) {
+            throw invalid(s);
+        }
+
+        int pos = fractionEnd(s);
+        if(pos >= len) {
+            throw invalid(s);
+        }
+
+        int offset;
+        char c = s.charAt(pos);
+        if(c == 'Z' || c == 'z') {
+            offset = 0;
+            pos++;
+        }
+        else if(c == '+' || c == '-') {
+            if(pos + 6 != len || s.charAt(pos + 3) != ':') {
+                throw invalid(s);
+            }
+
+            int oh = digits(s, pos + 1, 2);
+            int om = digits(s, pos + 4, 2);
+            if(oh > 23 || om > 59) {
+                throw invalid(s);
+            }
+
+            offset = (oh * 3600 + om * 60) * (c == '-' ? -1 : 1);
+            pos += 6;
+        }
+        else {
+            throw invalid(s);
+        }
+
+        if(pos != len) {
+            throw invalid(s);
+        }
+
+        // days since epoch from the civil date, see http://howardhinnant.github.io/date_algorithms.html
+        int y = (month <= 2 ? year - 1 : year);
+        int era = (y >= 0 ? y : y - 399) / 400;
+        int yoe = y - era * 400;
+        int doy = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        long days = era * 146097L + doe - 719468;
+
+        return days * SECONDS_PER_DAY + hour * 3600 + minute * 60 + second - offset;
+    }
+
+    /**
+     * Parses the fraction of the second of the given timestamp
+     */
+    private static int parseNanos(CharSequence s) {
+        if(s.charAt(19) != '.') {
+            return 0;
+        }
+
+        int end = fractionEnd(s);
+        int nanos = 0;
+        for(int i = 20; i < 29; i++) {
+            nanos *= 10;
+            if(i < end) {
+                nanos += s.charAt(i) - '0';
+            }
+        }
+
+        return nanos;
+    }
+
+    /**
+     * @return the position following the fraction of the second, or following the seconds if there is no fraction
+     */
+    private static int fractionEnd(CharSequence s) {
+        int pos = 19;
+        if(s.charAt(pos) != '.') {
+            return pos;
+        }
+
+        pos++;
+        int start = pos;
+        while(pos < s.length() && isDigit(s.charAt(pos))) {
+            pos++;
+        }
+
+        if(pos == start) {
+            throw invalid(s);
+        }
+
+        return pos;
+    }
+
+    private static int digits(CharSequence s, int pos, int count) {
+        int value = 0;
+        for(int i = pos; i < pos + count; i++) {
+            char c = s.charAt(i);
+            if(!isDigit(c)) {
+                throw invalid(s);
+            }
+            value = value * 10 + (c - '0');
+        }
+
+        return value;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static int daysInMonth(int year, int month) {
+        switch(month) {
+            case 2:
+                boolean leap = (year % 4 == 0) && (year % 100 != 0 || year % 400 == 0);
+                return leap ? 29 : 28;
+
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+
+            default:
+                return 31;
+        }
+    }
+
+    private static IllegalArgumentException invalid(CharSequence s) {
+        return new IllegalArgumentException("Invalid RFC3339 timestamp " + s);
+    }
+}
@@ -0,0 +1,547 @@
+/*
+ * Copyright (c) 2018 Keydap Software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * See LICENSE file for details.
+ */
+package com.keydap.sparrow;
+
+import static org.apache.http.HttpStatus.SC_CREATED;
+import static org.apache.http.HttpStatus.SC_NOT_MODIFIED;
+import static org.apache.http.HttpStatus.SC_NO_CONTENT;
+import static org.apache.http.HttpStatus.SC_OK;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.net.URLEncoder;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.Consts;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPatch;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.keydap.sparrow.auth.Authenticator;
+
+/**
+ * The SCIM protocol handling shared by the blocking and the non-blocking clients, i.e the
+ * registration of resource classes, building of the requests, reading of the responses and
+ * the executor of the background tasks. It holds no HTTP connections, the clients send the
+ * requests using their own HTTP stack.
+ *
+ * @author Kiran Ayyagari (kayyagari@keydap.com)
+ */
+@SuppressWarnings("all")
+/*default protection*/ class ScimProtocol {
+    /** the base API URL of the SCIM server */
+    private String baseApiUrl;
+
+    /** the authenticator instance */
+    private Authenticator authenticator;
+
+    /** the configuration of the client */
+    private ClientConfig config;
+
+    /** SCIM entity serializer and deserializer */
+    private JsonCodec codec;
+
+    /** the executor of the background tasks, created on first use if not configured */
+    private Executor executor;
+
+    /** the executor created by this instance, shut down on shutdown() */
+    private ExecutorService ownExecutor;
+
+    private static final AtomicInteger threadCounter = new AtomicInteger();
+
+    /** the logger instance */
+    private static final Logger LOG = LoggerFactory.getLogger(ScimProtocol.class);
+
+    /** map holding <endpoint-entityClass> tuples */
+    private Map<String, Class<?>> endpointClassMap = new HashMap<String, Class<?>>();
+
+    /** map holding <schemaId-entityClass> tuples */
+    private Map<String, Class<?>> schemaIdClassMap = new HashMap<String, Class<?>>();
+
+    /** map holding <entityClass-endpoint> tuples */
+    private Map<Class<?>, String> classEndpointMap = new HashMap<Class<?>, String>();
+
+    /**
+     * @param baseApiUrl the API URL of the SCIM server
+     * @param authenticator authenticator instance, optional
+     * @param config the configuration of the client, optional
+     */
+    ScimProtocol(String baseApiUrl, Authenticator authenticator, ClientConfig config) {
+        this.baseApiUrl = baseApiUrl;
+
+        // if authenticator is not given then use a null authenticator
+        if(authenticator == null) {
+            authenticator = new Authenticator() {
+                public void saveHeaders(HttpResponse resp) {
+                }
+
+                public void authenticate(String baseUrl, CloseableHttpClient client)
+                        throws Exception {
+                }
+
+                public void addHeaders(HttpUriRequest req) {
+                }
+            };
+        }
+
+        this.authenticator = authenticator;
+
+        if(config == null) {
+            config = new ClientConfig();
+        }
+
+        this.config = config;
+
+        codec = config.getCodec();
+        if(codec == null) {
+            codec = new GsonCodec();
+        }
+
+        executor = config.getExecutor();
+    }
+
+    /**
+     * Registers the given Resource classes.
+     *
+     * @param resCls one or more Resource classes
+     */
+    /*default protection*/ void register(Class<?>... resCls) {
+        for (Class<?> rc : resCls) {
+            Resource res = rc.getAnnotation(Resource.class);
+            if(res == null) {
+                LOG.warn("Resource annotation is missing, ignoring class {}", rc.getName());
+                continue;
+            }
+
+            String schemaId = res.schemaId();
+            if(schemaId.trim().length() == 0) {
+                String err = "Invalid schemaId in Resource annotation of class " + rc.getName();
+                LOG.warn(err);
+                throw new IllegalArgumentException(err);
+            }
+
+            String endpoint = res.endpoint();
+            if(endpoint.trim().length() == 0) {
+                String err = "Invalid endpoint in Resource annotation of class " + rc.getName();
+                LOG.warn(err);
+                throw new IllegalArgumentException(err);
+            }
+
+            schemaIdClassMap.put(schemaId, rc);
+            endpointClassMap.put(endpoint, rc);
+            classEndpointMap.put(rc, endpoint);
+
+            codec.register(rc);
+        }
+    }
+
+    /**
+     * Resolves the policy of retaining the raw body of a response, the policy of the request
+     * takes precedence over the client's policy. By default the bodies of all the responses
+     * are retained.
+     *
+     * @param requested the policy of the request, can be null
+     * @return the policy to be applied
+     */
+    /*default protection*/ BodyRetention resolveRetention(BodyRetention requested) {
+        if(requested != null) {
+            return requested;
+        }
+
+        if(config.getBodyRetention() != null) {
+            return config.getBodyRetention();
+        }
+
+        return BodyRetention.ALWAYS;
+    }
+
+    /**
+     * Reads the given HTTP response of a search request into the given SearchResponse.
+     * A successful response is buffered when its body is retained using {@link BodyRetention#ALWAYS},
+     * the default, otherwise it is decoded directly from the entity's stream, one resource at a time.
+     *
+     * @param resp the HTTP response
+     * @param resClas class of the resourcetype, can be null
+     * @param result the search response to be filled
+     * @param retention the policy of retaining the raw body, null to use the client's policy
+     * @throws Exception
+     */
+    /*default protection*/ <T> void readSearchResponse(HttpResponse resp, Class<T> resClas, SearchResponse<T> result, BodyRetention retention) throws Exception {
+        retention = resolveRetention(retention);
+        int code = resp.getStatusLine().getStatusCode();
+        result.setHttpCode(code);
+        result.setHeaders(resp.getAllHeaders());
+
+        HttpEntity entity = resp.getEntity();
+        if (entity == null) {
+            return;
+        }
+
+        // if it is success there will be response body to read
+        if (code == 200 && config.isLazyDecoding()) {
+            byte[] data = EntityUtils.toByteArray(entity);
+            result.setLazyBody(data, getCharset(entity), (in) -> codec.readListResponse(in, resClas, this::unmarshalListed, result), retention.retains(false));
+        }
+        else if (code == 200 && retention.retains(false)) {
+            // buffered to retain the body
+            byte[] data = EntityUtils.toByteArray(entity);
+            Charset charset = getCharset(entity);
+            codec.readListResponse(new InputStreamReader(new ByteArrayInputStream(data), charset), resClas, this::unmarshalListed, result);
+            result.setRawBody(data, charset);
+        }
+        else if (code == 200) {
+            Reader reader = new InputStreamReader(entity.getContent(), getCharset(entity));
+            try {
+                codec.readListResponse(reader, resClas, this::unmarshalListed, result);
+            }
+            finally {
+                reader.close();
+            }
+        } else {
+            String json = EntityUtils.toString(entity);
+            if(retention.retains(true)) {
+                result.setHttpBody(json);
+            }
+            Error error = codec.read(new StringReader(json), Error.class);
+            result.setError(error);
+        }
+    }
+
+    /**
+     * Unmarshals a resource of a ListResponse whose class is known only after reading the schemas
+     */
+    private <T> T unmarshalListed(JsonObject r) {
+        T rsObj = unmarshal(r);
+        if(rsObj == null) {
+            LOG.warn("No resgistered resource class found to deserialize the resource data {}", r);
+        }
+
+        return rsObj;
+    }
+
+    private Charset getCharset(HttpEntity entity) {
+        ContentType ct = ContentType.get(entity);
+        if(ct != null && ct.getCharset() != null) {
+            return ct.getCharset();
+        }
+
+        return Consts.UTF_8;
+    }
+
+    private <T> T unmarshal(JsonObject json) {
+        JsonArray schemas = json.get("schemas").getAsJsonArray();
+        Iterator<JsonElement> itr = schemas.iterator();
+
+        T obj = null;
+
+        while(itr.hasNext()) {
+            String id = itr.next().getAsString();
+            Class<?> rc = schemaIdClassMap.get(id);
+            if(rc != null) {
+                obj = (T) unmarshal(json, rc);
+                break;
+            }
+        }
+
+        return obj;
+    }
+
+    /**
+     * Reads the given HTTP response into the given Response
+     *
+     * @param resp the HTTP response
+     * @param resClas class of the resourcetype
+     * @param result the response to be filled
+     * @param write flag to indicate that the request is an add, replace or patch request
+     * @param retention the policy of retaining the raw body, null to use the client's policy
+     * @throws Exception
+     */
+    /*default protection*/ <T> void readResponse(HttpResponse resp, Class<T> resClas, Response<T> result, boolean write, BodyRetention retention) throws Exception {
+        retention = resolveRetention(retention);
+        int code = resp.getStatusLine().getStatusCode();
+        HttpEntity entity = resp.getEntity();
+        result.setHttpCode(code);
+        result.setHeaders(resp.getAllHeaders());
+
+        boolean success = (code == SC_OK || code == SC_CREATED || code == SC_NOT_MODIFIED);
+        if(success && entity != null) {
+            if(write && config.isDiscardWriteBodies()) {
+                // releases the connection without reading the body
+                EntityUtils.consume(entity);
+                return;
+            }
+
+            if(config.isLazyDecoding()) {
+                byte[] data = EntityUtils.toByteArray(entity);
+                result.setLazyBody(data, getCharset(entity), (in) -> result.setResource(unmarshal(in, resClas)), retention.retains(false));
+                return;
+            }
+        }
+
+        String json = null;
+        if (entity != null) {
+            json = EntityUtils.toString(entity);
+        }
+
+        // if it is success there will be response body to read
+        if (success) {
+            if(json != null) { // some responses have no body, so check for null
+                T t = unmarshal(new StringReader(json), resClas);
+                result.setResource(t);
+            }
+        } else {
+            if(json != null) {
+                Error error = codec.read(new StringReader(json), Error.class);
+                result.setError(error);
+            }
+        }
+
+        if(retention.retains(!success)) {
+            result.setHttpBody(json);
+        }
+    }
+
+    /**
+     * Marks the given response as failed due to the given exception
+     *
+     * @param result the response
+     * @param e the exception encountered while sending the request or reading its response
+     */
+    /*default protection*/ void setException(Response<?> result, Exception e) {
+        result.setHttpCode(-1);
+        Error err = new Error();
+
+        err.setDetail(e.getMessage());
+        result.setError(err);
+    }
+
+    /*default protection*/ Response<Boolean> toDeleteResponse(Response<Boolean> resp) {
+        if(resp.getHttpCode() == SC_NO_CONTENT) {
+            resp.setResource(true);
+        }else {
+            resp.setResource(false);
+        }
+
+        return resp;
+    }
+
+    /*default protection*/ HttpPost newAddRequest(Object rs) {
+        String endpoint = getEndpoint(rs.getClass());
+        HttpPost post = new HttpPost(baseApiUrl + endpoint);
+        setBody(post, rs);
+        return post;
+    }
+
+    /*default protection*/ HttpPut newReplaceRequest(String id, Object rs, String ifMatch) {
+        String endpoint = getEndpoint(rs.getClass());
+        HttpPut put = new HttpPut(baseApiUrl + endpoint + "/" + id);
+        setIfMatch(put, ifMatch);
+        setBody(put, rs);
+        return put;
+    }
+
+    /*default protection*/ HttpPatch newPatchRequest(PatchRequest pr) {
+        String endpoint = getEndpoint(pr.getResClass());
+
+        String url = baseApiUrl + endpoint + "/" + pr.getId();
+
+        if(pr.getAttributes() != null) {
+            String encoded;
+            try {
+                encoded = URLEncoder.encode(pr.getAttributes(), Consts.UTF_8.name());
+            }
+            catch(Exception e) {
+                throw new RuntimeException(e);
+            }
+
+            url += "?attributes=" + encoded;
+        }
+
+        HttpPatch patch = new HttpPatch(url);
+        setIfMatch(patch, pr.getIfMatch());
+        setBody(patch, pr);
+        return patch;
+    }
+
+    /*default protection*/ HttpDelete newDeleteRequest(String id, Class resourceType) {
+        String endpoint = getEndpoint(resourceType);
+        return new HttpDelete(baseApiUrl + endpoint + "/" + id);
+    }
+
+    /*default protection*/ HttpGet newGetRequest(String id, String ifNoneMatch, Class resClas, boolean include, String... attributes) {
+        String endpoint = getEndpoint(resClas);
+        StringBuilder sb = new StringBuilder(baseApiUrl + endpoint + "/" + id);
+        if(attributes != null) {
+            if(include) {
+                sb.append("?attributes=");
+            } else {
+                sb.append("?excludedAttributes=");
+            }
+
+            int i=0;
+            for(; i < attributes.length - 1; i++) {
+                String attr = attributes[i].trim();
+                if(attr.length() > 0 ) {
+                    sb.append(attr).append(',');
+                }
+            }
+            String attr = attributes[i].trim();
+            if(attr.length() > 0 ) {
+                sb.append(attr);
+            }
+        }
+
+        HttpGet get = new HttpGet(sb.toString());
+        setIfNoneMatch(get, ifNoneMatch);
+        return get;
+    }
+
+    /*default protection*/ HttpPost newSearchRequest(SearchRequest sr, String endpoint) {
+        StringBuilder url = new StringBuilder(baseApiUrl);
+        url.append(endpoint).append("/.search");
+
+        HttpPost post = new HttpPost(url.toString());
+        setBody(post, sr);
+        return post;
+    }
+
+    private <T> void setBody(HttpEntityEnclosingRequestBase req, T rs) {
+        req.setEntity(new ResourceEntity(codec, rs, config.isChunkedRequests()));
+    }
+
+    /**
+     * Writes the JSON representation of the given object to the given writer, the output
+     * is same as that of {@link #serialize(Object)} but no intermediate JSON tree is created
+     *
+     * @param rs a resource or any other request body
+     * @param writer the writer
+     * @throws IOException
+     */
+    /*default protection*/ void writeJson(Object rs, Writer writer) throws IOException {
+        codec.write(rs, writer);
+    }
+
+    /**
+     * Serializes the given resourcetype instance
+     *
+     * @param rs resourcetype's instance
+     * @return
+     */
+    /*default protection*/ <T> JsonObject serialize(T rs) {
+        // the schemas and extensions of resources are handled by the codec
+        return (JsonObject) codec.toTree(rs);
+    }
+
+    /*default protection*/ Authenticator getAuthenticator() {
+        return authenticator;
+    }
+
+    /*default protection*/ String getBaseApiUrl() {
+        return baseApiUrl;
+    }
+
+    /*default protection*/ ClientConfig getConfig() {
+        return config;
+    }
+
+    /*default protection*/ JsonCodec getCodec() {
+        return codec;
+    }
+
+    /**
+     * Returns the executor of the background tasks, a pool of daemon threads is created
+     * on the first call if no executor was configured
+     *
+     * @see ClientConfig#setExecutor(Executor)
+     */
+    /*default protection*/ synchronized Executor getExecutor() {
+        if(executor == null) {
+            ownExecutor = Executors.newCachedThreadPool((r) -> {
+                Thread t = new Thread(r, "sparrow-worker-" + threadCounter.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+            executor = ownExecutor;
+        }
+
+        return executor;
+    }
+
+    /**
+     * Shuts down the executor created by this instance, a configured executor is left untouched
+     */
+    /*default protection*/ synchronized void shutdown() {
+        if(ownExecutor != null) {
+            ownExecutor.shutdown();
+        }
+    }
+
+    /*default protection*/ String getEndpoint(Class resClas) {
+        String ep = classEndpointMap.get(resClas);
+        if (ep == null) {
+            throw new IllegalArgumentException("There is no endpoint found with the given resource class. Resource class must be registered to avoid this error");
+        }
+
+        return ep;
+    }
+
+    /*default protection*/ void setIfMatch(HttpRequestBase req, String ifMatch) {
+        if(ifMatch != null) {
+            req.setHeader("If-Match", ifMatch);
+        }
+    }
+
+    /*default protection*/ void setIfNoneMatch(HttpRequestBase req, String ifNoneMatch) {
+        if(ifNoneMatch != null) {
+            req.setHeader("If-None-Match", ifNoneMatch);
+        }
+    }
+
+    /*default protection*/ <T> T unmarshal(Reader json, Class<T> resClass) throws Exception {
+        if(classEndpointMap.containsKey(resClass)) {
+            // read in a single pass
+            return codec.read(json, resClass);
+        }
+
+        JsonElement je = codec.read(json, JsonElement.class);
+        if(!(je instanceof JsonObject)) {
+            return (T) je;
+        }
+
+        return unmarshal((JsonObject) je, resClass);
+    }
+
+    /*default protection*/ <T> T unmarshal(JsonObject jsonObj, Class<T> resClass) {
+        return codec.fromTree(jsonObj, resClass);
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2018 Keydap Software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * See LICENSE file for details.
+ */
+package com.keydap.sparrow;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+
+/**
+ * An iterator over the results of a search request which fetches the pages lazily
+ * using the startIndex and count parameters. Only one page of resources is held
+ * in memory at a time.
+ *
+ * @author Kiran Ayyagari (kayyagari@keydap.com)
+ */
+public class SearchIterator<T> implements Iterator<T> {
+    /** the search request used as a template for fetching pages */
+    private SearchRequest template;
+
+    /** the number of resources to be fetched in each page */
+    private int pageSize;
+
+    /** the function that fetches a page */
+    private Function<SearchRequest, SearchResponse<T>> fetcher;
+
+    /** the startIndex of the next page, SCIM startIndex is 1-based */
+    private int nextIndex;
+
+    /** the totalResults reported by the server for the last page */
+    private int totalResults = -1;
+
+    private boolean done;
+
+    private Iterator<T> current = Collections.emptyIterator();
+
+    /*default protection*/ SearchIterator(SearchRequest sr, int pageSize, Function<SearchRequest, SearchResponse<T>> fetcher) {
+        if(pageSize <= 0) {
+            throw new IllegalArgumentException("Page size must be greater than zero");
+        }
+
+        this.template = new SearchRequest(sr);
+        this.pageSize = pageSize;
+        this.fetcher = fetcher;
+        this.nextIndex = Math.max(1, sr.getStartIndex());
+    }
+
+    @Override
+    public boolean hasNext() {
+        while(!current.hasNext()) {
+            if(done) {
+                return false;
+            }
+
+            fetchNextPage();
+        }
+
+        return true;
+    }
+
+    @Override
+    public T next() {
+        if(!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        return current.next();
+    }
+
+    /**
+     * @return the totalResults reported by the server, -1 if no page was fetched yet
+     */
+    public int getTotalResults() {
+        return totalResults;
+    }
+
+    private void fetchNextPage() {
+        SearchRequest req = new SearchRequest(template);
+        req.setStartIndex(nextIndex);
+        req.setCount(pageSize);
+
+        SearchResponse<T> resp = fetcher.apply(req);
+        checkPage(resp, nextIndex);
+
+        totalResults = resp.getTotalResults();
+        List<T> resources = resp.getResources();
+
+        int received = pageItemCount(resp);
+        nextIndex += received;
+        if(received == 0 || nextIndex > totalResults) {
+            done = true;
+        }
+
+        if(resources == null) {
+            current = Collections.emptyIterator();
+        }
+        else {
+            current = resources.iterator();
+        }
+    }
+
+    /**
+     * Checks that the page at the given startIndex was fetched successfully
+     */
+    /*default protection*/ static void checkPage(SearchResponse<?> resp, int startIndex) {
+        if(resp.getHttpCode() != 200) {
+            throw new IllegalStateException("Failed to fetch the page at startIndex " + startIndex + ", HTTP status " + resp.getHttpCode() + " " + resp.getError());
+        }
+    }
+
+    /**
+     * The number of resources present in the page, the itemsPerPage value is preferred
+     * because unknown resources are dropped while reading the results of searchAll
+     */
+    /*default protection*/ static int pageItemCount(SearchResponse<?> resp) {
+        if(resp.getItemsPerPage() > 0) {
+            return resp.getItemsPerPage();
+        }
+
+        List<?> resources = resp.getResources();
+        return (resources == null) ? 0 : resources.size();
+    }
+}
@@ -7,6 +7,7 @@
 package com.keydap.sparrow;
 
 import java.util.Arrays;
+import java.util.Objects;
 
 /**
  * SCIM v2 search request
@@ -23,6 +24,29 @@ public class SearchRequest {
     private int startIndex;
     private int count;
 
+    /** the policy of retaining the raw body of the response, not serialized */
+    private transient BodyRetention bodyRetention;
+
+    public SearchRequest() {
+    }
+
+    /**
+     * Creates a copy of the given search request
+     * 
+     * @param sr the search request to be copied
+     */
+    public SearchRequest(SearchRequest sr) {
+        this.schemas = sr.schemas;
+        this.attributes = sr.attributes;
+        this.excludedAttributes = sr.excludedAttributes;
+        this.filter = sr.filter;
+        this.sortBy = sr.sortBy;
+        this.sortOrder = sr.sortOrder;
+        this.startIndex = sr.startIndex;
+        this.count = sr.count;
+        this.bodyRetention = sr.bodyRetention;
+    }
+
     public String[] getSchemas() {
         return schemas;
     }
@@ -55,6 +79,18 @@ public class SearchRequest {
         this.filter = filter;
     }
 
+    /**
+     * Sets the filter built using the factory methods of ValueFilter, e.g
+     * <pre>
+     *   sr.setFilter(ValueFilter.and(ValueFilter.eq("emails.type", "work"), ValueFilter.present("title")));
+     * </pre>
+     * 
+     * @param filter the filter
+     */
+    public void setFilter(ValueFilter filter) {
+        this.filter = filter.toString();
+    }
+
     public String getSortBy() {
         return sortBy;
     }
@@ -87,6 +123,60 @@ public class SearchRequest {
         this.count = count;
     }
 
+    public BodyRetention getBodyRetention() {
+        return bodyRetention;
+    }
+
+    /**
+     * Overrides the client's policy of retaining the raw body of the response,
+     * e.g to avoid holding the bodies of large pages
+     * 
+     * @param bodyRetention the policy, null to use the client's policy
+     */
+    public void setBodyRetention(BodyRetention bodyRetention) {
+        this.bodyRetention = bodyRetention;
+    }
+
+    @Override
+    public int hashCode() {
+        final int prime = 31;
+        int result = 1;
+        result = prime * result + Arrays.hashCode(schemas);
+        result = prime * result + Objects.hashCode(attributes);
+        result = prime * result + Objects.hashCode(excludedAttributes);
+        result = prime * result + Objects.hashCode(filter);
+        result = prime * result + Objects.hashCode(sortBy);
+        result = prime * result + Objects.hashCode(sortOrder);
+        result = prime * result + startIndex;
+        result = prime * result + count;
+        return result;
+    }
+
+    /**
+     * Compares the serialized fields, the policy of retaining the body is not compared
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null) {
+            return false;
+        }
+        if (getClass() != obj.getClass()) {
+            return false;
+        }
+        SearchRequest other = (SearchRequest) obj;
+        return Arrays.equals(schemas, other.schemas)
+                && Objects.equals(attributes, other.attributes)
+                && Objects.equals(excludedAttributes, other.excludedAttributes)
+                && Objects.equals(filter, other.filter)
+                && Objects.equals(sortBy, other.sortBy)
+                && Objects.equals(sortOrder, other.sortOrder)
+                && startIndex == other.startIndex
+                && count == other.count;
+    }
+
     @Override
     public String toString() {
         return "SearchRequest [schemas=" + Arrays.toString(schemas)
@@ -9,7 +9,13 @@ package com.keydap.sparrow;
 import java.util.List;
 
 /**
- * Holder for search response
+ * Holder for search response. The availability of the raw HTTP body depends on the
+ * {@link BodyRetention} policy. With the default, {@link BodyRetention#ALWAYS}, the body
+ * of a successful response is buffered and retained next to the decoded resources.
+ * With {@link BodyRetention#ON_ERROR} or {@link BodyRetention#NONE} the resources are
+ * decoded while streaming the HTTP body and the raw body is not available. When the
+ * client is configured to decode lazily the body is held undecoded until any of the
+ * results is accessed.
  * 
  * @author Kiran Ayyagari (kayyagari@keydap.com)
  */
@@ -19,22 +25,23 @@ public class SearchResponse<T> extends Response<T> {
     private int startIndex;
     private int itemsPerPage;
     
-    //TODO support stream reading
-    //private InputStream stream;
-    
     public int getTotalResults() {
+        decode();
         return totalResults;
     }
 
     public List<T> getResources() {
+        decode();
         return resources;
     }
 
     public int getStartIndex() {
+        decode();
         return startIndex;
     }
 
     public int getItemsPerPage() {
+        decode();
         return itemsPerPage;
     }
 
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2018 Keydap Software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * See LICENSE file for details.
+ */
+package com.keydap.sparrow;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Collapses concurrent calls having the same key into one. The first caller(a.k.a leader)
+ * performs the call while the others wait for and share its result.
+ *
+ * @author Kiran Ayyagari (kayyagari@keydap.com)
+ */
+/*default protection*/ class SingleFlight {
+    /** the calls in progress */
+    private ConcurrentHashMap<Object, CompletableFuture<Object>> calls = new ConcurrentHashMap<Object, CompletableFuture<Object>>();
+
+    /** number of calls that were performed */
+    private AtomicLong leaders = new AtomicLong();
+
+    /** number of calls that were served with the result of another call */
+    private AtomicLong collapsed = new AtomicLong();
+
+    /**
+     * Performs the given call or joins the in-flight call having the same key.
+     * A failed call throws the same exception to the leader and the followers.
+     *
+     * @param key the key identifying identical calls, must implement equals() and hashCode() and must not be modified
+     * @param call the call
+     * @return the result of the call
+     */
+    @SuppressWarnings("unchecked")
+    <R> R execute(Object key, Supplier<R> call) {
+        CompletableFuture<Object> cf = new CompletableFuture<Object>();
+        CompletableFuture<Object> inflight = calls.putIfAbsent(key, cf);
+        if(inflight != null) {
+            collapsed.incrementAndGet();
+            try {
+                return (R) inflight.join();
+            }
+            catch(CompletionException e) {
+                // the leader's exception, see below
+                Throwable cause = e.getCause();
+                if(cause instanceof java.lang.Error) {
+                    throw (java.lang.Error) cause;
+                }
+                throw (RuntimeException) cause;
+            }
+        }
+
+        leaders.incrementAndGet();
+        try {
+            R result = call.get();
+            cf.complete(result);
+            return result;
+        }
+        catch(RuntimeException | java.lang.Error e) {
+            // always wrapped, so that the followers can unwrap it even if it is a CompletionException
+            cf.completeExceptionally(new CompletionException(e));
+            throw e;
+        }
+        finally {
+            calls.remove(key, cf);
+        }
+    }
+
+    CoalescingStats getStats() {
+        return new CoalescingStats(leaders.get(), collapsed.get(), calls.size());
+    }
+}
@@ -0,0 +1,471 @@
+/*
+ * Copyright (c) 2018 Keydap Software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * See LICENSE file for details.
+ */
+package com.keydap.sparrow;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.SSLContext;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ssl.NoopHostnameVerifier;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.BasicHttpClientConnectionManager;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.nio.conn.NoopIOSessionStrategy;
+import org.apache.http.nio.conn.SchemeIOSessionStrategy;
+import org.apache.http.nio.conn.ssl.SSLIOSessionStrategy;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.keydap.sparrow.auth.Authenticator;
+
+/**
+ * A non-blocking client for any SCIM v2.0 compliant server.
+ *
+ * All the operations return immediately with a CompletableFuture which will be
+ * completed when the response is received. A failure to send the request or to
+ * read its response is reported the same way as in {@link SparrowClient}, i.e the
+ * future completes normally with a response containing HTTP code -1 and an Error,
+ * this includes the requests cancelled by closing the client. The futures are never
+ * completed exceptionally.
+ *
+ * Registration of resource classes, (de)serialization and authentication are
+ * handled the same way as in {@link SparrowClient} but no blocking HTTP connections
+ * are held. The responses are decoded using the executor of the client, see
+ * {@link ClientConfig#setExecutor(java.util.concurrent.Executor)}, hence a large
+ * response doesn't hold up the I/O threads.
+ *
+ * @author Kiran Ayyagari (kayyagari@keydap.com)
+ */
+@SuppressWarnings("all")
+public class SparrowAsyncClient implements Closeable {
+
+    /** the registration of resources, building of requests and reading of responses */
+    private ScimProtocol protocol;
+
+    /** the SSL context, used by the connections of the authenticator */
+    private SSLContext sslCtx;
+
+    /** the non-blocking HTTP client instance used for communicating with the server */
+    private CloseableHttpAsyncClient client;
+
+    /** the evictor of the expired and idle connections, null if eviction is disabled */
+    private ScheduledExecutorService evictor;
+
+    /** the logger instance */
+    private static final Logger LOG = LoggerFactory.getLogger(SparrowAsyncClient.class);
+
+    /**
+     * Creates an instance of the client
+     *
+     * @param baseApiUrl the API URL of the SCIM server
+     */
+    public SparrowAsyncClient(String baseApiUrl) {
+        this(baseApiUrl, null, null, null);
+    }
+
+    /**
+     * Creates an instance of the client
+     *
+     * @param baseApiUrl the API URL of the SCIM server
+     * @param authenticator authenticator instance, optional
+     */
+    public SparrowAsyncClient(String baseApiUrl, Authenticator authenticator) {
+        this(baseApiUrl, null, authenticator, null);
+    }
+
+    /**
+     * Creates an instance of the client
+     *
+     * @param baseApiUrl the API URL of the SCIM server
+     * @param baseOauthUrl the API URL of the Oauth server
+     * @param authenticator authenticator instance, optional
+     * @param sslCtx the SSL context, mandatory only when the service is accessible over HTTPS
+     */
+    public SparrowAsyncClient(String baseApiUrl, String baseOauthUrl, Authenticator authenticator, SSLContext sslCtx) {
+        this(baseApiUrl, baseOauthUrl, authenticator, sslCtx, null);
+    }
+
+    /**
+     * Creates an instance of the client
+     *
+     * @param baseApiUrl the API URL of the SCIM server
+     * @param baseOauthUrl the API URL of the Oauth server
+     * @param authenticator authenticator instance, optional
+     * @param sslCtx the SSL context, mandatory only when the service is accessible over HTTPS
+     * @param config the configuration of HTTP connections, optional
+     */
+    public SparrowAsyncClient(String baseApiUrl, String baseOauthUrl, Authenticator authenticator, SSLContext sslCtx, ClientConfig config) {
+        protocol = new ScimProtocol(baseApiUrl, authenticator, config);
+        config = protocol.getConfig();
+        this.sslCtx = sslCtx;
+
+        PoolingNHttpClientConnectionManager connManager;
+        try {
+            connManager = new PoolingNHttpClientConnectionManager(new DefaultConnectingIOReactor(), createSessionStrategyRegistry(baseApiUrl, sslCtx));
+        }
+        catch(IOReactorException e) {
+            throw new IllegalStateException("Failed to create the I/O reactor", e);
+        }
+
+        connManager.setMaxTotal(config.getMaxConnTotal());
+        connManager.setDefaultMaxPerRoute(config.getMaxConnPerRoute());
+
+        HttpAsyncClientBuilder builder = HttpAsyncClientBuilder.create().useSystemProperties();
+        builder.setConnectionManager(connManager);
+        builder.setDefaultRequestConfig(SparrowClient.createRequestConfig(config));
+
+        client = builder.build();
+        client.start();
+
+        evictor = startEvictor(connManager, config);
+    }
+
+    /**
+     * Creates the registry of the I/O session strategies, the system properties https.protocols
+     * and https.cipherSuites are applied the same way as in {@link SparrowClient}
+     */
+    private static Registry<SchemeIOSessionStrategy> createSessionStrategyRegistry(String baseApiUrl, SSLContext sslCtx) {
+        boolean isHttps = baseApiUrl.toLowerCase().startsWith("https");
+
+        SSLIOSessionStrategy sslStrategy = SSLIOSessionStrategy.getSystemDefaultStrategy();
+        if(isHttps) {
+            HostnameVerifier verifier = SSLIOSessionStrategy.getDefaultHostnameVerifier();
+            if(sslCtx == null) {
+                sslCtx = SparrowClient.createTrustAllContext();
+                verifier = NoopHostnameVerifier.INSTANCE;
+            }
+
+            sslStrategy = new SSLIOSessionStrategy(sslCtx, SparrowClient.splitProperty("https.protocols"),
+                    SparrowClient.splitProperty("https.cipherSuites"), verifier);
+        }
+
+        return RegistryBuilder.<SchemeIOSessionStrategy>create()
+                .register("http", NoopIOSessionStrategy.INSTANCE)
+                .register("https", sslStrategy)
+                .build();
+    }
+
+    /**
+     * Starts a thread that periodically closes the connections whose keep-alive expired and,
+     * when maxIdleTime is set, the connections idle for longer than maxIdleTime.
+     * The non-blocking connections are watched by the I/O reactor and a connection closed by
+     * the server is dropped from the pool as soon as the closure is read, hence instead of
+     * validating before leasing, the pool is swept every validateAfterInactivity milliseconds.
+     *
+     * @return the evictor or null if both maxIdleTime and validateAfterInactivity are disabled
+     */
+    private static ScheduledExecutorService startEvictor(PoolingNHttpClientConnectionManager connManager, ClientConfig config) {
+        long maxIdleTime = config.getMaxIdleTime();
+        long period = config.getValidateAfterInactivity();
+        if(period <= 0) {
+            period = maxIdleTime;
+        }
+
+        if(period <= 0) {
+            return null;
+        }
+
+        ScheduledExecutorService evictor = Executors.newSingleThreadScheduledExecutor((r) -> {
+            Thread t = new Thread(r, "sparrow-async-evictor");
+            t.setDaemon(true);
+            return t;
+        });
+
+        evictor.scheduleWithFixedDelay(() -> {
+            connManager.closeExpiredConnections();
+            if(maxIdleTime > 0) {
+                connManager.closeIdleConnections(maxIdleTime, TimeUnit.MILLISECONDS);
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+
+        return evictor;
+    }
+
+    /**
+     * Registers the given Resource classes.
+     *
+     * @param resCls one or more Resource classes
+     */
+    public void register(Class<?>... resCls) {
+        protocol.register(resCls);
+    }
+
+    /**
+     * Performs authentication using the authenticator.
+     * This is a blocking call, the authenticator is given a blocking HTTP client with
+     * a single connection which is closed after the authentication.
+     *
+     * @throws Exception when the authenticator throws any exception
+     */
+    public void authenticate() throws Exception {
+        String baseApiUrl = protocol.getBaseApiUrl();
+        CloseableHttpClient authClient = HttpClientBuilder.create().useSystemProperties()
+                .setConnectionManager(new BasicHttpClientConnectionManager(SparrowClient.createSocketFactoryRegistry(baseApiUrl, sslCtx)))
+                .setDefaultRequestConfig(SparrowClient.createRequestConfig(protocol.getConfig()))
+                .build();
+        try {
+            protocol.getAuthenticator().authenticate(baseApiUrl, authClient);
+        }
+        finally {
+            authClient.close();
+        }
+    }
+
+    /**
+     * Adds the given resource
+     *
+     * @param rs the resource
+     * @return
+     */
+    public <T> CompletableFuture<Response<T>> addResource(T rs) {
+        return addResource(rs, null);
+    }
+
+    /**
+     * Adds the given resource
+     *
+     * @param rs the resource
+     * @param retention the policy of retaining the raw body of the response, null to use the client's policy
+     * @return
+     */
+    public <T> CompletableFuture<Response<T>> addResource(T rs, BodyRetention retention) {
+        return sendRequest(protocol.newAddRequest(rs), (Class<T>) rs.getClass(), true, retention);
+    }
+
+    /**
+     * Replaces the given resource
+     *
+     * @param id identifier of the resource to be replaced
+     * @param rs the new resource with which old one will be replaced
+     * @return
+     */
+    public <T> CompletableFuture<Response<T>> replaceResource(String id, T rs) {
+        return replaceResource(id, rs, null);
+    }
+
+    /**
+     * Replaces the given resource
+     *
+     * @param id identifier of the resource to be replaced
+     * @param rs the new resource with which old one will be replaced
+     * @param ifNoneMatch the value to be set for If-Match header
+     * @return
+     */
+    public <T> CompletableFuture<Response<T>> replaceResource(String id, T rs, String ifNoneMatch) {
+        return replaceResource(id, rs, ifNoneMatch, null);
+    }
+
+    /**
+     * Replaces the given resource
+     *
+     * @param id identifier of the resource to be replaced
+     * @param rs the new resource with which old one will be replaced
+     * @param ifNoneMatch the value to be set for If-Match header
+     * @param retention the policy of retaining the raw body of the response, null to use the client's policy
+     * @return
+     */
+    public <T> CompletableFuture<Response<T>> replaceResource(String id, T rs, String ifNoneMatch, BodyRetention retention) {
+        return sendRequest(protocol.newReplaceRequest(id, rs, ifNoneMatch), (Class<T>) rs.getClass(), true, retention);
+    }
+
+    /**
+     * Modifies the selected resource
+     * @param pr the modify(a.k.a patch) request
+     * @return
+     */
+    public <T> CompletableFuture<Response<T>> patchResource(PatchRequest pr) {
+        return sendRequest(protocol.newPatchRequest(pr), (Class<T>) pr.getResClass(), true, pr.getBodyRetention());
+    }
+
+    /**
+     * Deletes the selected resource
+     *
+     * @param id identifier of the resource to be deleted
+     * @param resourceType the type of the resource that is to be deleted
+     * @return
+     */
+    public CompletableFuture<Response<Boolean>> deleteResource(String id, Class resourceType) {
+        CompletableFuture<Response<Boolean>> cf = sendRawRequest(protocol.newDeleteRequest(id, resourceType), resourceType);
+        return cf.thenApply(protocol::toDeleteResponse);
+    }
+
+    /**
+     * Fetches the resource specified by the given identifier
+     *
+     * @param id identifier of the resource
+     * @param resClas the type of the resource to be fetched
+     * @return
+     */
+    public <T> CompletableFuture<Response<T>> getResource(String id, Class<T> resClas) {
+        return getResource(id, null, resClas, true, "*");
+    }
+
+    /**
+     * @see SparrowClient#getResource(String, String, Class, boolean, String...)
+     */
+    public <T> CompletableFuture<Response<T>> getResource(String id, String ifNoneMatch, Class<T> resClas, boolean include, String... attributes) {
+        return getResource(id, ifNoneMatch, resClas, null, include, attributes);
+    }
+
+    /**
+     * @see SparrowClient#getResource(String, String, Class, BodyRetention, boolean, String...)
+     */
+    public <T> CompletableFuture<Response<T>> getResource(String id, String ifNoneMatch, Class<T> resClas, BodyRetention retention, boolean include, String... attributes) {
+        return sendRawRequest(protocol.newGetRequest(id, ifNoneMatch, resClas, include, attributes), resClas, retention);
+    }
+
+    /**
+     * Fetches all resources of the given resourcetype based on the given search request.
+     *
+     * @param sr the search request
+     * @param resClas the type of the resources to be searched
+     * @return
+     */
+    public <T> CompletableFuture<SearchResponse<T>> searchResource(SearchRequest sr, Class<T> resClas) {
+        String endpoint = protocol.getEndpoint(resClas);
+        return sendSearchRequest(protocol.newSearchRequest(sr, endpoint), resClas, sr.getBodyRetention());
+    }
+
+    /**
+     * Fetches all resources based on the criteria present in the given search request
+     *
+     * @param sr the search request
+     * @return
+     */
+    public CompletableFuture<SearchResponse<Object>> searchAll(SearchRequest sr) {
+        return sendSearchRequest(protocol.newSearchRequest(sr, ""), null, sr.getBodyRetention());
+    }
+
+    /**
+     * Sends the given request to the server
+     *
+     * @param req the HTTP request
+     * @param resClas class of the resourcetype
+     * @return
+     */
+    public <T> CompletableFuture<Response<T>> sendRawRequest(HttpUriRequest req, Class<T> resClas) {
+        return sendRequest(req, resClas, false, null);
+    }
+
+    /**
+     * Sends the given request to the server
+     *
+     * @param req the HTTP request
+     * @param resClas class of the resourcetype
+     * @param retention the policy of retaining the raw body of the response, null to use the client's policy
+     * @return
+     */
+    public <T> CompletableFuture<Response<T>> sendRawRequest(HttpUriRequest req, Class<T> resClas, BodyRetention retention) {
+        return sendRequest(req, resClas, false, retention);
+    }
+
+    private <T> CompletableFuture<Response<T>> sendRequest(HttpUriRequest req, Class<T> resClas, boolean write, BodyRetention retention) {
+        Response<T> result = new Response<T>();
+        return execute(req, result, (resp) -> protocol.readResponse(resp, resClas, result, write, retention));
+    }
+
+    private <T> CompletableFuture<SearchResponse<T>> sendSearchRequest(HttpUriRequest req, Class<T> resClas, BodyRetention retention) {
+        SearchResponse<T> result = new SearchResponse<T>();
+        return execute(req, result, (resp) -> protocol.readSearchResponse(resp, resClas, result, retention));
+    }
+
+    private <R extends Response<?>> CompletableFuture<R> execute(HttpUriRequest req, R result, ResponseReader reader) {
+        CompletableFuture<R> cf = new CompletableFuture<R>();
+        Authenticator authenticator = protocol.getAuthenticator();
+
+        try {
+            authenticator.addHeaders(req);
+            LOG.debug("Sending {} request to {}", req.getMethod(), req.getURI());
+            client.execute(req, new FutureCallback<HttpResponse>() {
+                @Override
+                public void completed(HttpResponse resp) {
+                    try {
+                        authenticator.saveHeaders(resp);
+                        LOG.debug("Received status code {} from the request to {}", resp.getStatusLine().getStatusCode(), req.getURI());
+                        // the entity is fully buffered by now, decode it off the I/O thread
+                        protocol.getExecutor().execute(() -> read(resp, result, reader, cf));
+                    }
+                    catch(Exception e) {
+                        LOG.warn("", e);
+                        protocol.setException(result, e);
+                        cf.complete(result);
+                    }
+                }
+
+                @Override
+                public void failed(Exception e) {
+                    LOG.warn("", e);
+                    protocol.setException(result, e);
+                    cf.complete(result);
+                }
+
+                @Override
+                public void cancelled() {
+                    LOG.debug("The request to {} was cancelled", req.getURI());
+                    protocol.setException(result, new CancellationException("The request was cancelled"));
+                    cf.complete(result);
+                }
+            });
+        }
+        catch(Exception e) {
+            LOG.warn("", e);
+            protocol.setException(result, e);
+            cf.complete(result);
+        }
+
+        return cf;
+    }
+
+    private <R extends Response<?>> void read(HttpResponse resp, R result, ResponseReader reader, CompletableFuture<R> cf) {
+        try {
+            reader.read(resp);
+        }
+        catch(Exception e) {
+            LOG.warn("", e);
+            protocol.setException(result, e);
+        }
+        cf.complete(result);
+    }
+
+    /**
+     * Shuts down the underlying HTTP client, any pending requests will be completed with
+     * HTTP code -1. The executor created by this client is shut down as well.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if(evictor != null) {
+                evictor.shutdownNow();
+            }
+            client.close();
+        }
+        finally {
+            protocol.shutdown();
+        }
+    }
+
+    private interface ResponseReader {
+        void read(HttpResponse resp) throws Exception;
+    }
+}
@@ -6,55 +6,66 @@
  */
 package com.keydap.sparrow;
 
-import static org.apache.http.HttpStatus.SC_CREATED;
 import static org.apache.http.HttpStatus.SC_NOT_MODIFIED;
 import static org.apache.http.HttpStatus.SC_NO_CONTENT;
 import static org.apache.http.HttpStatus.SC_OK;
+import static org.apache.http.HttpStatus.SC_REQUEST_TOO_LONG;
 
-import java.lang.reflect.Field;
-import java.lang.reflect.Type;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.net.URLEncoder;
 import java.util.ArrayList;
-import java.util.Date;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
+import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.X509TrustManager;
 
 import org.apache.http.Consts;
+import org.apache.http.Header;
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpHeaders;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
-import org.apache.http.StatusLine;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.HttpDelete;
-import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPatch;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpPut;
-import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
 import org.apache.http.conn.ssl.NoopHostnameVerifier;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClientBuilder;
-import org.apache.http.util.EntityUtils;
+import org.apache.http.message.BasicHeader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
-import com.google.gson.reflect.TypeToken;
+import com.google.gson.JsonPrimitive;
 import com.keydap.sparrow.auth.Authenticator;
 
 /**
@@ -63,7 +74,7 @@ import com.keydap.sparrow.auth.Authenticator;
  * @author Kiran Ayyagari (kayyagari@keydap.com)
  */
 @SuppressWarnings("all")
-public class SparrowClient {
+public class SparrowClient implements Closeable {
 
     /** the base API URL of the SCIM server e.g https://sparrow.keydap.com/v2 */
     private String baseApiUrl;
@@ -73,6 +84,9 @@ public class SparrowClient {
     
     /** the authenticator instance */
     private Authenticator authenticator;
+
+    /** the registration of resources, building of requests and reading of responses */
+    private ScimProtocol protocol;
     
     /** HTTP client builder */
     private HttpClientBuilder builder;
@@ -80,31 +94,43 @@ public class SparrowClient {
     /** the main HTTP client instance used for communicating with the server */
     private CloseableHttpClient client;
 
-    /** SCIM entity serializer and deserializer */
-    private Gson serializer;
+    /** the pool of HTTP connections */
+    private PooledConnectionManager connManager;
 
-    /** the logger instance */
-    private static final Logger LOG = LoggerFactory.getLogger(SparrowClient.class);
-    
-    /** map holding <endpoint-entityClass> tuples */
-    private Map<String, Class<?>> endpointClassMap = new HashMap<String, Class<?>>();
+    /** the configuration of HTTP connections */
+    private ClientConfig config;
+
+    /** the generator of patches used by patchOrReplace() */
+    private PatchGenerator patchGenerator = new PatchGenerator();
+
+    /** the applier of patches used for updating the cached resources */
+    private PatchApplier patchApplier = new PatchApplier();
+
+    /** the cache of resources fetched by ID, null if caching is disabled */
+    private ResourceCache resourceCache;
 
-    /** map holding <schemaId-entityClass> tuples */
-    private Map<String, Class<?>> schemaIdClassMap = new HashMap<String, Class<?>>();
+    /** the coalescer of concurrent identical reads, null if coalescing is disabled */
+    private SingleFlight singleFlight;
 
-    /** map holding <entityClass-endpoint> tuples */
-    private Map<Class<?>, String> classEndpointMap = new HashMap<Class<?>, String>();
+    /** SCIM entity serializer and deserializer */
+    private JsonCodec codec;
 
-    private Map<String, Set<Field>> endpointExtFieldMap = new HashMap<String, Set<Field>>();
+    /** the logger instance */
+    private static final Logger LOG = LoggerFactory.getLogger(SparrowClient.class);
 
     /** the MIME type for application/scim+json content */
     public static final ContentType MIME_TYPE = ContentType
             .create("application/scim+json", Consts.UTF_8);
 
-    /** type for serializing a List of JsonObjects */
-    private static final Type lstJsonObj = new TypeToken<List<JsonObject>>(){}.getType();
-    
-    private JsonParser parser = new JsonParser();
+    /** the maximum number of operations allowed in a bulk request */
+    private volatile int bulkMaxOperations = -1;
+
+    /** the maximum payload size of a bulk request in bytes */
+    private volatile int bulkMaxPayloadSize = -1;
+
+    /** the limits of bulk requests used when the service provider doesn't advertise them */
+    private static final int DEFAULT_BULK_MAX_OPERATIONS = 1000;
+    private static final int DEFAULT_BULK_MAX_PAYLOAD_SIZE = 1048576;
     
     /**
      * Creates an instance of the client
@@ -155,55 +181,50 @@ public class SparrowClient {
      * @param sslCtx the SSL context, mandatory only when the service is accessible over HTTPS
      */
     public SparrowClient(String baseApiUrl, String baseOauthUrl, Authenticator authenticator, SSLContext sslCtx) {
+        this(baseApiUrl, baseOauthUrl, authenticator, sslCtx, null);
+    }
+
+    /**
+     * Creates an instance of the client
+     * 
+     * @param baseApiUrl the API URL of the SCIM server
+     * @param authenticator authenticator instance, optional
+     * @param sslCtx the SSL context, mandatory only when the service is accessible over HTTPS.
+     *               The system properties https.protocols and https.cipherSuites are applied to it,
+     *               the javax.net.ssl.* properties are honoured only when the API URL is not HTTPS
+     * @param config the configuration of the client, optional
+     */
+    public SparrowClient(String baseApiUrl, String baseOauthUrl, Authenticator authenticator, SSLContext sslCtx, ClientConfig config) {
         this.baseApiUrl = baseApiUrl;
         this.baseOauthUrl = baseOauthUrl;
         
-        // if authenticator is not given then use a null authenticator
-        if(authenticator == null) {
-            authenticator = new Authenticator() {
-                public void saveHeaders(HttpResponse resp) {
-                }
-                
-                public void authenticate(String baseUrl, CloseableHttpClient client)
-                        throws Exception {
-                }
-                
-                public void addHeaders(HttpUriRequest req) {
-                }
-            };
-        }
-        
-        this.authenticator = authenticator;
-        
-        boolean isHttps = baseApiUrl.toLowerCase().startsWith("https");
+        // the defaults of the authenticator, configuration and codec are filled in by the protocol
+        protocol = new ScimProtocol(baseApiUrl, authenticator, config);
+        this.authenticator = protocol.getAuthenticator();
+        config = protocol.getConfig();
+        this.config = config;
+        codec = protocol.getCodec();
         
         builder = HttpClientBuilder.create().useSystemProperties();
         
-        if(isHttps) {
-            if(sslCtx == null) {
-                LOG.warn("********************** No SSLContext instance is provided, creating a cstom SSLContext that trusts all certificates **********************");
-                try {
-                    sslCtx = SSLContext.getInstance("TLS");
-                    sslCtx.init(null, new X509TrustManager[]{new AllowAllTrustManager()}, null);
-                }
-                catch(Exception e) {
-                    throw new RuntimeException(e);
-                }
-
-                builder.setSSLHostnameVerifier(NoopHostnameVerifier.INSTANCE);
-            }
-
-            builder.setSSLContext(sslCtx);
+        connManager = new PooledConnectionManager(createSocketFactoryRegistry(baseApiUrl, sslCtx), config);
+        builder.setConnectionManager(connManager);
+        builder.setDefaultRequestConfig(createRequestConfig(config));
+        
+        if(config.getMaxIdleTime() > 0) {
+            builder.evictExpiredConnections();
+            builder.evictIdleConnections(config.getMaxIdleTime(), TimeUnit.MILLISECONDS);
         }
         
         client = builder.build();
         
-        GsonBuilder gb = new GsonBuilder();
-        
-        Type dt = new TypeToken<Date>(){}.getType();
-        gb.registerTypeAdapter(dt, new DateTimeSerializer());
+        if(config.getResourceCacheSize() > 0) {
+            resourceCache = new ResourceCache(config.getResourceCacheSize(), config.getResourceCacheTtl());
+        }
         
-        serializer = gb.create();
+        if(config.isCoalesceReads()) {
+            singleFlight = new SingleFlight();
+        }
     }
 
     /**
@@ -212,47 +233,7 @@ public class SparrowClient {
      * @param resCls one or more Resource classes
      */
     public void register(Class<?>... resCls) {
-        for (Class<?> rc : resCls) {
-            Resource res = rc.getAnnotation(Resource.class);
-            if(res == null) {
-                LOG.warn("Resource annotation is missing, ignoring class {}", rc.getName());
-                continue;
-            }
-
-            String schemaId = res.schemaId();
-            if(schemaId.trim().length() == 0) {
-                String err = "Invalid schemaId in Resource annotation of class " + rc.getName();
-                LOG.warn(err);
-                throw new IllegalArgumentException(err);
-            }
-            
-            String endpoint = res.endpoint();
-            if(endpoint.trim().length() == 0) {
-                String err = "Invalid endpoint in Resource annotation of class " + rc.getName();
-                LOG.warn(err);
-                throw new IllegalArgumentException(err);
-            }
-            
-            schemaIdClassMap.put(schemaId, rc);
-            endpointClassMap.put(endpoint, rc);
-            classEndpointMap.put(rc, endpoint);
-
-            // the fields representing extended schema
-            Set<Field> extResFields = new HashSet<Field>();
-
-            Field[] fields = rc.getDeclaredFields();
-            for (Field f : fields) {
-                Extension ext = f.getAnnotation(Extension.class);
-                if (ext != null) {
-                    f.setAccessible(true);
-                    extResFields.add(f);
-                }
-            }
-
-            if (!extResFields.isEmpty()) {
-                endpointExtFieldMap.put(endpoint, extResFields);
-            }
-        }
+        protocol.register(resCls);
     }
     
     /**
@@ -264,6 +245,94 @@ public class SparrowClient {
         authenticator.authenticate(baseApiUrl, client);
     }
     
+    /**
+     * Returns the current statistics of the HTTP connection pool.
+     * 
+     * @return statistics of the connection pool
+     */
+    public ConnectionPoolStats getPoolStats() {
+        return connManager.getPoolStats();
+    }
+
+    /**
+     * Creates the default configuration of requests from the given client configuration
+     * 
+     * @param config the client configuration
+     * @return the request configuration
+     */
+    /*default protection*/ static RequestConfig createRequestConfig(ClientConfig config) {
+        return RequestConfig.custom()
+                .setConnectTimeout(config.getConnectTimeout())
+                .setSocketTimeout(config.getSocketTimeout())
+                .setConnectionRequestTimeout(config.getConnectionRequestTimeout())
+                .build();
+    }
+
+    /**
+     * Reads the comma separated values of the given system property
+     * 
+     * @param name name of the system property
+     * @return the values or null if the property is not set
+     */
+    /*default protection*/ static String[] splitProperty(String name) {
+        String value = System.getProperty(name);
+        if(value == null || value.trim().isEmpty()) {
+            return null;
+        }
+        
+        return value.trim().split(" *, *");
+    }
+
+    /**
+     * Creates the registry of the socket factories of the blocking HTTP connections.
+     * The system properties https.protocols and https.cipherSuites are applied to the given
+     * SSLContext, the javax.net.ssl.* properties are honoured only when the API URL is not HTTPS
+     * 
+     * @param baseApiUrl the API URL of the SCIM server
+     * @param sslCtx the SSL context, a context trusting all certificates is used when null
+     * @return the registry of the socket factories
+     */
+    /*default protection*/ static Registry<ConnectionSocketFactory> createSocketFactoryRegistry(String baseApiUrl, SSLContext sslCtx) {
+        boolean isHttps = baseApiUrl.toLowerCase().startsWith("https");
+        
+        SSLConnectionSocketFactory sslSocketFactory = SSLConnectionSocketFactory.getSystemSocketFactory();
+        if(isHttps) {
+            HostnameVerifier verifier = null;
+            if(sslCtx == null) {
+                sslCtx = createTrustAllContext();
+                verifier = NoopHostnameVerifier.INSTANCE;
+            }
+            
+            // honour the same system properties as HttpClientBuilder.useSystemProperties() does
+            // for a given SSLContext, the builder's own factory is bypassed by the connection manager
+            sslSocketFactory = new SSLConnectionSocketFactory(sslCtx, splitProperty("https.protocols"),
+                    splitProperty("https.cipherSuites"), verifier);
+        }
+        
+        return RegistryBuilder.<ConnectionSocketFactory>create()
+                .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                .register("https", sslSocketFactory)
+                .build();
+    }
+
+    /**
+     * Creates a SSLContext that trusts all certificates, used when no SSLContext
+     * is provided for accessing a service over HTTPS
+     * 
+     * @return the SSLContext
+     */
+    /*default protection*/ static SSLContext createTrustAllContext() {
+        LOG.warn("********************** No SSLContext instance is provided, creating a cstom SSLContext that trusts all certificates **********************");
+        try {
+            SSLContext sslCtx = SSLContext.getInstance("TLS");
+            sslCtx.init(null, new X509TrustManager[]{new AllowAllTrustManager()}, null);
+            return sslCtx;
+        }
+        catch(Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+    
     /**
      * Adds the given resource
      * 
@@ -271,11 +340,18 @@ public class SparrowClient {
      * @return
      */
     public <T> Response<T> addResource(T rs) {
-        Class resClas = rs.getClass();
-        String endpoint = getEndpoint(resClas);
-        HttpPost post = new HttpPost(baseApiUrl + endpoint);
-        setBody(post, rs);
-        return sendRawRequest(post, resClas);
+        return addResource(rs, null);
+    }
+
+    /**
+     * Adds the given resource
+     * 
+     * @param rs the resource
+     * @param retention the policy of retaining the raw body of the response, null to use the client's policy
+     * @return
+     */
+    public <T> Response<T> addResource(T rs, BodyRetention retention) {
+        return sendRequest(newAddRequest(rs), (Class<T>) rs.getClass(), true, retention);
     }
 
     /**
@@ -298,12 +374,22 @@ public class SparrowClient {
      * @return
      */
     public <T> Response<T> replaceResource(String id, T rs, String ifNoneMatch) {
-        Class resClas = rs.getClass();
-        String endpoint = getEndpoint(resClas);
-        HttpPut put = new HttpPut(baseApiUrl + endpoint + "/" + id);
-        setIfMatch(put, ifNoneMatch);
-        setBody(put, rs);
-        return sendRawRequest(put, resClas);
+        return replaceResource(id, rs, ifNoneMatch, null);
+    }
+
+    /**
+     * Replaces the given resource 
+     * 
+     * @param id identifier of the resource to be replaced
+     * @param rs the new resource with which old one will be replaced
+     * @param ifNoneMatch the value to be set for If-Match header
+     * @param retention the policy of retaining the raw body of the response, null to use the client's policy
+     * @return
+     */
+    public <T> Response<T> replaceResource(String id, T rs, String ifNoneMatch, BodyRetention retention) {
+        Response<T> resp = sendRequest(newReplaceRequest(id, rs, ifNoneMatch), (Class<T>) rs.getClass(), true, retention);
+        invalidateCache(rs.getClass(), id);
+        return resp;
     }
 
     /**
@@ -312,27 +398,175 @@ public class SparrowClient {
      * @return
      */
     public <T> Response<T> patchResource(PatchRequest pr) {
-        Class resClas = pr.getResClass();
-        String endpoint = getEndpoint(resClas);
+        Response<T> resp = sendRequest(newPatchRequest(pr), (Class<T>) pr.getResClass(), true, pr.getBodyRetention());
+        if(!updateCache(pr, resp)) {
+            invalidateCache(pr.getResClass(), pr.getId());
+        }
+        return resp;
+    }
+
+    /**
+     * Applies the operations of the given PatchRequest to a copy of the given resource
+     * on the client side, without sending any request to the server.
+     * 
+     * @param pr the patch request
+     * @param resource the resource
+     * @return a new instance of the resource with the patch applied
+     * @throws IllegalArgumentException if any operation is invalid or its target is not present
+     * @see PatchApplier
+     */
+    public <T> T applyPatch(PatchRequest pr, T resource) {
+        JsonObject json = serialize(resource);
+        patchApplier.apply(pr, json);
+        try {
+            return (T) unmarshal(json, resource.getClass());
+        }
+        catch(Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Keeps the cached copy of a successfully patched resource instead of invalidating it.
+     * The patch is applied to the cached copy only if the patch was sent with an If-Match
+     * header matching the version of the cached copy, i.e the server patched the same version,
+     * and the server returned the new version.
+     * 
+     * @return true if the cache was updated, false if the cached copy must be invalidated
+     */
+    private boolean updateCache(PatchRequest pr, Response<?> resp) {
+        int code = resp.getHttpCode();
+        if(resourceCache == null || pr.getIfMatch() == null || resp.getETag() == null
+                || (code != SC_OK && code != SC_NO_CONTENT)) {
+            return false;
+        }
         
-        String url = baseApiUrl + endpoint + "/" + pr.getId();
+        String resPath = getEndpoint(pr.getResClass()) + "/" + pr.getId();
+        ResourceCache.Entry cached = resourceCache.get(resPath, "");
+        if(cached == null || !pr.getIfMatch().equals(cached.etag)) {
+            return false;
+        }
         
-        if(pr.getAttributes() != null) {
-            String encoded;
+        Object updated;
+        if(code == SC_OK && pr.getAttributes() == null && resp.getResource() != null) {
+            updated = resp.getResource();
+        }
+        else {
             try {
-                encoded = URLEncoder.encode(pr.getAttributes(), Consts.UTF_8.name());
+                updated = applyPatch(pr, cached.resource);
             }
-            catch(Exception e) {
-                throw new RuntimeException(e);
+            catch(RuntimeException e) {
+                LOG.debug("Failed to apply the patch to the cached resource {}", resPath, e);
+                return false;
             }
-            
-            url += "?attributes=" + encoded;
         }
         
-        HttpPatch patch = new HttpPatch(url);
-        setIfMatch(patch, pr.getIfMatch());
-        setBody(patch, pr);
-        return sendRawRequest(patch, resClas);
+        // the other projections are stale
+        resourceCache.invalidate(resPath);
+        resourceCache.put(resPath, "", updated, resp.getETag());
+        return true;
+    }
+
+    /**
+     * Sends the changes made to the given resource either as a PATCH or as a PUT request,
+     * whichever has the smaller body. The patch is generated by comparing the modified and
+     * original instances and is compacted before its size is estimated.
+     * 
+     * Note that a PUT replaces all the attributes of the resource, hence the original
+     * must contain all the attributes present on the server.
+     * 
+     * @param id identifier of the resource
+     * @param modified the modified resource
+     * @param original the resource before modification
+     * @param ifMatch the value to be set for If-Match header, optional
+     * @return the response or null if there are no changes to be sent
+     */
+    public <T> Response<T> patchOrReplace(String id, T modified, T original, String ifMatch) {
+        PatchRequest pr = patchGenerator.create(id, modified, original, ifMatch);
+        if(pr.getOperations().isEmpty()) {
+            return null;
+        }
+        
+        pr.compact();
+        long patchSize = estimateSize(pr);
+        long putSize = estimateSize(modified);
+        LOG.debug("Estimated sizes of PATCH and PUT requests of the resource {} are {} and {}", id, patchSize, putSize);
+        if(patchSize <= putSize) {
+            return patchResource(pr);
+        }
+        
+        return replaceResource(id, modified, ifMatch);
+    }
+    
+    /**
+     * Sends the changes recorded by the given resource as a PATCH request, the change log
+     * of the resource is reset if the request succeeds.
+     * 
+     * @param id identifier of the resource
+     * @param resource the resource whose changes are being tracked
+     * @param ifMatch the value to be set for If-Match header, optional
+     * @return the response or null if there are no changes to be sent
+     * @see Tracked#startTracking()
+     */
+    public <T extends Tracked> Response<T> patchChanges(String id, T resource, String ifMatch) {
+        PatchRequest pr = patchGenerator.createFromChanges(id, resource, ifMatch);
+        if(pr.getOperations().isEmpty()) {
+            return null;
+        }
+        
+        Response<T> resp = patchResource(pr);
+        int code = resp.getHttpCode();
+        if(code == SC_OK || code == SC_NO_CONTENT) {
+            resource.startTracking();
+        }
+        
+        return resp;
+    }
+    
+    /**
+     * Computes the length of the serialized form of the given object without
+     * holding the serialized data
+     * 
+     * @param obj the resource or a patch request
+     * @return the number of characters
+     */
+    /*default protection*/ <T> long estimateSize(T obj) {
+        CountingWriter cw = new CountingWriter();
+        try {
+            writeJson(obj, cw);
+        }
+        catch(IOException e) {
+            // CountingWriter doesn't throw
+            throw new IllegalStateException(e);
+        }
+        return cw.count;
+    }
+    
+    private static class CountingWriter extends Writer {
+        private long count;
+        
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+            count += len;
+        }
+        
+        @Override
+        public void write(int c) {
+            count++;
+        }
+        
+        @Override
+        public void write(String str, int off, int len) {
+            count += len;
+        }
+        
+        @Override
+        public void flush() {
+        }
+        
+        @Override
+        public void close() {
+        }
     }
 
     /**
@@ -343,16 +577,9 @@ public class SparrowClient {
      * @return
      */
     public Response<Boolean> deleteResource(String id, Class resourceType) {
-        String endpoint = getEndpoint(resourceType);
-        HttpDelete delete = new HttpDelete(baseApiUrl + endpoint + "/" + id);
-        Response<Boolean> resp = sendRawRequest(delete, resourceType);
-        if(resp.getHttpCode() == SC_NO_CONTENT) {
-            resp.setResource(true);
-        }else {
-            resp.setResource(false);
-        }
-        
-        return resp;
+        Response<Boolean> resp = sendRawRequest(newDeleteRequest(id, resourceType), resourceType);
+        invalidateCache(resourceType, id);
+        return toDeleteResponse(resp);
     }
     
     /**
@@ -383,7 +610,7 @@ public class SparrowClient {
     
     /**
      * Same as {@link #getResource(String, String, Class, boolean, String...)} 
-     * but without the If-Match header value
+     * but without the If-None-Match header value
      * 
      * @see #getResource(String, String, Class, boolean, String...)
      */
@@ -409,31 +636,63 @@ public class SparrowClient {
      * @return
      */
     public <T> Response<T> getResource(String id, String ifNoneMatch, Class<T> resClas, boolean include, String... attributes) {
-        String endpoint = getEndpoint(resClas);
-        StringBuilder sb = new StringBuilder(baseApiUrl + endpoint + "/" + id);
-        if(attributes != null) {
-            if(include) {
-                sb.append("?attributes=");
-            } else {
-                sb.append("?excludedAttributes=");
-            }
-            
-            int i=0;
-            for(; i < attributes.length - 1; i++) {
-                String attr = attributes[i].trim();
-                if(attr.length() > 0 ) {
-                    sb.append(attr).append(',');
-                }
-            }
-            String attr = attributes[i].trim();
-            if(attr.length() > 0 ) {
-                sb.append(attr);
-            }
+        return getResource(id, ifNoneMatch, resClas, null, include, attributes);
+    }
+
+    /**
+     * Same as {@link #getResource(String, String, Class, boolean, String...)} 
+     * but with the policy of retaining the raw body of the response
+     * 
+     * @param retention the policy of retaining the raw body of the response, null to use the client's policy
+     * @see #getResource(String, String, Class, boolean, String...)
+     */
+    public <T> Response<T> getResource(String id, String ifNoneMatch, Class<T> resClas, BodyRetention retention, boolean include, String... attributes) {
+        HttpGet get = newGetRequest(id, ifNoneMatch, resClas, include, attributes);
+        // the cache is not used when the caller is tracking the version
+        if(resourceCache == null || ifNoneMatch != null) {
+            return sendReadRequest(get, resClas, retention);
+        }
+        
+        String resPath = getEndpoint(resClas) + "/" + id;
+        String projection = get.getURI().getRawQuery();
+        if(projection == null) {
+            projection = "";
+        }
+        
+        ResourceCache.Entry cached = resourceCache.get(resPath, projection);
+        if(cached != null) {
+            protocol.setIfNoneMatch(get, cached.etag);
         }
         
-        HttpGet get = new HttpGet(sb.toString());
-        setIfMatch(get, ifNoneMatch);
-        return sendRawRequest(get, resClas);
+        Response<T> resp = sendReadRequest(get, resClas, retention);
+        int code = resp.getHttpCode();
+        if(code == SC_NOT_MODIFIED && cached != null) {
+            resourceCache.revalidated(cached);
+            resp.setResource((T) cached.resource);
+        }
+        else if(code == SC_OK && resp.getETag() != null && resp.getResource() != null) {
+            resourceCache.put(resPath, projection, resp.getResource(), resp.getETag());
+        }
+        else if(code == HttpStatus.SC_NOT_FOUND) {
+            resourceCache.invalidate(resPath);
+        }
+        
+        return resp;
+    }
+
+    /**
+     * Removes all the resources held in the cache
+     */
+    public void clearCache() {
+        if(resourceCache != null) {
+            resourceCache.clear();
+        }
+    }
+
+    private void invalidateCache(Class resClas, String id) {
+        if(resourceCache != null) {
+            resourceCache.invalidate(getEndpoint(resClas) + "/" + id);
+        }
     }
 
     /**
@@ -449,7 +708,7 @@ public class SparrowClient {
         url.append(endpoint);
         
         HttpGet get = new HttpGet(url.toString());
-        return sendSearchRequest(get, resClas);
+        return sendSearchRequest(get, resClas, null);
     }
     
     /**
@@ -476,7 +735,7 @@ public class SparrowClient {
         }
 
         HttpGet get = new HttpGet(url.toString());
-        return sendSearchRequest(get, resClas);   
+        return sendSearchRequest(get, resClas, null);
     }
     
     /**
@@ -505,6 +764,77 @@ public class SparrowClient {
         return _searchResource(sr, endpoint, resClas);
     }
     
+    /**
+     * Returns an iterator over all the resources matching the given search request.
+     * The results are fetched lazily one page at a time, starting from the startIndex
+     * of the search request, until the totalResults are reached.
+     * 
+     * An IllegalStateException is thrown from the iterator if a page cannot be fetched.
+     * 
+     * @param sr the search request
+     * @param resClas the type of the resources to be searched
+     * @param pageSize the number of resources to be fetched in each page
+     * @return an iterator over the matching resources
+     */
+    public <T> SearchIterator<T> searchIterator(SearchRequest sr, Class<T> resClas, int pageSize) {
+        String endpoint = getEndpoint(resClas);
+        return new SearchIterator<T>(sr, pageSize, (req) -> _searchResource(req, endpoint, resClas));
+    }
+
+    /**
+     * Same as {@link #searchIterator(SearchRequest, Class, int)} but returns a sequential Stream
+     * 
+     * @see #searchIterator(SearchRequest, Class, int)
+     */
+    public <T> Stream<T> searchStream(SearchRequest sr, Class<T> resClas, int pageSize) {
+        Spliterator<T> split = Spliterators.spliteratorUnknownSize(searchIterator(sr, resClas, pageSize), Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.stream(split, false);
+    }
+    
+    /**
+     * Returns an iterator over all the resources matching the given search request.
+     * The first page is fetched and then the remaining pages are fetched concurrently
+     * using at most the given number of threads of the client's executor, see
+     * {@link ClientConfig#setExecutor(Executor)}. The pages being fetched and the pages held
+     * in memory, including the one being consumed, are together limited by the given window size.
+     * 
+     * The connection pool must allow at least <i>parallelism</i> connections per route,
+     * see {@link ClientConfig#setMaxConnPerRoute(int)}.
+     * 
+     * An IllegalStateException is thrown from the iterator if a page cannot be fetched.
+     * The iterator must be closed if it is not consumed completely.
+     * 
+     * @param sr the search request
+     * @param resClas the type of the resources to be searched
+     * @param pageSize the number of resources to be fetched in each page
+     * @param parallelism maximum number of pages fetched concurrently
+     * @param window maximum number of pages that are being fetched or held in memory
+     * @param ordered flag to return the resources in the order of pages, when false
+     *                the resources are returned in the order the pages arrive
+     * @return an iterator over the matching resources
+     */
+    public <T> ParallelSearchIterator<T> searchParallel(SearchRequest sr, Class<T> resClas, int pageSize, int parallelism, int window, boolean ordered) {
+        String endpoint = getEndpoint(resClas);
+        return new ParallelSearchIterator<T>(sr, pageSize, parallelism, window, ordered, getExecutor(), (req) -> _searchResource(req, endpoint, resClas));
+    }
+
+    /**
+     * Same as {@link #searchParallel(SearchRequest, Class, int, int, int, boolean)} but returns
+     * a sequential Stream, the stream must be closed if it is not consumed completely.
+     * 
+     * @see #searchParallel(SearchRequest, Class, int, int, int, boolean)
+     */
+    public <T> Stream<T> searchParallelStream(SearchRequest sr, Class<T> resClas, int pageSize, int parallelism, int window, boolean ordered) {
+        ParallelSearchIterator<T> itr = searchParallel(sr, resClas, pageSize, parallelism, window, ordered);
+        int characteristics = Spliterator.NONNULL;
+        if(ordered) {
+            characteristics |= Spliterator.ORDERED;
+        }
+        
+        Spliterator<T> split = Spliterators.spliteratorUnknownSize(itr, characteristics);
+        return StreamSupport.stream(split, false).onClose(itr::close);
+    }
+    
     /**
      * Fetches all resources based on the criteria present in the given search request
      * 
@@ -550,32 +880,401 @@ public class SparrowClient {
     }
 
     /**
-     * Fetches the service provider's configuration.
+     * Sends the operations of the given bulk request to the server. The operations are
+     * split into multiple bulk requests, if needed, to honour the maxOperations and
+     * maxPayloadSize limits advertised in the service provider's configuration.
      * 
-     * @return
-     */
-    public Response<JsonObject> getSrvProvConf() {
-        HttpGet get = new HttpGet(baseApiUrl + "/ServiceProviderConfigs");
-        return sendRawRequest(get, JsonObject.class);
-    }
-
-    /**
-     * Fetches all resourcetypes supported by the service provider.
+     * The references to the bulkIds of resources created in an earlier chunk are
+     * replaced with the identifiers of the created resources before sending the
+     * operations of the later chunks.
      * 
-     * @return
+     * An operation that alone exceeds the maxPayloadSize limit is not sent, its response
+     * fails with the status 413 and counts as an error towards the failOnErrors limit.
+     * 
+     * @param br the bulk request
+     * @return the responses of all operations in the same order as the operations in the request
+     * @throws IllegalStateException if the server doesn't support bulk operations
+     */
+    public BulkResponse sendBulkRequest(BulkRequest br) {
+        loadBulkLimits();
+        
+        List<BulkOperation> ops = br.getOperations();
+        BulkResponse result = new BulkResponse(ops);
+        
+        // bulkId -> id of the created resource
+        Map<String, String> resolvedIds = new HashMap<String, String>();
+        int failOnErrors = br.getFailOnErrors();
+        int errors = 0;
+        int requestCount = 0;
+        
+        int pos = 0;
+        while(pos < ops.size()) {
+            // the server would have stopped processing if it had received all the operations at once
+            if(failOnErrors > 0 && errors >= failOnErrors) {
+                break;
+            }
+            
+            StringBuilder body = new StringBuilder("{\"schemas\":[\"").append(BulkRequest.SCHEMA).append("\"],");
+            if(failOnErrors > 0) {
+                body.append("\"failOnErrors\":").append(failOnErrors - errors).append(',');
+            }
+            body.append("\"Operations\":[");
+            
+            int payloadSize = body.length() + 2;
+            int end = pos;
+            boolean oversized = false;
+            while(end < ops.size() && (end - pos) < bulkMaxOperations) {
+                String opJson = toBulkJson(ops.get(end), resolvedIds);
+                int size = opJson.getBytes(Consts.UTF_8).length + 1;
+                if(payloadSize + size > bulkMaxPayloadSize) {
+                    oversized = (end == pos);
+                    break;
+                }
+                
+                if(end > pos) {
+                    body.append(',');
+                }
+                body.append(opJson);
+                payloadSize += size;
+                end++;
+            }
+            body.append("]}");
+            
+            if(oversized) {
+                Response<Object> r = new Response<Object>();
+                setBulkOpError(r, SC_REQUEST_TOO_LONG, "Operation was not sent, its size exceeds the maxPayloadSize limit " + bulkMaxPayloadSize);
+                result.getResponses().add(r);
+                errors++;
+                pos++;
+                continue;
+            }
+            
+            requestCount++;
+            errors += sendBulkChunk(ops.subList(pos, end), body.toString(), result, resolvedIds);
+            pos = end;
+        }
+        
+        while(result.getResponses().size() < ops.size()) {
+            Response<Object> r = new Response<Object>();
+            setBulkOpError(r, -1, "Operation was not sent, failOnErrors limit was reached");
+            result.getResponses().add(r);
+        }
+        
+        result.setRequestCount(requestCount);
+        return result;
+    }
+
+    private int sendBulkChunk(List<BulkOperation> ops, String body, BulkResponse result, Map<String, String> resolvedIds) {
+        HttpPost post = new HttpPost(baseApiUrl + "/Bulk");
+        post.setEntity(new StringEntity(body, MIME_TYPE));
+        Response<BulkMessage.Reply> resp = sendRawRequest(post, BulkMessage.Reply.class);
+        
+        Response<?>[] chunkResponses = new Response<?>[ops.size()];
+        BulkMessage.Reply bulkResp = resp.getResource();
+        if(resp.getHttpCode() == SC_OK && bulkResp != null && bulkResp.operations != null) {
+            List<BulkMessage.Result> results = bulkResp.operations;
+            for(int i = 0; i < results.size(); i++) {
+                BulkMessage.Result ro = results.get(i);
+                int index = findBulkOp(ro, ops, i, chunkResponses);
+                if(index >= 0) {
+                    chunkResponses[index] = toBulkOpResponse(ro, ops.get(index), resolvedIds);
+                }
+            }
+        }
+        
+        int errors = 0;
+        for(int i = 0; i < chunkResponses.length; i++) {
+            Response<?> r = chunkResponses[i];
+            if(r == null) {
+                r = new Response<Object>();
+                if(resp.getHttpCode() == SC_OK) {
+                    setBulkOpError(r, -1, "Operation was not processed by the server");
+                }
+                else {
+                    r.setHttpCode(resp.getHttpCode());
+                    r.setError(resp.getError());
+                    r.setHeaders(new Header[0]);
+                }
+            }
+            
+            if(r.getHttpCode() < 200 || r.getHttpCode() > 299) {
+                errors++;
+            }
+            
+            result.getResponses().add(r);
+        }
+        
+        return errors;
+    }
+    
+    /**
+     * Finds the position of the operation to which the given response belongs, the 
+     * response is matched using the bulkId if present or else using the given position
+     */
+    private int findBulkOp(BulkMessage.Result ro, List<BulkOperation> ops, int pos, Response<?>[] matched) {
+        if(ro.bulkId != null) {
+            for(int i = 0; i < ops.size(); i++) {
+                if(ro.bulkId.equals(ops.get(i).getBulkId()) && matched[i] == null) {
+                    return i;
+                }
+            }
+        }
+        
+        if(pos < ops.size() && matched[pos] == null) {
+            return pos;
+        }
+        
+        return -1;
+    }
+
+    private Response<Object> toBulkOpResponse(BulkMessage.Result ro, BulkOperation op, Map<String, String> resolvedIds) {
+        Response<Object> r = new Response<Object>();
+        int code = parseBulkStatus(ro.status);
+        r.setHttpCode(code);
+        
+        List<Header> headers = new ArrayList<Header>();
+        String location = ro.location;
+        if(location != null) {
+            headers.add(new BasicHeader("Location", location));
+        }
+        
+        if(ro.version != null) {
+            headers.add(new BasicHeader("Etag", ro.version));
+        }
+        r.setHeaders(headers.toArray(new Header[headers.size()]));
+        
+        JsonElement body = ro.response;
+        if(body != null && !body.isJsonNull() && resolveRetention(null).retains(code < 200 || code > 299)) {
+            r.setHttpBody(body.toString());
+        }
+        
+        try {
+            if(code >= 200 && code <= 299) {
+                if("DELETE".equals(op.getMethod())) {
+                    r.setResource(code == SC_NO_CONTENT);
+                }
+                else if(body != null && body.isJsonObject()) {
+                    r.setResource(unmarshal(body.getAsJsonObject(), op.getResClass()));
+                }
+                
+                if(op.getBulkId() != null) {
+                    String id = null;
+                    if(body != null && body.isJsonObject()) {
+                        id = getString(body.getAsJsonObject(), "id");
+                    }
+                    
+                    if(id == null && location != null) {
+                        id = location.substring(location.lastIndexOf('/') + 1);
+                    }
+                    
+                    if(id != null) {
+                        resolvedIds.put(op.getBulkId(), id);
+                    }
+                }
+            }
+            else if(body != null && body.isJsonObject()) {
+                r.setError(codec.fromTree(body, Error.class));
+            }
+            else {
+                setBulkOpError(r, code, "Operation failed with status " + code);
+            }
+        }
+        catch(Exception e) {
+            LOG.warn("", e);
+            setException(r, e);
+            r.setHeaders(new Header[0]);
+        }
+        
+        return r;
+    }
+
+    private void setBulkOpError(Response<?> r, int code, String detail) {
+        r.setHttpCode(code);
+        Error err = new Error();
+        err.setDetail(detail);
+        r.setError(err);
+        if(r.getHeaders() == null) {
+            r.setHeaders(new Header[0]);
+        }
+    }
+
+    private int parseBulkStatus(JsonElement status) {
+        if(status == null || status.isJsonNull()) {
+            return -1;
+        }
+        
+        // older drafts of SCIM v2 used an object with a code attribute
+        if(status.isJsonObject()) {
+            status = status.getAsJsonObject().get("code");
+            if(status == null) {
+                return -1;
+            }
+        }
+        
+        try {
+            return Integer.parseInt(status.getAsString().trim());
+        }
+        catch(NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private String getString(JsonObject obj, String name) {
+        JsonElement je = obj.get(name);
+        if(je == null || je.isJsonNull()) {
+            return null;
+        }
+        
+        return je.getAsString();
+    }
+
+    /**
+     * Encodes the given operation using the codec, the data of the operation is converted to
+     * a JSON tree only when the bulkIds present in it need to be resolved
+     */
+    private String toBulkJson(BulkOperation op, Map<String, String> resolvedIds) {
+        BulkMessage.Operation bo = new BulkMessage.Operation();
+        bo.method = op.getMethod();
+        bo.bulkId = op.getBulkId();
+        bo.version = op.getVersion();
+        
+        String path = getEndpoint(op.getResClass());
+        if(op.getId() != null) {
+            path += "/" + resolveBulkId(op.getId(), resolvedIds);
+        }
+        bo.path = path;
+        
+        bo.data = op.getData();
+        if(bo.data != null && !resolvedIds.isEmpty()) {
+            bo.data = resolveBulkIds(serialize(bo.data), resolvedIds);
+        }
+        
+        StringWriter sw = new StringWriter();
+        try {
+            codec.write(bo, sw);
+        }
+        catch(IOException e) {
+            // StringWriter doesn't throw
+            throw new IllegalStateException(e);
+        }
+        
+        return sw.toString();
+    }
+
+    private String resolveBulkId(String value, Map<String, String> resolvedIds) {
+        if(value.startsWith(BulkRequest.BULKID_PREFIX)) {
+            String id = resolvedIds.get(value.substring(BulkRequest.BULKID_PREFIX.length()));
+            if(id != null) {
+                return id;
+            }
+        }
+        
+        return value;
+    }
+
+    private JsonElement resolveBulkIds(JsonElement je, Map<String, String> resolvedIds) {
+        if(je.isJsonPrimitive()) {
+            JsonPrimitive jp = je.getAsJsonPrimitive();
+            if(jp.isString()) {
+                String val = jp.getAsString();
+                String resolved = resolveBulkId(val, resolvedIds);
+                if(resolved != val) {
+                    return new JsonPrimitive(resolved);
+                }
+            }
+        }
+        else if(je.isJsonObject()) {
+            for(Map.Entry<String, JsonElement> e : je.getAsJsonObject().entrySet()) {
+                e.setValue(resolveBulkIds(e.getValue(), resolvedIds));
+            }
+        }
+        else if(je.isJsonArray()) {
+            JsonArray arr = je.getAsJsonArray();
+            for(int i = 0; i < arr.size(); i++) {
+                arr.set(i, resolveBulkIds(arr.get(i), resolvedIds));
+            }
+        }
+        
+        return je;
+    }
+
+    /**
+     * Reads the bulk operation limits from the service provider's configuration
+     */
+    private void loadBulkLimits() {
+        if(bulkMaxOperations > 0) {
+            return;
+        }
+        
+        Response<JsonObject> resp = getSrvProvConf();
+        JsonObject conf = resp.getResource();
+        if(conf == null) {
+            throw new IllegalStateException("Failed to read the service provider's configuration " + resp.getError());
+        }
+        
+        JsonElement je = conf.get("bulk");
+        if(je == null || !je.isJsonObject()) {
+            throw new IllegalStateException("Bulk operations are not supported by the server");
+        }
+        
+        JsonObject bulk = je.getAsJsonObject();
+        je = bulk.get("supported");
+        if(je != null && !je.getAsBoolean()) {
+            throw new IllegalStateException("Bulk operations are not supported by the server");
+        }
+        
+        int maxPayloadSize = DEFAULT_BULK_MAX_PAYLOAD_SIZE;
+        je = bulk.get("maxPayloadSize");
+        if(je != null && je.getAsInt() > 0) {
+            maxPayloadSize = je.getAsInt();
+        }
+        bulkMaxPayloadSize = maxPayloadSize;
+
+        int maxOperations = DEFAULT_BULK_MAX_OPERATIONS;
+        je = bulk.get("maxOperations");
+        if(je != null && je.getAsInt() > 0) {
+            maxOperations = je.getAsInt();
+        }
+        bulkMaxOperations = maxOperations;
+        
+        LOG.debug("Bulk limits maxOperations {} maxPayloadSize {}", bulkMaxOperations, bulkMaxPayloadSize);
+    }
+
+    /**
+     * Fetches the service provider's configuration.
+     * 
+     * @return
+     */
+    public Response<JsonObject> getSrvProvConf() {
+        HttpGet get = new HttpGet(baseApiUrl + "/ServiceProviderConfigs");
+        return sendRawRequest(get, JsonObject.class);
+    }
+
+    /**
+     * Fetches all resourcetypes supported by the service provider.
+     * 
+     * @return
      */
     public Response<List<JsonObject>> getResTypes() {
         HttpGet get = new HttpGet(baseApiUrl + "/ResourceTypes");
         Response resp = sendRawRequest(get, JsonElement.class);
         JsonElement je = (JsonElement) resp.getResource();
         if(je != null) {
-            List<JsonObject> lst = serializer.fromJson(je, lstJsonObj);
-            resp.setResource(lst);
+            resp.setResource(toObjectList(je));
         }
         
         return resp;
     }
 
+    private List<JsonObject> toObjectList(JsonElement je) {
+        List<JsonObject> lst = new ArrayList<JsonObject>();
+        for(JsonElement e : je.getAsJsonArray()) {
+            lst.add(e.getAsJsonObject());
+        }
+        
+        return lst;
+    }
+
     /**
      * Fetches the given resourcetype's definition
      * 
@@ -597,8 +1296,7 @@ public class SparrowClient {
         Response resp = sendRawRequest(get, JsonElement.class);
         JsonElement je = (JsonElement) resp.getResource();
         if(je != null) {
-            List<JsonObject> lst = serializer.fromJson(je, lstJsonObj);
-            resp.setResource(lst);
+            resp.setResource(toObjectList(je));
         }
         
         return resp;
@@ -615,120 +1313,105 @@ public class SparrowClient {
         return sendRawRequest(get, JsonObject.class);
     }
 
-    private <T> SearchResponse<T> _searchResource(SearchRequest sr, String endpoint, Class<T> resClas) {
-        StringBuilder url = new StringBuilder(baseApiUrl);
-        url.append(endpoint).append("/.search");
+    /*default protection*/ <T> SearchResponse<T> _searchResource(SearchRequest sr, String endpoint, Class<T> resClas) {
+        return sendSearchRequest(newSearchRequest(sr, endpoint), resClas, sr.getBodyRetention());
+    }
+    
+    private <T> SearchResponse<T> sendSearchRequest(HttpUriRequest req, Class<T> resClas, BodyRetention retention) {
+        if(singleFlight == null) {
+            return _sendSearchRequest(req, resClas, retention);
+        }
+        
+        return singleFlight.execute(toFlightKey(req, resClas, retention), () -> _sendSearchRequest(req, resClas, retention));
+    }
+    
+    private <T> Response<T> sendReadRequest(HttpUriRequest req, Class<T> resClas, BodyRetention retention) {
+        if(singleFlight == null) {
+            return sendRawRequest(req, resClas, retention);
+        }
+        
+        return singleFlight.execute(toFlightKey(req, resClas, retention), () -> sendRawRequest(req, resClas, retention));
+    }
+    
+    /**
+     * Computes the key identifying identical read requests using the method, URI, the
+     * conditional and authorization headers, body, the type of the resource and the policy
+     * of retaining the body, the coalesced requests must agree on the latter.
+     * The body is compared as an object, it is not serialized.
+     */
+    private List<Object> toFlightKey(HttpUriRequest req, Class<?> resClas, BodyRetention retention) {
+        // the authenticator appends the headers, so use a separate request
+        HttpGet probe = new HttpGet(req.getURI());
+        authenticator.addHeaders(probe);
         
-        HttpPost post = new HttpPost(url.toString());
-        String json = serializer.toJson(sr);
-        StringEntity entity = new StringEntity(json, MIME_TYPE);
-        post.setEntity(entity);
+        Object body = null;
+        if(req instanceof HttpEntityEnclosingRequest) {
+            HttpEntity entity = ((HttpEntityEnclosingRequest) req).getEntity();
+            if(entity instanceof ResourceEntity) {
+                body = ((ResourceEntity) entity).getBody();
+                if(body instanceof SearchRequest) {
+                    // a copy, the caller may modify the request while it is in flight
+                    body = new SearchRequest((SearchRequest) body);
+                }
+            }
+            else {
+                // entities not created by the client are never shared
+                body = entity;
+            }
+        }
+        
+        return Arrays.asList(req.getMethod(), req.getURI(), resClas, headerValue(probe, HttpHeaders.AUTHORIZATION),
+                headerValue(req, "If-None-Match"), body, resolveRetention(retention));
+    }
+    
+    private String headerValue(HttpUriRequest req, String name) {
+        Header h = req.getFirstHeader(name);
+        if(h != null) {
+            return h.getValue();
+        }
+        
+        return null;
+    }
 
-        return sendSearchRequest(post, resClas);        
+    /**
+     * Returns the statistics of coalesced reads
+     * 
+     * @return the statistics or null if coalescing is not enabled
+     * @see ClientConfig#setCoalesceReads(boolean)
+     */
+    public CoalescingStats getCoalescingStats() {
+        if(singleFlight == null) {
+            return null;
+        }
+        
+        return singleFlight.getStats();
     }
     
-    private <T> SearchResponse<T> sendSearchRequest(HttpUriRequest req, Class<T> resClas) {
+    private <T> SearchResponse<T> _sendSearchRequest(HttpUriRequest req, Class<T> resClas, BodyRetention retention) {
         SearchResponse<T> result = new SearchResponse<T>();
         try {
             LOG.debug("Sending {} request to {}", req.getMethod(), req.getURI());
             authenticator.addHeaders(req);
             HttpResponse resp = client.execute(req);
             authenticator.saveHeaders(resp);
-            StatusLine sl = resp.getStatusLine();
-            int code = sl.getStatusCode();
-            
-            LOG.debug("Received status code {} from the request to {}", code, req.getURI());
             
-            HttpEntity entity = resp.getEntity();
-            String json = null;
-            if (entity != null) {
-                json = EntityUtils.toString(entity);
-            }
-
-            result.setHttpBody(json);
-            result.setHttpCode(code);
-            result.setHeaders(resp.getAllHeaders());
-            
-            // if it is success there will be response body to read
-            if (code == 200) {
-                if(json != null) { // DELETE will have no response body, so check for null
-                    
-                    JsonObject obj = (JsonObject) new JsonParser().parse(json);
-                    JsonElement je = obj.get("totalResults");
-                    if(je != null) {
-                        result.setTotalResults(je.getAsInt());
-                    }
-                    
-                    je = obj.get("startIndex");
-                    if(je != null) {
-                        result.setStartIndex(je.getAsInt());
-                    }
-
-                    je = obj.get("itemsPerPage");
-                    if(je != null) {
-                        result.setItemsPerPage(je.getAsInt());
-                    }
-                    
-                    je = obj.get("Resources"); // yes, the 'R' in resources must be upper case
-                    if(je != null) {
-                        JsonArray arr = je.getAsJsonArray();
-                        Iterator<JsonElement> itr = arr.iterator();
-                        List<T> resources = new ArrayList<T>();
-                        while(itr.hasNext()) {
-                            JsonObject r = (JsonObject) itr.next();
-                            if (resClas != null) {
-                                resources.add(unmarshal(r, resClas));
-                            } else {
-                                T rsObj = unmarshal(r);
-                                if(rsObj == null) {
-                                    LOG.warn("No resgistered resource class found to deserialize the resource data {}", r);
-                                } else {
-                                    resources.add(rsObj);
-                                }
-                            }
-                        }
-                        
-                        if(!resources.isEmpty()) {
-                            result.setResources(resources);
-                        }
-                    }
-                }
-            } else {
-                if(json != null) {
-                    Error error = serializer.fromJson(json, Error.class);
-                    result.setError(error);
-                }
-            }
+            LOG.debug("Received status code {} from the request to {}", resp.getStatusLine().getStatusCode(), req.getURI());
+            readSearchResponse(resp, resClas, result, retention);
         } catch (Exception e) {
-            e.printStackTrace();
             LOG.warn("", e);
-            result.setHttpCode(-1);
-            Error err = new Error();
-            
-            err.setDetail(e.getMessage());
-            result.setError(err);
+            setException(result, e);
         }
         return result;
     }
 
-    private <T> T unmarshal(JsonObject json) throws Exception {
-        JsonArray schemas = json.get("schemas").getAsJsonArray();
-        Iterator<JsonElement> itr = schemas.iterator();
-        
-        T obj = null;
-        
-        while(itr.hasNext()) {
-            String id = itr.next().getAsString();
-            Class<?> rc = schemaIdClassMap.get(id);
-            if(rc != null) {
-                obj = (T) unmarshal(json, rc);
-                break;
-            }
-        }
-        
-        return obj;
+    /*default protection*/ BodyRetention resolveRetention(BodyRetention requested) {
+        return protocol.resolveRetention(requested);
     }
-    
+
+    /*default protection*/ <T> void readSearchResponse(HttpResponse resp, Class<T> resClas, SearchResponse<T> result, BodyRetention retention) throws Exception {
+        protocol.readSearchResponse(resp, resClas, result, retention);
+    }
+
     /**
      * Sends the given request to the server
      * 
@@ -737,55 +1420,86 @@ public class SparrowClient {
      * @return
      */
     public <T> Response<T> sendRawRequest(HttpUriRequest req, Class<T> resClas) {
+        return sendRequest(req, resClas, false, null);
+    }
+
+    /**
+     * Sends the given request to the server
+     * 
+     * @param req the HTTP request
+     * @param resClas class of the resourcetype
+     * @param retention the policy of retaining the raw body of the response, null to use the client's policy
+     * @return
+     */
+    public <T> Response<T> sendRawRequest(HttpUriRequest req, Class<T> resClas, BodyRetention retention) {
+        return sendRequest(req, resClas, false, retention);
+    }
+
+    /**
+     * Sends the given request to the server
+     * 
+     * @param req the HTTP request
+     * @param resClas class of the resourcetype
+     * @param write flag to indicate that the request is an add, replace or patch request
+     * @param retention the policy of retaining the raw body of the response, null to use the client's policy
+     * @return
+     */
+    private <T> Response<T> sendRequest(HttpUriRequest req, Class<T> resClas, boolean write, BodyRetention retention) {
         Response<T> result = new Response<T>();
         try {
             authenticator.addHeaders(req);
             LOG.debug("Sending {} request to {}", req.getMethod(), req.getURI());
             HttpResponse resp = client.execute(req);
             authenticator.saveHeaders(resp);
-            StatusLine sl = resp.getStatusLine();
-            int code = sl.getStatusCode();
-            
-            LOG.debug("Received status code {} from the request to {}", code, req.getURI());
-            HttpEntity entity = resp.getEntity();
-            String json = null;
-            if (entity != null) {
-                json = EntityUtils.toString(entity);
-            }
-            
-            result.setHttpCode(code);
             
-            // if it is success there will be response body to read
-            if (code == SC_OK || code == SC_CREATED || code == SC_NOT_MODIFIED) {
-                if(json != null) { // some responses have no body, so check for null
-                    T t = unmarshal(json, resClas);
-                    result.setResource(t);
-                }
-            } else {
-                if(json != null) {
-                    Error error = serializer.fromJson(json, Error.class);
-                    result.setError(error);
-                }
-            }
-
-            result.setHttpBody(json);
-            result.setHeaders(resp.getAllHeaders());
+            LOG.debug("Received status code {} from the request to {}", resp.getStatusLine().getStatusCode(), req.getURI());
+            readResponse(resp, resClas, result, write, retention);
         } catch (Exception e) {
             LOG.warn("", e);
-            result.setHttpCode(-1);
-            Error err = new Error();
-            
-            err.setDetail(e.getMessage());
-            result.setError(err);
+            setException(result, e);
         }
         
         return result;
     }
 
-    private <T> void setBody(HttpEntityEnclosingRequestBase req, T rs) {
-        String data = serialize(rs).toString();
-        StringEntity entity = new StringEntity(data, MIME_TYPE);
-        req.setEntity(entity);
+    /*default protection*/ <T> void readResponse(HttpResponse resp, Class<T> resClas, Response<T> result, boolean write, BodyRetention retention) throws Exception {
+        protocol.readResponse(resp, resClas, result, write, retention);
+    }
+
+    /*default protection*/ void setException(Response<?> result, Exception e) {
+        protocol.setException(result, e);
+    }
+
+    /*default protection*/ Response<Boolean> toDeleteResponse(Response<Boolean> resp) {
+        return protocol.toDeleteResponse(resp);
+    }
+
+    /*default protection*/ HttpPost newAddRequest(Object rs) {
+        return protocol.newAddRequest(rs);
+    }
+
+    /*default protection*/ HttpPut newReplaceRequest(String id, Object rs, String ifMatch) {
+        return protocol.newReplaceRequest(id, rs, ifMatch);
+    }
+
+    /*default protection*/ HttpPatch newPatchRequest(PatchRequest pr) {
+        return protocol.newPatchRequest(pr);
+    }
+
+    /*default protection*/ HttpDelete newDeleteRequest(String id, Class resourceType) {
+        return protocol.newDeleteRequest(id, resourceType);
+    }
+
+    /*default protection*/ HttpGet newGetRequest(String id, String ifNoneMatch, Class resClas, boolean include, String... attributes) {
+        return protocol.newGetRequest(id, ifNoneMatch, resClas, include, attributes);
+    }
+
+    /*default protection*/ HttpPost newSearchRequest(SearchRequest sr, String endpoint) {
+        return protocol.newSearchRequest(sr, endpoint);
+    }
+
+    /*default protection*/ void writeJson(Object rs, Writer writer) throws IOException {
+        protocol.writeJson(rs, writer);
     }
 
     /**
@@ -795,30 +1509,7 @@ public class SparrowClient {
      * @return
      */
     public <T> JsonObject serialize(T rs) {
-        JsonObject json = (JsonObject) serializer.toJsonTree(rs);
-        
-        Resource r = rs.getClass().getAnnotation(Resource.class);
-        if(r != null) {
-            JsonArray schemas = new JsonArray();
-            schemas.add(r.schemaId());
-            
-            Set<Field> extFields = endpointExtFieldMap.get(r.endpoint());
-            if (extFields != null) {
-                for (Field f : extFields) {
-                    JsonElement je = json.remove(f.getName());
-                    if(je != null) {
-                        Extension extSchema = f.getAnnotation(Extension.class);
-                        String schemaId = extSchema.value();
-                        json.add(schemaId, je);
-                        schemas.add(schemaId);
-                    }
-                }
-            }
-            
-            json.add("schemas", schemas);
-        }
-        
-        return json;
+        return protocol.serialize(rs);
     }
     
     /**
@@ -832,55 +1523,70 @@ public class SparrowClient {
         return resp;
     }
     
-    private String getEndpoint(Class resClas) {
-        String ep = classEndpointMap.get(resClas);
-        if (ep == null) {
-            throw new IllegalArgumentException("There is no endpoint found with the given resource class. Resource class must be registered to avoid this error");
-        }
-        
-        return ep;
+    /*default protection*/ Authenticator getAuthenticator() {
+        return authenticator;
     }
-    
-    private void setIfMatch(HttpRequestBase req, String ifMatch) {
-        if(ifMatch != null) {
-            req.setHeader("If-Match", ifMatch);
-        }
+
+    /*default protection*/ String getBaseApiUrl() {
+        return baseApiUrl;
     }
-    
-    private <T> T unmarshal(String json, Class<T> resClass) throws Exception {
-        JsonElement je = parser.parse(json);
-        if(!(je instanceof JsonObject)) {
-            return (T) je;
-        }
-        
-        return unmarshal((JsonObject) je, resClass);
+
+    /*default protection*/ ClientConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * Returns the executor of the background tasks, a pool of daemon threads is created
+     * on the first call if no executor was configured
+     * 
+     * @see ClientConfig#setExecutor(Executor)
+     */
+    /*default protection*/ Executor getExecutor() {
+        return protocol.getExecutor();
+    }
+
+    /**
+     * Closes the HTTP connections and shuts down the executor created by this client
+     */
+    @Override
+    public void close() throws IOException {
+        protocol.shutdown();
+        client.close();
+    }
+
+    /*default protection*/ String getEndpoint(Class resClas) {
+        return protocol.getEndpoint(resClas);
+    }
+
+    private <T> T unmarshal(Reader json, Class<T> resClass) throws Exception {
+        return protocol.unmarshal(json, resClass);
     }
     
-    private <T> T unmarshal(JsonObject jsonObj, Class<T> resClass) throws Exception {
-        T t = serializer.fromJson(jsonObj, resClass);
-        Set<Field> extFields = endpointExtFieldMap.get(classEndpointMap.get(resClass));
-        if (extFields != null) {
-            for (Field f : extFields) {
-                Extension ext = f.getAnnotation(Extension.class);
-                String schemaId = ext.value();
-                JsonElement je = jsonObj.get(schemaId);
-                if(je != null) {
-                    Object extObj = serializer.fromJson(je, f.getType());
-                    f.set(t, extObj);
-                }
-            }
-        }
-        
-        return t;
+    private <T> T unmarshal(JsonObject jsonObj, Class<T> resClass) {
+        return protocol.unmarshal(jsonObj, resClass);
     }
 
+    /**
+     * Converts the keys of the raw body of the given response to lower case, does nothing
+     * if the body was not retained, see {@link BodyRetention}
+     * 
+     * @param resp the response
+     */
     public void normalizeKeys(Response resp) {
         String body = resp.getHttpBody();
         if(body == null) {
             return;
         }
 
-        JsonObject json = (JsonObject) parser.parse(body);
+        JsonObject json;
+        try {
+            json = codec.read(new StringReader(body), JsonObject.class);
+        }
+        catch(IOException e) {
+            // StringReader doesn't throw
+            throw new IllegalStateException(e);
+        }
+
         json = keysToLower(json);
         resp.setHttpBody(json.toString());
     }
@@ -0,0 +1,652 @@
+/*
+ * Copyright (c) 2018 Keydap Software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * See LICENSE file for details.
+ */
+package com.keydap.sparrow;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+/**
+ * A compiled SCIM filter, e.g <code>type eq "work" and primary eq true</code>, used for selecting
+ * the values of multi-valued attributes in the paths of PATCH operations and for building
+ * the filters of search requests.
+ *
+ * A filter is immutable, it is either created using the factory methods of this class or parsed
+ * from its string form, and can be written directly to an Appendable without creating intermediate
+ * strings. The operators are written in upper case, string values are quoted and the double
+ * quotes and backslashes present in them are escaped.
+ *
+ * {@link #matches(JsonObject)} evaluates the filter against a JSON object, the attribute names
+ * and string values are compared ignoring case.
+ *
+ * @author Kiran Ayyagari (kayyagari@keydap.com)
+ */
+public abstract class ValueFilter {
+    private static final int OR = 1;
+    private static final int AND = 2;
+    private static final int UNARY = 3;
+
+    private static final String[] OPERATORS = {"eq", "ne", "co", "sw", "ew", "gt", "ge", "lt", "le"};
+
+    /*default protection*/ ValueFilter() {
+    }
+
+    /**
+     * Evaluates this filter against the given value
+     *
+     * @param value a complex value
+     * @return true if the value matches the filter
+     */
+    public abstract boolean matches(JsonObject value);
+
+    /**
+     * Writes the string form of this filter to the given output
+     *
+     * @param out the output
+     * @throws IOException if the output fails
+     */
+    public abstract void writeTo(Appendable out) throws IOException;
+
+    /*default protection*/ abstract int precedence();
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        try {
+            writeTo(sb);
+        }
+        catch(IOException e) {
+            // StringBuilder doesn't throw
+            throw new IllegalStateException(e);
+        }
+
+        return sb.toString();
+    }
+
+    public static ValueFilter eq(String attr, Object value) {
+        return compare(attr, "eq", value);
+    }
+
+    public static ValueFilter ne(String attr, Object value) {
+        return compare(attr, "ne", value);
+    }
+
+    public static ValueFilter co(String attr, Object value) {
+        return compare(attr, "co", value);
+    }
+
+    public static ValueFilter sw(String attr, Object value) {
+        return compare(attr, "sw", value);
+    }
+
+    public static ValueFilter ew(String attr, Object value) {
+        return compare(attr, "ew", value);
+    }
+
+    public static ValueFilter gt(String attr, Object value) {
+        return compare(attr, "gt", value);
+    }
+
+    public static ValueFilter ge(String attr, Object value) {
+        return compare(attr, "ge", value);
+    }
+
+    public static ValueFilter lt(String attr, Object value) {
+        return compare(attr, "lt", value);
+    }
+
+    public static ValueFilter le(String attr, Object value) {
+        return compare(attr, "le", value);
+    }
+
+    /**
+     * Creates a filter comparing the value of an attribute
+     *
+     * @param attr name of the attribute, sub-attributes are separated by a dot
+     * @param operator one of eq, ne, co, sw, ew, gt, ge, lt and le
+     * @param value a String, Number, Boolean, Date, enum, JsonPrimitive or null
+     * @return the filter
+     */
+    public static ValueFilter compare(String attr, String operator, Object value) {
+        String op = operator.toLowerCase();
+        if(!isOperator(op)) {
+            throw new IllegalArgumentException("Invalid comparison operator " + operator);
+        }
+
+        return new Comparison(checkName(attr), op, toLiteral(value));
+    }
+
+    public static ValueFilter present(String attr) {
+        return new Present(checkName(attr));
+    }
+
+    public static ValueFilter and(ValueFilter... filters) {
+        return logical(AND, filters);
+    }
+
+    public static ValueFilter or(ValueFilter... filters) {
+        return logical(OR, filters);
+    }
+
+    public static ValueFilter not(ValueFilter filter) {
+        return new Not(filter);
+    }
+
+    /**
+     * Parses the given filter
+     *
+     * @param filter the filter
+     * @return the compiled filter
+     * @throws IllegalArgumentException if the filter is invalid
+     */
+    public static ValueFilter parse(String filter) {
+        return new Parser(filter).parse();
+    }
+
+    private static ValueFilter logical(int type, ValueFilter[] filters) {
+        if(filters.length == 0) {
+            throw new IllegalArgumentException("At least one filter is required");
+        }
+
+        if(filters.length == 1) {
+            return filters[0];
+        }
+
+        return new Logical(type, filters.clone());
+    }
+
+    private static String checkName(String attr) {
+        if(attr == null || attr.isEmpty()) {
+            throw new IllegalArgumentException("Attribute name is required");
+        }
+
+        return attr;
+    }
+
+    private static boolean isOperator(String op) {
+        for(String s : OPERATORS) {
+            if(s.equals(op)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static JsonPrimitive toLiteral(Object value) {
+        if(value == null || value instanceof JsonElement && ((JsonElement) value).isJsonNull()) {
+            return null;
+        }
+
+        if(value instanceof JsonPrimitive) {
+            return (JsonPrimitive) value;
+        }
+
+        if(value instanceof Number) {
+            return new JsonPrimitive((Number) value);
+        }
+
+        if(value instanceof Boolean) {
+            return new JsonPrimitive((Boolean) value);
+        }
+
+        if(value instanceof Date) {
+            return new JsonPrimitive(Rfc3339.format((Date) value));
+        }
+
+        if(value instanceof Enum) {
+            return new JsonPrimitive(((Enum<?>) value).name());
+        }
+
+        if(value instanceof JsonElement) {
+            throw new IllegalArgumentException("Only primitive values can be compared");
+        }
+
+        return new JsonPrimitive(String.valueOf(value));
+    }
+
+    /**
+     * Writes the given value in double quotes, escaping the double quotes and backslashes
+     */
+    /*default protection*/ static void writeQuoted(Appendable out, String value) throws IOException {
+        out.append('"');
+        int start = 0;
+        for(int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if(c == '"' || c == '\\') {
+                out.append(value, start, i).append('\\');
+                start = i;
+            }
+        }
+
+        out.append(value, start, value.length()).append('"');
+    }
+
+    /**
+     * Reads the value of the given attribute ignoring the case of the name, sub-attributes
+     * of complex attributes are separated by a dot
+     */
+    private static JsonElement valueOf(JsonObject obj, String attr) {
+        int start = 0;
+        while(true) {
+            int dot = attr.indexOf('.', start);
+            String name = (dot < 0 ? attr.substring(start) : attr.substring(start, dot));
+            JsonElement je = getMember(obj, name);
+            if(dot < 0 || je == null || !je.isJsonObject()) {
+                return (dot < 0 ? je : null);
+            }
+
+            obj = je.getAsJsonObject();
+            start = dot + 1;
+        }
+    }
+
+    private static JsonElement getMember(JsonObject obj, String name) {
+        JsonElement je = obj.get(name);
+        if(je != null) {
+            return je;
+        }
+
+        for(String key : obj.keySet()) {
+            if(key.equalsIgnoreCase(name)) {
+                return obj.get(key);
+            }
+        }
+
+        return null;
+    }
+
+    private static class Comparison extends ValueFilter {
+        private final String attr;
+        private final String op;
+        private final JsonPrimitive literal;
+
+        Comparison(String attr, String op, JsonPrimitive literal) {
+            this.attr = attr;
+            this.op = op;
+            this.literal = literal;
+        }
+
+        @Override
+        public boolean matches(JsonObject value) {
+            return compare(valueOf(value, attr), op);
+        }
+
+        private boolean compare(JsonElement value, String op) {
+            if(value != null && value.isJsonArray()) {
+                // any of the values of a multi-valued sub-attribute
+                for(JsonElement e : value.getAsJsonArray()) {
+                    if(compare(e, op)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+
+            boolean isNull = (value == null || value.isJsonNull());
+            if(literal == null || isNull) {
+                boolean bothNull = (literal == null && isNull);
+                if(op.equals("eq")) {
+                    return bothNull;
+                }
+                if(op.equals("ne")) {
+                    return !bothNull;
+                }
+                return false;
+            }
+
+            if(!value.isJsonPrimitive()) {
+                return false;
+            }
+
+            if(op.equals("ne")) {
+                return !compare(value, "eq");
+            }
+
+            JsonPrimitive v = value.getAsJsonPrimitive();
+            if(v.isBoolean() || literal.isBoolean()) {
+                return op.equals("eq") && v.isBoolean() && literal.isBoolean() && v.getAsBoolean() == literal.getAsBoolean();
+            }
+
+            int cmp;
+            if(v.isNumber() && literal.isNumber()) {
+                cmp = v.getAsBigDecimal().compareTo(literal.getAsBigDecimal());
+            }
+            else {
+                String vs = v.getAsString().toLowerCase();
+                String ls = literal.getAsString().toLowerCase();
+                switch(op) {
+                    case "co":
+                        return vs.contains(ls);
+                    case "sw":
+                        return vs.startsWith(ls);
+                    case "ew":
+                        return vs.endsWith(ls);
+                    default:
+                        cmp = vs.compareTo(ls);
+                }
+            }
+
+            switch(op) {
+                case "eq":
+                    return cmp == 0;
+                case "gt":
+                    return cmp > 0;
+                case "ge":
+                    return cmp >= 0;
+                case "lt":
+                    return cmp < 0;
+                case "le":
+                    return cmp <= 0;
+                default:
+                    // co, sw and ew are not applicable to numbers
+                    return false;
+            }
+        }
+
+        @Override
+        public void writeTo(Appendable out) throws IOException {
+            out.append(attr).append(' ');
+            for(int i = 0; i < op.length(); i++) {
+                out.append(Character.toUpperCase(op.charAt(i)));
+            }
+            out.append(' ');
+
+            if(literal == null) {
+                out.append("null");
+            }
+            else if(literal.isString()) {
+                writeQuoted(out, literal.getAsString());
+            }
+            else {
+                out.append(literal.getAsString());
+            }
+        }
+
+        @Override
+        int precedence() {
+            return UNARY;
+        }
+    }
+
+    private static class Present extends ValueFilter {
+        private final String attr;
+
+        Present(String attr) {
+            this.attr = attr;
+        }
+
+        @Override
+        public boolean matches(JsonObject value) {
+            JsonElement je = valueOf(value, attr);
+            if(je == null || je.isJsonNull()) {
+                return false;
+            }
+
+            if(je.isJsonArray()) {
+                return je.getAsJsonArray().size() > 0;
+            }
+
+            if(je.isJsonPrimitive() && je.getAsJsonPrimitive().isString()) {
+                return !je.getAsString().isEmpty();
+            }
+
+            return true;
+        }
+
+        @Override
+        public void writeTo(Appendable out) throws IOException {
+            out.append(attr).append(" PR");
+        }
+
+        @Override
+        int precedence() {
+            return UNARY;
+        }
+    }
+
+    private static class Logical extends ValueFilter {
+        private final int type;
+        private final ValueFilter[] children;
+
+        Logical(int type, ValueFilter[] children) {
+            this.type = type;
+            this.children = children;
+        }
+
+        @Override
+        public boolean matches(JsonObject value) {
+            boolean and = (type == AND);
+            for(ValueFilter f : children) {
+                if(f.matches(value) != and) {
+                    return !and;
+                }
+            }
+
+            return and;
+        }
+
+        @Override
+        public void writeTo(Appendable out) throws IOException {
+            String operator = (type == AND ? " AND " : " OR ");
+            for(int i = 0; i < children.length; i++) {
+                if(i > 0) {
+                    out.append(operator);
+                }
+
+                ValueFilter f = children[i];
+                if(f.precedence() < type) {
+                    out.append('(');
+                    f.writeTo(out);
+                    out.append(')');
+                }
+                else {
+                    f.writeTo(out);
+                }
+            }
+        }
+
+        @Override
+        int precedence() {
+            return type;
+        }
+    }
+
+    private static class Not extends ValueFilter {
+        private final ValueFilter filter;
+
+        Not(ValueFilter filter) {
+            this.filter = filter;
+        }
+
+        @Override
+        public boolean matches(JsonObject value) {
+            return !filter.matches(value);
+        }
+
+        @Override
+        public void writeTo(Appendable out) throws IOException {
+            out.append("NOT (");
+            filter.writeTo(out);
+            out.append(')');
+        }
+
+        @Override
+        int precedence() {
+            return UNARY;
+        }
+    }
+
+    /**
+     * A recursive descent parser of filters
+     */
+    private static class Parser {
+        private String filter;
+        private int pos;
+
+        Parser(String filter) {
+            this.filter = filter;
+        }
+
+        ValueFilter parse() {
+            ValueFilter f = parseOr();
+            skipSpaces();
+            if(pos < filter.length()) {
+                throw invalid();
+            }
+
+            return f;
+        }
+
+        private ValueFilter parseOr() {
+            List<ValueFilter> lst = new ArrayList<ValueFilter>();
+            lst.add(parseAnd());
+            while(nextKeyword("or")) {
+                lst.add(parseAnd());
+            }
+
+            return logical(OR, lst.toArray(new ValueFilter[lst.size()]));
+        }
+
+        private ValueFilter parseAnd() {
+            List<ValueFilter> lst = new ArrayList<ValueFilter>();
+            lst.add(parseUnary());
+            while(nextKeyword("and")) {
+                lst.add(parseUnary());
+            }
+
+            return logical(AND, lst.toArray(new ValueFilter[lst.size()]));
+        }
+
+        private ValueFilter parseUnary() {
+            if(nextKeyword("not")) {
+                if(!next('(')) {
+                    throw invalid();
+                }
+                return new Not(parseGroup());
+            }
+
+            if(next('(')) {
+                return parseGroup();
+            }
+
+            String attr = readWord();
+            String op = readWord().toLowerCase();
+            if(attr.isEmpty() || op.isEmpty()) {
+                throw invalid();
+            }
+
+            if(op.equals("pr")) {
+                return new Present(attr);
+            }
+
+            if(!isOperator(op)) {
+                throw invalid();
+            }
+
+            return new Comparison(attr, op, readLiteral());
+        }
+
+        private ValueFilter parseGroup() {
+            ValueFilter f = parseOr();
+            if(!next(')')) {
+                throw invalid();
+            }
+
+            return f;
+        }
+
+        private JsonPrimitive readLiteral() {
+            skipSpaces();
+            if(pos < filter.length() && filter.charAt(pos) == '"') {
+                StringBuilder sb = new StringBuilder();
+                pos++;
+                while(pos < filter.length()) {
+                    char c = filter.charAt(pos++);
+                    if(c == '"') {
+                        return new JsonPrimitive(sb.toString());
+                    }
+
+                    if(c == '\\' && pos < filter.length()) {
+                        c = filter.charAt(pos++);
+                    }
+                    sb.append(c);
+                }
+
+                throw invalid();
+            }
+
+            String word = readWord();
+            if(word.equalsIgnoreCase("true") || word.equalsIgnoreCase("false")) {
+                return new JsonPrimitive(Boolean.valueOf(word));
+            }
+
+            if(word.equalsIgnoreCase("null")) {
+                return null;
+            }
+
+            try {
+                return new JsonPrimitive(new BigDecimal(word));
+            }
+            catch(NumberFormatException e) {
+                throw invalid();
+            }
+        }
+
+        private String readWord() {
+            skipSpaces();
+            int start = pos;
+            while(pos < filter.length()) {
+                char c = filter.charAt(pos);
+                if(Character.isWhitespace(c) || c == '(' || c == ')' || c == '"') {
+                    break;
+                }
+                pos++;
+            }
+
+            return filter.substring(start, pos);
+        }
+
+        private boolean nextKeyword(String keyword) {
+            skipSpaces();
+            int end = pos + keyword.length();
+            if(filter.regionMatches(true, pos, keyword, 0, keyword.length())
+                    && (end == filter.length() || Character.isWhitespace(filter.charAt(end)) || filter.charAt(end) == '(')) {
+                pos = end;
+                return true;
+            }
+
+            return false;
+        }
+
+        private boolean next(char c) {
+            skipSpaces();
+            if(pos < filter.length() && filter.charAt(pos) == c) {
+                pos++;
+                return true;
+            }
+
+            return false;
+        }
+
+        private void skipSpaces() {
+            while(pos < filter.length() && Character.isWhitespace(filter.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        private IllegalArgumentException invalid() {
+            return new IllegalArgumentException("Invalid filter at position " + pos + " in " + filter);
+        }
+    }
+}
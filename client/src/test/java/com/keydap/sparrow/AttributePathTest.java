@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2018 Keydap Software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * See LICENSE file for details.
+ */
+package com.keydap.sparrow;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringWriter;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ *
+ * @author Kiran Ayyagari (kayyagari@keydap.com)
+ */
+public class AttributePathTest {
+
+    private static final String ENTERPRISE = "urn:ietf:params:scim:schemas:extension:enterprise:2.0:User";
+
+    @Test
+    public void testWrite() throws Exception {
+        ValueFilter f = ValueFilter.and(ValueFilter.eq("value", "a\"b\\c"), ValueFilter.eq("primary", true),
+                ValueFilter.or(ValueFilter.eq("type", "work"), ValueFilter.present("display")));
+        AttributePath path = new AttributePath("emails", f).withSubAttr("primary");
+
+        String expected = "emails[value EQ \"a\\\"b\\\\c\" AND primary EQ true AND (type EQ \"work\" OR display PR)].primary";
+        assertEquals(expected, path.toString());
+
+        StringWriter sw = new StringWriter();
+        path.writeTo(sw);
+        assertEquals(expected, sw.toString());
+
+        // the parsed path produces the same string
+        assertEquals(expected, AttributePath.parse(expected).toString());
+        assertEquals("NOT (age GT 7)", ValueFilter.not(ValueFilter.gt("age", 7)).toString());
+    }
+
+    @Test
+    public void testParse() {
+        AttributePath path = AttributePath.parse(ENTERPRISE + ":manager.value");
+        assertEquals(ENTERPRISE, path.getUrn());
+        assertEquals("manager", path.getAttr());
+        assertEquals("value", path.getSubAttr());
+        assertNull(path.getFilter());
+
+        path = AttributePath.parse(ENTERPRISE, Collections.singletonList(ENTERPRISE));
+        assertNull(path.getUrn());
+        assertEquals(ENTERPRISE, path.getAttr());
+
+        path = AttributePath.parse("members[value eq \"x]y\" or display co \"(a)\"]");
+        assertEquals("members", path.getAttr());
+        assertNull(path.getSubAttr());
+
+        JsonObject member = new JsonParser().parse("{\"value\":\"X]Y\"}").getAsJsonObject();
+        assertTrue(path.getFilter().matches(member));
+        member.addProperty("value", "z");
+        assertFalse(path.getFilter().matches(member));
+        member.addProperty("display", "b(A)c");
+        assertTrue(path.getFilter().matches(member));
+    }
+}
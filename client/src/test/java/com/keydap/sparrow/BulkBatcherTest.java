@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2018 Keydap Software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * See LICENSE file for details.
+ */
+package com.keydap.sparrow;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.Header;
+import org.apache.http.message.BasicHeader;
+import org.junit.Test;
+
+import com.google.gson.Gson;
+
+/**
+ *
+ * @author Kiran Ayyagari (kayyagari@keydap.com)
+ */
+public class BulkBatcherTest {
+
+    /** the bulk requests received by the server */
+    private List<BulkRequest> requests = Collections.synchronizedList(new ArrayList<>());
+
+    /**
+     * a client that creates the users and fails the bulk requests containing a user named "error"
+     */
+    private class StubClient extends SparrowClient {
+        StubClient() {
+            super("");
+            register(User.class);
+        }
+
+        @Override
+        public BulkResponse sendBulkRequest(BulkRequest br) {
+            requests.add(br);
+            BulkResponse resp = new BulkResponse(br.getOperations());
+            for(BulkOperation op : br.getOperations()) {
+                Response<Object> r = new Response<>();
+                if(op.getData() == null) {
+                    r.setHttpCode(204);
+                    r.setHeaders(new Header[0]);
+                }
+                else {
+                    String userName = ((User) op.getData()).getUserName();
+                    if(userName.equals("error")) {
+                        throw new IllegalStateException("bulk request failed");
+                    }
+
+                    r.setHttpCode(201);
+                    r.setHeaders(new Header[] {new BasicHeader("Location", "/Users/" + userName)});
+                }
+                resp.getResponses().add(r);
+            }
+
+            return resp;
+        }
+    }
+
+    @Test
+    public void testSizeTriggeredFlush() throws Exception {
+        BulkBatcher bb = new BulkBatcher(new StubClient(), 3, 60000);
+        List<CompletableFuture<Response<User>>> futures = new ArrayList<>();
+        for(int i = 0; i < 6; i++) {
+            futures.add(bb.addResource(newUser("u" + i)));
+        }
+
+        // each caller gets the response of its own operation
+        for(int i = 0; i < 6; i++) {
+            assertEquals("/Users/u" + i, futures.get(i).get(5, TimeUnit.SECONDS).getLocation());
+        }
+
+        assertEquals(2, requests.size());
+        assertEquals(3, requests.get(0).getOperations().size());
+        assertEquals(3, requests.get(1).getOperations().size());
+        bb.close();
+    }
+
+    @Test
+    public void testTimeTriggeredFlush() throws Exception {
+        BulkBatcher bb = new BulkBatcher(new StubClient(), 100, 50);
+        CompletableFuture<Response<User>> f1 = bb.addResource(newUser("u1"));
+        CompletableFuture<Response<Boolean>> f2 = bb.deleteResource("u0", User.class);
+
+        assertEquals(201, f1.get(5, TimeUnit.SECONDS).getHttpCode());
+        assertEquals(204, f2.get(5, TimeUnit.SECONDS).getHttpCode());
+        assertEquals(1, requests.size());
+        assertEquals("DELETE", requests.get(0).getOperations().get(1).getMethod());
+        bb.close();
+    }
+
+    @Test
+    public void testCloseDrainsPending() throws Exception {
+        BulkBatcher bb = new BulkBatcher(new StubClient(), 100, 60000);
+        CompletableFuture<Response<User>> f1 = bb.addResource(newUser("u1"));
+        CompletableFuture<Response<User>> f2 = bb.replaceResource("u2", newUser("u2"));
+        assertFalse(f1.isDone());
+
+        bb.close();
+        assertTrue(f1.isDone());
+        assertTrue(f2.isDone());
+        assertEquals("/Users/u2", f2.get().getLocation());
+        assertEquals(1, requests.size());
+
+        try {
+            bb.addResource(newUser("u3"));
+            fail("must not accept operations after closing");
+        }
+        catch(IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testFailedBatch() throws Exception {
+        BulkBatcher bb = new BulkBatcher(new StubClient(), 2, 60000);
+        CompletableFuture<Response<User>> f1 = bb.addResource(newUser("u1"));
+        CompletableFuture<Response<User>> f2 = bb.addResource(newUser("error"));
+
+        for(CompletableFuture<Response<User>> f : Arrays.asList(f1, f2)) {
+            try {
+                f.get(5, TimeUnit.SECONDS);
+                fail("must fail when the bulk request fails");
+            }
+            catch(ExecutionException e) {
+                assertEquals("bulk request failed", e.getCause().getMessage());
+            }
+        }
+        bb.close();
+    }
+
+    private User newUser(String userName) {
+        return new Gson().fromJson("{\"userName\":\"" + userName + "\"}", User.class);
+    }
+}
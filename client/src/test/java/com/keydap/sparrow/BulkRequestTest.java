@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) 2018 Keydap Software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * See LICENSE file for details.
+ */
+package com.keydap.sparrow;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.util.EntityUtils;
+import org.junit.Test;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ *
+ * @author Kiran Ayyagari (kayyagari@keydap.com)
+ */
+public class BulkRequestTest {
+
+    /** the bodies of the bulk requests sent to the server */
+    private List<JsonObject> requests = new ArrayList<>();
+
+    /**
+     * a server that creates the users and rejects those whose userName starts with "bad"
+     */
+    private class StubClient extends SparrowClient {
+        private int maxOperations;
+        private int maxPayloadSize;
+
+        StubClient(int maxOperations, int maxPayloadSize) {
+            super("");
+            register(User.class);
+            this.maxOperations = maxOperations;
+            this.maxPayloadSize = maxPayloadSize;
+        }
+
+        @Override
+        public <T> Response<T> sendRawRequest(HttpUriRequest req, Class<T> resClas) {
+            Response<T> resp = new Response<>();
+            resp.setHttpCode(200);
+            JsonObject body = new JsonObject();
+            if(req.getMethod().equals("GET")) {
+                JsonObject bulk = new JsonObject();
+                bulk.addProperty("supported", true);
+                bulk.addProperty("maxOperations", maxOperations);
+                bulk.addProperty("maxPayloadSize", maxPayloadSize);
+                body.add("bulk", bulk);
+            }
+            else {
+                body.add("Operations", process(req));
+            }
+
+            resp.setResource(new GsonCodec().fromTree(body, resClas));
+            return resp;
+        }
+
+        private JsonArray process(HttpUriRequest req) {
+            JsonObject br;
+            try {
+                String json = EntityUtils.toString(((HttpEntityEnclosingRequest) req).getEntity());
+                assertTrue(json.getBytes("UTF-8").length <= maxPayloadSize);
+                br = new JsonParser().parse(json).getAsJsonObject();
+            }
+            catch(Exception e) {
+                throw new RuntimeException(e);
+            }
+            requests.add(br);
+
+            int failOnErrors = br.has("failOnErrors") ? br.get("failOnErrors").getAsInt() : 0;
+            int errors = 0;
+            JsonArray results = new JsonArray();
+            for(JsonElement je : br.getAsJsonArray("Operations")) {
+                if(failOnErrors > 0 && errors >= failOnErrors) {
+                    break;
+                }
+
+                JsonObject op = je.getAsJsonObject();
+                JsonObject ro = new JsonObject();
+                ro.addProperty("method", op.get("method").getAsString());
+                if(op.has("bulkId")) {
+                    ro.add("bulkId", op.get("bulkId"));
+                }
+
+                JsonObject data = op.getAsJsonObject("data");
+                if(data != null && data.get("userName").getAsString().startsWith("bad")) {
+                    JsonObject error = new JsonObject();
+                    error.addProperty("scimType", "invalidValue");
+                    ro.add("response", error);
+                    ro.addProperty("status", "400");
+                    errors++;
+                }
+                else if(data != null) {
+                    ro.addProperty("location", "https://example.com/v2/Users/id-" + data.get("userName").getAsString());
+                    ro.addProperty("status", "201");
+                }
+                else {
+                    ro.addProperty("status", "204");
+                }
+                results.add(ro);
+            }
+
+            return results;
+        }
+    }
+
+    @Test
+    public void testChunking() {
+        BulkRequest br = new BulkRequest();
+        br.add(newUser("u1", null), "b1");
+        br.add(newUser("u2", null), "b2");
+        br.add(newUser("u3", "bulkId:b1"), "b3");
+        br.delete("bulkId:b2", User.class);
+        br.add(newUser("u4", "bulkId:b3"), null);
+
+        BulkResponse resp = new StubClient(2, 1048576).sendBulkRequest(br);
+        assertTrue(resp.isSuccess());
+        assertEquals(3, resp.getRequestCount());
+        assertEquals(5, resp.getResponses().size());
+        assertEquals("https://example.com/v2/Users/id-u3", resp.getResponse("b3").getLocation());
+        assertEquals(204, resp.getResponse(3).getHttpCode());
+
+        assertEquals(3, requests.size());
+        assertEquals(2, operations(0).size());
+        assertEquals(2, operations(1).size());
+        assertEquals(1, operations(2).size());
+
+        // the bulkIds created in the earlier chunks are resolved
+        assertEquals("id-u1", operations(1).get(0).getAsJsonObject().getAsJsonObject("data").get("nickName").getAsString());
+        assertEquals("/Users/id-u2", operations(1).get(1).getAsJsonObject().get("path").getAsString());
+        assertEquals("id-u3", operations(2).get(0).getAsJsonObject().getAsJsonObject("data").get("nickName").getAsString());
+    }
+
+    @Test
+    public void testPayloadSize() {
+        StringBuilder sb = new StringBuilder();
+        for(int i = 0; i < 50; i++) {
+            sb.append("0123456789");
+        }
+
+        BulkRequest br = new BulkRequest();
+        for(int i = 0; i < 6; i++) {
+            br.add(newUser("u" + i, null), null);
+        }
+        br.add(newUser("u" + sb, null), null);
+        br.add(newUser("u7", null), null);
+
+        // room for about two operations
+        BulkResponse resp = new StubClient(100, 400).sendBulkRequest(br);
+        assertEquals(8, resp.getResponses().size());
+        assertTrue(requests.size() >= 3);
+        assertEquals(requests.size(), resp.getRequestCount());
+
+        int sent = 0;
+        for(int i = 0; i < requests.size(); i++) {
+            sent += operations(i).size();
+            assertFalse(requests.get(i).toString().contains(sb));
+        }
+        assertEquals(7, sent);
+
+        // the operation exceeding the limit is not sent
+        for(int i = 0; i < 8; i++) {
+            assertEquals(i == 6 ? 413 : 201, resp.getResponse(i).getHttpCode());
+        }
+        assertFalse(resp.isSuccess());
+    }
+
+    @Test
+    public void testFailOnErrors() {
+        BulkRequest br = new BulkRequest(2);
+        br.add(newUser("bad1", null), null);
+        br.add(newUser("u1", null), null);
+        br.add(newUser("bad2", null), null);
+        br.add(newUser("u2", null), null);
+        br.add(newUser("u3", null), null);
+
+        BulkResponse resp = new StubClient(2, 1048576).sendBulkRequest(br);
+        assertEquals(2, resp.getRequestCount());
+        assertEquals(2, requests.get(0).get("failOnErrors").getAsInt());
+
+        // the budget left after the first chunk is carried over
+        assertEquals(1, requests.get(1).get("failOnErrors").getAsInt());
+
+        int[] codes = {400, 201, 400, -1, -1};
+        for(int i = 0; i < codes.length; i++) {
+            assertEquals(codes[i], resp.getResponse(i).getHttpCode());
+        }
+        assertEquals("invalidValue", resp.getResponse(0).getError().getScimType());
+        assertEquals("Operation was not processed by the server", resp.getResponse(3).getError().getDetail());
+        assertEquals("Operation was not sent, failOnErrors limit was reached", resp.getResponse(4).getError().getDetail());
+    }
+
+    private JsonArray operations(int request) {
+        return requests.get(request).getAsJsonArray("Operations");
+    }
+
+    private User newUser(String userName, String nickName) {
+        JsonObject json = new JsonObject();
+        json.addProperty("userName", userName);
+        json.addProperty("nickName", nickName);
+        return new Gson().fromJson(json, User.class);
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2018 Keydap Software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * See LICENSE file for details.
+ */
+package com.keydap.sparrow;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.annotations.SerializedName;
+
+/**
+ * Tests the conversion of the values into JSON by ClassAccessor
+ *
+ * @author Kiran Ayyagari (kayyagari@keydap.com)
+ */
+public class ClassAccessorTest {
+
+    @ComplexType(multival=true)
+    public static class Member {
+        private String value;
+
+        @SerializedName("$ref")
+        private String ref;
+
+        private transient String cached;
+
+        private List<Integer> ranks;
+
+        public String getValue() {
+            return value;
+        }
+
+        public String getRef() {
+            return ref;
+        }
+    }
+
+    @Test
+    public void testToJson() {
+        Member m = new Member();
+        m.value = "1";
+        m.ref = "https://example.com/v2/Users/1";
+        m.cached = "ignored";
+        m.ranks = Arrays.asList(1, 2);
+
+        JsonObject json = (JsonObject) ClassAccessor.toJson(m);
+        assertEquals(new Gson().toJsonTree(m), json);
+        assertEquals("https://example.com/v2/Users/1", json.get("$ref").getAsString());
+        assertFalse(json.has("ref"));
+        assertFalse(json.has("cached"));
+
+        // null values are omitted
+        m.ranks = null;
+        assertEquals(new Gson().toJsonTree(m), ClassAccessor.toJson(m));
+    }
+}
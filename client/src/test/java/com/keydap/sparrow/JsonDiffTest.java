@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2018 Keydap Software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * See LICENSE file for details.
+ */
+package com.keydap.sparrow;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.keydap.sparrow.PatchRequest.PatchOperation;
+
+/**
+ *
+ * @author Kiran Ayyagari (kayyagari@keydap.com)
+ */
+public class JsonDiffTest {
+
+    private JsonDiff diff = new JsonDiff();
+
+    private JsonObject parse(String json) {
+        return new JsonParser().parse(json.replace('\'', '"')).getAsJsonObject();
+    }
+
+    @Test
+    public void testUnchanged() {
+        JsonObject o = parse("{'id':'1','userName':'a','name':{'givenName':'g','familyName':'f'},'emails':[{'value':'a@x.org','type':'work'}]}");
+        // same content with a different member order
+        JsonObject m = parse("{'userName':'a','id':'1','emails':[{'type':'work','value':'a@x.org'}],'name':{'familyName':'f','givenName':'g'}}");
+        assertTrue(diff.create("1", null, m, o).getOperations().isEmpty());
+    }
+
+    @Test
+    public void testDiff() {
+        JsonObject o = parse("{'id':'1','userName':'a','nickName':'n','name':{'givenName':'g','familyName':'f'},"
+                + "'emails':[{'value':'a@x.org','type':'work'},{'value':'b@x.org','type':'home'},{'value':'c@x.org'}],"
+                + "'urn:ietf:params:scim:schemas:extension:enterprise:2.0:User':{'employeeNumber':'1'},'meta':{'version':'1'}}");
+        JsonObject m = parse("{'id':'1','userName':'b','name':{'givenName':'h','familyName':'f'},"
+                + "'emails':[{'value':'d@x.org'},{'value':'a@x.org','type':'work'},{'value':'b@x.org','type':'other'}],"
+                + "'urn:ietf:params:scim:schemas:extension:enterprise:2.0:User':{'employeeNumber':'2'},'meta':{'version':'2'}}");
+
+        List<PatchOperation> ops = diff.create("1", null, m, o).getOperations();
+        assertEquals(7, ops.size());
+        assertOp(ops.get(0), "remove", "nickName", null);
+        assertOp(ops.get(1), "replace", "userName", "\"b\"");
+        assertOp(ops.get(2), "replace", "name", "{\"givenName\":\"h\"}");
+        assertOp(ops.get(3), "replace", "emails[value EQ \"b@x.org\"]", "{\"type\":\"other\"}");
+        assertOp(ops.get(4), "remove", "emails[value EQ \"c@x.org\"]", null);
+        assertOp(ops.get(5), "add", "emails", "[{\"value\":\"d@x.org\"}]");
+        assertOp(ops.get(6), "replace", "urn:ietf:params:scim:schemas:extension:enterprise:2.0:User:employeeNumber", "\"2\"");
+    }
+
+    @Test
+    public void testSharedInstance() throws Exception {
+        JsonObject o = parse("{'userName':'a','name':{'givenName':'g'},'emails':[{'value':'a@x.org'},{'value':'b@x.org'}]}");
+        JsonObject m = parse("{'userName':'b','name':{'givenName':'h'},'emails':[{'value':'a@x.org'},{'value':'c@x.org'}]}");
+        String expected = diff.create("1", null, m, o).toString();
+
+        ExecutorService exec = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for(int i = 0; i < 200; i++) {
+                results.add(exec.submit(() -> diff.create("1", null, m, o).toString()));
+            }
+
+            for(Future<String> f : results) {
+                assertEquals(expected, f.get());
+            }
+        }
+        finally {
+            exec.shutdown();
+        }
+    }
+
+    private void assertOp(PatchOperation po, String op, String path, String value) {
+        assertEquals(op, po.getOp());
+        assertEquals(path, po.getPath());
+        assertEquals(value, po.getValue() == null ? null : po.getValue().toString());
+    }
+}
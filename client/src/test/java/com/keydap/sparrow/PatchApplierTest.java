@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2018 Keydap Software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * See LICENSE file for details.
+ */
+package com.keydap.sparrow;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ *
+ * @author Kiran Ayyagari (kayyagari@keydap.com)
+ */
+public class PatchApplierTest {
+
+    private PatchApplier applier = new PatchApplier();
+
+    private static final String ENTERPRISE = "urn:ietf:params:scim:schemas:extension:enterprise:2.0:User";
+
+    private JsonObject parse(String json) {
+        return new JsonParser().parse(json.replace('\'', '"')).getAsJsonObject();
+    }
+
+    private JsonObject original() {
+        return parse("{'id':'1','userName':'thar','name':{'givenName':'Thar','familyName':'Angulate'},"
+                + "'emails':[{'value':'thar@westernghats.org','type':'work','primary':true},{'value':'thar@nilgiris.org','type':'home'}],"
+                + "'" + ENTERPRISE + "':{'employeeNumber':'7','manager':{'value':'2'}}}");
+    }
+
+    @Test
+    public void testApply() {
+        PatchRequest pr = new PatchRequest("1", User.class);
+        pr.replace("userName", "\"tahr\"");
+        pr.add("name", "{'middleName':'N','givenName':'Tahr'}".replace('\'', '"'));
+        pr.remove("name.familyName");
+        pr.replace("emails[type EQ \"WORK\"]", "{\"primary\":false}");
+        pr.add("emails[value EQ \"thar@nilgiris.org\"].display", "\"Home\"");
+        pr.add("emails", "[{\"value\":\"tahr@shola.org\"}]");
+        pr.replace(ENTERPRISE + ":employeeNumber", "\"8\"");
+        pr.remove(ENTERPRISE + ":manager.value");
+        pr.add("title", "\"Mr.\"");
+
+        JsonObject expected = parse("{'id':'1','userName':'tahr','name':{'givenName':'Tahr','middleName':'N'},"
+                + "'emails':[{'value':'thar@westernghats.org','type':'work','primary':false},{'value':'thar@nilgiris.org','type':'home','display':'Home'},{'value':'tahr@shola.org'}],"
+                + "'" + ENTERPRISE + "':{'employeeNumber':'8','manager':{}},'title':'Mr.'}");
+        assertEquals(expected, applier.apply(pr, original()));
+    }
+
+    @Test
+    public void testFilters() {
+        PatchRequest pr = new PatchRequest("1", User.class);
+        pr.remove("emails[not (type eq \"work\") and (value sw \"THAR\" or primary pr)]");
+        JsonObject obj = applier.apply(pr, original());
+        assertEquals(1, obj.getAsJsonArray("emails").size());
+
+        pr = new PatchRequest("1", User.class);
+        pr.remove("emails[value ew \"]\\\"\"]");
+        pr.remove("emails[value co \"org\"]");
+        obj = applier.apply(pr, original());
+        assertFalse(obj.has("emails"));
+
+        pr = new PatchRequest("1", User.class);
+        pr.replace("emails[type eq \"other\"]", "{\"primary\":false}");
+        try {
+            applier.apply(pr, original());
+            fail("a replace must fail when no value matches the filter");
+        }
+        catch(IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testRoundTrip() {
+        JsonObject original = original();
+        JsonObject modified = parse("{'id':'1','userName':'thar','name':{'givenName':'Thar'},"
+                + "'emails':[{'value':'thar@westernghats.org','type':'office','primary':true},{'value':'tahr@shola.org','type':'other'}],"
+                + "'" + ENTERPRISE + "':{'employeeNumber':'7','division':'Ghats','manager':{'value':'2'}}}");
+        PatchRequest pr = new JsonDiff().create("1", User.class, modified, original);
+        assertEquals(modified, applier.apply(pr, original));
+    }
+
+    @Test
+    public void testApplyToObject() {
+        SparrowClient client = new SparrowClient("");
+        client.register(User.class);
+
+        User u = client.applyPatch(new PatchRequest("1", User.class), new User());
+        assertNull(u.getUserName());
+
+        PatchRequest pr = new PatchRequest("1", User.class);
+        pr.add("userName", "\"thar\"");
+        pr.add(ENTERPRISE + ":employeeNumber", "\"7\"");
+        u = client.applyPatch(pr, u);
+        assertEquals("thar", u.getUserName());
+        assertEquals("7", u.getEnterpriseUser().getEmployeeNumber());
+    }
+}
@@ -1,12 +1,16 @@
 package com.keydap.sparrow;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import java.security.SecureRandom;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
 
 import org.junit.Before;
 import org.junit.BeforeClass;
@@ -296,6 +300,231 @@ public class PatchGeneratorTest {
         assertEquals(expectedPath, path);
     }
     
+    @Test
+    public void testKeyedListDiff() {
+        User modified = cloneObject(original);
+        Email e0 = new Email();
+        e0.setValue("thar@shola.org");
+        e0.setType("Other");
+        modified.getEmails().add(0, e0);
+        modified.getEmails().remove(2);
+        modified.getEmails().get(1).setPrimary(false);
+        
+        PatchRequest pr = new PatchGenerator(true).create("", modified, original);
+        List<PatchOperation> ops = pr.getOperations();
+        assertEquals(3, ops.size());
+        
+        assertEquals("remove", ops.get(0).getOp());
+        assertEquals("emails[value EQ \"thar@nilgiris.org\"]", ops.get(0).getPath());
+        
+        assertEquals("replace", ops.get(1).getOp());
+        assertEquals("emails[value EQ \"thar@westernghats.org\"]", ops.get(1).getPath());
+        assertEquals("{\"primary\":false}", ops.get(1).getValue().toString());
+        
+        assertEquals("add", ops.get(2).getOp());
+        assertEquals("emails", ops.get(2).getPath());
+        assertEquals(1, ops.get(2).getValue().getAsJsonArray().size());
+    }
+    
+    @Test
+    public void testCompact() {
+        PatchRequest pr = new PatchRequest("1", User.class);
+        pr.replace("name", "{\"givenName\":\"a\"}");
+        pr.replace("name", "{\"familyName\":\"b\"}");
+        pr.add("emails", "[{\"value\":\"x@y.org\"}]");
+        pr.add("emails", "[{\"value\":\"z@y.org\"}]");
+        pr.replace("nickName", "\"a\"");
+        pr.replace("nickName", "\"b\"");
+        pr.add("title", "\"t\"");
+        pr.replace("displayName", "\"d\"");
+        pr.remove("title");
+        // the replace of "name.givenName" blocks merging the surrounding replaces of "name"
+        pr.replace("name.givenName", "\"c\"");
+        pr.replace("name", "{\"middleName\":\"m\"}");
+        pr.compact();
+        
+        List<PatchOperation> ops = pr.getOperations();
+        assertEquals(7, ops.size());
+        assertEquals("{\"givenName\":\"a\",\"familyName\":\"b\"}", ops.get(0).getValue().toString());
+        assertEquals(2, ops.get(1).getValue().getAsJsonArray().size());
+        assertEquals("\"b\"", ops.get(2).getValue().toString());
+        assertEquals("displayName", ops.get(3).getPath());
+        assertEquals("remove", ops.get(4).getOp());
+        assertEquals("title", ops.get(4).getPath());
+        assertEquals("name.givenName", ops.get(5).getPath());
+        assertEquals("name", ops.get(6).getPath());
+        
+        assertEquals(gson.toJson(client.serialize(pr)).length(), client.estimateSize(pr));
+    }
+    
+    @Test
+    public void testCompactKeepsUnrelatedValues() {
+        PatchRequest pr = new PatchRequest("1", User.class);
+        pr.add("emails", "[{\"value\":\"x@y.org\"}]");
+        pr.add("emails", "{\"value\":\"z@y.org\"}");
+        pr.replace("name", "{\"givenName\":\"a\"}");
+        pr.add("name", "[{\"givenName\":\"b\"}]");
+        pr.add("nickName", "\"a\"");
+        pr.replace("nickName", "\"b\"");
+        pr.add("roles", "[{\"value\":\"r1\"}]");
+        pr.replace("roles", "[{\"value\":\"r2\"}]");
+        pr.compact();
+        
+        List<PatchOperation> ops = pr.getOperations();
+        assertEquals(6, ops.size());
+        assertEquals("[{\"value\":\"x@y.org\"}]", ops.get(0).getValue().toString());
+        assertEquals("{\"value\":\"z@y.org\"}", ops.get(1).getValue().toString());
+        assertEquals("{\"givenName\":\"a\"}", ops.get(2).getValue().toString());
+        assertEquals("[{\"givenName\":\"b\"}]", ops.get(3).getValue().toString());
+        assertEquals("replace", ops.get(4).getOp());
+        assertEquals("\"b\"", ops.get(4).getValue().toString());
+        assertEquals("[{\"value\":\"r2\"}]", ops.get(5).getValue().toString());
+    }
+    
+    @Test
+    public void testCompactMultiValued() {
+        PatchRequest pr = new PatchRequest("1", User.class);
+        pr.add("emails", "{\"value\":\"a\"}");
+        pr.add("emails", "{\"value\":\"b\"}");
+        pr.replace("emails", "{\"value\":\"c\"}");
+        pr.replace("emails[type EQ \"work\"]", "{\"value\":\"w\"}");
+        pr.replace("emails[type EQ \"work\"]", "{\"primary\":true}");
+        pr.add("urn:ietf:params:scim:schemas:extension:enterprise:2.0:User:manager", "{\"value\":\"1\"}");
+        pr.add("urn:ietf:params:scim:schemas:extension:enterprise:2.0:User:manager", "{\"displayName\":\"m\"}");
+        pr.compact();
+        
+        // each email is kept and the add is not turned into a replace
+        List<PatchOperation> ops = pr.getOperations();
+        assertEquals(5, ops.size());
+        assertEquals("{\"value\":\"a\"}", ops.get(0).getValue().toString());
+        assertEquals("{\"value\":\"b\"}", ops.get(1).getValue().toString());
+        assertEquals("replace", ops.get(2).getOp());
+        assertEquals("{\"value\":\"c\"}", ops.get(2).getValue().toString());
+        
+        // the filtered values and the single-valued complex attributes are merged
+        assertEquals("{\"value\":\"w\",\"primary\":true}", ops.get(3).getValue().toString());
+        assertEquals("{\"value\":\"1\",\"displayName\":\"m\"}", ops.get(4).getValue().toString());
+    }
+    
+    @Test
+    public void testCompactWithoutPath() {
+        PatchRequest pr = new PatchRequest("1", User.class);
+        pr.add("{\"emails\":[{\"value\":\"a\"}]}");
+        pr.add("{\"emails\":[{\"value\":\"b\"}]}");
+        pr.replace("{\"nickName\":\"n\"}");
+        pr.compact();
+        
+        List<PatchOperation> ops = pr.getOperations();
+        assertEquals(3, ops.size());
+        assertEquals("{\"emails\":[{\"value\":\"a\"}]}", ops.get(0).getValue().toString());
+        assertEquals("{\"emails\":[{\"value\":\"b\"}]}", ops.get(1).getValue().toString());
+    }
+    
+    @Test
+    public void testPatchFromChanges() {
+        String json = "{'id':'1','userName':'thar','name':{'givenName':'Nilgiri','familyName':'Thar'},"
+                + "'emails':[{'value':'a@x.org','type':'work'},{'value':'b@x.org','type':'home'}],"
+                + "'urn:ietf:params:scim:schemas:extension:enterprise:2.0:User':{'employeeNumber':'1'}}";
+        TrackedUser user = gson.fromJson(json.replace('\'', '"'), TrackedUser.class);
+        // the extension is mapped by the client while reading
+        TrackedUser.EnterpriseUser eu = new TrackedUser.EnterpriseUser();
+        eu.setEmployeeNumber("1");
+        user.setEnterpriseUser(eu);
+        user.startTracking();
+        
+        user.setUserName("thar2");
+        user.getName().setFamilyName(null);
+        user.getName().setGivenName("Western");
+        user.getEmails().remove(1);
+        user.getEmails().get(0).setPrimary(true);
+        TrackedUser.Email added = new TrackedUser.Email();
+        added.setValue("c@x.org");
+        user.getEmails().add(added);
+        // added and removed before sending, must not be present in the patch
+        TrackedUser.Email temp = new TrackedUser.Email();
+        user.getEmails().add(temp);
+        user.getEmails().remove(temp);
+        user.getEnterpriseUser().setEmployeeNumber("2");
+        
+        PatchRequest pr = pg.createFromChanges("1", user, null);
+        List<PatchOperation> ops = pr.getOperations();
+        assertEquals(7, ops.size());
+        assertEquals("userName", ops.get(0).getPath());
+        assertEquals("remove", ops.get(1).getOp());
+        assertEquals("name.familyName", ops.get(1).getPath());
+        assertEquals("name", ops.get(2).getPath());
+        assertEquals("{\"givenName\":\"Western\"}", ops.get(2).getValue().toString());
+        assertEquals("remove", ops.get(3).getOp());
+        assertEquals("emails[value EQ \"b@x.org\" AND type EQ \"home\" AND primary EQ false]", ops.get(3).getPath());
+        assertEquals("replace", ops.get(4).getOp());
+        assertEquals("emails[value EQ \"a@x.org\"]", ops.get(4).getPath());
+        assertEquals("{\"primary\":true}", ops.get(4).getValue().toString());
+        assertEquals("add", ops.get(5).getOp());
+        assertEquals("[{\"value\":\"c@x.org\",\"primary\":false}]", ops.get(5).getValue().toString());
+        assertEquals("urn:ietf:params:scim:schemas:extension:enterprise:2.0:User:employeeNumber", ops.get(6).getPath());
+        
+        // a fresh start discards the recorded changes
+        user.startTracking();
+        assertTrue(pg.createFromChanges("1", user, null).getOperations().isEmpty());
+    }
+    
+    @Test
+    public void testParallelGenerate() {
+        List<ParallelPatchGenerator.Pair> pairs = new ArrayList<>();
+        for(int i = 0; i < 100; i++) {
+            User modified = cloneObject(original);
+            if(i % 4 != 0) {
+                modified.setDisplayName("Thar " + i);
+            }
+            pairs.add(new ParallelPatchGenerator.Pair(String.valueOf(i), modified, original));
+        }
+        
+        ParallelPatchGenerator ppg = new ParallelPatchGenerator(pg, ForkJoinPool.commonPool(), 7);
+        List<PatchRequest> patches = ppg.generate(pairs).collect(Collectors.toList());
+        assertEquals(75, patches.size());
+        for(int i = 0; i < patches.size(); i++) {
+            int n = Integer.parseInt(patches.get(i).getId());
+            assertTrue(n % 4 != 0);
+            if(i > 0) {
+                assertTrue(n > Integer.parseInt(patches.get(i - 1).getId()));
+            }
+        }
+        
+        PatchGenerationStats stats = ppg.getStats();
+        assertEquals(100, stats.getPairs());
+        assertEquals(25, stats.getEmptyPatches());
+        assertEquals(0.25, stats.getEmptyRatio(), 0.0);
+        assertTrue(stats.getPairsPerSecond() > 0);
+    }
+    
+    @Test
+    public void testToJson() {
+        EnterpriseUser eu = new EnterpriseUser();
+        eu.setEmployeeNumber("1");
+        original.setEnterpriseUser(eu);
+        assertEquals(gson.toJsonTree(original), ClassAccessor.toJson(original));
+    }
+    
+    @Test
+    public void testClassMetadata() {
+        ClassAccessor ca = ClassAccessor.of(Email.class);
+        assertEquals(ClassAccessor.Kind.COMPLEX, ca.getKind());
+        assertTrue(ca.isMultival());
+        assertFalse(ClassAccessor.of(Name.class).isMultival());
+        assertEquals(ClassAccessor.Kind.SIMPLE, ClassAccessor.of(Long.class).getKind());
+        assertEquals(ClassAccessor.Kind.SIMPLE, ClassAccessor.of(java.util.Date.class).getKind());
+        assertEquals(0, ClassAccessor.of(java.util.Date.class).getWritable().length);
+        
+        for(ClassAccessor.Property p : ClassAccessor.of(User.class).getWritable()) {
+            if(p.name.equals("emails")) {
+                assertEquals(ClassAccessor.Kind.LIST, p.kind);
+            }
+            else if(p.name.equals("enterpriseUser")) {
+                assertEquals("urn:ietf:params:scim:schemas:extension:enterprise:2.0:User", p.extension);
+            }
+        }
+    }
+    
     private void dump(Object obj) {
         System.out.println(gson.toJson(obj));
     }
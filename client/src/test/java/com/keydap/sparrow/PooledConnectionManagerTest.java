@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2018 Keydap Software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * See LICENSE file for details.
+ */
+package com.keydap.sparrow;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpHost;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.routing.HttpRoute;
+import org.junit.Test;
+
+/**
+ * Tests the statistics recorded by the pooling connection manager
+ *
+ * @author Kiran Ayyagari (kayyagari@keydap.com)
+ */
+public class PooledConnectionManagerTest {
+
+    @Test
+    public void testPoolStats() throws Exception {
+        ClientConfig config = new ClientConfig();
+        config.setMaxConnTotal(1);
+        config.setMaxConnPerRoute(1);
+
+        PooledConnectionManager mgr = new PooledConnectionManager(SparrowClient.createSocketFactoryRegistry("http://localhost", null), config);
+        try {
+            ConnectionPoolStats stats = mgr.getPoolStats();
+            assertEquals(0, stats.getLeased());
+            assertEquals(1, stats.getMax());
+            assertEquals(0, stats.getLeaseCount());
+            assertEquals(0.0, stats.getAvgLeaseWaitMillis(), 0.0);
+
+            // leasing doesn't open the connection
+            HttpRoute route = new HttpRoute(new HttpHost("localhost", 80));
+            HttpClientConnection conn = mgr.requestConnection(route, null).get(1, TimeUnit.SECONDS);
+
+            stats = mgr.getPoolStats();
+            assertEquals(1, stats.getLeased());
+            assertEquals(0, stats.getAvailable());
+            assertEquals(1, stats.getLeaseCount());
+            assertEquals(0, stats.getLeaseTimeouts());
+
+            // the pool is exhausted
+            try {
+                mgr.requestConnection(route, null).get(100, TimeUnit.MILLISECONDS);
+                fail("the lease should time out");
+            }
+            catch(ConnectionPoolTimeoutException e) {
+                // expected
+            }
+
+            stats = mgr.getPoolStats();
+            assertEquals(1, stats.getLeaseCount());
+            assertEquals(1, stats.getLeaseTimeouts());
+            assertTrue(stats.getMaxLeaseWaitMillis() >= 90);
+            assertTrue(stats.getAvgLeaseWaitMillis() > 0);
+            assertTrue(stats.getAvgLeaseWaitMillis() <= stats.getMaxLeaseWaitMillis());
+
+            mgr.releaseConnection(conn, null, 0, TimeUnit.MILLISECONDS);
+            assertEquals(0, mgr.getPoolStats().getLeased());
+        }
+        finally {
+            mgr.shutdown();
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2018 Keydap Software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * See LICENSE file for details.
+ */
+package com.keydap.sparrow;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+
+/**
+ *
+ * @author Kiran Ayyagari (kayyagari@keydap.com)
+ */
+public class ReadBatcherTest {
+
+    private List<SearchRequest> requests = Collections.synchronizedList(new ArrayList<>());
+
+    /**
+     * a client that serves the users whose IDs start with "u"
+     */
+    private class StubClient extends SparrowClient {
+        StubClient() {
+            super("");
+            register(User.class);
+        }
+
+        @Override
+        <T> SearchResponse<T> _searchResource(SearchRequest sr, String endpoint, Class<T> resClas) {
+            requests.add(sr);
+            List<T> lst = new ArrayList<>();
+            Matcher m = Pattern.compile("id EQ \"((?:[^\"\\\\]|\\\\.)*)\"").matcher(sr.getFilter());
+            while(m.find()) {
+                String id = m.group(1).replaceAll("\\\\(.)", "$1");
+                if(id.startsWith("u")) {
+                    JsonObject json = new JsonObject();
+                    json.addProperty("id", id);
+                    User u = new Gson().fromJson(json, User.class);
+                    lst.add((T) u);
+                }
+            }
+
+            SearchResponse<T> resp = new SearchResponse<>();
+            resp.setHttpCode(200);
+            resp.setTotalResults(lst.size());
+            resp.setResources(lst);
+            return resp;
+        }
+    }
+
+    @Test
+    public void testBatching() throws Exception {
+        ReadBatcher<User> rb = new ReadBatcher<User>(new StubClient(), User.class, 3, 1000, 10000);
+        CompletableFuture<Response<User>> f1 = rb.getResource("u1");
+        CompletableFuture<Response<User>> f2 = rb.getResource("x2");
+        CompletableFuture<Response<User>> f3 = rb.getResource("u1");
+
+        assertEquals("u1", f1.get().getResource().getId());
+        assertSame(f1.get(), f3.get());
+        assertEquals(404, f2.get().getHttpCode());
+        assertEquals(1, requests.size());
+        assertEquals("id EQ \"u1\" OR id EQ \"x2\"", requests.get(0).getFilter());
+        rb.close();
+    }
+
+    @Test
+    public void testFilterLength() throws Exception {
+        // room for two clauses
+        ReadBatcher<User> rb = new ReadBatcher<User>(new StubClient(), User.class, 10, 30, 10000);
+        List<CompletableFuture<Response<User>>> futures = new ArrayList<>();
+        for(int i = 0; i < 5; i++) {
+            futures.add(rb.getResource("u" + i));
+        }
+        rb.close();
+
+        for(int i = 0; i < 5; i++) {
+            assertEquals("u" + i, futures.get(i).get().getResource().getId());
+        }
+        assertEquals(3, requests.size());
+    }
+
+    @Test
+    public void testEscape() throws Exception {
+        ReadBatcher<User> rb = new ReadBatcher<User>(new StubClient(), User.class, 2, 1000, 10000);
+        CompletableFuture<Response<User>> f1 = rb.getResource("u\"1");
+        CompletableFuture<Response<User>> f2 = rb.getResource("u\\2");
+
+        assertEquals("u\"1", f1.get().getResource().getId());
+        assertEquals("u\\2", f2.get().getResource().getId());
+        assertEquals("id EQ \"u\\\"1\" OR id EQ \"u\\\\2\"", requests.get(0).getFilter());
+        rb.close();
+    }
+}
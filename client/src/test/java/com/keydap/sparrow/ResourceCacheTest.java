@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2018 Keydap Software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * See LICENSE file for details.
+ */
+package com.keydap.sparrow;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+/**
+ * Tests for ResourceCache
+ *
+ * @author Kiran Ayyagari (kayyagari@keydap.com)
+ */
+public class ResourceCacheTest {
+
+    @Test
+    public void testEvictionAndInvalidation() {
+        ResourceCache cache = new ResourceCache(3, 0);
+        cache.put("/Users/1", "", "u1", "W/\"1\"");
+        cache.put("/Users/1", "attributes=userName", "u1-name", "W/\"1\"");
+        cache.put("/Users/2", "", "u2", "W/\"1\"");
+        assertEquals(3, cache.size());
+        
+        // touch the first resource so that the second one becomes eldest
+        assertNotNull(cache.get("/Users/1", ""));
+        cache.put("/Users/3", "", "u3", "W/\"1\"");
+        assertNull(cache.get("/Users/2", ""));
+        assertEquals("u1-name", cache.get("/Users/1", "attributes=userName").resource);
+        assertEquals(3, cache.size());
+        
+        cache.invalidate("/Users/1");
+        assertNull(cache.get("/Users/1", ""));
+        assertNull(cache.get("/Users/1", "attributes=userName"));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testProjectionEviction() {
+        ResourceCache cache = new ResourceCache(3, 0);
+        cache.put("/Users/2", "", "u2", "W/\"1\"");
+        for(int i = 0; i < 5; i++) {
+            cache.put("/Users/1", "attributes=a" + i, "u1-a" + i, "W/\"1\"");
+            assertNotNull(cache.get("/Users/1", "attributes=a0"));
+        }
+        
+        // the other resources go first, then the least recently used projections
+        assertEquals(3, cache.size());
+        assertNull(cache.get("/Users/2", ""));
+        assertNull(cache.get("/Users/1", "attributes=a1"));
+        assertNull(cache.get("/Users/1", "attributes=a2"));
+        assertEquals("u1-a0", cache.get("/Users/1", "attributes=a0").resource);
+        assertEquals("u1-a3", cache.get("/Users/1", "attributes=a3").resource);
+        assertEquals("u1-a4", cache.get("/Users/1", "attributes=a4").resource);
+        
+        cache.invalidate("/Users/1");
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testExpiry() throws Exception {
+        ResourceCache cache = new ResourceCache(10, 1);
+        cache.put("/Users/1", "", "u1", "W/\"1\"");
+        Thread.sleep(5);
+        assertNull(cache.get("/Users/1", ""));
+        assertEquals(0, cache.size());
+    }
+}
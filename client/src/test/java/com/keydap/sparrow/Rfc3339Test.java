@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2018 Keydap Software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * See LICENSE file for details.
+ */
+package com.keydap.sparrow;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.time.Instant;
+import java.util.Date;
+
+import org.junit.Test;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+
+/**
+ *
+ * @author Kiran Ayyagari (kayyagari@keydap.com)
+ */
+public class Rfc3339Test {
+
+    @Test
+    public void testParse() {
+        long expected = Instant.parse("2018-01-02T03:04:05Z").toEpochMilli();
+        assertEquals(expected, Rfc3339.parseMillis("2018-01-02T03:04:05Z"));
+        assertEquals(expected, Rfc3339.parseMillis("2018-01-02t03:04:05z"));
+        assertEquals(expected, Rfc3339.parseMillis("2018-01-02 08:34:05+05:30"));
+        assertEquals(expected + 123, Rfc3339.parseMillis("2018-01-01T22:04:05.1239-05:00"));
+
+        assertEquals(Instant.parse("2018-01-02T03:04:05.123456789Z"), Rfc3339.parseInstant("2018-01-02T03:04:05.123456789Z"));
+        assertEquals(Instant.parse("2016-02-29T23:59:59.5Z"), Rfc3339.parseInstant("2016-02-29T23:59:59.5Z"));
+        assertEquals(Instant.parse("0000-01-01T00:00:00Z"), Rfc3339.parseInstant("0000-01-01T00:00:00Z"));
+
+        String[] invalid = {"2018-01-02T03:04:05", "2018-01-02T03:04:05.Z", "2018-02-29T03:04:05Z", "2018-13-02T03:04:05Z",
+                "2018-01-02T24:04:05Z", "2018-01-02T03:04:05+0530", "2018-01-02X03:04:05Z", "2018-01-02T03:04:05Zabc"};
+        for(String s : invalid) {
+            try {
+                Rfc3339.parseMillis(s);
+                fail("must fail to parse " + s);
+            }
+            catch(IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testFormat() {
+        assertEquals("2018-01-02T03:04:05Z", Rfc3339.format(new Date(1514862245000L)));
+        assertEquals("2018-01-02T03:04:05.007Z", Rfc3339.format(1514862245007L));
+        assertEquals("1969-12-31T23:59:59.999Z", Rfc3339.format(-1L));
+        assertEquals("2018-01-02T03:04:05.123456Z", Rfc3339.format(Instant.ofEpochSecond(1514862245L, 123456000)));
+        assertEquals("2018-01-02T03:04:05.000000001Z", Rfc3339.format(Instant.ofEpochSecond(1514862245L, 1)));
+
+        for(long millis = -62167219200000L; millis < 253402300800000L; millis += 86399999L * 7) {
+            assertEquals(Instant.ofEpochMilli(millis), Rfc3339.parseInstant(Rfc3339.format(millis)));
+        }
+    }
+
+    @Test
+    public void testAdapters() {
+        Gson gson = new GsonBuilder().registerTypeAdapter(Date.class, Rfc3339.DATE_ADAPTER).create();
+        assertEquals("\"2018-01-02T03:04:05.120Z\"", gson.toJson(new Date(1514862245120L)));
+        assertEquals(new Date(1514862245120L), gson.fromJson("\"2018-01-02T03:04:05.12Z\"", Date.class));
+
+        try {
+            gson.fromJson("\"2018-01-02\"", Date.class);
+            fail("must fail to parse an invalid date");
+        }
+        catch(JsonParseException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2018 Keydap Software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * See LICENSE file for details.
+ */
+package com.keydap.sparrow;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ *
+ * @author Kiran Ayyagari (kayyagari@keydap.com)
+ */
+public class SearchIteratorTest {
+
+    private List<SearchRequest> requests = Collections.synchronizedList(new ArrayList<>());
+
+    private static ExecutorService executor = Executors.newCachedThreadPool();
+
+    /**
+     * simulates a server holding the given number of resources and
+     * serving at most maxCount resources in a page
+     */
+    private SearchResponse<Integer> fetch(SearchRequest req, int total, int maxCount) {
+        requests.add(req);
+        SearchResponse<Integer> resp = new SearchResponse<>();
+        resp.setHttpCode(200);
+        resp.setTotalResults(total);
+        resp.setStartIndex(req.getStartIndex());
+        
+        List<Integer> lst = new ArrayList<>();
+        int count = Math.min(req.getCount(), maxCount);
+        for(int i = req.getStartIndex(); i <= total && lst.size() < count; i++) {
+            lst.add(i);
+        }
+        
+        resp.setItemsPerPage(lst.size());
+        if(!lst.isEmpty()) {
+            resp.setResources(lst);
+        }
+        
+        return resp;
+    }
+
+    @Test
+    public void testPaging() {
+        SearchRequest sr = new SearchRequest();
+        sr.setFilter("id pr");
+        SearchIterator<Integer> itr = new SearchIterator<>(sr, 10, (req) -> fetch(req, 25, 100));
+        
+        int expected = 1;
+        while(itr.hasNext()) {
+            assertEquals(expected++, itr.next().intValue());
+        }
+        
+        assertEquals(26, expected);
+        assertEquals(3, requests.size());
+        assertEquals(21, requests.get(2).getStartIndex());
+        assertEquals("id pr", requests.get(2).getFilter());
+        // the given request must not be modified
+        assertEquals(0, sr.getStartIndex());
+    }
+
+    @Test
+    public void testServerLimitsPageSize() {
+        SearchIterator<Integer> itr = new SearchIterator<>(new SearchRequest(), 10, (req) -> fetch(req, 12, 4));
+        int count = 0;
+        while(itr.hasNext()) {
+            itr.next();
+            count++;
+        }
+        
+        assertEquals(12, count);
+        assertEquals(3, requests.size());
+        assertEquals(9, requests.get(2).getStartIndex());
+    }
+
+    @Test
+    public void testEmptyResult() {
+        SearchIterator<Integer> itr = new SearchIterator<>(new SearchRequest(), 10, (req) -> fetch(req, 0, 10));
+        assertFalse(itr.hasNext());
+        assertEquals(1, requests.size());
+    }
+
+    @Test
+    public void testFailedPage() {
+        SearchIterator<Integer> itr = new SearchIterator<>(new SearchRequest(), 10, (req) -> {
+            SearchResponse<Integer> resp = new SearchResponse<>();
+            resp.setHttpCode(400);
+            return resp;
+        });
+        
+        try {
+            itr.hasNext();
+            fail("must fail when a page cannot be fetched");
+        }
+        catch(IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testParallelOrdered() {
+        ParallelSearchIterator<Integer> itr = new ParallelSearchIterator<>(new SearchRequest(), 10, 4, 6, true, executor, (req) -> fetch(req, 1005, 10));
+        int expected = 1;
+        while(itr.hasNext()) {
+            assertEquals(expected++, itr.next().intValue());
+        }
+        
+        assertEquals(1006, expected);
+        assertEquals(101, requests.size());
+    }
+
+    @Test
+    public void testParallelUnordered() {
+        // server limits the page size to 7
+        ParallelSearchIterator<Integer> itr = new ParallelSearchIterator<>(new SearchRequest(), 10, 3, 3, false, executor, (req) -> fetch(req, 500, 7));
+        boolean[] seen = new boolean[501];
+        int count = 0;
+        while(itr.hasNext()) {
+            int i = itr.next();
+            assertFalse(seen[i]);
+            seen[i] = true;
+            count++;
+        }
+        
+        assertEquals(500, count);
+    }
+
+    @Test
+    public void testParallelBounds() throws Exception {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        ParallelSearchIterator<Integer> itr = new ParallelSearchIterator<>(new SearchRequest(), 10, 2, 3, true, executor, (req) -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(20);
+                return fetch(req, 1000, 10);
+            }
+            catch(InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            finally {
+                running.decrementAndGet();
+            }
+        });
+        
+        assertTrue(itr.hasNext());
+        Thread.sleep(200);
+        // the first page being consumed and two more in flight
+        assertEquals(3, requests.size());
+        
+        int count = 0;
+        while(itr.hasNext()) {
+            itr.next();
+            count++;
+        }
+        
+        assertEquals(1000, count);
+        assertTrue(maxRunning.get() <= 2);
+    }
+
+    @Test
+    public void testParallelClose() {
+        ParallelSearchIterator<Integer> itr = new ParallelSearchIterator<>(new SearchRequest(), 10, 2, 2, true, executor, (req) -> fetch(req, 1000, 10));
+        assertTrue(itr.hasNext());
+        itr.next();
+        itr.close();
+        assertFalse(itr.hasNext());
+    }
+}
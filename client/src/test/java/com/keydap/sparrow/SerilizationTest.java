@@ -6,10 +6,22 @@
  */
 package com.keydap.sparrow;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.util.EntityUtils;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
 import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import com.keydap.sparrow.PatchRequest.PatchOperation;
@@ -59,4 +71,209 @@ public class SerilizationTest {
         deserPr = serializer.fromJson(json, PatchRequest.class);
         assertEquals(3, deserPr.getOperations().size());
     }
+    
+    @Test
+    public void testReadListResponse() throws Exception {
+        SparrowClient client = new SparrowClient("");
+        client.register(User.class);
+        
+        String json = "{\"schemas\":[\"urn:ietf:params:scim:api:messages:2.0:ListResponse\"],\"totalResults\":5,\"itemsPerPage\":2,\"startIndex\":1,"
+                + "\"Resources\":[{\"schemas\":[\"urn:ietf:params:scim:schemas:core:2.0:User\"],\"id\":\"1\",\"userName\":\"thar\",\"emails\":[{\"value\":\"thar@nilgiris.org\"}]},"
+                + "{\"schemas\":[\"urn:ietf:params:scim:schemas:core:2.0:User\",\"urn:ietf:params:scim:schemas:extension:enterprise:2.0:User\"],\"id\":\"2\",\"userName\":\"tahr\","
+                + "\"urn:ietf:params:scim:schemas:extension:enterprise:2.0:User\":{\"costCenter\":\"valley\"}}]}";
+        
+        for(Class<?> resClas : new Class<?>[]{User.class, null}) {
+            SearchResponse<Object> sr = new SearchResponse<>();
+            client.readSearchResponse(newHttpResponse(200, json), (Class) resClas, sr, null);
+            assertEquals(200, sr.getHttpCode());
+            assertEquals(5, sr.getTotalResults());
+            assertEquals(2, sr.getItemsPerPage());
+            assertEquals(1, sr.getStartIndex());
+            assertEquals(2, sr.getResources().size());
+            
+            User u1 = (User) sr.getResources().get(0);
+            assertEquals("thar", u1.getUserName());
+            assertEquals("thar@nilgiris.org", u1.getEmails().get(0).getValue());
+            User u2 = (User) sr.getResources().get(1);
+            assertEquals("2", u2.getId());
+            assertEquals("valley", u2.getEnterpriseUser().getCostCenter());
+        }
+        
+        SearchResponse<User> sr = new SearchResponse<>();
+        client.readSearchResponse(newHttpResponse(400, "{\"scimType\":\"invalidFilter\",\"status\":\"400\"}"), User.class, sr, null);
+        assertEquals(400, sr.getHttpCode());
+        assertEquals("invalidFilter", sr.getError().getScimType());
+        assertNotNull(sr.getHttpBody());
+    }
+    
+    @Test
+    public void testStreamingEntity() throws Exception {
+        SparrowClient client = new SparrowClient("");
+        client.register(User.class);
+        
+        String json = "{\"id\":\"1\",\"userName\":\"th\u00e4r\",\"active\":true,\"schemas\":[\"ignored\"],"
+                + "\"meta\":{\"created\":\"2018-01-02T03:04:05Z\"},\"name\":{\"givenName\":\"Th\\\"ar\"},"
+                + "\"emails\":[{\"value\":\"thar@nilgiris.org\",\"primary\":false}],"
+                + "\"enterpriseUser\":{\"costCenter\":\"valley\"}}";
+        Gson gson = new GsonBuilder().registerTypeAdapter(Date.class, new DateTimeSerializer()).create();
+        User u = gson.fromJson(json, User.class);
+        
+        JsonObject expected = client.serialize(u);
+        String ext = "urn:ietf:params:scim:schemas:extension:enterprise:2.0:User";
+        assertEquals("[\"urn:ietf:params:scim:schemas:core:2.0:User\",\"" + ext + "\"]", expected.get("schemas").toString());
+        assertEquals("valley", expected.getAsJsonObject(ext).get("costCenter").getAsString());
+        assertFalse(expected.has("enterpriseUser"));
+        
+        // read back in a single pass
+        User copy = client.applyPatch(new PatchRequest("1", User.class), u);
+        assertEquals("valley", copy.getEnterpriseUser().getCostCenter());
+        assertEquals(u.getMeta().getCreated(), copy.getMeta().getCreated());
+        assertEquals(expected, client.serialize(copy));
+        
+        JsonCodec codec = new GsonCodec();
+        codec.register(User.class);
+        for(boolean chunked : new boolean[] {false, true}) {
+            ResourceEntity entity = new ResourceEntity(codec, u, chunked);
+            byte[] data = EntityUtils.toByteArray(entity);
+            assertEquals(expected, new JsonParser().parse(new String(data, "UTF-8")));
+            assertEquals(chunked ? -1 : data.length, entity.getContentLength());
+            assertEquals(chunked, entity.isChunked());
+        }
+        
+        assertEquals(expected.toString().length(), client.estimateSize(u));
+    }
+    
+    @Test
+    public void testConfiguredCodec() throws Exception {
+        final AtomicInteger lists = new AtomicInteger();
+        ClientConfig config = new ClientConfig();
+        config.setCodec(new GsonCodec() {
+            @Override
+            public <T> void readListResponse(Reader in, Class<T> resClass, Function<JsonObject, T> resolver, SearchResponse<T> result) throws IOException {
+                lists.incrementAndGet();
+                super.readListResponse(in, resClass, resolver, result);
+            }
+        });
+        
+        SparrowClient client = new SparrowClient("", null, null, null, config);
+        client.register(User.class);
+        
+        SearchResponse<User> sr = new SearchResponse<>();
+        client.readSearchResponse(newHttpResponse(200, "{\"totalResults\":1,\"Resources\":[{\"id\":\"1\"}]}"), User.class, sr, null);
+        assertEquals(1, lists.get());
+        assertEquals("1", sr.getResources().get(0).getId());
+    }
+    
+    @Test
+    public void testLazyDecoding() throws Exception {
+        final AtomicInteger reads = new AtomicInteger();
+        ClientConfig config = new ClientConfig();
+        config.setLazyDecoding(true);
+        config.setCodec(new GsonCodec() {
+            @Override
+            public <T> T read(Reader in, Class<T> type) throws IOException {
+                reads.incrementAndGet();
+                return super.read(in, type);
+            }
+        });
+        
+        SparrowClient client = new SparrowClient("", null, null, null, config);
+        client.register(User.class);
+        
+        String json = "{\"id\":\"1\",\"userName\":\"th\u00e4r\"}";
+        Response<User> resp = new Response<>();
+        client.readResponse(newHttpResponse(201, json), User.class, resp, true, null);
+        assertEquals(201, resp.getHttpCode());
+        assertEquals(0, reads.get());
+        assertEquals(json, resp.getHttpBody());
+        
+        assertEquals("th\u00e4r", resp.getResource().getUserName());
+        assertSame(resp.getResource(), resp.getResource());
+        assertEquals(1, reads.get());
+        
+        // errors are decoded eagerly
+        resp = new Response<>();
+        client.readResponse(newHttpResponse(409, "{\"scimType\":\"uniqueness\"}"), User.class, resp, true, null);
+        assertEquals("uniqueness", resp.getError().getScimType());
+        
+        resp = new Response<>();
+        client.readResponse(newHttpResponse(200, "{\"id\":"), User.class, resp, false, null);
+        assertNull(resp.getResource());
+        assertNotNull(resp.getError());
+        
+        config.setDiscardWriteBodies(true);
+        resp = new Response<>();
+        client.readResponse(newHttpResponse(201, json), User.class, resp, true, null);
+        assertEquals(201, resp.getHttpCode());
+        assertNull(resp.getResource());
+        assertNull(resp.getHttpBody());
+        
+        SearchResponse<User> sr = new SearchResponse<>();
+        client.readSearchResponse(newHttpResponse(200, "{\"totalResults\":1,\"Resources\":[" + json + "]}"), User.class, sr, null);
+        int before = reads.get();
+        assertEquals(1, sr.getTotalResults());
+        assertEquals("1", sr.getResources().get(0).getId());
+        assertEquals(before, reads.get());
+    }
+    
+    @Test
+    public void testBodyRetention() throws Exception {
+        ClientConfig config = new ClientConfig();
+        SparrowClient client = new SparrowClient("", null, null, null, config);
+        client.register(User.class);
+        
+        String json = "{\"id\":\"1\"}";
+        String list = "{\"totalResults\":1,\"Resources\":[" + json + "]}";
+        String error = "{\"scimType\":\"uniqueness\"}";
+        
+        // defaults
+        Response<User> resp = new Response<>();
+        client.readResponse(newHttpResponse(200, json), User.class, resp, false, null);
+        assertEquals(json, resp.getHttpBody());
+        SearchResponse<User> sr = new SearchResponse<>();
+        client.readSearchResponse(newHttpResponse(200, list), User.class, sr, null);
+        assertEquals(list, sr.getHttpBody());
+        
+        config.setBodyRetention(BodyRetention.ON_ERROR);
+        resp = new Response<>();
+        client.readResponse(newHttpResponse(200, json), User.class, resp, false, null);
+        assertEquals("1", resp.getResource().getId());
+        assertNull(resp.getHttpBody());
+        sr = new SearchResponse<>();
+        client.readSearchResponse(newHttpResponse(200, list), User.class, sr, null);
+        assertEquals("1", sr.getResources().get(0).getId());
+        assertNull(sr.getHttpBody());
+        resp = new Response<>();
+        client.readResponse(newHttpResponse(409, error), User.class, resp, false, null);
+        assertEquals(error, resp.getHttpBody());
+        
+        // the request's policy takes precedence
+        resp = new Response<>();
+        client.readResponse(newHttpResponse(409, error), User.class, resp, false, BodyRetention.NONE);
+        assertEquals("uniqueness", resp.getError().getScimType());
+        assertNull(resp.getHttpBody());
+        
+        sr = new SearchResponse<>();
+        client.readSearchResponse(newHttpResponse(200, list), User.class, sr, BodyRetention.ALWAYS);
+        assertEquals("1", sr.getResources().get(0).getId());
+        assertEquals(list, sr.getHttpBody());
+        
+        config.setLazyDecoding(true);
+        config.setBodyRetention(BodyRetention.NONE);
+        sr = new SearchResponse<>();
+        client.readSearchResponse(newHttpResponse(200, list), User.class, sr, null);
+        assertNull(sr.getHttpBody());
+        assertEquals(1, sr.getTotalResults());
+        
+        SearchRequest req = new SearchRequest();
+        req.setBodyRetention(BodyRetention.ALWAYS);
+        assertEquals(BodyRetention.ALWAYS, new SearchRequest(req).getBodyRetention());
+        assertFalse(new GsonCodec().toTree(req).getAsJsonObject().has("bodyRetention"));
+    }
+    
+    private HttpResponse newHttpResponse(int code, String body) {
+        HttpResponse resp = new BasicHttpResponse(HttpVersion.HTTP_1_1, code, null);
+        resp.setEntity(new StringEntity(body, SparrowClient.MIME_TYPE));
+        return resp;
+    }
 }
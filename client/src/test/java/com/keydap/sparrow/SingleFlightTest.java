@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2018 Keydap Software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * See LICENSE file for details.
+ */
+package com.keydap.sparrow;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Tests for SingleFlight
+ *
+ * @author Kiran Ayyagari (kayyagari@keydap.com)
+ */
+public class SingleFlightTest {
+
+    @Test
+    public void testCollapse() throws Exception {
+        SingleFlight sf = new SingleFlight();
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        
+        ExecutorService exec = Executors.newFixedThreadPool(2);
+        try {
+            Future<Object> leader = exec.submit(() -> sf.execute("k", () -> {
+                calls.incrementAndGet();
+                started.countDown();
+                try {
+                    release.await();
+                }
+                catch(InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                return new Object();
+            }));
+            
+            started.await();
+            Future<Object> follower = exec.submit(() -> sf.execute("k", () -> {
+                calls.incrementAndGet();
+                return new Object();
+            }));
+            
+            // wait till the follower joins the in-flight call
+            while(sf.getStats().getCollapsed() == 0) {
+                Thread.sleep(1);
+            }
+            release.countDown();
+            
+            assertSame(leader.get(5, TimeUnit.SECONDS), follower.get(5, TimeUnit.SECONDS));
+            assertEquals(1, calls.get());
+            
+            // the completed call is not shared anymore
+            sf.execute("k", () -> calls.incrementAndGet());
+            assertEquals(2, calls.get());
+            
+            CoalescingStats stats = sf.getStats();
+            assertEquals(2, stats.getLeaders());
+            assertEquals(1, stats.getCollapsed());
+            assertEquals(0, stats.getInflight());
+        }
+        finally {
+            exec.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+        SingleFlight sf = new SingleFlight();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        
+        ExecutorService exec = Executors.newFixedThreadPool(2);
+        try {
+            // a CompletionException thrown by the call must not be confused with the wrapper
+            RuntimeException error = new CompletionException("failed", null);
+            Future<Object> leader = exec.submit(() -> sf.execute("k", () -> {
+                started.countDown();
+                try {
+                    release.await();
+                }
+                catch(InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                throw error;
+            }));
+            
+            started.await();
+            Future<Object> follower = exec.submit(() -> sf.execute("k", () -> new Object()));
+            while(sf.getStats().getCollapsed() == 0) {
+                Thread.sleep(1);
+            }
+            release.countDown();
+            
+            // every caller sees the same exception
+            for(Future<Object> f : new Future[] {leader, follower}) {
+                try {
+                    f.get(5, TimeUnit.SECONDS);
+                    fail("the call must fail");
+                }
+                catch(ExecutionException e) {
+                    assertSame(error, e.getCause());
+                }
+            }
+            assertEquals(0, sf.getStats().getInflight());
+        }
+        finally {
+            exec.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2018 Keydap Software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * See LICENSE file for details.
+ */
+package com.keydap.sparrow;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Field;
+
+import javax.net.ssl.SSLContext;
+
+import org.apache.http.config.Registry;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.NoopHostnameVerifier;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests the TLS settings applied to the connections of the blocking client
+ *
+ * @author Kiran Ayyagari (kayyagari@keydap.com)
+ */
+public class SocketFactoryRegistryTest {
+
+    @After
+    public void clearProperties() {
+        System.clearProperty("https.protocols");
+        System.clearProperty("https.cipherSuites");
+        System.clearProperty("sparrow.test.values");
+    }
+
+    @Test
+    public void testSplitProperty() {
+        assertNull(SparrowClient.splitProperty("sparrow.test.values"));
+
+        System.setProperty("sparrow.test.values", "  ");
+        assertNull(SparrowClient.splitProperty("sparrow.test.values"));
+
+        System.setProperty("sparrow.test.values", "TLSv1.2");
+        assertArrayEquals(new String[] {"TLSv1.2"}, SparrowClient.splitProperty("sparrow.test.values"));
+
+        System.setProperty("sparrow.test.values", " TLSv1.2 ,TLSv1.3, TLSv1.1 ");
+        assertArrayEquals(new String[] {"TLSv1.2", "TLSv1.3", "TLSv1.1"}, SparrowClient.splitProperty("sparrow.test.values"));
+    }
+
+    @Test
+    public void testHttpsWithContext() throws Exception {
+        System.setProperty("https.protocols", "TLSv1.2, TLSv1.3");
+        System.setProperty("https.cipherSuites", "TLS_AES_128_GCM_SHA256");
+
+        Registry<ConnectionSocketFactory> registry = SparrowClient.createSocketFactoryRegistry("HTTPS://localhost/v2", SSLContext.getDefault());
+        assertSame(PlainConnectionSocketFactory.getSocketFactory(), registry.lookup("http"));
+
+        SSLConnectionSocketFactory sf = (SSLConnectionSocketFactory) registry.lookup("https");
+        assertArrayEquals(new String[] {"TLSv1.2", "TLSv1.3"}, (String[]) getField(sf, "supportedProtocols"));
+        assertArrayEquals(new String[] {"TLS_AES_128_GCM_SHA256"}, (String[]) getField(sf, "supportedCipherSuites"));
+
+        // the host names are verified when a context is given
+        assertFalse(getField(sf, "hostnameVerifier") instanceof NoopHostnameVerifier);
+    }
+
+    @Test
+    public void testHttpsWithoutContext() throws Exception {
+        Registry<ConnectionSocketFactory> registry = SparrowClient.createSocketFactoryRegistry("https://localhost/v2", null);
+
+        SSLConnectionSocketFactory sf = (SSLConnectionSocketFactory) registry.lookup("https");
+        assertNull(getField(sf, "supportedProtocols"));
+        assertNull(getField(sf, "supportedCipherSuites"));
+
+        // all the certificates are trusted hence the host names are not verified
+        assertTrue(getField(sf, "hostnameVerifier") instanceof NoopHostnameVerifier);
+    }
+
+    @Test
+    public void testHttp() throws Exception {
+        System.setProperty("https.protocols", "TLSv1.2");
+
+        Registry<ConnectionSocketFactory> registry = SparrowClient.createSocketFactoryRegistry("http://localhost/v2", null);
+        assertSame(PlainConnectionSocketFactory.getSocketFactory(), registry.lookup("http"));
+
+        // the system's factory which honours all the javax.net.ssl.* and https.* properties
+        SSLConnectionSocketFactory sf = (SSLConnectionSocketFactory) registry.lookup("https");
+        assertArrayEquals(new String[] {"TLSv1.2"}, (String[]) getField(sf, "supportedProtocols"));
+        assertFalse(getField(sf, "hostnameVerifier") instanceof NoopHostnameVerifier);
+    }
+
+    private static Object getField(SSLConnectionSocketFactory sf, String name) throws Exception {
+        Field f = SSLConnectionSocketFactory.class.getDeclaredField(name);
+        f.setAccessible(true);
+        return f.get(sf);
+    }
+}
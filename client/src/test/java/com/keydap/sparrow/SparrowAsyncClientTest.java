@@ -0,0 +1,194 @@
+/*
+ * Copyright (c) 2018 Keydap Software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * See LICENSE file for details.
+ */
+package com.keydap.sparrow;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.bootstrap.HttpServer;
+import org.apache.http.impl.bootstrap.ServerBootstrap;
+import org.apache.http.util.EntityUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * Tests the non-blocking client against a local HTTP server
+ *
+ * @author Kiran Ayyagari (kayyagari@keydap.com)
+ */
+public class SparrowAsyncClientTest {
+    private HttpServer server;
+
+    private SparrowAsyncClient client;
+
+    /** the number of responses decoded using the client's executor */
+    private AtomicInteger decoded = new AtomicInteger();
+
+    /** released when the slow request reaches the server */
+    private CountDownLatch slowReceived = new CountDownLatch(1);
+
+    /** released at the end of the test to let the slow request finish */
+    private CountDownLatch slowRelease = new CountDownLatch(1);
+
+    private static final String USER_SCHEMA = "urn:ietf:params:scim:schemas:core:2.0:User";
+
+    @Before
+    public void start() throws Exception {
+        server = ServerBootstrap.bootstrap()
+                .setListenerPort(0)
+                .registerHandler("/v2/Users*", (req, resp, ctx) -> handle(req, resp))
+                .create();
+        server.start();
+
+        ClientConfig config = new ClientConfig();
+        config.setExecutor((r) -> {
+            decoded.incrementAndGet();
+            r.run();
+        });
+
+        client = new SparrowAsyncClient(baseUrl(server.getLocalPort()), null, null, null, config);
+        client.register(User.class);
+    }
+
+    @After
+    public void stop() throws Exception {
+        slowRelease.countDown();
+        client.close();
+        server.shutdown(0, TimeUnit.MILLISECONDS);
+    }
+
+    private void handle(HttpRequest req, HttpResponse resp) throws IOException {
+        String method = req.getRequestLine().getMethod();
+        String uri = req.getRequestLine().getUri();
+
+        if(method.equals("POST") && uri.endsWith("/.search")) {
+            JsonObject lr = new JsonObject();
+            lr.add("schemas", new JsonParser().parse("[\"urn:ietf:params:scim:api:messages:2.0:ListResponse\"]"));
+            lr.addProperty("totalResults", 2);
+            lr.add("Resources", new JsonParser().parse("[" + user("1", "alice") + "," + user("2", "bob") + "]"));
+            resp.setStatusCode(200);
+            resp.setEntity(new StringEntity(lr.toString(), SparrowClient.MIME_TYPE));
+        }
+        else if(method.equals("POST")) {
+            String body = EntityUtils.toString(((HttpEntityEnclosingRequest) req).getEntity());
+            JsonObject user = new JsonParser().parse(body).getAsJsonObject();
+            user.addProperty("id", "1");
+            resp.setStatusCode(201);
+            resp.setHeader("Location", uri + "/1");
+            resp.setEntity(new StringEntity(user.toString(), SparrowClient.MIME_TYPE));
+        }
+        else if(uri.contains("/slow")) {
+            slowReceived.countDown();
+            try {
+                slowRelease.await(10, TimeUnit.SECONDS);
+            }
+            catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            resp.setStatusCode(404);
+        }
+        else {
+            resp.setStatusCode(404);
+            resp.setEntity(new StringEntity("{\"schemas\":[\"urn:ietf:params:scim:api:messages:2.0:Error\"],\"status\":\"404\",\"detail\":\"no such user\"}", SparrowClient.MIME_TYPE));
+        }
+    }
+
+    private static String user(String id, String userName) {
+        return "{\"schemas\":[\"" + USER_SCHEMA + "\"],\"id\":\"" + id + "\",\"userName\":\"" + userName + "\"}";
+    }
+
+    private static String baseUrl(int port) {
+        return "http://localhost:" + port + "/v2";
+    }
+
+    @Test
+    public void testAddResource() throws Exception {
+        User u = new User();
+        u.setUserName("alice");
+
+        Response<User> resp = client.addResource(u).get(10, TimeUnit.SECONDS);
+        assertEquals(201, resp.getHttpCode());
+        assertEquals("/v2/Users/1", resp.getLocation());
+        assertEquals("1", resp.getResource().getId());
+        assertEquals("alice", resp.getResource().getUserName());
+        assertEquals(1, decoded.get());
+    }
+
+    @Test
+    public void testSearch() throws Exception {
+        SearchResponse<User> resp = client.searchResource(new SearchRequest(), User.class).get(10, TimeUnit.SECONDS);
+        assertEquals(200, resp.getHttpCode());
+        assertEquals(2, resp.getTotalResults());
+        assertEquals("alice", resp.getResources().get(0).getUserName());
+        assertEquals("bob", resp.getResources().get(1).getUserName());
+        assertEquals(1, decoded.get());
+    }
+
+    @Test
+    public void testErrorResponse() throws Exception {
+        Response<User> resp = client.getResource("2", User.class).get(10, TimeUnit.SECONDS);
+        assertEquals(404, resp.getHttpCode());
+        assertNotNull(resp.getError());
+        assertEquals("no such user", resp.getError().getDetail());
+        assertEquals(null, resp.getResource());
+
+        Response<Boolean> deleted = client.deleteResource("2", User.class).get(10, TimeUnit.SECONDS);
+        assertEquals(404, deleted.getHttpCode());
+        assertFalse(deleted.getResource());
+    }
+
+    @Test
+    public void testConnectionFailure() throws Exception {
+        int port;
+        try(ServerSocket ss = new ServerSocket(0)) {
+            port = ss.getLocalPort();
+        }
+
+        try(SparrowAsyncClient unreachable = new SparrowAsyncClient(baseUrl(port))) {
+            unreachable.register(User.class);
+            Response<User> resp = unreachable.getResource("1", User.class).get(10, TimeUnit.SECONDS);
+            assertEquals(-1, resp.getHttpCode());
+            assertNotNull(resp.getError());
+        }
+    }
+
+    @Test
+    public void testClose() throws Exception {
+        CompletableFuture<Response<User>> pending = client.getResource("slow", User.class);
+        assertTrue(slowReceived.await(10, TimeUnit.SECONDS));
+
+        client.close();
+
+        // the pending request completes normally
+        Response<User> resp = pending.get(10, TimeUnit.SECONDS);
+        assertFalse(pending.isCancelled());
+        assertEquals(-1, resp.getHttpCode());
+        assertNotNull(resp.getError());
+
+        // and so do the requests sent after closing
+        resp = client.getResource("1", User.class).get(10, TimeUnit.SECONDS);
+        assertEquals(-1, resp.getHttpCode());
+        assertNotNull(resp.getError());
+    }
+}
@@ -0,0 +1,427 @@
+
+package com.keydap.sparrow;
+
+import com.keydap.sparrow.ComplexType;
+import com.keydap.sparrow.Extension;
+import com.keydap.sparrow.ReadOnly;
+import com.keydap.sparrow.Resource;
+import com.keydap.sparrow.ChangeLog;
+import com.keydap.sparrow.Tracked;
+import java.util.List;
+import java.util.Date;
+import java.io.Serializable;
+
+/*
+ * Generated using Keydap Sparrow's json2java plugin with trackChanges enabled
+ */
+
+@Resource(schemaId="urn:ietf:params:scim:schemas:core:2.0:User", endpoint="/Users", desc="User Account")
+public  class TrackedUser implements Serializable, Tracked
+{
+      @ReadOnly
+      private String id;
+      private String externalId;
+      @ReadOnly
+      private Meta meta;
+      private String userName;
+      private boolean active;
+      private Name name;
+      private List<Email> emails;
+      @Extension("urn:ietf:params:scim:schemas:extension:enterprise:2.0:User")
+      private EnterpriseUser enterpriseUser;
+   
+   // a readonly field that gets populated only while reading resources
+   @ReadOnly
+   private String[] schemas;
+   
+    public static String SCHEMA = "urn:ietf:params:scim:schemas:core:2.0:User";
+   
+   // the log of changes, not serialized
+   private transient ChangeLog changeLog;
+    
+    public TrackedUser()
+    {
+    }
+   
+      
+       public String getId()
+       {
+          return id;
+       }
+       
+       
+       public void setExternalId( String externalId )
+       {      
+          this.externalId = externalId;
+          if(changeLog != null)
+          {
+             this.externalId = changeLog.replaced("externalId", externalId);
+          }
+       }
+      
+       public String getExternalId()
+       {
+          return externalId;
+       }
+       
+         
+       public Meta getMeta()
+       {
+          return meta;
+       }
+       
+       
+       public void setUserName( String userName )
+       {      
+          this.userName = userName;
+          if(changeLog != null)
+          {
+             this.userName = changeLog.replaced("userName", userName);
+          }
+       }
+      
+       public String getUserName()
+       {
+          return userName;
+       }
+       
+       
+       public void setActive( boolean active )
+       {      
+          this.active = active;
+          if(changeLog != null)
+          {
+             this.active = changeLog.replaced("active", active);
+          }
+       }
+      
+       public boolean isActive()
+       {
+          return active;
+       }
+       
+       
+       public void setName( Name name )
+       {      
+          this.name = name;
+          if(changeLog != null)
+          {
+             this.name = changeLog.replaced("name", name);
+          }
+       }
+      
+       public Name getName()
+       {
+          return name;
+       }
+       
+       
+       public void setEmails( List<Email> emails )
+       {      
+          this.emails = emails;
+          if(changeLog != null)
+          {
+             this.emails = changeLog.replaced("emails", emails);
+          }
+       }
+      
+       public List<Email> getEmails()
+       {
+          return emails;
+       }
+       
+       
+       public void setEnterpriseUser( EnterpriseUser enterpriseUser )
+       {      
+          this.enterpriseUser = enterpriseUser;
+          if(changeLog != null)
+          {
+             this.enterpriseUser = changeLog.replaced("enterpriseUser", enterpriseUser);
+          }
+       }
+      
+       public EnterpriseUser getEnterpriseUser()
+       {
+          return enterpriseUser;
+       }
+       
+      
+   
+   public String[] getSchemas() {
+     return schemas;
+   }
+  
+   public ChangeLog getChangeLog()
+   {
+      return changeLog;
+   }
+
+   public void startTracking()
+   {
+      changeLog = new ChangeLog();
+      externalId = changeLog.track("externalId", externalId);
+      userName = changeLog.track("userName", userName);
+      active = changeLog.track("active", active);
+      name = changeLog.track("name", name);
+      emails = changeLog.track("emails", emails);
+      enterpriseUser = changeLog.track("enterpriseUser", enterpriseUser);
+
+   }
+   
+   @ComplexType
+
+   public static class Meta implements Serializable, Tracked
+   {
+         @ReadOnly
+         private String resourceType;
+         @ReadOnly
+         private Date created;
+         @ReadOnly
+         private Date lastModified;
+         @ReadOnly
+         private String location;
+         @ReadOnly
+         private String version;
+      
+      
+      
+      // the log of changes, not serialized
+      private transient ChangeLog changeLog;
+       
+       public Meta()
+       {
+       }
+      
+         
+          public String getResourceType()
+          {
+             return resourceType;
+          }
+          
+            
+          public Date getCreated()
+          {
+             return created;
+          }
+          
+            
+          public Date getLastModified()
+          {
+             return lastModified;
+          }
+          
+            
+          public String getLocation()
+          {
+             return location;
+          }
+          
+            
+          public String getVersion()
+          {
+             return version;
+          }
+          
+         
+      
+     
+      public ChangeLog getChangeLog()
+      {
+         return changeLog;
+      }
+
+      public void startTracking()
+      {
+         changeLog = new ChangeLog();
+      }
+      
+   } 
+   @ComplexType
+
+   public static class Name implements Serializable, Tracked
+   {
+         private String givenName;
+         private String familyName;
+      
+      
+      
+      // the log of changes, not serialized
+      private transient ChangeLog changeLog;
+       
+       public Name()
+       {
+       }
+      
+       
+          public void setGivenName( String givenName )
+          {      
+             this.givenName = givenName;
+             if(changeLog != null)
+             {
+                this.givenName = changeLog.replaced("givenName", givenName);
+             }
+          }
+         
+          public String getGivenName()
+          {
+             return givenName;
+          }
+          
+          
+          public void setFamilyName( String familyName )
+          {      
+             this.familyName = familyName;
+             if(changeLog != null)
+             {
+                this.familyName = changeLog.replaced("familyName", familyName);
+             }
+          }
+         
+          public String getFamilyName()
+          {
+             return familyName;
+          }
+          
+         
+      
+     
+      public ChangeLog getChangeLog()
+      {
+         return changeLog;
+      }
+
+      public void startTracking()
+      {
+         changeLog = new ChangeLog();
+         givenName = changeLog.track("givenName", givenName);
+         familyName = changeLog.track("familyName", familyName);
+
+      }
+      
+   } 
+   @ComplexType(multival=true)
+
+   public static class Email implements Serializable, Tracked
+   {
+         private String value;
+         private String type;
+         private boolean primary;
+      
+      
+      
+      // the log of changes, not serialized
+      private transient ChangeLog changeLog;
+       
+       public Email()
+       {
+       }
+      
+       
+          public void setValue( String value )
+          {      
+             this.value = value;
+             if(changeLog != null)
+             {
+                this.value = changeLog.replaced("value", value);
+             }
+          }
+         
+          public String getValue()
+          {
+             return value;
+          }
+          
+          
+          public void setType( String type )
+          {      
+             this.type = type;
+             if(changeLog != null)
+             {
+                this.type = changeLog.replaced("type", type);
+             }
+          }
+         
+          public String getType()
+          {
+             return type;
+          }
+          
+          
+          public void setPrimary( boolean primary )
+          {      
+             this.primary = primary;
+             if(changeLog != null)
+             {
+                this.primary = changeLog.replaced("primary", primary);
+             }
+          }
+         
+          public boolean isPrimary()
+          {
+             return primary;
+          }
+          
+         
+      
+     
+      public ChangeLog getChangeLog()
+      {
+         return changeLog;
+      }
+
+      public void startTracking()
+      {
+         changeLog = new ChangeLog();
+         value = changeLog.track("value", value);
+         type = changeLog.track("type", type);
+         primary = changeLog.track("primary", primary);
+
+      }
+      
+   } 
+   public static class EnterpriseUser implements Serializable, Tracked
+   {
+         private String employeeNumber;
+      
+      
+       public static String SCHEMA = "urn:ietf:params:scim:schemas:extension:enterprise:2.0:User";
+      
+      // the log of changes, not serialized
+      private transient ChangeLog changeLog;
+       
+       public EnterpriseUser()
+       {
+       }
+      
+       
+          public void setEmployeeNumber( String employeeNumber )
+          {      
+             this.employeeNumber = employeeNumber;
+             if(changeLog != null)
+             {
+                this.employeeNumber = changeLog.replaced("employeeNumber", employeeNumber);
+             }
+          }
+         
+          public String getEmployeeNumber()
+          {
+             return employeeNumber;
+          }
+          
+         
+      
+     
+      public ChangeLog getChangeLog()
+      {
+         return changeLog;
+      }
+
+      public void startTracking()
+      {
+         changeLog = new ChangeLog();
+         employeeNumber = changeLog.track("employeeNumber", employeeNumber);
+
+      }
+      
+   } 
+}
\ No newline at end of file
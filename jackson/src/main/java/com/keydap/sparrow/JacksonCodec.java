@@ -0,0 +1,1072 @@
+/*
+ * Copyright (c) 2018 Keydap Software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * See LICENSE file for details.
+ */
+package com.keydap.sparrow;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.lang.reflect.WildcardType;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.annotations.SerializedName;
+
+/**
+ * A codec based on the streaming API of Jackson. The values are bound reflectively, in a
+ * single pass over the tokens, following the same rules as {@link GsonCodec}: static and
+ * transient fields are excluded, the names given using {@link SerializedName} are honored,
+ * null values of the fields are not written and the dates are handled by {@link Rfc3339}.
+ *
+ * The resources are written and read the same way as ResourceAdapterFactory does, and the
+ * JSON trees are built as those of Gson, the numbers of the trees and of the fields declared
+ * as {@link Number} are read as BigDecimals.
+ *
+ * The classes are instantiated using their no-arg constructor, which the classes generated
+ * by json2java always have, reading a class without one fails. {@link #toTree(Object)} and
+ * {@link #fromTree(JsonElement, Class)} go through the serialized form and hence are not
+ * meant for the hot paths. The given JsonFactory is not modified, a copy of it is used.
+ *
+ * @author Kiran Ayyagari (kayyagari@keydap.com)
+ */
+public class JacksonCodec implements JsonCodec {
+    private final JsonFactory factory;
+
+    private final Map<Type, Binding> bindings = new ConcurrentHashMap<Type, Binding>();
+
+    public JacksonCodec() {
+        this(new JsonFactory());
+    }
+
+    /**
+     * @param factory the factory of parsers and generators, e.g one configured with custom features,
+     *                it is copied before disabling the features that close the streams
+     */
+    public JacksonCodec(JsonFactory factory) {
+        this.factory = factory.copy();
+        // the streams are owned by the callers
+        this.factory.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        this.factory.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+    }
+
+    @Override
+    public void register(Class<?> resClass) {
+        bindingOf(resClass);
+    }
+
+    @Override
+    public void write(Object value, Writer out) throws IOException {
+        JsonGenerator gen = factory.createGenerator(out);
+        bindingOf(value.getClass()).write(gen, value);
+        gen.flush();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T read(Reader in, Class<T> type) throws IOException {
+        JsonParser p = factory.createParser(in);
+        try {
+            if(p.nextToken() == null) {
+                return null;
+            }
+
+            return (T) bindingOf(type).read(p);
+        }
+        finally {
+            p.close();
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> void readListResponse(Reader in, Class<T> resClass, Function<JsonObject, T> resolver, SearchResponse<T> result) throws IOException {
+        JsonParser p = factory.createParser(in);
+        try {
+            Binding binding = (resClass != null ? bindingOf(resClass) : null);
+            expect(p, p.nextToken(), JsonToken.START_OBJECT);
+            while(p.nextToken() == JsonToken.FIELD_NAME) {
+                String name = p.getCurrentName();
+                JsonToken t = p.nextToken();
+                switch (name) {
+                case "totalResults":
+                    result.setTotalResults(readInt(p));
+                    break;
+
+                case "startIndex":
+                    result.setStartIndex(readInt(p));
+                    break;
+
+                case "itemsPerPage":
+                    result.setItemsPerPage(readInt(p));
+                    break;
+
+                case "Resources": // yes, the 'R' in resources must be upper case
+                    if(t == JsonToken.VALUE_NULL) {
+                        break;
+                    }
+
+                    expect(p, t, JsonToken.START_ARRAY);
+                    List<T> resources = new ArrayList<T>();
+                    while(p.nextToken() != JsonToken.END_ARRAY) {
+                        T rsObj;
+                        if(binding != null) {
+                            rsObj = (T) binding.read(p);
+                        }
+                        else {
+                            // the class is known only after reading the schemas
+                            rsObj = resolver.apply((JsonObject) TreeBinding.INSTANCE.read(p));
+                        }
+
+                        if(rsObj != null) {
+                            resources.add(rsObj);
+                        }
+                    }
+
+                    if(!resources.isEmpty()) {
+                        result.setResources(resources);
+                    }
+                    break;
+
+                default:
+                    p.skipChildren();
+                    break;
+                }
+            }
+        }
+        finally {
+            p.close();
+        }
+    }
+
+    private int readInt(JsonParser p) throws IOException {
+        Object value = PrimitiveBinding.INT.read(p);
+        return (value != null ? (Integer) value : 0);
+    }
+
+    @Override
+    public JsonElement toTree(Object value) {
+        if(value == null) {
+            return JsonNull.INSTANCE;
+        }
+
+        try {
+            StringWriter sw = new StringWriter();
+            write(value, sw);
+            return read(new StringReader(sw.toString()), JsonElement.class);
+        }
+        catch(IOException e) {
+            // the string reader and writer don't throw
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public <T> T fromTree(JsonElement json, Class<T> type) {
+        try {
+            StringWriter sw = new StringWriter();
+            write(json, sw);
+            return read(new StringReader(sw.toString()), type);
+        }
+        catch(IOException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    private Binding bindingOf(Type type) {
+        Binding b = bindings.get(type);
+        if(b == null) {
+            b = createBinding(type);
+            Binding existing = bindings.putIfAbsent(type, b);
+            if(existing != null) {
+                b = existing;
+            }
+        }
+
+        return b;
+    }
+
+    private Binding createBinding(Type type) {
+        Class<?> raw = rawType(type);
+        if(raw == String.class || raw == CharSequence.class) {
+            return PrimitiveBinding.STRING;
+        }
+
+        if(raw == int.class || raw == Integer.class) {
+            return PrimitiveBinding.INT;
+        }
+
+        if(raw == long.class || raw == Long.class) {
+            return PrimitiveBinding.LONG;
+        }
+
+        if(raw == boolean.class || raw == Boolean.class) {
+            return PrimitiveBinding.BOOLEAN;
+        }
+
+        if(raw == double.class || raw == Double.class) {
+            return PrimitiveBinding.DOUBLE;
+        }
+
+        if(raw == float.class || raw == Float.class) {
+            return PrimitiveBinding.FLOAT;
+        }
+
+        if(raw == short.class || raw == Short.class) {
+            return PrimitiveBinding.SHORT;
+        }
+
+        if(raw == byte.class || raw == Byte.class) {
+            return PrimitiveBinding.BYTE;
+        }
+
+        if(raw == char.class || raw == Character.class) {
+            return PrimitiveBinding.CHAR;
+        }
+
+        if(raw == BigDecimal.class || raw == BigInteger.class || raw == Number.class) {
+            return PrimitiveBinding.forNumber(raw);
+        }
+
+        if(raw == Date.class) {
+            return PrimitiveBinding.DATE;
+        }
+
+        if(raw == Instant.class) {
+            return PrimitiveBinding.INSTANT;
+        }
+
+        if(JsonElement.class.isAssignableFrom(raw)) {
+            return TreeBinding.INSTANCE;
+        }
+
+        if(raw.isEnum()) {
+            return new EnumBinding(raw);
+        }
+
+        if(raw.isArray()) {
+            Type component = (type instanceof GenericArrayType ? ((GenericArrayType) type).getGenericComponentType() : raw.getComponentType());
+            return new ArrayBinding(rawType(component), bindingOf(component));
+        }
+
+        if(Collection.class.isAssignableFrom(raw)) {
+            return new CollectionBinding(raw, bindingOf(typeArgument(type, 0)));
+        }
+
+        if(Map.class.isAssignableFrom(raw)) {
+            return new MapBinding(raw, bindingOf(typeArgument(type, 1)));
+        }
+
+        if(raw == Object.class) {
+            return new ObjectBinding();
+        }
+
+        return new BeanBinding(raw);
+    }
+
+    private static Class<?> rawType(Type type) {
+        if(type instanceof Class) {
+            return (Class<?>) type;
+        }
+
+        if(type instanceof ParameterizedType) {
+            return (Class<?>) ((ParameterizedType) type).getRawType();
+        }
+
+        if(type instanceof GenericArrayType) {
+            Class<?> component = rawType(((GenericArrayType) type).getGenericComponentType());
+            return Array.newInstance(component, 0).getClass();
+        }
+
+        if(type instanceof WildcardType) {
+            return rawType(((WildcardType) type).getUpperBounds()[0]);
+        }
+
+        // type variables are bound as Object
+        return Object.class;
+    }
+
+    private static Type typeArgument(Type type, int index) {
+        if(type instanceof ParameterizedType) {
+            Type[] args = ((ParameterizedType) type).getActualTypeArguments();
+            if(index < args.length) {
+                Type arg = args[index];
+                if(arg instanceof WildcardType) {
+                    arg = ((WildcardType) arg).getUpperBounds()[0];
+                }
+
+                return (arg instanceof TypeVariable ? Object.class : arg);
+            }
+        }
+
+        return Object.class;
+    }
+
+    private static void expect(JsonParser p, JsonToken actual, JsonToken expected) throws IOException {
+        if(actual != expected) {
+            throw new JsonParseException(p, "Expected " + expected + " but found " + actual);
+        }
+    }
+
+    /**
+     * Writes and reads the values of a type, the parser is positioned at the first
+     * token of the value while reading and at its last token when done
+     */
+    private abstract static class Binding {
+        abstract void write(JsonGenerator gen, Object value) throws IOException;
+
+        abstract Object read(JsonParser p) throws IOException;
+    }
+
+    private static class PrimitiveBinding extends Binding {
+        private static final int TYPE_STRING = 0;
+        private static final int TYPE_INT = 1;
+        private static final int TYPE_LONG = 2;
+        private static final int TYPE_BOOLEAN = 3;
+        private static final int TYPE_DOUBLE = 4;
+        private static final int TYPE_FLOAT = 5;
+        private static final int TYPE_SHORT = 6;
+        private static final int TYPE_BYTE = 7;
+        private static final int TYPE_CHAR = 8;
+        private static final int TYPE_DATE = 9;
+        private static final int TYPE_INSTANT = 10;
+        private static final int TYPE_BIG_DECIMAL = 11;
+        private static final int TYPE_BIG_INTEGER = 12;
+        private static final int TYPE_NUMBER = 13;
+
+        static final PrimitiveBinding STRING = new PrimitiveBinding(TYPE_STRING);
+        static final PrimitiveBinding INT = new PrimitiveBinding(TYPE_INT);
+        static final PrimitiveBinding LONG = new PrimitiveBinding(TYPE_LONG);
+        static final PrimitiveBinding BOOLEAN = new PrimitiveBinding(TYPE_BOOLEAN);
+        static final PrimitiveBinding DOUBLE = new PrimitiveBinding(TYPE_DOUBLE);
+        static final PrimitiveBinding FLOAT = new PrimitiveBinding(TYPE_FLOAT);
+        static final PrimitiveBinding SHORT = new PrimitiveBinding(TYPE_SHORT);
+        static final PrimitiveBinding BYTE = new PrimitiveBinding(TYPE_BYTE);
+        static final PrimitiveBinding CHAR = new PrimitiveBinding(TYPE_CHAR);
+        static final PrimitiveBinding DATE = new PrimitiveBinding(TYPE_DATE);
+        static final PrimitiveBinding INSTANT = new PrimitiveBinding(TYPE_INSTANT);
+        static final PrimitiveBinding BIG_DECIMAL = new PrimitiveBinding(TYPE_BIG_DECIMAL);
+        static final PrimitiveBinding BIG_INTEGER = new PrimitiveBinding(TYPE_BIG_INTEGER);
+        static final PrimitiveBinding NUMBER = new PrimitiveBinding(TYPE_NUMBER);
+
+        private final int type;
+
+        private PrimitiveBinding(int type) {
+            this.type = type;
+        }
+
+        static PrimitiveBinding forNumber(Class<?> cls) {
+            if(cls == BigDecimal.class) {
+                return BIG_DECIMAL;
+            }
+
+            if(cls == BigInteger.class) {
+                return BIG_INTEGER;
+            }
+
+            return NUMBER;
+        }
+
+        @Override
+        void write(JsonGenerator gen, Object value) throws IOException {
+            switch(type) {
+            case TYPE_STRING:
+            case TYPE_CHAR:
+                gen.writeString(value.toString());
+                break;
+
+            case TYPE_BOOLEAN:
+                gen.writeBoolean((Boolean) value);
+                break;
+
+            case TYPE_DATE:
+                gen.writeString(Rfc3339.format((Date) value));
+                break;
+
+            case TYPE_INSTANT:
+                gen.writeString(Rfc3339.format((Instant) value));
+                break;
+
+            case TYPE_INT:
+            case TYPE_SHORT:
+            case TYPE_BYTE:
+                gen.writeNumber(((Number) value).intValue());
+                break;
+
+            case TYPE_LONG:
+                gen.writeNumber(((Number) value).longValue());
+                break;
+
+            case TYPE_DOUBLE:
+                gen.writeNumber(((Number) value).doubleValue());
+                break;
+
+            case TYPE_FLOAT:
+                gen.writeNumber(((Number) value).floatValue());
+                break;
+
+            default:
+                // BigDecimal, BigInteger and other numbers are written as is
+                gen.writeNumber(value.toString());
+                break;
+            }
+        }
+
+        @Override
+        Object read(JsonParser p) throws IOException {
+            JsonToken t = p.getCurrentToken();
+            if(t == JsonToken.VALUE_NULL) {
+                return null;
+            }
+
+            if(!t.isScalarValue()) {
+                throw new JsonParseException(p, "Expected a primitive value but found " + t);
+            }
+
+            boolean number = t.isNumeric();
+            try {
+                switch(type) {
+                case TYPE_STRING:
+                    return p.getText();
+
+                case TYPE_CHAR:
+                    String s = p.getText();
+                    if(s.length() != 1) {
+                        throw new JsonParseException(p, "Expected a single character but found " + s);
+                    }
+                    return s.charAt(0);
+
+                case TYPE_BOOLEAN:
+                    if(t == JsonToken.VALUE_TRUE || t == JsonToken.VALUE_FALSE) {
+                        return t == JsonToken.VALUE_TRUE;
+                    }
+                    return Boolean.parseBoolean(p.getText());
+
+                case TYPE_DATE:
+                    return Rfc3339.parseDate(p.getText());
+
+                case TYPE_INSTANT:
+                    return Rfc3339.parseInstant(p.getText());
+
+                case TYPE_INT:
+                    return (number ? p.getIntValue() : Integer.parseInt(p.getText()));
+
+                case TYPE_LONG:
+                    return (number ? p.getLongValue() : Long.parseLong(p.getText()));
+
+                case TYPE_DOUBLE:
+                    return (number ? p.getDoubleValue() : Double.parseDouble(p.getText()));
+
+                case TYPE_FLOAT:
+                    return (number ? p.getFloatValue() : Float.parseFloat(p.getText()));
+
+                case TYPE_SHORT:
+                    return (number ? p.getShortValue() : Short.parseShort(p.getText()));
+
+                case TYPE_BYTE:
+                    return (number ? p.getByteValue() : Byte.parseByte(p.getText()));
+
+                case TYPE_BIG_DECIMAL:
+                    return new BigDecimal(p.getText());
+
+                case TYPE_BIG_INTEGER:
+                    return new BigInteger(p.getText());
+
+                default:
+                    return new BigDecimal(p.getText());
+                }
+            }
+            catch(IllegalArgumentException e) {
+                // includes NumberFormatException
+                throw new JsonParseException(p, e.getMessage(), e);
+            }
+        }
+    }
+
+    private static class EnumBinding extends Binding {
+        private final Map<String, Object> byName = new HashMap<String, Object>();
+        private final Map<Object, String> names = new HashMap<Object, String>();
+
+        EnumBinding(Class<?> cls) {
+            for(Field f : cls.getDeclaredFields()) {
+                if(!f.isEnumConstant()) {
+                    continue;
+                }
+
+                Object constant;
+                try {
+                    constant = f.get(null);
+                }
+                catch(IllegalAccessException e) {
+                    throw new IllegalStateException(e);
+                }
+
+                // same as Gson, the name given using SerializedName is used for writing
+                String name = ((Enum<?>) constant).name();
+                SerializedName sn = f.getAnnotation(SerializedName.class);
+                if(sn != null) {
+                    name = sn.value();
+                    for(String alt : sn.alternate()) {
+                        byName.put(alt, constant);
+                    }
+                }
+
+                byName.put(name, constant);
+                names.put(constant, name);
+            }
+        }
+
+        @Override
+        void write(JsonGenerator gen, Object value) throws IOException {
+            gen.writeString(names.get(value));
+        }
+
+        @Override
+        Object read(JsonParser p) throws IOException {
+            if(p.getCurrentToken() == JsonToken.VALUE_NULL) {
+                return null;
+            }
+
+            return byName.get(p.getText());
+        }
+    }
+
+    /**
+     * Binding of Gson's JSON trees
+     */
+    private static class TreeBinding extends Binding {
+        static final TreeBinding INSTANCE = new TreeBinding();
+
+        @Override
+        void write(JsonGenerator gen, Object value) throws IOException {
+            JsonElement je = (JsonElement) value;
+            if(je.isJsonObject()) {
+                gen.writeStartObject();
+                for(Map.Entry<String, JsonElement> e : je.getAsJsonObject().entrySet()) {
+                    // same as Gson, the null members are not written
+                    if(!e.getValue().isJsonNull()) {
+                        gen.writeFieldName(e.getKey());
+                        write(gen, e.getValue());
+                    }
+                }
+                gen.writeEndObject();
+            }
+            else if(je.isJsonArray()) {
+                gen.writeStartArray();
+                for(JsonElement item : je.getAsJsonArray()) {
+                    write(gen, item);
+                }
+                gen.writeEndArray();
+            }
+            else if(je.isJsonNull()) {
+                gen.writeNull();
+            }
+            else {
+                JsonPrimitive jp = je.getAsJsonPrimitive();
+                if(jp.isBoolean()) {
+                    gen.writeBoolean(jp.getAsBoolean());
+                }
+                else if(jp.isNumber()) {
+                    gen.writeNumber(jp.getAsNumber().toString());
+                }
+                else {
+                    gen.writeString(jp.getAsString());
+                }
+            }
+        }
+
+        @Override
+        Object read(JsonParser p) throws IOException {
+            JsonToken t = p.getCurrentToken();
+            switch(t) {
+            case START_OBJECT:
+                JsonObject obj = new JsonObject();
+                while(p.nextToken() == JsonToken.FIELD_NAME) {
+                    String name = p.getCurrentName();
+                    p.nextToken();
+                    obj.add(name, (JsonElement) read(p));
+                }
+                return obj;
+
+            case START_ARRAY:
+                JsonArray arr = new JsonArray();
+                while(p.nextToken() != JsonToken.END_ARRAY) {
+                    arr.add((JsonElement) read(p));
+                }
+                return arr;
+
+            case VALUE_STRING:
+                return new JsonPrimitive(p.getText());
+
+            case VALUE_NUMBER_INT:
+            case VALUE_NUMBER_FLOAT:
+                return new JsonPrimitive(new BigDecimal(p.getText()));
+
+            case VALUE_TRUE:
+                return new JsonPrimitive(Boolean.TRUE);
+
+            case VALUE_FALSE:
+                return new JsonPrimitive(Boolean.FALSE);
+
+            case VALUE_NULL:
+                return JsonNull.INSTANCE;
+
+            default:
+                throw new JsonParseException(p, "Unexpected token " + t);
+            }
+        }
+    }
+
+    private static class ArrayBinding extends Binding {
+        private final Class<?> componentType;
+        private final Binding component;
+
+        ArrayBinding(Class<?> componentType, Binding component) {
+            this.componentType = componentType;
+            this.component = component;
+        }
+
+        @Override
+        void write(JsonGenerator gen, Object value) throws IOException {
+            int len = Array.getLength(value);
+            gen.writeStartArray();
+            for(int i = 0; i < len; i++) {
+                writeNullable(gen, component, Array.get(value, i));
+            }
+            gen.writeEndArray();
+        }
+
+        @Override
+        Object read(JsonParser p) throws IOException {
+            JsonToken t = p.getCurrentToken();
+            if(t == JsonToken.VALUE_NULL) {
+                return null;
+            }
+
+            expect(p, t, JsonToken.START_ARRAY);
+            List<Object> items = new ArrayList<Object>();
+            while(p.nextToken() != JsonToken.END_ARRAY) {
+                items.add(component.read(p));
+            }
+
+            Object arr = Array.newInstance(componentType, items.size());
+            for(int i = 0; i < items.size(); i++) {
+                Object item = items.get(i);
+                if(item != null || !componentType.isPrimitive()) {
+                    Array.set(arr, i, item);
+                }
+            }
+
+            return arr;
+        }
+    }
+
+    private static class CollectionBinding extends Binding {
+        private final Constructor<?> ctor;
+        private final boolean set;
+        private final boolean sorted;
+        private final Binding element;
+
+        CollectionBinding(Class<?> cls, Binding element) {
+            this.element = element;
+            this.set = Set.class.isAssignableFrom(cls);
+            this.sorted = SortedSet.class.isAssignableFrom(cls);
+            this.ctor = (cls.isInterface() || Modifier.isAbstract(cls.getModifiers())) ? null : noArgConstructor(cls);
+        }
+
+        @Override
+        void write(JsonGenerator gen, Object value) throws IOException {
+            gen.writeStartArray();
+            for(Object item : (Collection<?>) value) {
+                writeNullable(gen, element, item);
+            }
+            gen.writeEndArray();
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        Object read(JsonParser p) throws IOException {
+            JsonToken t = p.getCurrentToken();
+            if(t == JsonToken.VALUE_NULL) {
+                return null;
+            }
+
+            expect(p, t, JsonToken.START_ARRAY);
+            Collection<Object> c;
+            if(ctor != null) {
+                c = (Collection<Object>) newInstance(ctor.getDeclaringClass(), ctor);
+            }
+            else if(sorted) {
+                c = new TreeSet<Object>();
+            }
+            else if(set) {
+                c = new LinkedHashSet<Object>();
+            }
+            else {
+                c = new ArrayList<Object>();
+            }
+
+            while(p.nextToken() != JsonToken.END_ARRAY) {
+                c.add(element.read(p));
+            }
+
+            return c;
+        }
+    }
+
+    private static class MapBinding extends Binding {
+        private final Constructor<?> ctor;
+        private final Binding value;
+
+        MapBinding(Class<?> cls, Binding value) {
+            this.value = value;
+            this.ctor = (cls.isInterface() || Modifier.isAbstract(cls.getModifiers())) ? null : noArgConstructor(cls);
+        }
+
+        @Override
+        void write(JsonGenerator gen, Object map) throws IOException {
+            gen.writeStartObject();
+            for(Map.Entry<?, ?> e : ((Map<?, ?>) map).entrySet()) {
+                // same as Gson, the keys are written using their string form
+                gen.writeFieldName(String.valueOf(e.getKey()));
+                writeNullable(gen, value, e.getValue());
+            }
+            gen.writeEndObject();
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        Object read(JsonParser p) throws IOException {
+            JsonToken t = p.getCurrentToken();
+            if(t == JsonToken.VALUE_NULL) {
+                return null;
+            }
+
+            expect(p, t, JsonToken.START_OBJECT);
+            Map<String, Object> map = (ctor != null ? (Map<String, Object>) newInstance(ctor.getDeclaringClass(), ctor) : new LinkedHashMap<String, Object>());
+            while(p.nextToken() == JsonToken.FIELD_NAME) {
+                String name = p.getCurrentName();
+                p.nextToken();
+                map.put(name, value.read(p));
+            }
+
+            return map;
+        }
+    }
+
+    /**
+     * Binding of the fields declared as Object, the values are written based on their
+     * runtime class and read as maps, lists, strings, doubles and booleans the same way as Gson
+     */
+    private class ObjectBinding extends Binding {
+        @Override
+        void write(JsonGenerator gen, Object value) throws IOException {
+            if(value.getClass() == Object.class) {
+                gen.writeStartObject();
+                gen.writeEndObject();
+            }
+            else {
+                bindingOf(value.getClass()).write(gen, value);
+            }
+        }
+
+        @Override
+        Object read(JsonParser p) throws IOException {
+            JsonToken t = p.getCurrentToken();
+            switch(t) {
+            case START_OBJECT:
+                Map<String, Object> map = new LinkedHashMap<String, Object>();
+                while(p.nextToken() == JsonToken.FIELD_NAME) {
+                    String name = p.getCurrentName();
+                    p.nextToken();
+                    map.put(name, read(p));
+                }
+                return map;
+
+            case START_ARRAY:
+                List<Object> lst = new ArrayList<Object>();
+                while(p.nextToken() != JsonToken.END_ARRAY) {
+                    lst.add(read(p));
+                }
+                return lst;
+
+            case VALUE_STRING:
+                return p.getText();
+
+            case VALUE_NUMBER_INT:
+            case VALUE_NUMBER_FLOAT:
+                return p.getDoubleValue();
+
+            case VALUE_TRUE:
+                return Boolean.TRUE;
+
+            case VALUE_FALSE:
+                return Boolean.FALSE;
+
+            case VALUE_NULL:
+                return null;
+
+            default:
+                throw new JsonParseException(p, "Unexpected token " + t);
+            }
+        }
+    }
+
+    private static class BoundField {
+        final Field field;
+        final String name;
+        final String[] alternates;
+        final String extension;
+        final Binding binding;
+
+        BoundField(Field field, Binding binding) {
+            this.field = field;
+            SerializedName sn = field.getAnnotation(SerializedName.class);
+            this.name = (sn != null ? sn.value() : field.getName());
+            this.alternates = (sn != null ? sn.alternate() : new String[0]);
+            Extension ext = field.getAnnotation(Extension.class);
+            this.extension = (ext != null ? ext.value() : null);
+            this.binding = binding;
+        }
+
+        Object get(Object target) {
+            try {
+                return field.get(target);
+            }
+            catch(IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        void read(JsonParser p, Object target) throws IOException {
+            Object value = binding.read(p);
+            if(value == null && field.getType().isPrimitive()) {
+                return;
+            }
+
+            try {
+                field.set(target, value);
+            }
+            catch(IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    /**
+     * Binding of the classes bound by their fields, the fields are bound on the first use
+     * to support the classes referring to themselves
+     */
+    private class BeanBinding extends Binding {
+        private final Class<?> cls;
+
+        /** the schema of the resource, null if the class is not a resource */
+        private final String schemaId;
+
+        private volatile Bound bound;
+
+        BeanBinding(Class<?> cls) {
+            this.cls = cls;
+            Resource r = cls.getAnnotation(Resource.class);
+            this.schemaId = (r != null ? r.schemaId() : null);
+        }
+
+        private Bound bound() {
+            Bound b = bound;
+            if(b == null) {
+                b = new Bound();
+                for(Class<?> c = cls; c != null && c != Object.class; c = c.getSuperclass()) {
+                    for(Field f : c.getDeclaredFields()) {
+                        int mod = f.getModifiers();
+                        if(Modifier.isStatic(mod) || Modifier.isTransient(mod) || f.isSynthetic()) {
+                            continue;
+                        }
+
+                        f.setAccessible(true);
+                        BoundField bf = new BoundField(f, bindingOf(f.getGenericType()));
+                        b.byName.put(bf.name, bf);
+                        for(String alt : bf.alternates) {
+                            b.byName.put(alt, bf);
+                        }
+
+                        if(schemaId != null && bf.extension != null) {
+                            b.extensions.add(bf);
+                            b.byName.put(bf.extension, bf);
+                        }
+                        else if(schemaId == null || !"schemas".equals(bf.name)) {
+                            // the schemas of resources are written using the annotations
+                            b.core.add(bf);
+                        }
+                    }
+                }
+
+                b.ctor = noArgConstructor(cls);
+                bound = b;
+            }
+
+            return b;
+        }
+
+        @Override
+        void write(JsonGenerator gen, Object value) throws IOException {
+            Bound b = bound();
+            gen.writeStartObject();
+            for(BoundField bf : b.core) {
+                Object v = bf.get(value);
+                if(v != null) {
+                    gen.writeFieldName(bf.name);
+                    bf.binding.write(gen, v);
+                }
+            }
+
+            if(schemaId != null) {
+                gen.writeFieldName("schemas");
+                gen.writeStartArray();
+                gen.writeString(schemaId);
+                for(BoundField bf : b.extensions) {
+                    if(bf.get(value) != null) {
+                        gen.writeString(bf.extension);
+                    }
+                }
+                gen.writeEndArray();
+
+                for(BoundField bf : b.extensions) {
+                    Object ext = bf.get(value);
+                    if(ext != null) {
+                        gen.writeFieldName(bf.extension);
+                        bf.binding.write(gen, ext);
+                    }
+                }
+            }
+            gen.writeEndObject();
+        }
+
+        @Override
+        Object read(JsonParser p) throws IOException {
+            JsonToken t = p.getCurrentToken();
+            if(t == JsonToken.VALUE_NULL) {
+                return null;
+            }
+
+            expect(p, t, JsonToken.START_OBJECT);
+            Bound b = bound();
+            Object obj = newInstance(cls, b.ctor);
+            while(p.nextToken() == JsonToken.FIELD_NAME) {
+                String name = p.getCurrentName();
+                p.nextToken();
+                BoundField bf = b.byName.get(name);
+                if(bf == null && schemaId != null) {
+                    bf = b.findExtension(name);
+                }
+
+                if(bf == null) {
+                    p.skipChildren();
+                }
+                else {
+                    bf.read(p, obj);
+                }
+            }
+
+            return obj;
+        }
+    }
+
+    private static class Bound {
+        final List<BoundField> core = new ArrayList<BoundField>();
+        final List<BoundField> extensions = new ArrayList<BoundField>();
+        final Map<String, BoundField> byName = new HashMap<String, BoundField>();
+        Constructor<?> ctor;
+
+        /**
+         * Finds the extension whose schema URN matches the given name ignoring the case
+         */
+        BoundField findExtension(String name) {
+            if(!name.regionMatches(true, 0, "urn:", 0, 4)) {
+                return null;
+            }
+
+            for(BoundField bf : extensions) {
+                if(bf.extension.equalsIgnoreCase(name)) {
+                    return bf;
+                }
+            }
+
+            return null;
+        }
+    }
+
+    private static void writeNullable(JsonGenerator gen, Binding binding, Object value) throws IOException {
+        if(value == null) {
+            gen.writeNull();
+        }
+        else {
+            binding.write(gen, value);
+        }
+    }
+
+    private static Constructor<?> noArgConstructor(Class<?> cls) {
+        try {
+            Constructor<?> ctor = cls.getDeclaredConstructor();
+            ctor.setAccessible(true);
+            return ctor;
+        }
+        catch(NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Creates an instance using the given no-arg constructor
+     *
+     * @param cls the class to be instantiated
+     * @param ctor the no-arg constructor of the class, null if the class has none
+     */
+    private static Object newInstance(Class<?> cls, Constructor<?> ctor) {
+        if(ctor == null) {
+            throw new IllegalStateException("Cannot create an instance of " + cls.getName() + ", it has no no-arg constructor");
+        }
+
+        try {
+            return ctor.newInstance();
+        }
+        catch(Exception e) {
+            throw new IllegalStateException("Failed to create an instance of " + cls.getName(), e);
+        }
+    }
+}
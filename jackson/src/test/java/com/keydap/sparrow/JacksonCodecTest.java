@@ -0,0 +1,244 @@
+/*
+ * Copyright (c) 2018 Keydap Software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * See LICENSE file for details.
+ */
+package com.keydap.sparrow;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser.Feature;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.keydap.sparrow.PatchRequest.PatchOperation;
+
+/**
+ * Checks that {@link JacksonCodec} reads and writes the same JSON and objects as {@link GsonCodec}
+ *
+ * @author Kiran Ayyagari (kayyagari@keydap.com)
+ */
+public class JacksonCodecTest {
+    private static final String EXT = "urn:ietf:params:scim:schemas:extension:enterprise:2.0:User";
+
+    private static final String USER = "{\"schemas\":[\"urn:ietf:params:scim:schemas:core:2.0:User\",\"" + EXT + "\"],"
+            + "\"id\":\"1\",\"userName\":\"thär\",\"active\":true,"
+            + "\"meta\":{\"created\":\"2018-01-02T03:04:05.123Z\",\"version\":\"W/\\\"1\\\"\"},\"name\":{\"givenName\":\"Th\\\"ar\"},"
+            + "\"emails\":[{\"value\":\"thar@nilgiris.org\",\"primary\":true},{\"value\":\"tahr@nilgiris.org\"}],"
+            + "\"" + EXT + "\":{\"costCenter\":\"valley\",\"manager\":{\"value\":\"2\"}}}";
+
+    private static final String LIST = "{\"schemas\":[\"urn:ietf:params:scim:api:messages:2.0:ListResponse\"],\"totalResults\":5,\"itemsPerPage\":2,\"startIndex\":1,"
+            + "\"Resources\":[{\"schemas\":[\"urn:ietf:params:scim:schemas:core:2.0:User\"],\"id\":\"1\",\"userName\":\"thar\",\"emails\":[{\"value\":\"thar@nilgiris.org\"}]},"
+            + USER + "]}";
+
+    private static final String ERROR = "{\"schemas\":[\"urn:ietf:params:scim:api:messages:2.0:Error\"],\"scimType\":\"mutability\",\"detail\":\"Attribute 'id' is readOnly\",\"status\":\"400\"}";
+
+    /** compares the objects field by field */
+    private static final Gson fields = new GsonBuilder()
+            .registerTypeAdapter(Date.class, Rfc3339.DATE_ADAPTER)
+            .registerTypeAdapter(Instant.class, Rfc3339.INSTANT_ADAPTER)
+            .create();
+
+    private static final JsonParser parser = new JsonParser();
+
+    private final JsonCodec gson = new GsonCodec();
+
+    private final JsonCodec jackson = new JacksonCodec();
+
+    public JacksonCodecTest() {
+        gson.register(User.class);
+        jackson.register(User.class);
+    }
+
+    @Test
+    public void testUser() throws Exception {
+        User u = assertRoundTrip(USER, User.class);
+        assertEquals("thär", u.getUserName());
+        assertEquals("valley", u.getEnterpriseUser().getCostCenter());
+        assertEquals(1514862245123L, u.getMeta().getCreated().getTime());
+
+        JsonObject written = parse(write(jackson, u)).getAsJsonObject();
+        assertEquals("[\"urn:ietf:params:scim:schemas:core:2.0:User\",\"" + EXT + "\"]", written.get("schemas").toString());
+        assertEquals("valley", written.getAsJsonObject(EXT).get("costCenter").getAsString());
+
+        // trees are converted the same way
+        assertEquals(gson.toTree(u), jackson.toTree(u));
+        assertSameFields(gson.fromTree(parse(USER), User.class), jackson.fromTree(parse(USER), User.class));
+    }
+
+    @Test
+    public void testListResponse() throws Exception {
+        for(Class<User> resClass : Arrays.asList(User.class, null)) {
+            SearchResponse<User> g = readList(gson, resClass);
+            SearchResponse<User> j = readList(jackson, resClass);
+
+            assertEquals(5, j.getTotalResults());
+            assertEquals(g.getTotalResults(), j.getTotalResults());
+            assertEquals(g.getItemsPerPage(), j.getItemsPerPage());
+            assertEquals(g.getStartIndex(), j.getStartIndex());
+            assertEquals(2, j.getResources().size());
+            assertSameFields(g.getResources(), j.getResources());
+            assertEquals(parse(write(gson, g.getResources())), parse(write(jackson, j.getResources())));
+        }
+    }
+
+    @Test
+    public void testPatchRequest() throws Exception {
+        PatchRequest pr = new PatchRequest("1", User.class);
+        JsonObject member = new JsonObject();
+        member.addProperty("value", "2");
+        member.addProperty("$ref", "https://example.com/v2/Users/2");
+        JsonArray members = new JsonArray();
+        members.add(member);
+
+        pr.add("members", members);
+        pr.replace("displayName", "\"Th\\\"ar\"");
+        pr.replace("{\"active\":false,\"nickName\":null,\"x\":1.50}");
+        pr.add("emails[type eq \"work\"].primary", "true");
+        pr.remove("meta");
+
+        String json = write(gson, pr);
+        assertEquals(parse(json), parse(write(jackson, pr)));
+        assertNotNull(parse(json).getAsJsonObject().get("Operations"));
+
+        PatchRequest copy = assertRoundTrip(json, PatchRequest.class);
+        List<PatchOperation> ops = copy.getOperations();
+        assertEquals(5, ops.size());
+        assertEquals("remove", ops.get(4).getOp());
+        assertEquals(members, ops.get(0).getValue());
+        assertEquals(new java.math.BigDecimal("1.50"), ops.get(2).getValue().getAsJsonObject().get("x").getAsBigDecimal());
+    }
+
+    @Test
+    public void testError() throws Exception {
+        Error e = assertRoundTrip(ERROR, Error.class);
+        assertEquals("mutability", e.getScimType());
+        assertEquals("Attribute 'id' is readOnly", e.getDetail());
+        assertEquals("400", e.getStatus());
+    }
+
+    @Test
+    public void testDates() throws Exception {
+        String json = "{\"date\":\"2018-01-02T03:04:05.007Z\",\"instant\":\"2018-01-02T03:04:05.123456789Z\","
+                + "\"history\":[\"1969-12-31T23:59:59.999Z\",\"2018-01-01T22:04:05-05:00\"]}";
+        Stamps s = assertRoundTrip(json, Stamps.class);
+        assertEquals(new Date(1514862245007L), s.date);
+        assertEquals(Instant.ofEpochSecond(1514862245L, 123456789), s.instant);
+        assertEquals(new Date(-1L), s.history.get(0));
+        assertEquals(new Date(1514862245000L), s.history.get(1));
+    }
+
+    @Test
+    public void testBulkMessages() throws Exception {
+        BulkMessage.Operation op = new BulkMessage.Operation();
+        op.method = "POST";
+        op.bulkId = "b1";
+        op.path = "/Users";
+        op.data = gson.read(new StringReader(USER), User.class);
+        assertEquals(parse(write(gson, op)), parse(write(jackson, op)));
+        
+        op.data = parse(USER);
+        assertEquals(parse(write(gson, op)), parse(write(jackson, op)));
+        
+        String reply = "{\"schemas\":[\"urn:ietf:params:scim:api:messages:2.0:BulkResponse\"],\"Operations\":["
+                + "{\"method\":\"POST\",\"bulkId\":\"b1\",\"location\":\"https://example.com/v2/Users/1\",\"status\":\"201\"},"
+                + "{\"method\":\"PUT\",\"status\":{\"code\":400},\"response\":" + ERROR + "}]}";
+        BulkMessage.Reply r = assertRoundTrip(reply, BulkMessage.Reply.class);
+        assertEquals(2, r.operations.size());
+        assertEquals("b1", r.operations.get(0).bulkId);
+        assertEquals(parse(ERROR), r.operations.get(1).response);
+    }
+
+    @Test
+    public void testNoArgConstructor() throws Exception {
+        try {
+            jackson.read(new StringReader("{\"value\":\"1\"}"), Fixed.class);
+            fail("must fail without a no-arg constructor");
+        }
+        catch(IllegalStateException e) {
+            assertTrue(e.getMessage().contains(Fixed.class.getName()));
+        }
+        
+        // writing doesn't need the constructor
+        assertEquals("{\"value\":\"1\"}", write(jackson, new Fixed("1")));
+    }
+
+    @Test
+    public void testFactoryIsNotModified() {
+        JsonFactory factory = new JsonFactory();
+        new JacksonCodec(factory);
+        assertTrue(factory.isEnabled(JsonGenerator.Feature.AUTO_CLOSE_TARGET));
+        assertTrue(factory.isEnabled(Feature.AUTO_CLOSE_SOURCE));
+    }
+
+    /**
+     * Reads the given JSON using both codecs, and checks that the objects are identical
+     * and are written as identical JSON by both codecs
+     */
+    private <T> T assertRoundTrip(String json, Class<T> type) throws IOException {
+        T g = gson.read(new StringReader(json), type);
+        T j = jackson.read(new StringReader(json), type);
+        assertSameFields(g, j);
+
+        JsonElement expected = parse(write(gson, g));
+        assertEquals(expected, parse(write(jackson, j)));
+        assertEquals(expected, parse(write(jackson, g)));
+        assertEquals(expected, parse(write(gson, j)));
+
+        return j;
+    }
+
+    private void assertSameFields(Object expected, Object actual) {
+        assertEquals(fields.toJsonTree(expected), fields.toJsonTree(actual));
+    }
+
+    private SearchResponse<User> readList(JsonCodec codec, Class<User> resClass) throws IOException {
+        SearchResponse<User> sr = new SearchResponse<User>();
+        codec.readListResponse(new StringReader(LIST), resClass, (o) -> codec.fromTree(o, User.class), sr);
+        return sr;
+    }
+
+    private String write(JsonCodec codec, Object value) throws IOException {
+        StringWriter sw = new StringWriter();
+        codec.write(value, sw);
+        return sw.toString();
+    }
+
+    private JsonElement parse(String json) {
+        return parser.parse(json);
+    }
+
+    public static class Fixed {
+        private String value;
+
+        public Fixed(String value) {
+            this.value = value;
+        }
+    }
+
+    public static class Stamps {
+        private Date date;
+        private Instant instant;
+        private List<Date> history;
+    }
+}
@@ -51,6 +51,10 @@ public class JsonToJava extends AbstractMojo {
     @Parameter
     private boolean verifyCert;
 
+    /** flag to generate classes that record the changes made to their attributes */
+    @Parameter
+    private boolean trackChanges;
+
     @Parameter(defaultValue = "${project}")
     private MavenProject project;
     
@@ -241,6 +245,7 @@ public class JsonToJava extends AbstractMojo {
         template.setAttribute("resourceDesc", rt.description);
         template.setAttribute("className", rt.name);
         template.setAttribute("endpoint", rt.endpoint);
+        applyTrackChanges(template);
 
         List<String> innerClasses = new ArrayList<String>();
 
@@ -272,6 +277,7 @@ public class JsonToJava extends AbstractMojo {
                 extTemplate.setAttribute("visibility", "public");
                 extTemplate.setAttribute("static", "static");
                 extTemplate.setAttribute("className", extClassName);
+                applyTrackChanges(extTemplate);
                 
                 List<String> extInnerClasses = new ArrayList<String>();
                 
@@ -305,6 +311,12 @@ public class JsonToJava extends AbstractMojo {
         return template;
     }
 
+    private void applyTrackChanges(StringTemplate template) {
+        if(trackChanges) {
+            template.setAttribute("trackChanges", Boolean.TRUE);
+        }
+    }
+
     private void prepareSimpleAttribute(AttributeType at, StringTemplate template) {
         if (at.type.equalsIgnoreCase("dateTime")) {
             at.type = "Date";
@@ -343,6 +355,7 @@ public class JsonToJava extends AbstractMojo {
         template.setAttribute("visibility", "public");
         template.setAttribute("static", "static");
         template.setAttribute("className", className);
+        applyTrackChanges(template);
         
         //at.type = parentClassName + "." + className;
         at.type = className;
@@ -380,6 +393,14 @@ public class JsonToJava extends AbstractMojo {
         this.baseUrl = baseUrl;
     }
 
+    /**
+     * @param trackChanges
+     *            the trackChanges to set
+     */
+    public void setTrackChanges(boolean trackChanges) {
+        this.trackChanges = trackChanges;
+    }
+
     private String makeClassName(String name) {
         String className = Character.toUpperCase(name.charAt(0))
                 + name.substring(1);